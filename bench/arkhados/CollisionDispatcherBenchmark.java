@@ -0,0 +1,109 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados;
+
+import arkhados.controls.CGrenade;
+import com.jme3.bullet.collision.PhysicsCollisionEvent;
+import com.jme3.bullet.collision.PhysicsCollisionListener;
+import com.jme3.bullet.collision.PhysicsCollisionObject;
+import com.jme3.scene.Node;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares giving every collision event to every grenade, which is what
+ * adding each grenade to PhysicsSpace as listener did, with
+ * CollisionDispatcher. Events are between objects that are not grenades,
+ * like most events in a match. Does not need Bullet natives.
+ *
+ * Usage: CollisionDispatcherBenchmark [grenades] [events per tick]
+ */
+public class CollisionDispatcherBenchmark {
+
+    private static final int OTHER_OBJECTS = 60;
+    private static final int TICKS = 2000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int grenades = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        int eventsPerTick = args.length > 1
+                ? Integer.parseInt(args[1])
+                : 400;
+
+        List<PhysicsCollisionListener> broadcast = new ArrayList<>();
+        CollisionDispatcher dispatcher = new CollisionDispatcher();
+        for (int i = 0; i < grenades; i++) {
+            Node node = new Node("grenade-" + i);
+            CGrenade grenade = new CGrenade();
+            grenade.setSpatial(node);
+            broadcast.add(grenade);
+            dispatcher.subscribe(new DummyObject(node), grenade);
+        }
+
+        List<DummyObject> others = new ArrayList<>();
+        for (int i = 0; i < OTHER_OBJECTS; i++) {
+            others.add(new DummyObject(new Node("other-" + i)));
+        }
+
+        Random random = new Random(1);
+        PhysicsCollisionEvent[] events =
+                new PhysicsCollisionEvent[eventsPerTick];
+        for (int i = 0; i < eventsPerTick; i++) {
+            DummyObject a = others.get(random.nextInt(OTHER_OBJECTS));
+            DummyObject b = others.get(random.nextInt(OTHER_OBJECTS));
+            events[i] = new PhysicsCollisionEvent(0, a, b, 0);
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int tick = 0; tick < TICKS; tick++) {
+                for (PhysicsCollisionEvent event : events) {
+                    for (int i = 0; i < broadcast.size(); i++) {
+                        broadcast.get(i).collision(event);
+                    }
+                }
+            }
+            long broadcastTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int tick = 0; tick < TICKS; tick++) {
+                for (PhysicsCollisionEvent event : events) {
+                    dispatcher.collision(event);
+                }
+            }
+            long dispatcherTime = System.nanoTime() - start;
+
+            System.out.printf("Per tick, %d events and %d grenades:"
+                    + " broadcast %.1f us, dispatcher %.1f us%n",
+                    eventsPerTick, grenades, broadcastTime / 1e3 / TICKS,
+                    dispatcherTime / 1e3 / TICKS);
+        }
+    }
+
+    /**
+     * Collision object without native counterpart.
+     */
+    private static class DummyObject extends PhysicsCollisionObject {
+
+        DummyObject(Object userObject) {
+            setUserObject(userObject);
+        }
+
+        @Override
+        protected void finalize() {
+        }
+    }
+}
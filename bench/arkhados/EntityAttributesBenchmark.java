@@ -0,0 +1,137 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados;
+
+import arkhados.controls.CCharacterMovement;
+import arkhados.controls.CInfluenceInterface;
+import arkhados.controls.CResting;
+import arkhados.spell.buffs.DamageBuff;
+import arkhados.spell.buffs.LifeStealBuff;
+import arkhados.spell.buffs.SpeedBuff;
+import arkhados.util.EntityComponents;
+import arkhados.util.UserData;
+import com.jme3.scene.Node;
+import java.util.Arrays;
+
+/**
+ * Compares per frame attribute pass of CInfluenceInterface when it uses
+ * user data and when it is bound to EntityAttributes. Half of characters
+ * have damage, speed and life steal buffs. Checks that both leave same
+ * values to user data.
+ *
+ * Usage: EntityAttributesBenchmark [characters] [frames]
+ */
+public class EntityAttributesBenchmark {
+
+    private static final float TPF = 1f / 60f;
+    private static final int WARMUP_FRAMES = 2000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        int characters = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        Globals.worldRunning = true;
+
+        float[][] results = new float[2][];
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int mode = 0; mode < 2; mode++) {
+                boolean bound = mode == 1;
+                Node[] nodes = build(characters, bound);
+                run(nodes, WARMUP_FRAMES);
+
+                long start = System.nanoTime();
+                run(nodes, frames);
+                long time = System.nanoTime() - start;
+
+                results[mode] = collect(nodes);
+                if (round == ROUNDS - 1) {
+                    System.out.printf("%-10s %.2f us/frame, %.0f ns per"
+                            + " character%n",
+                            bound ? "attributes" : "user data",
+                            time / 1e3 / frames,
+                            (double) time / frames / characters);
+                }
+            }
+        }
+
+        boolean same = Arrays.equals(results[0], results[1]);
+        System.out.println("User data same in both: " + same);
+        if (!same) {
+            System.exit(1);
+        }
+    }
+
+    private static Node[] build(int count, boolean bound) {
+        EntityAttributes attributes = new EntityAttributes();
+        Node[] nodes = new Node[count];
+        for (int i = 0; i < count; i++) {
+            int entityId = i + 1;
+            Node entity = new Node("character-" + i);
+            entity.setUserData(UserData.ENTITY_ID, entityId);
+            entity.setUserData(UserData.SPEED_MOVEMENT, 36f);
+            entity.setUserData(UserData.SPEED_MOVEMENT_BASE, 36f);
+            entity.setUserData(UserData.HEALTH_MAX, 1700f);
+            entity.setUserData(UserData.HEALTH_CURRENT, 1700f);
+            entity.setUserData(UserData.DAMAGE_FACTOR, 1f);
+            entity.setUserData(UserData.LIFE_STEAL_BASE, 0.05f);
+            entity.setUserData(UserData.LIFE_STEAL, 0.05f);
+            entity.setUserData(UserData.TEAM_ID, i % 2);
+            entity.setUserData(UserData.PLAYER_ID, i);
+            entity.addControl(new CCharacterMovement());
+            // Only needed by addBuff
+            CResting resting = new CResting();
+            resting.setEnabled(false);
+            entity.addControl(resting);
+
+            CInfluenceInterface influence = new CInfluenceInterface();
+            entity.addControl(influence);
+            influence.setIsServer(false);
+            EntityComponents.attach(entity);
+            if (i % 2 == 0) {
+                influence.addBuff(
+                        new DamageBuff.MyBuilder(1e9f, 0.2f).build());
+                influence.addBuff(
+                        new SpeedBuff.MyBuilder(0.3f, 0f, 1e9f).build());
+                influence.addBuff(
+                        new LifeStealBuff.MyBuilder(0.1f, 1e9f).build());
+            }
+
+            if (bound) {
+                attributes.register(entityId, entity);
+                influence.setAttributes(attributes, entityId);
+            }
+            nodes[i] = entity;
+        }
+        return nodes;
+    }
+
+    private static void run(Node[] nodes, int frames) {
+        for (int frame = 0; frame < frames; frame++) {
+            for (Node entity : nodes) {
+                entity.updateLogicalState(TPF);
+            }
+        }
+    }
+
+    private static float[] collect(Node[] nodes) {
+        float[] values = new float[nodes.length * 3];
+        for (int i = 0; i < nodes.length; i++) {
+            values[i * 3] = nodes[i].getUserData(UserData.DAMAGE_FACTOR);
+            values[i * 3 + 1] = nodes[i].getUserData(UserData.SPEED_MOVEMENT);
+            values[i * 3 + 2] = nodes[i].getUserData(UserData.LIFE_STEAL);
+        }
+        return values;
+    }
+}
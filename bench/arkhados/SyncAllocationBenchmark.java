@@ -0,0 +1,215 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados;
+
+import arkhados.controls.CGenericSync;
+import arkhados.controls.CSync;
+import arkhados.messages.sync.statedata.DeltaSyncData;
+import arkhados.messages.sync.statedata.FieldEncoding;
+import arkhados.messages.sync.statedata.StateData;
+import arkhados.util.UserData;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
+import com.jme3.util.IntMap;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures bytes allocated per server sync tick with and without
+ * StateDataPool. Each tick follows what Sync does when every connection
+ * selects every entity: states are produced, compared against baseline of
+ * each connection and remembered in its SnapshotHistory. Clients acknowledge
+ * with a few ticks of latency.
+ *
+ * Pooled run also checks on every tick that data of each remembered snapshot
+ * of one connection still holds position entity had on that tick, so that
+ * recycled data never overwrites remembered data. Exits with status 1 if it
+ * does.
+ *
+ * Usage: SyncAllocationBenchmark [connections] [entities] [ticks]
+ */
+public class SyncAllocationBenchmark {
+
+    private static final int ROUNDS = 3;
+    private static final float MAX_POSITION_ERROR = 0.02f;
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory
+                    .getThreadMXBean();
+
+    private final int connections;
+    private final Node[] entities;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64);
+    private final Vector3f expected = new Vector3f();
+    private final Vector3f decoded = new Vector3f();
+    private boolean failed = false;
+
+    public SyncAllocationBenchmark(int connections, int entityCount) {
+        this.connections = connections;
+        entities = new Node[entityCount];
+        for (int i = 0; i < entityCount; i++) {
+            Node entity = new Node("entity-" + i);
+            entity.setUserData(UserData.ENTITY_ID, i);
+            entity.addControl(new CGenericSync());
+            entities[i] = entity;
+        }
+    }
+
+    public static void main(String[] args) {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int entities = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+
+        SyncAllocationBenchmark benchmark =
+                new SyncAllocationBenchmark(connections, entities);
+        for (int round = 0; round < ROUNDS; round++) {
+            long unpooled = benchmark.run(false, ticks);
+            long pooled = benchmark.run(true, ticks);
+            if (round == ROUNDS - 1) {
+                System.out.printf("%d connections, %d entities%n",
+                        connections, entities);
+                System.out.printf("%-10s %d bytes/tick%n", "allocating",
+                        unpooled);
+                System.out.printf("%-10s %d bytes/tick%n", "pooled",
+                        pooled);
+            }
+        }
+
+        System.out.println("Remembered snapshots intact: "
+                + !benchmark.failed);
+        if (benchmark.failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs ticks once to warm up and once measured.
+     *
+     * @return bytes allocated per tick on measured ticks
+     */
+    private long run(boolean pooled, int ticks) {
+        StateDataPool pool = new StateDataPool();
+        List<StateData> produced = new ArrayList<>();
+        IntMap<StateData> reusedStates = new IntMap<>();
+        SnapshotHistory[] histories = new SnapshotHistory[connections];
+        for (int i = 0; i < connections; i++) {
+            histories[i] = pooled
+                    ? new SnapshotHistory(pool)
+                    : new SnapshotHistory();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long start = 0;
+        for (int tick = 0; tick < ticks * 2; tick++) {
+            if (tick == ticks) {
+                start = THREADS.getThreadAllocatedBytes(threadId);
+            }
+
+            for (int i = 0; i < entities.length; i++) {
+                entities[i].setLocalTranslation(position(i, tick, expected));
+            }
+
+            IntMap<StateData> states;
+            if (pooled) {
+                states = reusedStates;
+                states.clear();
+                for (StateData data : produced) {
+                    pool.release(data);
+                }
+                produced.clear();
+            } else {
+                states = new IntMap<>();
+            }
+
+            for (int i = 0; i < entities.length; i++) {
+                CSync sync = entities[i].getControl(CSync.class);
+                if (pooled) {
+                    pool.track(i);
+                    StateData recycled = pool.obtain(i);
+                    StateData data = sync.getSyncableData(recycled);
+                    if (recycled != null && data != recycled) {
+                        pool.giveBack(recycled);
+                    }
+                    pool.retain(data);
+                    produced.add(data);
+                    states.put(i, data);
+                } else {
+                    states.put(i, sync.getSyncableData(null));
+                }
+            }
+
+            for (int i = 0; i < connections; i++) {
+                send(histories[i], tick, states, pooled);
+                // Connections have different latency
+                histories[i].acknowledge(tick - 2 - i % 4);
+            }
+
+            if (pooled) {
+                verify(histories[tick % connections], tick);
+            }
+        }
+
+        return (THREADS.getThreadAllocatedBytes(threadId) - start) / ticks;
+    }
+
+    private void send(SnapshotHistory history, int snapshotId,
+            IntMap<StateData> states, boolean pooled) {
+        IntMap<StateData> baseline =
+                history.get(history.getBaselineId(snapshotId));
+        IntMap<StateData> visible = pooled
+                ? history.createMap()
+                : new IntMap<StateData>();
+        for (IntMap.Entry<StateData> entry : states) {
+            StateData previous = baseline != null
+                    ? baseline.get(entry.getKey())
+                    : null;
+            DeltaSyncData.changedFields(entry.getValue(), previous);
+            visible.put(entry.getKey(), entry.getValue());
+        }
+        history.put(snapshotId, visible);
+    }
+
+    private void verify(SnapshotHistory history, int tick) {
+        for (int snapshotId = Math.max(0, tick - SnapshotHistory.SIZE + 1);
+                snapshotId <= tick; snapshotId++) {
+            IntMap<StateData> states = history.get(snapshotId);
+            if (states == null) {
+                continue;
+            }
+
+            for (IntMap.Entry<StateData> entry : states) {
+                buffer.clear();
+                ((DeltaSyncData) entry.getValue()).writeField(0, buffer);
+                buffer.flip();
+                FieldEncoding.readPosition(buffer, decoded);
+                position(entry.getKey(), snapshotId, expected);
+                if (decoded.distance(expected) > MAX_POSITION_ERROR) {
+                    if (!failed) {
+                        System.out.println("Entity " + entry.getKey()
+                                + " of snapshot " + snapshotId
+                                + " was overwritten on tick " + tick);
+                    }
+                    failed = true;
+                }
+            }
+        }
+    }
+
+    private static Vector3f position(int entity, int tick, Vector3f store) {
+        int step = tick % 1000;
+        return store.set(step * 0.1f + entity, 0f, step * 0.05f - entity);
+    }
+}
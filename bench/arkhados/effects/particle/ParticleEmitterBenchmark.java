@@ -0,0 +1,197 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.effects.particle;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.effect.ParticleMesh.Type;
+import com.jme3.effect.shapes.EmitterSphereShape;
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.control.Control;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntSupplier;
+
+/**
+ * Measures update and vertex fill of this ParticleEmitter against
+ * com.jme3.effect.ParticleEmitter, which keeps one Particle object per
+ * slot like this one used to. Runs without renderer. 10k particles are
+ * also run with parallel update, which must leave emitter in same state as
+ * sequential update. Exits with status 1 if it does not.
+ *
+ * Usage: ParticleEmitterBenchmark [frames]
+ */
+public class ParticleEmitterBenchmark {
+
+    private static final float TPF = 0.016f;
+    private static final int WARMUP_FRAMES = 2000;
+    private static final int ROUNDS = 3;
+    private static final ColorRGBA START_COLOR =
+            new ColorRGBA(1f, 0.8f, 0.3f, 1f);
+    private static final ColorRGBA END_COLOR =
+            new ColorRGBA(0.2f, 0.1f, 0.1f, 0f);
+
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+        Camera camera = new Camera(1280, 720);
+        camera.setLocation(new Vector3f(10f, 20f, 30f));
+        camera.lookAt(Vector3f.ZERO, Vector3f.UNIT_Y);
+        ViewPort viewPort = new ViewPort("benchmark", camera);
+        System.out.printf("%d cores, common pool parallelism %d%n",
+                Runtime.getRuntime().availableProcessors(),
+                ForkJoinPool.getCommonPoolParallelism());
+
+        for (int round = 0; round < ROUNDS; round++) {
+            // Particles that live for whole run
+            com.jme3.effect.ParticleEmitter jme = createJme(10000, 0.001f,
+                    1e6f);
+            ParticleEmitter own = createOwn(10000, 0.001f, 1e6f);
+            ParticleEmitter parallel = createOwn(10000, 0.001f, 1e6f);
+            parallel.setParallelUpdate(true);
+            run(jme, viewPort, 1);
+            jme.emitAllParticles();
+            fill(own, viewPort);
+            fill(parallel, viewPort);
+            print(round, "10k live, jME", jme, viewPort, frames,
+                    jme::getNumVisibleParticles);
+            print(round, "10k live, arkhados", own, viewPort, frames,
+                    own::getNumVisibleParticles);
+            print(round, "10k live, parallel", parallel, viewPort, frames,
+                    parallel::getNumVisibleParticles);
+            if (!sameState(own, parallel)) {
+                System.out.println("Parallel update differs from"
+                        + " sequential update");
+                System.exit(1);
+            }
+
+            // Railgun trail: steady emission with short lives
+            jme = createJme(650, 2000f, 0.3f);
+            own = createOwn(650, 2000f, 0.3f);
+            print(round, "trail, jME", jme, viewPort, frames * 10,
+                    jme::getNumVisibleParticles);
+            print(round, "trail, arkhados", own, viewPort, frames * 10,
+                    own::getNumVisibleParticles);
+        }
+    }
+
+    private static com.jme3.effect.ParticleEmitter createJme(int capacity,
+            float particlesPerSec, float life) {
+        FastMath.rand.setSeed(3);
+        com.jme3.effect.ParticleEmitter emitter =
+                new com.jme3.effect.ParticleEmitter("jme", Type.Triangle,
+                        capacity);
+        emitter.setShape(new EmitterSphereShape(Vector3f.ZERO, 2f));
+        emitter.setStartColor(START_COLOR);
+        emitter.setEndColor(END_COLOR);
+        emitter.setStartSize(0.5f);
+        emitter.setEndSize(2f);
+        emitter.setGravity(0f, 1f, 0f);
+        emitter.getParticleInfluencer()
+                .setInitialVelocity(new Vector3f(0f, 3f, 1f));
+        emitter.getParticleInfluencer().setVelocityVariation(0.8f);
+        emitter.setParticlesPerSec(particlesPerSec);
+        emitter.setLowLife(life);
+        emitter.setHighLife(life);
+        return emitter;
+    }
+
+    private static ParticleEmitter createOwn(int capacity,
+            float particlesPerSec, float life) {
+        FastMath.rand.setSeed(3);
+        ParticleEmitter emitter =
+                new ParticleEmitter("arkhados", Type.Triangle, capacity);
+        emitter.setShape(new EmitterSphereShape(Vector3f.ZERO, 2f));
+        emitter.setStartColor(START_COLOR);
+        emitter.setEndColor(END_COLOR);
+        emitter.setStartSize(0.5f);
+        emitter.setEndSize(2f);
+        emitter.setGravity(0f, 1f, 0f);
+        emitter.getParticleInfluencer()
+                .setInitialVelocity(new Vector3f(0f, 3f, 1f));
+        emitter.getParticleInfluencer().setVelocityVariation(0.8f);
+        emitter.setParticlesPerSec(particlesPerSec);
+        emitter.setLowLife(life);
+        emitter.setHighLife(life);
+        return emitter;
+    }
+
+    private static void print(int round, String name, Geometry emitter,
+            ViewPort viewPort, int frames, IntSupplier live) {
+        run(emitter, viewPort, WARMUP_FRAMES);
+        long start = System.nanoTime();
+        run(emitter, viewPort, frames);
+        long time = System.nanoTime() - start;
+        if (round == ROUNDS - 1) {
+            System.out.printf("%-20s %8.1f us/frame, %d live%n", name,
+                    time / 1e3 / frames, live.getAsInt());
+        }
+    }
+
+    /**
+     * Emits all particles with same random values every time.
+     */
+    private static void fill(ParticleEmitter emitter, ViewPort viewPort) {
+        run(emitter, viewPort, 1);
+        FastMath.rand.setSeed(3);
+        emitter.emitAllParticles();
+    }
+
+    private static boolean sameState(ParticleEmitter a, ParticleEmitter b) {
+        if (a.getNumVisibleParticles() != b.getNumVisibleParticles()) {
+            return false;
+        }
+
+        BoundingBox boundA = (BoundingBox) a.getMesh().getBound();
+        BoundingBox boundB = (BoundingBox) b.getMesh().getBound();
+        if (!boundA.getCenter().equals(boundB.getCenter())
+                || boundA.getXExtent() != boundB.getXExtent()
+                || boundA.getYExtent() != boundB.getYExtent()
+                || boundA.getZExtent() != boundB.getZExtent()) {
+            return false;
+        }
+
+        FloatBuffer positionsA =
+                a.getMesh().getFloatBuffer(VertexBuffer.Type.Position);
+        FloatBuffer positionsB =
+                b.getMesh().getFloatBuffer(VertexBuffer.Type.Position);
+        for (int i = 0; i < positionsA.limit(); i++) {
+            if (positionsA.get(i) != positionsB.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves emitter around and runs its control like one frame would.
+     */
+    private static void run(Geometry emitter, ViewPort viewPort,
+            int frames) {
+        Control control = emitter.getControl(0);
+        for (int frame = 0; frame < frames; frame++) {
+            float time = frame * TPF;
+            emitter.setLocalTranslation(FastMath.sin(time) * 10f, 0f,
+                    time * 3f);
+            emitter.updateGeometricState();
+            control.update(TPF);
+            control.render(null, viewPort);
+        }
+    }
+}
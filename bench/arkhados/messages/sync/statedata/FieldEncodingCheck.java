@@ -0,0 +1,175 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.messages.sync.statedata;
+
+import arkhados.messages.MessageUtils;
+import arkhados.messages.sync.CmdAddEntity;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.network.serializing.Serializer;
+import com.jme3.network.serializing.serializers.FieldSerializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Round-trips random values through FieldEncoding and compares payload sizes
+ * with FieldSerializer. Exits with status 1 if any error is above its limit.
+ *
+ * Usage: FieldEncodingCheck [samples]
+ */
+public class FieldEncodingCheck {
+
+    private static final float EXTENT = 512f;
+    private static final float MAX_POSITION_ERROR = 0.02f;
+    private static final float MAX_ANGLE_ERROR = 0.02f;
+    private static final float MAX_ROTATION_ERROR = 0.005f;
+    private static final float MAX_SPEED_ERROR = 0.01f;
+    private static final float MAX_HEALTH_ERROR = 1f / 32f + 0.001f;
+    private static final float MAX_VELOCITY_ERROR = 0.001f;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(256);
+    private boolean failed = false;
+
+    public static void main(String[] args) throws IOException {
+        int samples = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        MessageUtils.registerDataClasses();
+        MessageUtils.registerMessages();
+        FieldEncoding.setPositionExtent(EXTENT);
+
+        FieldEncodingCheck check = new FieldEncodingCheck();
+        check.checkAccuracy(samples);
+        check.checkSizes();
+        if (check.failed) {
+            System.exit(1);
+        }
+    }
+
+    private void checkAccuracy(int samples) {
+        Random random = new Random(1);
+        float position = 0f;
+        float direction = 0f;
+        float rotation = 0f;
+        float walkAngle = 0f;
+        float walkSpeed = 0f;
+        float health = 0f;
+        float velocity = 0f;
+
+        Vector3f in = new Vector3f();
+        Vector3f out = new Vector3f();
+        Quaternion inRot = new Quaternion();
+        Quaternion outRot = new Quaternion();
+
+        for (int i = 0; i < samples; i++) {
+            in.set(nextFloat(random, EXTENT), nextFloat(random, EXTENT),
+                    nextFloat(random, EXTENT));
+            buffer.clear();
+            FieldEncoding.writePosition(buffer, in);
+            buffer.flip();
+            FieldEncoding.readPosition(buffer, out);
+            position = Math.max(position, out.distance(in));
+
+            float angle = random.nextFloat() * FastMath.TWO_PI;
+            in.set(FastMath.sin(angle), 0f, FastMath.cos(angle));
+            buffer.clear();
+            FieldEncoding.writeDirection(buffer, in);
+            buffer.flip();
+            FieldEncoding.readDirection(buffer, out);
+            direction = Math.max(direction, out.angleBetween(in));
+
+            float speed = random.nextFloat() * 40f;
+            in.multLocal(speed);
+            buffer.clear();
+            FieldEncoding.writePlanarVelocity(buffer, in);
+            buffer.flip();
+            FieldEncoding.readPlanarVelocity(buffer, out);
+            walkSpeed = Math.max(walkSpeed,
+                    Math.abs(out.length() - speed));
+            if (speed > 1f) {
+                walkAngle = Math.max(walkAngle,
+                        out.normalize().angleBetween(in.normalize()));
+            }
+
+            inRot.set(nextFloat(random, 1f), nextFloat(random, 1f),
+                    nextFloat(random, 1f), nextFloat(random, 1f));
+            inRot.normalizeLocal();
+            buffer.clear();
+            FieldEncoding.writeRotation(buffer, inRot);
+            buffer.flip();
+            FieldEncoding.readRotation(buffer, outRot);
+            float dot = Math.min(1f, Math.abs(outRot.dot(inRot)));
+            rotation = Math.max(rotation, 2f * FastMath.acos(dot));
+
+            float hp = random.nextFloat() * 2100f;
+            buffer.clear();
+            FieldEncoding.writeHealth(buffer, hp);
+            buffer.flip();
+            health = Math.max(health,
+                    Math.abs(FieldEncoding.readHealth(buffer) - hp));
+
+            in.set(nextFloat(random, 200f), nextFloat(random, 50f),
+                    nextFloat(random, 200f));
+            buffer.clear();
+            FieldEncoding.writeVelocity(buffer, in);
+            buffer.flip();
+            FieldEncoding.readVelocity(buffer, out);
+            velocity = Math.max(velocity, out.distance(in) / in.length());
+        }
+
+        report("position", position, MAX_POSITION_ERROR);
+        report("view direction (rad)", direction, MAX_ANGLE_ERROR);
+        report("walk direction (rad)", walkAngle, MAX_ANGLE_ERROR);
+        report("walk speed", walkSpeed, MAX_SPEED_ERROR);
+        report("rotation (rad)", rotation, MAX_ROTATION_ERROR);
+        report("health", health, MAX_HEALTH_ERROR);
+        report("velocity (relative)", velocity, MAX_VELOCITY_ERROR);
+    }
+
+    private void checkSizes() throws IOException {
+        System.out.println("Payload bytes, FieldSerializer -> registered:");
+        compareSize(new CharacterSyncData());
+        compareSize(new GenericSyncData());
+        compareSize(new ProjectileSyncData());
+        compareSize(new CmdAddEntity(1, 1, Vector3f.ZERO,
+                Quaternion.IDENTITY, 1));
+    }
+
+    private void compareSize(Object object) throws IOException {
+        FieldSerializer fieldSerializer = new FieldSerializer();
+        fieldSerializer.initialize(object.getClass());
+        buffer.clear();
+        fieldSerializer.writeObject(buffer, object);
+        int before = buffer.position();
+
+        buffer.clear();
+        Serializer.getSerializer(object.getClass())
+                .writeObject(buffer, object);
+        System.out.printf("%-22s %d -> %d%n",
+                object.getClass().getSimpleName(), before,
+                buffer.position());
+    }
+
+    private void report(String name, float error, float limit) {
+        boolean ok = error <= limit;
+        failed |= !ok;
+        System.out.printf("%-22s max error %.5f, limit %.5f %s%n", name,
+                error, limit, ok ? "OK" : "FAIL");
+    }
+
+    private static float nextFloat(Random random, float extent) {
+        return (random.nextFloat() * 2f - 1f) * extent;
+    }
+}
@@ -0,0 +1,175 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.net;
+
+import arkhados.messages.CmdPlayerKill;
+import arkhados.messages.CmdWorldEffect;
+import arkhados.messages.MessageUtils;
+import arkhados.messages.sync.CmdAction;
+import arkhados.messages.sync.CmdBuff;
+import arkhados.messages.sync.CmdStartCastingSpell;
+import com.jme3.math.Vector3f;
+import com.jme3.network.serializing.Serializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares serializing broadcast commands separately for each connection
+ * with copying them from EncodedCommandCache the way WindowedServerSender
+ * does. Every connection gets a OneTrueMessage with the same 134 commands,
+ * about 2 KB, and an Ack of its own. Checks first that cached and uncached
+ * messages are byte-identical and read back. Exits with status 1 if not.
+ *
+ * Usage: BroadcastSerializationBenchmark [ticks]
+ */
+public class BroadcastSerializationBenchmark {
+
+    private static final int[] CONNECTIONS = {2, 8, 16};
+    private static final int ROUNDS = 5;
+    private static final int PLAYERS = 40;
+
+    private final List<Command> broadcast = new ArrayList<>();
+    private final ByteBuffer buffer = ByteBuffer.allocate(65536);
+    private final EncodedCommandCache cache = new EncodedCommandCache();
+
+    public BroadcastSerializationBenchmark() {
+        for (int i = 0; i < PLAYERS; i++) {
+            broadcast.add(new CmdBuff(i, 3, i * 7, 5f, true));
+            broadcast.add(new CmdAction(i, 2));
+            broadcast.add(new CmdStartCastingSpell(i, 4,
+                    new Vector3f(1f, 0f, 1f), 1f));
+            if (i % 10 == 0) {
+                broadcast.add(new CmdPlayerKill(1, 2, 3, 1, 0));
+            }
+            if (i % 4 == 0) {
+                broadcast.add(new CmdWorldEffect(i,
+                        new Vector3f(i, 0f, i)));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        MessageUtils.registerDataClasses();
+        MessageUtils.registerMessages();
+
+        BroadcastSerializationBenchmark benchmark =
+                new BroadcastSerializationBenchmark();
+        if (!benchmark.check()) {
+            System.exit(1);
+        }
+
+        for (int connections : CONNECTIONS) {
+            long perConnection = Long.MAX_VALUE;
+            long cached = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                perConnection = Math.min(perConnection,
+                        benchmark.run(connections, ticks, false));
+                cached = Math.min(cached,
+                        benchmark.run(connections, ticks, true));
+            }
+            System.out.printf("%2d connections: per connection %6.1f us/tick,"
+                    + " cached %6.1f us/tick%n", connections,
+                    perConnection / 1e3 / ticks, cached / 1e3 / ticks);
+        }
+    }
+
+    private boolean check() throws IOException {
+        cache.clear();
+        for (int connection = 0; connection < 3; connection++) {
+            OneTrueMessage message = createMessage(connection, 5);
+            byte[] plain = write(message);
+
+            OneTrueMessageSerializer.useCache(cache);
+            byte[] copied;
+            try {
+                copied = write(message);
+            } finally {
+                OneTrueMessageSerializer.useCache(null);
+            }
+
+            if (!Arrays.equals(plain, copied)) {
+                System.out.println("Cached message differs for connection "
+                        + connection);
+                return false;
+            }
+
+            OneTrueMessage read = (OneTrueMessage) Serializer
+                    .readClassAndObject(ByteBuffer.wrap(copied));
+            if (read.getOrderNum() != 5
+                    || read.getGuaranteed().get(0).getCommandList().size()
+                    != broadcast.size()
+                    || read.getUnreliables().size() != 1) {
+                System.out.println("Cached message did not read back");
+                return false;
+            }
+
+            if (connection == 0) {
+                System.out.println(broadcast.size() + " commands, "
+                        + plain.length + " bytes per message");
+            }
+        }
+
+        System.out.println("Encoded " + cache.getEncodings()
+                + " times, copied " + cache.getCopies() + " times");
+        return true;
+    }
+
+    /**
+     * @return nanoseconds spent serializing messages of all ticks
+     */
+    private long run(int connections, int ticks, boolean cached)
+            throws IOException {
+        long start = System.nanoTime();
+        for (int tick = 0; tick < ticks; tick++) {
+            if (cached) {
+                cache.clear();
+                OneTrueMessageSerializer.useCache(cache);
+            }
+
+            try {
+                for (int connection = 0; connection < connections;
+                        connection++) {
+                    buffer.clear();
+                    Serializer.writeClassAndObject(buffer,
+                            createMessage(connection, tick));
+                }
+            } finally {
+                OneTrueMessageSerializer.useCache(null);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private OneTrueMessage createMessage(int connection, int tick) {
+        OneTrueMessage message = new OneTrueMessage(tick);
+        message.getGuaranteed().add(new OtmIdCommandListPair(tick,
+                new ArrayList<>(broadcast)));
+        message.getUnreliables().add(new Ack(connection));
+        return message;
+    }
+
+    private byte[] write(OneTrueMessage message) throws IOException {
+        buffer.clear();
+        Serializer.writeClassAndObject(buffer, message);
+        buffer.flip();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,123 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.spell;
+
+import arkhados.World;
+import arkhados.util.AbstractNodeBuilder;
+import arkhados.util.BuildParameters;
+import arkhados.util.EntityComponents;
+import arkhados.util.UserData;
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
+import com.jme3.system.NativeLibraryLoader;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures server side cost of one pellet spawn the way EntityFactory
+ * makes it: building with resources of its own, which is what every pellet
+ * did before builder shared them, building with shared resources, and
+ * resetting recycled pellet. Allocation is Java heap only, Bullet objects
+ * behind collision shapes and controls are not counted.
+ *
+ * Needs Bullet on class path like the game.
+ *
+ * Usage: PelletSpawnBenchmark [spawns]
+ */
+public class PelletSpawnBenchmark {
+
+    private static final int ROUNDS = 3;
+    // Building own resources is an order of magnitude slower
+    private static final int OWN_RESOURCES_DIVISOR = 10;
+    private static final float DAMAGE = 35f;
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory
+                    .getThreadMXBean();
+
+    private final BuildParameters params =
+            new BuildParameters(0f, new Vector3f(1f, 2f, 3f));
+    private final PelletBuilder shared = new PelletBuilder(DAMAGE);
+    private final Node recycled;
+
+    public static void main(String[] args) {
+        int spawns = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        if (NativeLibraryLoader.isUsingNativeBullet()) {
+            NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+        }
+        AbstractNodeBuilder.setAssetManager(new DesktopAssetManager(true));
+        // Server world
+        AbstractNodeBuilder.setWorld(new World());
+
+        PelletSpawnBenchmark benchmark = new PelletSpawnBenchmark();
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean print = round == ROUNDS - 1;
+            benchmark.measure("build, own resources",
+                    spawns / OWN_RESOURCES_DIVISOR, print, 0);
+            benchmark.measure("build, shared resources", spawns, print, 1);
+            benchmark.measure("recycled reset", spawns, print, 2);
+        }
+    }
+
+    public PelletSpawnBenchmark() {
+        recycled = shared.build(params);
+        finish(recycled);
+    }
+
+    private void measure(String name, int spawns, boolean print, int mode) {
+        long threadId = Thread.currentThread().getId();
+        long bytes = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        int children = 0;
+        for (int i = 0; i < spawns; i++) {
+            children += spawn(mode).getQuantity();
+        }
+        long time = System.nanoTime() - start;
+        bytes = THREADS.getThreadAllocatedBytes(threadId) - bytes;
+
+        if (print) {
+            System.out.printf("%-24s %8.2f us %7d B per spawn%n", name,
+                    time / 1e3 / spawns, bytes / spawns);
+        }
+        if (children != spawns) {
+            throw new IllegalStateException("Pellet lost its geometry");
+        }
+    }
+
+    private Node spawn(int mode) {
+        Node node;
+        switch (mode) {
+            case 0:
+                node = new PelletBuilder(DAMAGE).build(params);
+                break;
+            case 1:
+                node = shared.build(params);
+                break;
+            default:
+                shared.reset(recycled, params);
+                node = recycled;
+                break;
+        }
+        return finish(node);
+    }
+
+    /**
+     * Does what EntityFactory does to every node it builds.
+     */
+    private static Node finish(Node node) {
+        node.setUserData(UserData.NODE_BUILDER_ID, 0);
+        EntityComponents.attach(node);
+        return node;
+    }
+}
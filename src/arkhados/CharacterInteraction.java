@@ -22,6 +22,7 @@ import arkhados.gamemode.TeamDeathmatch;
 import arkhados.spell.buffs.AbstractBuff;
 import arkhados.spell.buffs.AbstractBuffBuilder;
 import arkhados.util.Builder;
+import arkhados.util.FloatAttribute;
 import arkhados.util.RoundStats;
 import arkhados.util.UserData;
 import com.jme3.scene.Spatial;
@@ -55,8 +56,8 @@ public class CharacterInteraction {
 
         if (attacker != null) {
             Spatial attackerSpatial = attacker.getSpatial();
-            float lifeSteal = attackerSpatial
-                    .getUserData(UserData.LIFE_STEAL);
+            float lifeSteal =
+                    attacker.getAttribute(FloatAttribute.LIFE_STEAL);
             float lifeStolen = lifeSteal * damageDone;
 
             attackerSpatial.getControl(CCharacterHeal.class).heal(lifeStolen);
@@ -23,10 +23,11 @@ import arkhados.ui.hud.ClientHud;
 import arkhados.ui.KeySetter;
 import arkhados.messages.MessageUtils;
 import arkhados.net.ClientSender;
-import arkhados.net.DefaultReceiver;
 import arkhados.net.OneTrueMessage;
 import arkhados.net.Receiver;
 import arkhados.net.Sender;
+import arkhados.net.WindowedClientSender;
+import arkhados.net.WindowedReceiver;
 import arkhados.replay.FakeSender;
 import arkhados.replay.ReplayCmdData;
 import arkhados.replay.ReplayData;
@@ -322,8 +323,8 @@ public class ClientMain extends SimpleApplication {
     }
 
     public void prepareForGame() {
-        sender = new ClientSender();
-        prepareAppStatesAndHandlers(new DefaultReceiver());
+        sender = new WindowedClientSender();
+        prepareAppStatesAndHandlers(new WindowedReceiver());
     }
 
     public void prepareForReplay() {
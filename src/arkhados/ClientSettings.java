@@ -54,6 +54,15 @@ public class ClientSettings implements ScreenController {
         }
     }
 
+    /**
+     * @return whether own character is moved before server confirms it
+     */
+    public static boolean isPredictionEnabled() {
+        AppSettings settings = getAppSettings();
+        return settings == null || !settings.containsKey("client_prediction")
+                || settings.getBoolean("client_prediction");
+    }
+
     public static float getFreeCameraSpeed() {
         return clientSettings.freeCameraSpeed;
     }
@@ -0,0 +1,93 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados;
+
+import com.jme3.bullet.collision.PhysicsCollisionEvent;
+import com.jme3.bullet.collision.PhysicsCollisionListener;
+import com.jme3.bullet.collision.PhysicsCollisionObject;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Only collision listener that is added to PhysicsSpace. Listeners that
+ * care about collisions of single physics object subscribe to that object
+ * so that each event is delivered only to listeners of objects that took
+ * part in it instead of to every listener in space.
+ *
+ * Events are distributed on main thread so this must be used only there.
+ */
+public class CollisionDispatcher implements PhysicsCollisionListener {
+
+    // Listeners that receive every event
+    private final List<PhysicsCollisionListener> listeners = new ArrayList<>();
+    private final Map<PhysicsCollisionObject, PhysicsCollisionListener>
+            subscribers = new IdentityHashMap<>();
+
+    public void addListener(PhysicsCollisionListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(PhysicsCollisionListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Delivers collisions of object to listener. Object can have only one
+     * subscriber at time. Subscribing same listener again does nothing.
+     *
+     * @throws IllegalStateException if object has another subscriber
+     */
+    public void subscribe(PhysicsCollisionObject object,
+            PhysicsCollisionListener listener) {
+        PhysicsCollisionListener previous =
+                subscribers.putIfAbsent(object, listener);
+        if (previous != null && previous != listener) {
+            throw new IllegalStateException(object
+                    + " already has collision subscriber " + previous);
+        }
+    }
+
+    /**
+     * Removes subscription if listener is still subscriber of object.
+     */
+    public void unsubscribe(PhysicsCollisionObject object,
+            PhysicsCollisionListener listener) {
+        if (subscribers.get(object) == listener) {
+            subscribers.remove(object);
+        }
+    }
+
+    public void clearSubscriptions() {
+        subscribers.clear();
+    }
+
+    @Override
+    public void collision(PhysicsCollisionEvent event) {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).collision(event);
+        }
+
+        PhysicsCollisionListener a = subscribers.get(event.getObjectA());
+        PhysicsCollisionListener b = subscribers.get(event.getObjectB());
+        if (a != null) {
+            a.collision(event);
+        }
+        if (b != null && b != a) {
+            b.collision(event);
+        }
+    }
+}
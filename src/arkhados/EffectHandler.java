@@ -15,6 +15,7 @@
 package arkhados;
 
 import arkhados.effects.EffectBox;
+import arkhados.effects.PooledEffect;
 import arkhados.effects.WorldEffect;
 import arkhados.messages.CmdWorldEffect;
 import arkhados.messages.sync.CmdAction;
@@ -53,6 +54,22 @@ public class EffectHandler implements CommandHandler {
         actionEffects.put(id, effectBox);
     }
 
+    /**
+     * Fills emitter pools of all effects so that first hits do not have to
+     * build emitters. Should be called after all effects have been added.
+     */
+    public void prewarm() {
+        for (IntMap.Entry<EffectBox> entry : actionEffects) {
+            entry.getValue().prewarm();
+        }
+
+        for (WorldEffect effect : worldEffects) {
+            if (effect instanceof PooledEffect) {
+                ((PooledEffect) effect).prewarm();
+            }
+        }
+    }
+
     private void handleAction(final CmdAction actionCommand) {
         final Spatial entity = world.getEntity(actionCommand.getSyncId());
         if (entity == null) {
@@ -0,0 +1,248 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados;
+
+import arkhados.util.FloatAttribute;
+import arkhados.util.IntAttribute;
+import arkhados.util.UserData;
+import com.jme3.scene.Spatial;
+import java.util.Arrays;
+
+/**
+ * Attributes of entities in primitive columns indexed by entity id. World
+ * registers every entity it adds and takes values the entity was built
+ * with from its user data.
+ *
+ * Spells are moved to this gradually, so every change is also written to
+ * user data of entity. Code that still reads user data sees same values,
+ * but after registration attributes must be changed only through this.
+ * Values written straight to user data are not read back and are
+ * overwritten by next change. With assertions enabled, flush and setters
+ * fail if they notice such a write.
+ * Values that are recalculated every frame can be staged and written to
+ * user data once with flush, which skips values that did not change.
+ */
+public class EntityAttributes {
+
+    private static final FloatAttribute[] FLOATS = FloatAttribute.values();
+    private static final IntAttribute[] INTS = IntAttribute.values();
+    private Spatial[] spatials = new Spatial[64];
+    private final float[][] floats = new float[FLOATS.length][64];
+    // Float values that user data has
+    private final float[][] mirroredFloats = new float[FLOATS.length][64];
+    private final int[][] ints = new int[INTS.length][64];
+    // Bit per attribute that tells if user data of entity has it
+    private int[] floatsInUserData = new int[64];
+    private int[] intsInUserData = new int[64];
+
+    public void register(int entityId, Spatial spatial) {
+        int index = index(entityId);
+        ensureCapacity(index);
+        spatials[index] = spatial;
+
+        int floatMask = 0;
+        for (FloatAttribute attribute : FLOATS) {
+            Object value = spatial.getUserData(attribute.getUserDataKey());
+            float primitive = value != null
+                    ? ((Number) value).floatValue()
+                    : 0f;
+            floats[attribute.ordinal()][index] = primitive;
+            mirroredFloats[attribute.ordinal()][index] = primitive;
+            if (value != null) {
+                floatMask |= 1 << attribute.ordinal();
+            }
+        }
+        floatsInUserData[index] = floatMask;
+
+        int intMask = 0;
+        for (IntAttribute attribute : INTS) {
+            Object value = spatial.getUserData(attribute.getUserDataKey());
+            ints[attribute.ordinal()][index] = value != null
+                    ? ((Number) value).intValue()
+                    : 0;
+            if (value != null) {
+                intMask |= 1 << attribute.ordinal();
+            }
+        }
+        intsInUserData[index] = intMask;
+    }
+
+    public void unregister(int entityId) {
+        int index = index(entityId);
+        if (index < spatials.length) {
+            spatials[index] = null;
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(spatials, null);
+    }
+
+    public boolean isRegistered(int entityId, Spatial spatial) {
+        int index = index(entityId);
+        return index < spatials.length && spatials[index] == spatial;
+    }
+
+    public float getFloat(int entityId, FloatAttribute attribute) {
+        return floats[attribute.ordinal()][index(entityId)];
+    }
+
+    public void setFloat(int entityId, FloatAttribute attribute,
+            float value) {
+        int index = index(entityId);
+        floats[attribute.ordinal()][index] = value;
+        mirror(index, attribute.ordinal());
+    }
+
+    /**
+     * Sets value without writing it to user data. It is written there by
+     * next flush or setFloat of same attribute.
+     */
+    public void stageFloat(int entityId, FloatAttribute attribute,
+            float value) {
+        floats[attribute.ordinal()][index(entityId)] = value;
+    }
+
+    /**
+     * Writes staged values of entity to its user data.
+     */
+    public void flush(int entityId) {
+        int index = index(entityId);
+        for (int attribute = 0; attribute < FLOATS.length; attribute++) {
+            mirror(index, attribute);
+        }
+    }
+
+    private void mirror(int index, int attribute) {
+        float value = floats[attribute][index];
+        int bit = 1 << attribute;
+        if (mirroredFloats[attribute][index] == value
+                && (floatsInUserData[index] & bit) != 0) {
+            assert userDataMatches(index, FLOATS[attribute].getUserDataKey(),
+                    value) : FLOATS[attribute]
+                    + " was written to user data of registered entity";
+            return;
+        }
+
+        mirroredFloats[attribute][index] = value;
+        floatsInUserData[index] |= bit;
+        spatials[index].setUserData(FLOATS[attribute].getUserDataKey(),
+                value);
+    }
+
+    public int getInt(int entityId, IntAttribute attribute) {
+        return ints[attribute.ordinal()][index(entityId)];
+    }
+
+    public void setInt(int entityId, IntAttribute attribute, int value) {
+        int index = index(entityId);
+        int[] column = ints[attribute.ordinal()];
+        int bit = 1 << attribute.ordinal();
+        if (column[index] == value && (intsInUserData[index] & bit) != 0) {
+            assert userDataMatches(index, attribute.getUserDataKey(), value)
+                    : attribute
+                    + " was written to user data of registered entity";
+            return;
+        }
+
+        column[index] = value;
+        intsInUserData[index] |= bit;
+        spatials[index].setUserData(attribute.getUserDataKey(), value);
+    }
+
+    /**
+     * Bridge for code that has only spatial. Uses user data if spatial is
+     * not registered.
+     */
+    public float getFloat(Spatial spatial, FloatAttribute attribute) {
+        Integer entityId = spatial.getUserData(UserData.ENTITY_ID);
+        if (entityId != null && isRegistered(entityId, spatial)) {
+            return getFloat(entityId, attribute);
+        }
+
+        return spatial.getUserData(attribute.getUserDataKey());
+    }
+
+    /**
+     * Bridge for code that has only spatial. Uses user data if spatial is
+     * not registered.
+     */
+    public void setFloat(Spatial spatial, FloatAttribute attribute,
+            float value) {
+        Integer entityId = spatial.getUserData(UserData.ENTITY_ID);
+        if (entityId != null && isRegistered(entityId, spatial)) {
+            setFloat(entityId, attribute, value);
+        } else {
+            spatial.setUserData(attribute.getUserDataKey(), value);
+        }
+    }
+
+    /**
+     * Bridge for code that has only spatial. Uses user data if spatial is
+     * not registered.
+     */
+    public int getInt(Spatial spatial, IntAttribute attribute) {
+        Integer entityId = spatial.getUserData(UserData.ENTITY_ID);
+        if (entityId != null && isRegistered(entityId, spatial)) {
+            return getInt(entityId, attribute);
+        }
+
+        return spatial.getUserData(attribute.getUserDataKey());
+    }
+
+    /**
+     * Bridge for code that has only spatial. Uses user data if spatial is
+     * not registered.
+     */
+    public void setInt(Spatial spatial, IntAttribute attribute, int value) {
+        Integer entityId = spatial.getUserData(UserData.ENTITY_ID);
+        if (entityId != null && isRegistered(entityId, spatial)) {
+            setInt(entityId, attribute, value);
+        } else {
+            spatial.setUserData(attribute.getUserDataKey(), value);
+        }
+    }
+
+    private boolean userDataMatches(int index, String key, float value) {
+        Object userData = spatials[index].getUserData(key);
+        return userData instanceof Number
+                && ((Number) userData).floatValue() == value;
+    }
+
+    private void ensureCapacity(int index) {
+        if (index < spatials.length) {
+            return;
+        }
+
+        int length = Math.max(index + 1, spatials.length * 2);
+        spatials = Arrays.copyOf(spatials, length);
+        for (int i = 0; i < floats.length; i++) {
+            floats[i] = Arrays.copyOf(floats[i], length);
+            mirroredFloats[i] = Arrays.copyOf(mirroredFloats[i], length);
+        }
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = Arrays.copyOf(ints[i], length);
+        }
+        floatsInUserData = Arrays.copyOf(floatsInUserData, length);
+        intsInUserData = Arrays.copyOf(intsInUserData, length);
+    }
+
+    /**
+     * Entity ids are shorts so their low bits are used as index.
+     */
+    private static int index(int entityId) {
+        return entityId & 0xFFFF;
+    }
+}
@@ -0,0 +1,116 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados;
+
+import arkhados.controls.CInfluenceInterface;
+import arkhados.controls.CVisibility;
+import arkhados.util.EntityComponents;
+import arkhados.util.UserData;
+import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Spatial;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Copy of everything that visibility tests read from scene. It is captured
+ * on main thread so that visibility of different players can be tested in
+ * parallel without touching live spatials. Spatials are only used as keys.
+ */
+public class FogSnapshot {
+
+    private final Map<Spatial, EntityState> entities =
+            new IdentityHashMap<>();
+    private final Map<Spatial, ObserverState> observers =
+            new IdentityHashMap<>();
+
+    public void addEntity(Spatial entity) {
+        if (entity != null && !entities.containsKey(entity)) {
+            entities.put(entity, captureEntity(entity));
+        }
+    }
+
+    public void addObserver(Spatial observer) {
+        if (observer != null && !observers.containsKey(observer)) {
+            observers.put(observer, captureObserver(observer));
+        }
+    }
+
+    public EntityState getEntity(Spatial entity) {
+        return entities.get(entity);
+    }
+
+    public ObserverState getObserver(Spatial observer) {
+        return observers.get(observer);
+    }
+
+    public void clear() {
+        entities.clear();
+        observers.clear();
+    }
+
+    public static EntityState captureEntity(Spatial entity) {
+        return captureEntity(entity, new EntityState());
+    }
+
+    /**
+     * Overwrites store with current state of entity so that same state can
+     * be reused.
+     */
+    public static EntityState captureEntity(Spatial entity,
+            EntityState store) {
+        EntityComponents components = EntityComponents.of(entity);
+        RigidBodyControl rigidBody = components.getRigidBody();
+        if (rigidBody != null) {
+            rigidBody.getPhysicsLocation(store.location);
+        } else {
+            store.location.set(entity.getLocalTranslation());
+        }
+        store.invisibleToAll = entity.getUserData(UserData.INVISIBLE_TO_ALL);
+        store.cVisibility = components.getVisibility();
+        return store;
+    }
+
+    public static ObserverState captureObserver(Spatial observer) {
+        return captureObserver(observer, new ObserverState());
+    }
+
+    /**
+     * Overwrites store with current state of observer so that same state
+     * can be reused.
+     */
+    public static ObserverState captureObserver(Spatial observer,
+            ObserverState store) {
+        CInfluenceInterface influenceInterface =
+                EntityComponents.of(observer).getInfluence();
+        store.location.set(observer.getLocalTranslation());
+        store.blind = influenceInterface != null
+                && influenceInterface.isBlind();
+        return store;
+    }
+
+    public static class EntityState {
+
+        public final Vector3f location = new Vector3f();
+        public boolean invisibleToAll;
+        public CVisibility cVisibility;
+    }
+
+    public static class ObserverState {
+
+        public final Vector3f location = new Vector3f();
+        public boolean blind;
+    }
+}
@@ -87,6 +87,9 @@ public final class InputSettings {
         inputManager.addMapping(InputMapping.HUD_TOGGLE_MENU,
                 new KeyTrigger(KeyInput.KEY_ESCAPE));
 
+        inputManager.addMapping(InputMapping.TOGGLE_NET_GRAPH,
+                new KeyTrigger(KeyInput.KEY_F3));
+
         inputManager.addMapping(InputMapping.MODIFIER,
                 new KeyTrigger(KeyInput.KEY_LSHIFT));
 
@@ -32,22 +32,22 @@
 package arkhados;
 
 import com.jme3.network.serializing.Serializable;
-import com.jme3.util.IntMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Basic class to store data about players (Human and AI), could be replaced by
- * a database or similar, static access with synchronization. Access is assured
- * to be sequential during the game, so in theory syncing is not needed. Used on
- * server and on client.
+ * a database or similar. Used on server and on client.
  *
- * @author normenhansen
+ * Players are kept in copy-on-write table indexed by player id so network
+ * threads and update thread can read it without locking. Writers lock and
+ * publish new table. Well-known keys (name, hero, team and entity id) are
+ * stored in their own fields and the rest in maps that are copied on write.
  *
- * TODO: Many methods use LinkedList instead of ArrayList. Consider converting
- * to ArrayList.
+ * @author normenhansen
  */
 @Serializable
 public final class PlayerData {
@@ -59,128 +59,193 @@ public final class PlayerData {
     public static final String COMMAND_MOVE_INTERRUPTS = "command-move-interrupts";
     public static final String NAME = "name";
     public static final String TEAM_ID = "team-id";
-    private static IntMap<PlayerData> players = new IntMap<>();
+    private static final Object lock = new Object();
+    // Indexed by player id. Never modified after it has been published.
+    private static volatile PlayerData[] players = new PlayerData[0];
+    private static volatile List<PlayerData> playerList =
+            Collections.emptyList();
     private int id;
-    private Map<String, Float> floatData = new HashMap<>();
-    private Map<String, Integer> intData = new HashMap<>();
-    private Map<String, Long> longData = new HashMap<>();
-    private Map<String, Boolean> booleanData = new HashMap<>();
-    private Map<String, String> stringData = new HashMap<>();
+    private volatile String name;
+    private volatile String hero;
+    private volatile int teamId = -1;
+    private volatile int entityId = -1;
+    private volatile HashMap<String, Float> floatData = new HashMap<>();
+    private volatile HashMap<String, Integer> intData = new HashMap<>();
+    private volatile HashMap<String, Long> longData = new HashMap<>();
+    private volatile HashMap<String, Boolean> booleanData = new HashMap<>();
+    private volatile HashMap<String, String> stringData = new HashMap<>();
+
+    public static PlayerData getPlayerId(int id) {
+        PlayerData[] table = players;
+        return id >= 0 && id < table.length ? table[id] : null;
+    }
 
-    public static synchronized PlayerData getPlayerId(int id) {
-        return players.get(id);
+    /**
+     * @return read-only list of players. Same list is returned until players
+     * are added or removed.
+     */
+    public static List<PlayerData> getPlayers() {
+        return playerList;
     }
 
-    public static synchronized List<PlayerData> getPlayers() {
-        List<PlayerData> list = new ArrayList<>();
-        for (IntMap.Entry<PlayerData> player : players) {
-            list.add(player.getValue());
+    public static void setPlayers(List<PlayerData> playerDataList) {
+        synchronized (lock) {
+            PlayerData[] table = players;
+            for (PlayerData playerData : playerDataList) {
+                table = put(table, playerData.getId(), playerData);
+            }
+            publish(table);
         }
-        return list;
     }
 
-    public static synchronized void setPlayers(List<PlayerData> playerDataList) {
-        for (PlayerData playerData : playerDataList) {
-            players.put(playerData.getId(), playerData);
+    public static int getNew(String name) {
+        synchronized (lock) {
+            PlayerData[] table = players;
+            int id = 0;
+            while (id < table.length && table[id] != null) {
+                id++;
+            }
+            publish(put(table, id, new PlayerData(id, name)));
+            return id;
         }
     }
 
-    public static synchronized int getNew(String name) {
-        int id = 0;
-        while (players.containsKey(id)) {
-            id++;
+    public static void add(int id, PlayerData player) {
+        synchronized (lock) {
+            publish(put(players, id, player));
         }
-        players.put(id, new PlayerData(id, name));
-        return id;
     }
 
-    public static synchronized void add(int id, PlayerData player) {
-        players.put(id, player);
+    public static void remove(int id) {
+        synchronized (lock) {
+            if (getPlayerId(id) != null) {
+                publish(put(players, id, null));
+            }
+        }
+    }
+
+    private static PlayerData[] put(PlayerData[] table, int id,
+            PlayerData player) {
+        PlayerData[] copy = Arrays.copyOf(table,
+                Math.max(table.length, id + 1));
+        copy[id] = player;
+        return copy;
+    }
+
+    private static void publish(PlayerData[] table) {
+        List<PlayerData> list = new ArrayList<>();
+        for (PlayerData player : table) {
+            if (player != null) {
+                list.add(player);
+            }
+        }
+
+        players = table;
+        playerList = Collections.unmodifiableList(list);
     }
 
-    public static synchronized void remove(int id) {
-        players.remove(id);
+    /**
+     * @return team id of player or -1 if there is no such player
+     */
+    public static int getTeamId(int id) {
+        PlayerData player = getPlayerId(id);
+        return player != null ? player.teamId : -1;
     }
 
-    public static synchronized float getFloatData(int id, String key) {
-        if (!players.containsKey(id)) {
+    /**
+     * @return entity id of player's character or -1
+     */
+    public static int getEntityId(int id) {
+        PlayerData player = getPlayerId(id);
+        return player != null ? player.entityId : -1;
+    }
+
+    public static float getFloatData(int id, String key) {
+        PlayerData player = getPlayerId(id);
+        if (player == null) {
             return -1;
         }
-        return players.get(id).getFloatData(key);
+        return player.getFloatData(key);
     }
 
-    public static synchronized void setData(int id, String key, float data) {
-        if (!players.containsKey(id)) {
-            return;
+    public static void setData(int id, String key, float data) {
+        PlayerData player = getPlayerId(id);
+        if (player != null) {
+            player.setData(key, data);
         }
-        players.get(id).setData(key, data);
     }
 
-    public static synchronized int getIntData(int id, String key) {
-        if (!players.containsKey(id)) {
+    public static int getIntData(int id, String key) {
+        PlayerData player = getPlayerId(id);
+        if (player == null) {
             return -1;
         }
-        Integer data = players.get(id).getIntData(key);
+        Integer data = player.getIntData(key);
         return data != null ? data : -1;
     }
 
-    public static synchronized void setData(int id, String key, int data) {
-        if (!players.containsKey(id)) {
-            return;
+    public static void setData(int id, String key, int data) {
+        PlayerData player = getPlayerId(id);
+        if (player != null) {
+            player.setData(key, data);
         }
-        players.get(id).setData(key, data);
     }
 
-    public static synchronized Long getLongData(int id, String key) {
-        if (!players.containsKey(id)) {
+    public static Long getLongData(int id, String key) {
+        PlayerData player = getPlayerId(id);
+        if (player == null) {
             return (long) -1;
         }
-        return players.get(id).getLongData(key);
+        return player.getLongData(key);
     }
 
-    public static synchronized void setData(int id, String key, long data) {
-        if (!players.containsKey(id)) {
-            return;
+    public static void setData(int id, String key, long data) {
+        PlayerData player = getPlayerId(id);
+        if (player != null) {
+            player.setData(key, data);
         }
-        players.get(id).setData(key, data);
     }
 
-    public static synchronized Boolean getBooleanData(int id, String key) {
-        if (!players.containsKey(id)) {
+    public static Boolean getBooleanData(int id, String key) {
+        PlayerData player = getPlayerId(id);
+        if (player == null) {
             return false;
         }
-        return players.get(id).getBooleanData(key);
+        return player.getBooleanData(key);
     }
 
-    public static synchronized void setData(int id, String key, boolean data) {
-        if (!players.containsKey(id)) {
-            return;
+    public static void setData(int id, String key, boolean data) {
+        PlayerData player = getPlayerId(id);
+        if (player != null) {
+            player.setData(key, data);
         }
-        players.get(id).setData(key, data);
     }
 
-    public static synchronized String getStringData(int id, String key) {
-        if (!players.containsKey(id)) {
+    public static String getStringData(int id, String key) {
+        PlayerData player = getPlayerId(id);
+        if (player == null) {
             return "unknown";
         }
-        return players.get(id).getStringData(key);
+        return player.getStringData(key);
     }
 
-    public static synchronized void setData(int id, String key, String data) {
-        if (!players.containsKey(id)) {
-            return;
+    public static void setData(int id, String key, String data) {
+        PlayerData player = getPlayerId(id);
+        if (player != null) {
+            player.setData(key, data);
         }
-        players.get(id).setData(key, data);
     }
 
-    public static synchronized void setDataForAll(String key, boolean data) {
-        for (PlayerData player : PlayerData.getPlayers()) {
+    public static void setDataForAll(String key, boolean data) {
+        for (PlayerData player : getPlayers()) {
             player.setData(key, data);
         }
     }
 
-    public static synchronized void destroyAllData() {
-        players.clear();
+    public static void destroyAllData() {
+        synchronized (lock) {
+            publish(new PlayerData[0]);
+        }
     }
 
     public PlayerData() {
@@ -188,8 +253,8 @@ public final class PlayerData {
 
     public PlayerData(int id, String name) {
         this.id = id;
-        setData("name", name);
-        setData("entity-id", -1);
+        setData(NAME, name);
+        setData(ENTITY_ID, -1);
     }
 
     public int getId() {
@@ -200,39 +265,81 @@ public final class PlayerData {
         return floatData.get(key);
     }
 
-    public void setData(String key, float data) {
-        floatData.put(key, data);
+    public synchronized void setData(String key, float data) {
+        HashMap<String, Float> copy = new HashMap<>(floatData);
+        copy.put(key, data);
+        floatData = copy;
     }
 
     public Integer getIntData(String key) {
-        return intData.get(key);
+        switch (key) {
+            case TEAM_ID:
+                return teamId;
+            case ENTITY_ID:
+                return entityId;
+            default:
+                return intData.get(key);
+        }
     }
 
-    public void setData(String key, int data) {
-        intData.put(key, data);
+    public synchronized void setData(String key, int data) {
+        switch (key) {
+            case TEAM_ID:
+                teamId = data;
+                break;
+            case ENTITY_ID:
+                entityId = data;
+                break;
+            default:
+                HashMap<String, Integer> copy = new HashMap<>(intData);
+                copy.put(key, data);
+                intData = copy;
+        }
     }
 
     public Long getLongData(String key) {
         return longData.get(key);
     }
 
-    public void setData(String key, long data) {
-        longData.put(key, data);
+    public synchronized void setData(String key, long data) {
+        HashMap<String, Long> copy = new HashMap<>(longData);
+        copy.put(key, data);
+        longData = copy;
     }
 
     public Boolean getBooleanData(String key) {
         return booleanData.get(key);
     }
 
-    public void setData(String key, boolean data) {
-        booleanData.put(key, data);
+    public synchronized void setData(String key, boolean data) {
+        HashMap<String, Boolean> copy = new HashMap<>(booleanData);
+        copy.put(key, data);
+        booleanData = copy;
     }
 
     public String getStringData(String key) {
-        return stringData.get(key);
+        switch (key) {
+            case NAME:
+                return name;
+            case HERO:
+                return hero;
+            default:
+                return stringData.get(key);
+        }
     }
 
-    public void setData(String key, String data) {
-        stringData.put(key, data);
+    public synchronized void setData(String key, String data) {
+        switch (key) {
+            case NAME:
+                name = data;
+                break;
+            case HERO:
+                hero = data;
+                break;
+            default:
+                HashMap<String, String> copy = new HashMap<>(stringData);
+                copy.put(key, data);
+                stringData = copy;
+        }
     }
 }
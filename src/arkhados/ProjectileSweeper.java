@@ -0,0 +1,260 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados;
+
+import arkhados.controls.CCharacterPhysics;
+import arkhados.controls.CInfluenceInterface;
+import arkhados.controls.CProjectile;
+import arkhados.spell.spells.rockgolem.CSpiritStonePhysics;
+import arkhados.util.EntityComponents;
+import com.jme3.bullet.collision.PhysicsCollisionObject;
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.collision.shapes.SphereCollisionShape;
+import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.control.Control;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves projectiles on server instead of Bullet. Projectiles fly in straight
+ * line so their sphere is swept from previous location to new one against
+ * characters and spirit stones found from SpatialGrid and against walls.
+ * Hits are handled in order by ServerWorldCollisionListener like Bullet's
+ * collisions were.
+ *
+ * Projectile's collision groups decide what it can hit so that builders do
+ * not need to know about this.
+ */
+public class ProjectileSweeper {
+
+    // Largest radius of anything projectile can hit
+    private static final float TARGET_REACH = 10f;
+    private final World world;
+    private final ServerWorldCollisionListener listener;
+    private WallOccluders walls;
+    private WallOccluders.Query wallQuery;
+    private final List<Spatial> candidates = new ArrayList<>();
+    private final List<Hit> hits = new ArrayList<>();
+    private int hitCount = 0;
+    private final Vector3f from = new Vector3f();
+    private final Vector3f to = new Vector3f();
+    private final Vector3f location = new Vector3f();
+
+    public ProjectileSweeper(World world,
+            ServerWorldCollisionListener listener) {
+        this.world = world;
+        this.listener = listener;
+    }
+
+    public void setWalls(WallOccluders walls) {
+        this.walls = walls;
+        wallQuery = walls != null ? walls.createQuery() : null;
+    }
+
+    /**
+     * Moves projectile by velocity and handles everything it hits on the
+     * way. Projectile may be removed from world.
+     */
+    public void move(CProjectile projectile, Vector3f velocity, float tpf) {
+        Spatial spatial = projectile.getSpatial();
+        RigidBodyControl body = projectile.getRigidBodyControl();
+        Profile profile = projectile.getSweepProfile();
+        if (profile == null) {
+            profile = Profile.of(spatial);
+            projectile.setSweepProfile(profile);
+        }
+
+        body.getPhysicsLocation(from);
+        to.set(velocity).multLocal(tpf).addLocal(from);
+
+        float wallTime = Float.POSITIVE_INFINITY;
+        if (profile.hitsWalls && walls != null) {
+            float time = walls.sweep(from, to, profile.radius, wallQuery);
+            if (time >= 0f) {
+                wallTime = time;
+            }
+        }
+
+        findHits(spatial, profile, wallTime);
+
+        for (int i = 0; i < hitCount; i++) {
+            Hit hit = hits.get(i);
+            place(spatial, body, hit.time);
+            if (hit.character != null) {
+                listener.projectileCharacterCollision(projectile,
+                        hit.character);
+            } else {
+                listener.projectileWallCollision(projectile);
+            }
+
+            if (spatial.getParent() == null) {
+                return;
+            }
+        }
+
+        if (wallTime <= 1f) {
+            place(spatial, body, wallTime);
+            listener.projectileWallCollision(projectile);
+        } else {
+            place(spatial, body, 1f);
+        }
+    }
+
+    /**
+     * Collects characters and spirit stones that sphere touches before
+     * maxTime in order of time.
+     */
+    private void findHits(Spatial projectile, Profile profile,
+            float maxTime) {
+        hitCount = 0;
+        if (!profile.hitsCharacters && !profile.hitsSpiritStones) {
+            return;
+        }
+
+        float dx = to.x - from.x;
+        float dz = to.z - from.z;
+        float halfLength = FastMath.sqrt(dx * dx + dz * dz) / 2f;
+        location.set(from).interpolateLocal(to, 0.5f);
+
+        candidates.clear();
+        world.getSpatialGrid().collect(location,
+                halfLength + profile.radius + TARGET_REACH, candidates);
+
+        for (Spatial candidate : candidates) {
+            if (candidate == projectile) {
+                continue;
+            }
+
+            EntityComponents components = EntityComponents.of(candidate);
+            CCharacterPhysics physics = components.getPhysics();
+            CInfluenceInterface influence = components.getInfluence();
+            CSpiritStonePhysics stone = components.getSpiritStonePhysics();
+
+            if (profile.hitsCharacters && physics != null
+                    && influence != null && physics.isSolid()) {
+                Vector3f feet = candidate.getLocalTranslation();
+                float time = hitTime(feet, physics.getRadius(),
+                        profile.radius, dx, dz);
+                float y = from.y + time * (to.y - from.y);
+                if (time >= 0f && time <= maxTime
+                        && y >= feet.y - profile.radius
+                        && y <= feet.y + physics.getHeight()
+                        + profile.radius) {
+                    addHit(time, influence);
+                }
+            } else if (profile.hitsSpiritStones && stone != null
+                    && stone.getPhysicsSpace() != null) {
+                Vector3f center = stone.getLocation();
+                float stoneRadius = radiusOf(stone.getCollisionShape());
+                float time = hitTime(center, stoneRadius, profile.radius,
+                        dx, dz);
+                float y = from.y + time * (to.y - from.y);
+                if (time >= 0f && time <= maxTime && FastMath.abs(
+                        y - center.y) <= stoneRadius + profile.radius) {
+                    addHit(time, null);
+                }
+            }
+        }
+    }
+
+    private float hitTime(Vector3f center, float targetRadius,
+            float radius, float dx, float dz) {
+        return WallOccluders.circleHit(from.x - center.x, from.z - center.z,
+                dx, dz, targetRadius + radius);
+    }
+
+    private void addHit(float time, CInfluenceInterface character) {
+        if (hitCount == hits.size()) {
+            hits.add(new Hit());
+        }
+
+        // Keep hits sorted by time
+        int index = hitCount++;
+        while (index > 0 && hits.get(index - 1).time > time) {
+            Hit previous = hits.get(index - 1);
+            Hit free = hits.get(index);
+            hits.set(index, previous);
+            hits.set(index - 1, free);
+            --index;
+        }
+
+        Hit hit = hits.get(index);
+        hit.time = time;
+        hit.character = character;
+    }
+
+    private void place(Spatial spatial, RigidBodyControl body, float time) {
+        location.set(from).interpolateLocal(to, time);
+        body.setPhysicsLocation(location);
+        spatial.setLocalTranslation(location);
+    }
+
+    private static float radiusOf(CollisionShape shape) {
+        return shape instanceof SphereCollisionShape
+                ? ((SphereCollisionShape) shape).getRadius()
+                : 0f;
+    }
+
+    private static class Hit {
+
+        float time;
+        // Null if spirit stone was hit
+        CInfluenceInterface character;
+    }
+
+    /**
+     * What projectile can hit, derived from collision groups of its physics
+     * objects the same way Bullet would.
+     */
+    public static class Profile {
+
+        private final float radius;
+        private final boolean hitsCharacters;
+        private final boolean hitsWalls;
+        private final boolean hitsSpiritStones;
+
+        private Profile(float radius, int groups, int collideWith) {
+            this.radius = radius;
+            hitsCharacters = (collideWith & CollisionGroups.CHARACTERS) != 0;
+            hitsWalls = (collideWith & CollisionGroups.WALLS) != 0;
+            hitsSpiritStones = (groups & CollisionGroups.PROJECTILES) != 0
+                    || (collideWith & CollisionGroups.SPIRIT_STONE) != 0;
+        }
+
+        public static Profile of(Spatial projectile) {
+            float radius = 0f;
+            int groups = 0;
+            int collideWith = 0;
+            for (int i = 0; i < projectile.getNumControls(); i++) {
+                Control control = projectile.getControl(i);
+                if (!(control instanceof PhysicsCollisionObject)) {
+                    continue;
+                }
+
+                PhysicsCollisionObject object =
+                        (PhysicsCollisionObject) control;
+                groups |= object.getCollisionGroup();
+                collideWith |= object.getCollideWithGroups();
+                radius = Math.max(radius,
+                        radiusOf(object.getCollisionShape()));
+            }
+
+            return new Profile(radius, groups, collideWith);
+        }
+    }
+}
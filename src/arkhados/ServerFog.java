@@ -36,9 +36,17 @@ import com.jme3.math.Vector3f;
 import com.jme3.network.HostedConnection;
 import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -54,7 +62,18 @@ public class ServerFog extends AbstractAppState {
     private Application app;
     private final Map<PlayerEntityAwareness, HostedConnection> awarenessConnectionMap =
             new LinkedHashMap<>();
-    private Node walls;
+    // Connection of each awareness slot or null if slot is free
+    private final List<HostedConnection> slotConnections = new ArrayList<>();
+    // Indexed by entity id. Bit is set for slot of each awareness that is
+    // aware of entity. Null means that everybody is aware of entity.
+    private BitSet[] observers = new BitSet[64];
+    // Slot of awareness whose own character entity is or -1
+    private int[] owners = createOwners(64);
+    private WallOccluders occluders;
+    private final VisibilityStatistics statistics =
+            new VisibilityStatistics();
+    private final FogSnapshot snapshot = new FogSnapshot();
+    private ForkJoinPool pool;
     private float checkTimer = 0;
     private World world;
 
@@ -63,6 +82,20 @@ public class ServerFog extends AbstractAppState {
         super.initialize(stateManager, app);
         this.app = app;
         world = stateManager.getState(World.class);
+        if (Settings.get().General().isParallelFog()) {
+            pool = new ForkJoinPool();
+            logger.log(Level.INFO, "Testing visibility with {0} threads",
+                    pool.getParallelism());
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        super.cleanup();
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
     }
 
     @Override
@@ -74,22 +107,87 @@ public class ServerFog extends AbstractAppState {
 
         checkTimer = Settings.get().General().getDefaultSyncFrequency() / 2f;
 
-        for (PlayerEntityAwareness playerEntityAwareness
+        statistics.reset();
+
+        if (pool != null) {
+            parallelUpdate();
+        } else {
+            for (PlayerEntityAwareness playerEntityAwareness
+                    : awarenessConnectionMap.keySet()) {
+                playerEntityAwareness.update(tpf);
+            }
+        }
+
+        logger.log(Level.FINEST, "Visibility pass: {0}", statistics);
+    }
+
+    /**
+     * Tests visibility of all awarenesses in parallel against snapshot and
+     * then reports changes in same order as sequential update would.
+     */
+    private void parallelUpdate() {
+        snapshot.clear();
+        List<Callable<VisibilityStatistics>> tasks = new ArrayList<>();
+        for (final PlayerEntityAwareness awareness
+                : awarenessConnectionMap.keySet()) {
+            awareness.capture(snapshot);
+            tasks.add(new Callable<VisibilityStatistics>() {
+                @Override
+                public VisibilityStatistics call() {
+                    VisibilityStatistics taskStatistics =
+                            new VisibilityStatistics();
+                    awareness.update(snapshot, taskStatistics);
+                    return taskStatistics;
+                }
+            });
+        }
+
+        for (Future<VisibilityStatistics> result : pool.invokeAll(tasks)) {
+            try {
+                statistics.add(result.get());
+            } catch (InterruptedException | ExecutionException ex) {
+                throw new IllegalStateException(
+                        "Parallel visibility test failed", ex);
+            }
+        }
+
+        for (PlayerEntityAwareness awareness
                 : awarenessConnectionMap.keySet()) {
-            playerEntityAwareness.update(tpf);
+            awareness.publishChanges();
         }
     }
 
+    /**
+     * Sends command to every connection that is aware of spatial.
+     */
     public void addCommand(Spatial spatial, Command command) {
         ServerSender sender =
                 app.getStateManager().getState(ServerSender.class);
 
-        for (Map.Entry<PlayerEntityAwareness, HostedConnection> entry
-                : awarenessConnectionMap.entrySet()) {
-            PlayerEntityAwareness awareness = entry.getKey();
-            if (awareness.isAwareOf(spatial)) {
-                sender.addCommandForSingle(command, entry.getValue());
+        int index = (int) spatial.getUserData(UserData.ENTITY_ID) & 0xFFFF;
+        BitSet entityObservers = index < observers.length
+                ? observers[index]
+                : null;
+        if (entityObservers == null) {
+            for (HostedConnection connection : slotConnections) {
+                if (connection != null) {
+                    sender.addCommandForSingle(command, connection);
+                }
             }
+            return;
+        }
+
+        for (int slot = entityObservers.nextSetBit(0); slot >= 0;
+                slot = entityObservers.nextSetBit(slot + 1)) {
+            sender.addCommandForSingle(command, slotConnections.get(slot));
+        }
+
+        // Player is aware of own character unless it is invisible to all,
+        // even if visibility has not been tested after it became visible
+        int owner = owners[index];
+        if (owner != -1 && !entityObservers.get(owner) && !((boolean) spatial
+                .getUserData(UserData.INVISIBLE_TO_ALL))) {
+            sender.addCommandForSingle(command, slotConnections.get(owner));
         }
     }
 
@@ -99,11 +197,19 @@ public class ServerFog extends AbstractAppState {
 
 //        PlayerEntityAwareness myAwareness = searchForAwareness(spatial);
 
+        int index = (int) spatial.getUserData(UserData.ENTITY_ID) & 0xFFFF;
+        ensureEntityCapacity(index);
+        // Id may have belonged to earlier entity
+        observers[index] = null;
+        owners[index] = -1;
+        BitSet entityObservers = getObservers(index);
+
         for (Map.Entry<PlayerEntityAwareness, HostedConnection> entry
                 : awarenessConnectionMap.entrySet()) {
             PlayerEntityAwareness awareness = entry.getKey();
-            awareness.addEntity(spatial);
-            if (awareness.testVisibility(spatial)) {
+            boolean sees = awareness.addEntity(spatial);
+            entityObservers.set(awareness.getSlot(), sees);
+            if (sees) {
                 sender.addCommandForSingle(command, entry.getValue());
             }
 
@@ -138,6 +244,12 @@ public class ServerFog extends AbstractAppState {
                 awareness.setOwnSpatial(null);
             }
         }
+
+        int index = (int) spatial.getUserData(UserData.ENTITY_ID) & 0xFFFF;
+        if (index < observers.length) {
+            observers[index] = null;
+            owners[index] = -1;
+        }
     }
 
     public void visibilityChanged(PlayerEntityAwareness awareness,
@@ -150,61 +262,88 @@ public class ServerFog extends AbstractAppState {
         ServerSender sender =
                 app.getStateManager().getState(ServerSender.class);
 
-        if (sees) {
-            int nodeBuilderId =
-                    target.getUserData(UserData.NODE_BUILDER_ID);
-            int playerId = target.getUserData(UserData.PLAYER_ID);
-            float birthTime = target.getUserData(UserData.BIRTHTIME);
-            float age = world.getWorldTime() - birthTime;
-            Object healthMaybe =
-                    target.getUserData(UserData.HEALTH_CURRENT);
-            if (healthMaybe != null) {
-                float health = (float) healthMaybe;
-                if (health <= 0f) {
-                    age = -1f;
-                }
-            }
-
-            Vector3f location;
-            Quaternion rotation;
+        setObserved(awareness, target, sees);
 
-            RigidBodyControl body = target.getControl(RigidBodyControl.class);
-            if (body != null) {
-                location = body.getPhysicsLocation();
-                rotation = body.getPhysicsRotation();
-            } else {
-                location = target.getLocalTranslation();
-                rotation = target.getLocalRotation();
-            }
-            Command command = new CmdAddEntity(entityId, nodeBuilderId,
-                    location, rotation, playerId, age);
-            sender.addCommandForSingle(command,
-                    awarenessConnectionMap.get(awareness));
-
-            CInfluenceInterface influenceInterface =
-                    target.getControl(CInfluenceInterface.class);
-            if (influenceInterface != null) {
-                informAboutBuffs(sender, awareness,
-                        influenceInterface.getBuffs());
+        HostedConnection connection = awarenessConnectionMap.get(awareness);
+        if (sees) {
+            for (Command command : createEntityCommands(target)) {
+                sender.addCommandForSingle(command, connection);
             }
         } else {
             Command command = new CmdRemoveEntity(entityId,
                     RemovalReasons.DISAPPEARED);
-            sender.addCommandForSingle(command,
-                    awarenessConnectionMap.get(awareness));
+            sender.addCommandForSingle(command, connection);
         }
     }
 
-    private <T extends AbstractBuff> void informAboutBuffs(ServerSender sender,
-            PlayerEntityAwareness awareness, List<T> buffs) {
-        for (AbstractBuff abstractBuff : buffs) {
-            CmdBuff command = abstractBuff.generateBuffCommand(true);
-            if (command != null) {
-                command.setJustCreated(false);
-                sender.addCommandForSingle(command,
-                        awarenessConnectionMap.get(awareness));
+    /**
+     * @return commands that make client aware of entity as it is now
+     */
+    private List<Command> createEntityCommands(Spatial target) {
+        List<Command> commands = new ArrayList<>();
+        int entityId = target.getUserData(UserData.ENTITY_ID);
+        int nodeBuilderId = target.getUserData(UserData.NODE_BUILDER_ID);
+        int playerId = target.getUserData(UserData.PLAYER_ID);
+        float birthTime = target.getUserData(UserData.BIRTHTIME);
+        float age = world.getWorldTime() - birthTime;
+        Object healthMaybe = target.getUserData(UserData.HEALTH_CURRENT);
+        if (healthMaybe != null) {
+            float health = (float) healthMaybe;
+            if (health <= 0f) {
+                age = -1f;
             }
         }
+
+        Vector3f location;
+        Quaternion rotation;
+
+        RigidBodyControl body = target.getControl(RigidBodyControl.class);
+        if (body != null) {
+            location = body.getPhysicsLocation();
+            rotation = body.getPhysicsRotation();
+        } else {
+            location = target.getLocalTranslation();
+            rotation = target.getLocalRotation();
+        }
+        commands.add(new CmdAddEntity(entityId, nodeBuilderId, location,
+                rotation, playerId, age));
+
+        CInfluenceInterface influenceInterface =
+                target.getControl(CInfluenceInterface.class);
+        if (influenceInterface != null) {
+            for (AbstractBuff buff : influenceInterface.getBuffs()) {
+                CmdBuff command = buff.generateBuffCommand(true);
+                if (command != null) {
+                    command.setJustCreated(false);
+                    commands.add(command);
+                }
+            }
+        }
+
+        return commands;
+    }
+
+    /**
+     * Creates commands that recreate everything each connection is currently
+     * aware of. Used for replay keyframes.
+     */
+    public Map<HostedConnection, List<Command>> createKeyframe() {
+        Map<HostedConnection, List<Command>> keyframe = new LinkedHashMap<>();
+        List<Spatial> entities = world.getEntities();
+        for (Map.Entry<PlayerEntityAwareness, HostedConnection> entry
+                : awarenessConnectionMap.entrySet()) {
+            PlayerEntityAwareness awareness = entry.getKey();
+            List<Command> commands = new ArrayList<>();
+            for (Spatial entity : entities) {
+                if (awareness.isAwareOf(entity)) {
+                    commands.addAll(createEntityCommands(entity));
+                }
+            }
+
+            keyframe.put(entry.getValue(), commands);
+        }
+
+        return keyframe;
     }
 
     public void addPlayerListToPlayers() {
@@ -212,14 +351,62 @@ public class ServerFog extends AbstractAppState {
                 : awarenessConnectionMap.keySet()) {
             for (PlayerEntityAwareness awareness2
                     : awarenessConnectionMap.keySet()) {
-                awareness.addEntity(awareness2.getOwnSpatial());
+                Spatial character = awareness2.getOwnSpatial();
+                if (character != null) {
+                    setObserved(awareness, character,
+                            awareness.addEntity(character));
+                }
+            }
+        }
+    }
+
+    private void setObserved(PlayerEntityAwareness awareness, Spatial entity,
+            boolean aware) {
+        int index = (int) entity.getUserData(UserData.ENTITY_ID) & 0xFFFF;
+        ensureEntityCapacity(index);
+        getObservers(index).set(awareness.getSlot(), aware);
+    }
+
+    /**
+     * @return observers of entity. They are created if entity had none.
+     */
+    private BitSet getObservers(int index) {
+        BitSet entityObservers = observers[index];
+        if (entityObservers == null) {
+            entityObservers = new BitSet();
+            // Awarenesses that do not track entity are aware of it
+            for (int slot = 0; slot < slotConnections.size(); slot++) {
+                if (slotConnections.get(slot) != null) {
+                    entityObservers.set(slot);
+                }
             }
+            observers[index] = entityObservers;
         }
+
+        return entityObservers;
+    }
+
+    private void ensureEntityCapacity(int index) {
+        if (index < observers.length) {
+            return;
+        }
+
+        int length = Math.max(index + 1, observers.length * 2);
+        observers = Arrays.copyOf(observers, length);
+        int oldLength = owners.length;
+        owners = Arrays.copyOf(owners, length);
+        Arrays.fill(owners, oldLength, length, -1);
+    }
+
+    private static int[] createOwners(int length) {
+        int[] array = new int[length];
+        Arrays.fill(array, -1);
+        return array;
     }
 
     public PlayerEntityAwareness createAwarenessForPlayer(int playerId) {
         PlayerEntityAwareness playerAwareness =
-                new PlayerEntityAwareness(playerId, walls, this);
+                new PlayerEntityAwareness(playerId, occluders, this);
 
         HostedConnection connection = ConnectionHelper.getSource(playerId);
         if (connection == null) {
@@ -229,6 +416,22 @@ public class ServerFog extends AbstractAppState {
             throw npe;
         }
 
+        int slot = slotConnections.indexOf(null);
+        if (slot == -1) {
+            slot = slotConnections.size();
+            slotConnections.add(connection);
+        } else {
+            slotConnections.set(slot, connection);
+        }
+        playerAwareness.setSlot(slot);
+
+        // New awareness does not track anything yet
+        for (BitSet entityObservers : observers) {
+            if (entityObservers != null) {
+                entityObservers.set(slot);
+            }
+        }
+
         awarenessConnectionMap.put(playerAwareness, connection);
         return playerAwareness;
     }
@@ -241,7 +444,11 @@ public class ServerFog extends AbstractAppState {
                 break;
             }
 
-            awareness.addEntity(otherAwareness.getOwnSpatial());
+            Spatial character = otherAwareness.getOwnSpatial();
+            if (character != null) {
+                setObserved(awareness, character,
+                        awareness.addEntity(character));
+            }
         }
     }
 
@@ -256,13 +463,29 @@ public class ServerFog extends AbstractAppState {
                 playerEntityAwareness.setOwnSpatial(character);
                 character.getControl(CEntityVariable.class)
                         .setAwareness(playerEntityAwareness);
+                ensureEntityCapacity(entityId & 0xFFFF);
+                owners[entityId & 0xFFFF] = playerEntityAwareness.getSlot();
                 break;
             }
         }
     }
 
     public void setWalls(Node walls) {
-        this.walls = walls;
+        occluders = new WallOccluders(walls);
+        logger.log(Level.INFO, "Walls have {0} occluder segments",
+                occluders.getSegmentCount());
+    }
+
+    public WallOccluders getWallOccluders() {
+        return occluders;
+    }
+
+    /**
+     * @return counters of latest visibility pass. Tests made between passes
+     * are added to them too.
+     */
+    public VisibilityStatistics getVisibilityStatistics() {
+        return statistics;
     }
 
     public void clearAwarenesses() {
@@ -276,9 +499,32 @@ public class ServerFog extends AbstractAppState {
         }
 
         awarenessConnectionMap.clear();
+        slotConnections.clear();
+        Arrays.fill(observers, null);
+        Arrays.fill(owners, -1);
     }
 
     public void removeConnection(HostedConnection connection) {
+        int slot = slotConnections.indexOf(connection);
+        if (slot != -1) {
+            slotConnections.set(slot, null);
+            for (BitSet entityObservers : observers) {
+                if (entityObservers != null) {
+                    entityObservers.clear(slot);
+                }
+            }
+            for (int i = 0; i < owners.length; i++) {
+                if (owners[i] == slot) {
+                    owners[i] = -1;
+                }
+            }
+        }
+
         awarenessConnectionMap.values().remove(connection);
     }
+
+    public Map<PlayerEntityAwareness, HostedConnection>
+            getAwarenessConnections() {
+        return Collections.unmodifiableMap(awarenessConnectionMap);
+    }
 }
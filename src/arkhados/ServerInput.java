@@ -14,11 +14,11 @@
  along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
 package arkhados;
 
-import arkhados.controls.CUserInput;
 import arkhados.messages.usercommands.CmdUcMouseTarget;
 import arkhados.messages.usercommands.CmdUcWalkDirection;
 import arkhados.net.Command;
 import arkhados.net.CommandHandler;
+import arkhados.util.EntityComponents;
 import com.jme3.app.Application;
 import com.jme3.network.HostedConnection;
 import com.jme3.util.IntMap;
@@ -87,9 +87,10 @@ public class ServerInput implements CommandHandler {
             CmdUcWalkDirection uc = (CmdUcWalkDirection) command;
             inputState.previousDown = uc.getDown();
             inputState.previousRight = uc.getRight();
+            inputState.inputSequence = uc.getSequence();
             if (inputState.currentActiveSpatial != null) {
-                inputState.currentActiveSpatial.getControl(
-                        CUserInput.class).updateDirection();
+                EntityComponents.of(inputState.currentActiveSpatial)
+                        .getUserInput().updateDirection();
             }
         } else if (command instanceof CmdUcMouseTarget) {
             CmdUcMouseTarget uc = (CmdUcMouseTarget) command;
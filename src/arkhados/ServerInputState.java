@@ -21,5 +21,7 @@ public class ServerInputState {
     public Spatial currentActiveSpatial = null;
     public int previousRight = 0;
     public int previousDown = 0;
+    // Sequence of latest walk direction that has been applied
+    public int inputSequence = 0;
     public Vector3f mouseTarget = null;
 }
@@ -15,9 +15,14 @@
 package arkhados;
 
 import arkhados.master.ServerMasterCommunicator;
+import arkhados.messages.CmdServerStatistics;
 import arkhados.messages.MessageUtils;
-import arkhados.net.DefaultReceiver;
+import com.jme3.app.DebugKeysAppState;
+import com.jme3.app.FlyCamAppState;
 import com.jme3.app.SimpleApplication;
+import com.jme3.app.StatsAppState;
+import com.jme3.app.state.AppState;
+import com.jme3.audio.AudioListenerState;
 import com.jme3.bullet.BulletAppState;
 import com.jme3.network.Network;
 import com.jme3.network.Server;
@@ -30,11 +35,17 @@ import java.util.logging.Logger;
 import arkhados.net.OneTrueMessage;
 import arkhados.net.Receiver;
 import arkhados.net.RecordingServerSender;
+import arkhados.net.WindowedReceiver;
+import arkhados.profiling.ProfilingAppStateManager;
+import arkhados.profiling.ProfilingNode;
+import arkhados.profiling.TickProfiler;
 import arkhados.replay.ReplayCmdData;
 import arkhados.replay.ReplayData;
 import arkhados.replay.ReplayHeader;
 import arkhados.spell.buffs.AbstractBuff;
 import arkhados.settings.server.Settings;
+import arkhados.settings.server.SettingsGeneral;
+import arkhados.util.EntityComponents;
 import com.jme3.network.serializing.Serializer;
 import java.util.logging.FileHandler;
 import java.util.logging.SimpleFormatter;
@@ -74,6 +85,23 @@ public class ServerMain extends SimpleApplication {
     private Receiver receiver;
     private final ServerMasterCommunicator masterCommunicator
             = new ServerMasterCommunicator();
+    private long tickNanos = 0;
+    private long maxTickNanos = 0;
+    private int ticks = 0;
+    private long statisticsStart = System.nanoTime();
+    // Read by network thread
+    private volatile CmdServerStatistics statistics
+            = new CmdServerStatistics();
+
+    public ServerMain() {
+        // Same states as in SimpleApplication but attached to manager that
+        // TickProfiler can hook into
+        super((AppState[]) null);
+        stateManager = new ProfilingAppStateManager(this);
+        stateManager.attachAll(new StatsAppState(), new FlyCamAppState(),
+                new AudioListenerState(), new DebugKeysAppState());
+        rootNode = new ProfilingNode("Root Node");
+    }
 
     @Override
     public void simpleInitApp() {
@@ -105,10 +133,11 @@ public class ServerMain extends SimpleApplication {
             System.exit(1);
         }
 
-        receiver = new DefaultReceiver();
+        receiver = new WindowedReceiver();
         server.addMessageListener(receiver, OneTrueMessage.class);
 
-        sender = new RecordingServerSender(server);
+        sender = new RecordingServerSender(server,
+                Settings.get().General().getReliableWindowBytes());
         AbstractBuff.setSender(sender);
 
         receiver.registerCommandHandler(sender);
@@ -134,6 +163,17 @@ public class ServerMain extends SimpleApplication {
         // exploding. This is because of FogOfWar
         physics.getPhysicsSpace().setAccuracy(1f
                 / Settings.get().General().getPhysicsTicksPerSecond());                
+
+        SettingsGeneral general = Settings.get().General();
+        if (general.isProfiler()) {
+            stateManager.attach(new TickProfiler(
+                    general.getProfilerDumpSeconds(),
+                    general.getProfilerControlSampleInterval()));
+        }
+        if (general.getNetDiagnosticsSeconds() > 0f) {
+            stateManager.attach(new ServerNetDiagnostics(
+                    general.getNetDiagnosticsSeconds()));
+        }
     }
 
     public void startGame() {
@@ -148,10 +188,39 @@ public class ServerMain extends SimpleApplication {
         masterCommunicator.connectToMaster();
     }
 
+    @Override
+    public void update() {
+        long start = System.nanoTime();
+        super.update();
+        long end = System.nanoTime();
+
+        long tick = end - start;
+        tickNanos += tick;
+        maxTickNanos = Math.max(maxTickNanos, tick);
+        ticks++;
+
+        if (end - statisticsStart >= 1000000000L) {
+            statistics = new CmdServerStatistics(tickNanos / 1e6f / ticks,
+                    maxTickNanos / 1e6f, ticks,
+                    EntityComponents.pollLookups() / (float) ticks);
+            tickNanos = 0;
+            maxTickNanos = 0;
+            ticks = 0;
+            statisticsStart = end;
+        }
+    }
+
     @Override
     public void simpleUpdate(float tpf) {
     }
 
+    /**
+     * @return tick times of latest full second
+     */
+    public CmdServerStatistics getStatistics() {
+        return statistics;
+    }
+
     @Override
     public void simpleRender(RenderManager rm) {
     }
@@ -159,7 +228,7 @@ public class ServerMain extends SimpleApplication {
     @Override
     public void destroy() {
         server.close();
-        sender.saveToFile();
+        sender.closeReplay();
         super.destroy();
     }
 }
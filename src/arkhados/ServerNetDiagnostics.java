@@ -0,0 +1,90 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados;
+
+import arkhados.net.ChannelStatistics;
+import arkhados.net.ReliableChannel;
+import arkhados.net.WindowedServerSender;
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.network.HostedConnection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logs round trip time, traffic, loss, resends and queue sizes of every
+ * connection periodically. Round trip times are also given to
+ * ServerClientData as latency samples.
+ */
+public class ServerNetDiagnostics extends AbstractAppState {
+
+    private static final Logger logger
+            = Logger.getLogger(ServerNetDiagnostics.class.getName());
+    private final float interval;
+    private float timer = 0f;
+    private WindowedServerSender sender;
+    private final Map<HostedConnection, ChannelStatistics> previous
+            = new HashMap<>();
+
+    /**
+     * @param interval seconds between reports
+     */
+    public ServerNetDiagnostics(float interval) {
+        this.interval = interval;
+    }
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        super.initialize(stateManager, app);
+        sender = stateManager.getState(WindowedServerSender.class);
+    }
+
+    @Override
+    public void update(float tpf) {
+        timer += tpf;
+        if (timer < interval || sender == null) {
+            return;
+        }
+
+        Map<HostedConnection, ReliableChannel> channels
+                = sender.getChannels();
+        previous.keySet().retainAll(channels.keySet());
+
+        for (Map.Entry<HostedConnection, ReliableChannel> entry
+                : channels.entrySet()) {
+            HostedConnection connection = entry.getKey();
+            ChannelStatistics statistics = entry.getValue().getStatistics();
+            ChannelStatistics before = previous.put(connection, statistics);
+            if (before == null) {
+                continue;
+            }
+
+            float rtt = statistics.getRoundTripTime();
+            if (rtt >= 0f && ServerClientData.exists(connection.getId())) {
+                ServerClientData.addLatencySample(connection.getId(), rtt);
+            }
+
+            logger.log(Level.INFO, "Connection {0} ({1}): {2}",
+                    new Object[]{connection.getId(),
+                        connection.getAddress(),
+                        statistics.describeSince(before, timer)});
+        }
+
+        timer = 0f;
+    }
+}
@@ -80,6 +80,7 @@ public class ServerNetListener implements ConnectionListener,
             sender.removeConnection(conn);
             ServerFog fog = stateManager.getState(ServerFog.class);
             fog.removeConnection(conn);
+            stateManager.getState(Sync.class).removeConnection(conn);
             ServerClientData.remove(conn.getId());
 
             if (playerId == null) {
@@ -144,6 +145,9 @@ public class ServerNetListener implements ConnectionListener,
                 sender.addCommandForSingle(new CmdTopicOnly(
                         Topic.UDP_HANDSHAKE_ACK, false), source);
                 break;
+            case Topic.SERVER_STATISTICS_REQUEST:
+                sender.addCommandForSingle(app.getStatistics(), source);
+                break;
         }
     }
 
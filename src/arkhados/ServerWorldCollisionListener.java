@@ -17,12 +17,12 @@ package arkhados;
 import arkhados.actions.ATrance;
 import arkhados.actions.EntityAction;
 import arkhados.controls.CActionQueue;
-import arkhados.controls.CCharacterPhysics;
 import arkhados.controls.CInfluenceInterface;
 import arkhados.controls.CProjectile;
 import arkhados.controls.CSkyDrop;
 import arkhados.controls.CSpellBuff;
 import arkhados.spell.spells.rockgolem.CSpiritStonePhysics;
+import arkhados.util.EntityComponents;
 import arkhados.util.RemovalReasons;
 import arkhados.util.UserData;
 import com.jme3.bullet.collision.PhysicsCollisionEvent;
@@ -55,23 +55,23 @@ public class ServerWorldCollisionListener implements PhysicsCollisionListener {
             wallB = event.getNodeB();
         }
 
-        CInfluenceInterface characterA =
-                event.getNodeA().getControl(CInfluenceInterface.class);
-        CInfluenceInterface characterB =
-                event.getNodeB().getControl(CInfluenceInterface.class);
+        EntityComponents componentsA =
+                EntityComponents.of(event.getNodeA());
+        EntityComponents componentsB =
+                EntityComponents.of(event.getNodeB());
 
-        CProjectile projectileA = event.getNodeA().getControl(CProjectile.class);
-        CProjectile projectileB = event.getNodeB().getControl(CProjectile.class);
+        CInfluenceInterface characterA = componentsA.getInfluence();
+        CInfluenceInterface characterB = componentsB.getInfluence();
 
-        CSpiritStonePhysics ssPhysicsA =
-                event.getNodeA().getControl(CSpiritStonePhysics.class);
-        CSpiritStonePhysics ssPhysicsB =
-                event.getNodeB().getControl(CSpiritStonePhysics.class);
+        CProjectile projectileA = componentsA.getProjectile();
+        CProjectile projectileB = componentsB.getProjectile();
 
+        CSpiritStonePhysics ssPhysicsA = componentsA.getSpiritStonePhysics();
+        CSpiritStonePhysics ssPhysicsB = componentsB.getSpiritStonePhysics();
 
-        CSkyDrop skyDrop = event.getNodeA().getControl(CSkyDrop.class);
+        CSkyDrop skyDrop = componentsA.getSkyDrop();
         if (skyDrop == null) {
-            skyDrop = event.getNodeB().getControl(CSkyDrop.class);
+            skyDrop = componentsB.getSkyDrop();
         }
         if (skyDrop != null) {
             skyDrop.onGroundCollision();
@@ -85,10 +85,9 @@ public class ServerWorldCollisionListener implements PhysicsCollisionListener {
             if (characterB != null) {
                 projectileCharacterCollision(projectileA, characterB);
             } else if (wallB != null) {
-                projectileWallCollision(projectileA, wallB);
+                projectileWallCollision(projectileA);
             } else if (ssPhysicsB != null) {
-                projectileWallCollision(projectileA,
-                        (Spatial) ssPhysicsB.getUserObject());
+                projectileWallCollision(projectileA);
             }
         }
         if (projectileB != null) {
@@ -99,21 +98,20 @@ public class ServerWorldCollisionListener implements PhysicsCollisionListener {
             if (characterA != null) {
                 projectileCharacterCollision(projectileB, characterA);
             } else if (wallA != null) {
-                projectileWallCollision(projectileB, wallA);
+                projectileWallCollision(projectileB);
             } else if (ssPhysicsA != null) {
-                projectileWallCollision(projectileB,
-                        (Spatial) ssPhysicsA.getUserObject());
+                projectileWallCollision(projectileB);
             }
         }
 
     }
 
-    private void projectileCharacterCollision(CProjectile projectile,
+    void projectileCharacterCollision(CProjectile projectile,
             CInfluenceInterface target) {
 
         int projectileTeamId = projectile.getSpatial().getUserData(UserData.TEAM_ID);
         int targetPlayerId = target.getSpatial().getUserData(UserData.PLAYER_ID);
-        int targetTeamId = PlayerData.getIntData(targetPlayerId, PlayerData.TEAM_ID);
+        int targetTeamId = PlayerData.getTeamId(targetPlayerId);
 
         if (targetTeamId == projectileTeamId) {
             return;
@@ -129,8 +127,9 @@ public class ServerWorldCollisionListener implements PhysicsCollisionListener {
             target.reducePurifyingFlame(damage);
             removalReason = RemovalReasons.ABSORBED;
         } else {
-            CActionQueue actionQueue =
-                    target.getSpatial().getControl(CActionQueue.class);
+            EntityComponents targetComponents =
+                    EntityComponents.of(target.getSpatial());
+            CActionQueue actionQueue = targetComponents.getActionQueue();
             EntityAction currentAction = actionQueue.getCurrent();
 
             if (currentAction instanceof ATrance) {
@@ -145,8 +144,8 @@ public class ServerWorldCollisionListener implements PhysicsCollisionListener {
                 return;
             }
 
-            CSpellBuff buffControl = projectile.getSpatial()
-                    .getControl(CSpellBuff.class);
+            CSpellBuff buffControl = EntityComponents
+                    .of(projectile.getSpatial()).getSpellBuff();
 
             final boolean canBreakCC = damage > 0f ? true : false;
 
@@ -161,8 +160,7 @@ public class ServerWorldCollisionListener implements PhysicsCollisionListener {
                     .getPhysicsLocation().setY(0)).normalizeLocal()
                     .multLocal(impulseFactor);
 
-            target.getSpatial().getControl(CCharacterPhysics.class)
-                    .applyImpulse(impulse);
+            targetComponents.getPhysics().applyImpulse(impulse);
 
             if (projectile.getSplashAction() != null) {
                 projectile.getSplashAction().excludeSpatial(target.getSpatial());
@@ -179,7 +177,10 @@ public class ServerWorldCollisionListener implements PhysicsCollisionListener {
         }
     }
 
-    private void projectileWallCollision(CProjectile projectile, Spatial wall) {
+    /**
+     * Projectile hit wall or spirit stone.
+     */
+    void projectileWallCollision(CProjectile projectile) {
         if (projectile.getSplashAction() != null) {
             projectile.getSplashAction().update(0);
         }
@@ -0,0 +1,131 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados;
+
+import arkhados.messages.sync.statedata.StateData;
+import com.jme3.util.IntMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Remembers latest snapshots that were sent to or received from one peer.
+ * Server keeps one per connection to know which snapshot each client has
+ * acknowledged and client keeps one so that it can decode deltas against
+ * those snapshots. On server remembered data is held in StateDataPool until
+ * snapshot is forgotten.
+ */
+public class SnapshotHistory {
+
+    public static final int SIZE = 32;
+    private final int[] ids = new int[SIZE];
+    private final List<IntMap<StateData>> snapshots =
+            new ArrayList<>(Collections.nCopies(SIZE,
+                    (IntMap<StateData>) null));
+    private int acknowledged = -1;
+    private final StateDataPool pool;
+    private IntMap<StateData> spare;
+
+    public SnapshotHistory() {
+        this(null);
+    }
+
+    public SnapshotHistory(StateDataPool pool) {
+        this.pool = pool;
+        Arrays.fill(ids, -1);
+    }
+
+    public IntMap<StateData> get(int snapshotId) {
+        if (snapshotId < 0) {
+            return null;
+        }
+
+        int index = snapshotId % SIZE;
+        return ids[index] == snapshotId ? snapshots.get(index) : null;
+    }
+
+    /**
+     * @return empty map for next snapshot. Map of forgotten snapshot is
+     * reused if there is one.
+     */
+    public IntMap<StateData> createMap() {
+        IntMap<StateData> map = spare != null ? spare : new IntMap<>();
+        spare = null;
+        return map;
+    }
+
+    public void put(int snapshotId, IntMap<StateData> states) {
+        int index = snapshotId % SIZE;
+        IntMap<StateData> forgotten = snapshots.get(index);
+        if (pool != null) {
+            for (IntMap.Entry<StateData> entry : states) {
+                pool.retain(entry.getValue());
+            }
+            release(forgotten);
+        }
+
+        if (forgotten != null && forgotten != states) {
+            forgotten.clear();
+            spare = forgotten;
+        }
+
+        ids[index] = snapshotId;
+        snapshots.set(index, states);
+    }
+
+    public void acknowledge(int snapshotId) {
+        if (snapshotId > acknowledged && get(snapshotId) != null) {
+            acknowledged = snapshotId;
+        }
+    }
+
+    public int getAcknowledged() {
+        return acknowledged;
+    }
+
+    /**
+     * @return latest acknowledged snapshot that is still remembered or -1
+     */
+    public int getBaselineId(int currentId) {
+        if (acknowledged == -1 || currentId - acknowledged >= SIZE) {
+            return -1;
+        }
+
+        return get(acknowledged) != null ? acknowledged : -1;
+    }
+
+    public void clear() {
+        if (pool != null) {
+            for (IntMap<StateData> states : snapshots) {
+                release(states);
+            }
+        }
+
+        Arrays.fill(ids, -1);
+        Collections.fill(snapshots, null);
+        acknowledged = -1;
+    }
+
+    private void release(IntMap<StateData> states) {
+        if (states == null) {
+            return;
+        }
+
+        for (IntMap.Entry<StateData> entry : states) {
+            pool.release(entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Spatial;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uniform grid on XZ-plane that keeps track of which entities are near each
+ * other. Entities that have CCharacterPhysics or CProjectile report their
+ * movement themselves and rest are refreshed once per frame by World.
+ *
+ * Cells can lag behind actual locations by one physics tick so queries
+ * are padded and caller must check exact distance.
+ */
+public class SpatialGrid {
+
+    public static final float CELL_SIZE = 32f;
+    private static final float QUERY_PADDING = 8f;
+    private final float bound;
+    private final int cellsPerSide;
+    private final List<List<Spatial>> cells;
+    private final Map<Spatial, Entry> entries = new HashMap<>();
+    private final List<Entry> untracked = new ArrayList<>();
+
+    /**
+     * @param bound largest absolute coordinate that is expected. Entities
+     * beyond it are stored in border cells.
+     */
+    public SpatialGrid(float bound) {
+        this.bound = bound;
+        cellsPerSide =
+                Math.max(1, (int) FastMath.ceil(2f * bound / CELL_SIZE));
+        int cellCount = cellsPerSide * cellsPerSide;
+        cells = new ArrayList<>(cellCount);
+        for (int i = 0; i < cellCount; i++) {
+            cells.add(new ArrayList<>(4));
+        }
+    }
+
+    /**
+     * @param updatedByControl true if some control calls update for spatial
+     * whenever it moves
+     */
+    public void add(Spatial spatial, boolean updatedByControl) {
+        if (entries.containsKey(spatial)) {
+            return;
+        }
+
+        Entry entry = new Entry(spatial, cellOf(spatial.getWorldTranslation()));
+        entries.put(spatial, entry);
+        cells.get(entry.cell).add(spatial);
+        if (!updatedByControl) {
+            untracked.add(entry);
+        }
+    }
+
+    public void remove(Spatial spatial) {
+        Entry entry = entries.remove(spatial);
+        if (entry == null) {
+            return;
+        }
+
+        cells.get(entry.cell).remove(spatial);
+        untracked.remove(entry);
+    }
+
+    /**
+     * Moves spatial to correct cell if it has changed. Does nothing if
+     * spatial is not in grid.
+     */
+    public void update(Spatial spatial) {
+        Entry entry = entries.get(spatial);
+        if (entry != null) {
+            move(entry);
+        }
+    }
+
+    public void updateUntracked() {
+        for (Entry entry : untracked) {
+            move(entry);
+        }
+    }
+
+    /**
+     * Adds all spatials that may be within radius of location to store.
+     * Result is not filtered by exact distance.
+     */
+    public <T extends Collection<Spatial>> T collect(Vector3f location,
+            float radius, T store) {
+        float reach = radius + QUERY_PADDING;
+        int minX = cellIndex(location.x - reach);
+        int maxX = cellIndex(location.x + reach);
+        int minZ = cellIndex(location.z - reach);
+        int maxZ = cellIndex(location.z + reach);
+
+        for (int z = minZ; z <= maxZ; z++) {
+            for (int x = minX; x <= maxX; x++) {
+                store.addAll(cells.get(z * cellsPerSide + x));
+            }
+        }
+
+        return store;
+    }
+
+    public void clear() {
+        for (List<Spatial> cell : cells) {
+            cell.clear();
+        }
+        entries.clear();
+        untracked.clear();
+    }
+
+    private void move(Entry entry) {
+        int cell = cellOf(entry.spatial.getWorldTranslation());
+        if (cell != entry.cell) {
+            cells.get(entry.cell).remove(entry.spatial);
+            cells.get(cell).add(entry.spatial);
+            entry.cell = cell;
+        }
+    }
+
+    private int cellOf(Vector3f location) {
+        return cellIndex(location.z) * cellsPerSide + cellIndex(location.x);
+    }
+
+    private int cellIndex(float coordinate) {
+        int index = (int) ((coordinate + bound) / CELL_SIZE);
+        return index < 0 ? 0 : index >= cellsPerSide
+                ? cellsPerSide - 1 : index;
+    }
+
+    private static class Entry {
+
+        final Spatial spatial;
+        int cell;
+
+        Entry(Spatial spatial, int cell) {
+            this.spatial = spatial;
+            this.cell = cell;
+        }
+    }
+}
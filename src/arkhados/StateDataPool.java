@@ -0,0 +1,77 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados;
+
+import arkhados.messages.sync.statedata.StateData;
+import com.jme3.util.IntMap;
+import java.util.ArrayDeque;
+
+/**
+ * Recycles StateData that CSync controls produce on server. Everything that
+ * holds produced data, the sync tick itself and each remembered snapshot,
+ * retains it and releases it when done. Data that nothing holds goes back to
+ * entity it was produced for and is filled again on a later tick.
+ */
+public class StateDataPool {
+
+    // Enough for data of every remembered snapshot plus current ones
+    private static final int MAX_FREE = SnapshotHistory.SIZE + 2;
+    private final IntMap<ArrayDeque<StateData>> free = new IntMap<>();
+
+    public void track(int syncId) {
+        if (!free.containsKey(syncId)) {
+            free.put(syncId, new ArrayDeque<StateData>(4));
+        }
+    }
+
+    /**
+     * Data of entities that are forgotten is left for garbage collector.
+     */
+    public void forget(int syncId) {
+        free.remove(syncId);
+    }
+
+    /**
+     * @return unused data previously produced for entity or null
+     */
+    public StateData obtain(int syncId) {
+        ArrayDeque<StateData> deque = free.get(syncId);
+        return deque != null ? deque.pollFirst() : null;
+    }
+
+    /**
+     * Gives back data from obtain that was not used.
+     */
+    public void giveBack(StateData data) {
+        ArrayDeque<StateData> deque = free.get(data.getSyncId());
+        if (deque != null && deque.size() < MAX_FREE) {
+            deque.addFirst(data);
+        }
+    }
+
+    public void retain(StateData data) {
+        data.retain();
+    }
+
+    public void release(StateData data) {
+        if (data.release()) {
+            giveBack(data);
+        }
+    }
+
+    public void clear() {
+        free.clear();
+    }
+}
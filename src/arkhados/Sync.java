@@ -18,28 +18,70 @@ import com.jme3.app.Application;
 import com.jme3.app.state.AbstractAppState;
 import com.jme3.app.state.AppStateManager;
 import com.jme3.network.HostedConnection;
+import com.jme3.network.serializing.Serializer;
 import com.jme3.scene.Spatial;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import arkhados.controls.CSync;
+import arkhados.controls.PlayerEntityAwareness;
+import arkhados.messages.sync.CmdInputAck;
+import arkhados.messages.sync.CmdSnapshot;
+import arkhados.messages.sync.CmdSnapshotAck;
+import arkhados.messages.sync.statedata.DeltaSyncData;
 import arkhados.messages.sync.statedata.StateData;
 import arkhados.net.Command;
 import arkhados.net.CommandHandler;
 import arkhados.net.Sender;
+import arkhados.net.ServerSender;
 import arkhados.settings.server.Settings;
+import arkhados.util.EntityComponents;
+import arkhados.util.UserData;
 import com.jme3.util.IntMap;
 
 public class Sync extends AbstractAppState implements CommandHandler {
 
+    // Sync id, field mask and class id of one snapshot entry
+    private static final int SNAPSHOT_ENTRY_SIZE = 5;
     private final Application app;
     private final AppStateManager stateManager;
     private Sender sender;
     private final IntMap<Object> syncObjects = new IntMap<>();
     private float syncTimer = 0.0f;
     private float defaultSyncFrequency;
-    private final Queue<StateData> stateDataQueue = new LinkedList<>();
+    private final ArrayDeque<StateData> stateDataQueue = new ArrayDeque<>();
+    // Commands from network thread wait here until next update
+    private final Object incomingLock = new Object();
+    private ArrayDeque<Command> incoming = new ArrayDeque<>();
+    private ArrayDeque<Command> draining = new ArrayDeque<>();
     private boolean listening = false; // NOTE: Only server is affected
+    private boolean deltaSync = false;
+    private int snapshotCounter = 0;
+    private final Map<HostedConnection, SnapshotHistory> sentSnapshots =
+            new HashMap<>();
+    private final SnapshotHistory receivedSnapshots = new SnapshotHistory();
+    private int byteBudget = 0;
+    private final Map<HostedConnection, SyncScheduler> schedulers =
+            new HashMap<>();
+    private final List<Integer> selected = new ArrayList<>();
+    private final ByteBuffer scratch = ByteBuffer.allocate(1024);
+    private final StateDataPool pool = new StateDataPool();
+    // Data produced on latest sync tick. Held until next one is produced
+    // so that sender has time to serialize it.
+    private final List<StateData> produced = new ArrayList<>();
+    private final IntMap<StateData> states = new IntMap<>();
+    private final IntMap<Spatial> candidates = new IntMap<>();
+    // Encoded sizes of states of this tick by sync id. Index 0 is size of
+    // whole state and rest are sizes of delta fields. Arrays are reused.
+    private final IntMap<int[]> encodedSizes = new IntMap<>();
+    private final List<int[]> sizeArrays = new ArrayList<>();
+    private int usedSizeArrays = 0;
 
     public Sync(Application app) {
         this.app = app;
@@ -53,22 +95,22 @@ public class Sync extends AbstractAppState implements CommandHandler {
         if (sender.isServer()) {
             defaultSyncFrequency = Settings.get().General()
                     .getDefaultSyncFrequency();
+            deltaSync = Settings.get().General().isDeltaSync();
+            byteBudget = Settings.get().General().getSyncByteBudget();
         }
     }
 
     @Override
     public void update(float tpf) {
         if (sender.isClient()) {
+            readIncoming();
 
-            for (Iterator<StateData> it = stateDataQueue.iterator();
-                    it.hasNext();) {
-                StateData stateData = it.next();
+            StateData stateData;
+            while ((stateData = stateDataQueue.pollFirst()) != null) {
                 Object object = syncObjects.get(stateData.getSyncId());
                 if (object != null) {
                     stateData.applyData(object);
                 }
-
-                it.remove();
             }
         } else {
             syncTimer += tpf;
@@ -79,8 +121,39 @@ public class Sync extends AbstractAppState implements CommandHandler {
         }
     }
 
+    /**
+     * Takes all commands that have arrived since last update at once.
+     */
+    private void readIncoming() {
+        ArrayDeque<Command> batch;
+        synchronized (incomingLock) {
+            batch = incoming;
+            incoming = draining;
+        }
+
+        Command command;
+        while ((command = batch.pollFirst()) != null) {
+            if (command instanceof StateData) {
+                stateDataQueue.addLast((StateData) command);
+            } else if (command instanceof CmdSnapshot) {
+                readSnapshot((CmdSnapshot) command);
+            }
+        }
+
+        draining = batch;
+    }
+
     private void sendSyncData() {
         ServerFog fog = stateManager.getState(ServerFog.class);
+        ServerSender sender = stateManager.getState(ServerSender.class);
+        states.clear();
+        encodedSizes.clear();
+        usedSizeArrays = 0;
+
+        for (StateData data : produced) {
+            pool.release(data);
+        }
+        produced.clear();
 
         for (IntMap.Entry<Object> entry : syncObjects) {
             if (!(entry.getValue() instanceof Spatial)) {
@@ -89,14 +162,248 @@ public class Sync extends AbstractAppState implements CommandHandler {
 
             Spatial spatial = (Spatial) entry.getValue();
 
-            CSync syncControl = spatial.getControl(CSync.class);
-            if (syncControl != null) {
-                StateData data = syncControl.getSyncableData(null);
-                if (data != null) {
-                    fog.addCommand(spatial, data);
+            CSync syncControl = EntityComponents.of(spatial).getSync();
+            if (syncControl == null) {
+                continue;
+            }
+
+            pool.track(entry.getKey());
+            StateData recycled = pool.obtain(entry.getKey());
+            StateData data = syncControl.getSyncableData(recycled);
+            if (recycled != null && data != recycled) {
+                pool.giveBack(recycled);
+            }
+
+            if (data != null) {
+                pool.retain(data);
+                produced.add(data);
+                states.put(entry.getKey(), data);
+            }
+        }
+
+        int snapshotId = deltaSync ? snapshotCounter++ : -1;
+        int budget = Math.round(byteBudget * defaultSyncFrequency);
+
+        for (Map.Entry<PlayerEntityAwareness, HostedConnection> entry
+                : fog.getAwarenessConnections().entrySet()) {
+            PlayerEntityAwareness awareness = entry.getKey();
+            HostedConnection connection = entry.getValue();
+
+            candidates.clear();
+            for (IntMap.Entry<StateData> state : states) {
+                Spatial spatial = (Spatial) syncObjects.get(state.getKey());
+                if (awareness.isAwareOf(state.getKey(), spatial)) {
+                    candidates.put(state.getKey(), spatial);
+                }
+            }
+
+            SnapshotHistory history = null;
+            IntMap<StateData> baseline = null;
+            if (deltaSync) {
+                history = sentSnapshots.get(connection);
+                if (history == null) {
+                    history = new SnapshotHistory(pool);
+                    sentSnapshots.put(connection, history);
+                }
+                baseline = history.get(history.getBaselineId(snapshotId));
+            }
+
+            SyncScheduler scheduler = schedulers.get(connection);
+            if (scheduler == null) {
+                scheduler = new SyncScheduler();
+                schedulers.put(connection, scheduler);
+            }
+
+            final IntMap<StateData> baselineStates = baseline;
+            selected.clear();
+            scheduler.select(awareness.getOwnSpatial(), candidates,
+                    syncId -> estimateSize(syncId, states.get(syncId),
+                            baselineStates),
+                    budget, selected);
+
+            sendInputAck(sender, awareness, connection);
+
+            if (deltaSync) {
+                sendSnapshot(sender, connection, snapshotId, history);
+            } else {
+                for (int syncId : selected) {
+                    sender.addCommandForSingle(states.get(syncId),
+                            connection);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells player which walk direction state of their character is based
+     * on. Sent only when that state is selected so that client reconciles
+     * its prediction against fresh states only.
+     */
+    private void sendInputAck(ServerSender sender,
+            PlayerEntityAwareness awareness, HostedConnection connection) {
+        Spatial own = awareness.getOwnSpatial();
+        ServerInputState input = ServerInput.get()
+                .getInputState(awareness.getPlayerId());
+        if (own == null || input == null) {
+            return;
+        }
+
+        Integer entityId = own.getUserData(UserData.ENTITY_ID);
+        if (selected.contains(entityId)) {
+            sender.addCommandForSingle(
+                    new CmdInputAck(entityId, input.inputSequence),
+                    connection);
+        }
+    }
+
+    /**
+     * Sends selected delta states in snapshot and rest of states directly.
+     * Entities that were not selected keep value that was sent previously so
+     * that they are neither removed nor moved backwards on client.
+     */
+    private void sendSnapshot(ServerSender sender,
+            HostedConnection connection, int snapshotId,
+            SnapshotHistory history) {
+        IntMap<StateData> visible = history.createMap();
+        for (int syncId : selected) {
+            StateData data = states.get(syncId);
+            if (data instanceof DeltaSyncData) {
+                visible.put(syncId, data);
+            } else {
+                sender.addCommandForSingle(data, connection);
+            }
+        }
+
+        IntMap<StateData> previous = history.get(snapshotId - 1);
+        if (previous != null) {
+            for (IntMap.Entry<Spatial> candidate : candidates) {
+                int syncId = candidate.getKey();
+                StateData old = previous.get(syncId);
+                if (old != null && !visible.containsKey(syncId)
+                        && states.get(syncId) instanceof DeltaSyncData) {
+                    visible.put(syncId, old);
                 }
             }
         }
+
+        sender.addCommandForSingle(
+                createSnapshot(snapshotId, history, visible), connection);
+    }
+
+    /**
+     * @return approximately how many bytes sending data costs
+     */
+    private int estimateSize(int syncId, StateData data,
+            IntMap<StateData> baseline) {
+        int[] sizes = encodedSizes(syncId, data);
+        if (deltaSync && data instanceof DeltaSyncData) {
+            StateData previous = baseline != null
+                    ? baseline.get(syncId)
+                    : null;
+            int mask = DeltaSyncData.changedFields(data, previous);
+            if (mask == 0) {
+                return 0;
+            }
+
+            int size = SNAPSHOT_ENTRY_SIZE;
+            int fieldCount = ((DeltaSyncData) data).getFieldCount();
+            for (int field = 0; field < fieldCount; field++) {
+                if ((mask & (1 << field)) != 0) {
+                    size += sizes[field + 1];
+                }
+            }
+            return size;
+        }
+
+        return sizes[0];
+    }
+
+    /**
+     * Serializes data only once per tick no matter how many connections
+     * are aware of it.
+     */
+    private int[] encodedSizes(int syncId, StateData data) {
+        int[] sizes = encodedSizes.get(syncId);
+        if (sizes != null) {
+            return sizes;
+        }
+
+        if (usedSizeArrays == sizeArrays.size()) {
+            sizeArrays.add(new int[DeltaSyncData.MAX_FIELDS + 1]);
+        }
+        sizes = sizeArrays.get(usedSizeArrays++);
+        encodedSizes.put(syncId, sizes);
+
+        try {
+            if (deltaSync && data instanceof DeltaSyncData) {
+                DeltaSyncData delta = (DeltaSyncData) data;
+                for (int field = 0; field < delta.getFieldCount(); field++) {
+                    scratch.clear();
+                    delta.writeField(field, scratch);
+                    sizes[field + 1] = scratch.position();
+                }
+            } else {
+                scratch.clear();
+                Serializer.writeClassAndObject(scratch, data);
+                sizes[0] = scratch.position();
+            }
+        } catch (IOException | BufferOverflowException ex) {
+            Arrays.fill(sizes, scratch.capacity());
+        }
+
+        return sizes;
+    }
+
+    private CmdSnapshot createSnapshot(int snapshotId,
+            SnapshotHistory history, IntMap<StateData> states) {
+        int baselineId = history.getBaselineId(snapshotId);
+        IntMap<StateData> baseline = history.get(baselineId);
+
+        CmdSnapshot snapshot = new CmdSnapshot(snapshotId, baselineId);
+        for (IntMap.Entry<StateData> entry : states) {
+            StateData data = entry.getValue();
+            StateData previous = baseline != null
+                    ? baseline.get(entry.getKey())
+                    : null;
+            int mask = DeltaSyncData.changedFields(data, previous);
+            if (mask != 0) {
+                snapshot.addDelta(entry.getKey(), mask, data);
+            }
+        }
+
+        if (baseline != null) {
+            for (IntMap.Entry<StateData> entry : baseline) {
+                if (!states.containsKey(entry.getKey())) {
+                    snapshot.addRemoval(entry.getKey());
+                }
+            }
+        }
+
+        history.put(snapshotId, states);
+        return snapshot;
+    }
+
+    /**
+     * @return latest snapshot sent to connection as full state without
+     * baseline or null if there is none. Used for replay keyframes.
+     */
+    public CmdSnapshot createKeyframeSnapshot(HostedConnection connection) {
+        SnapshotHistory history = sentSnapshots.get(connection);
+        int snapshotId = snapshotCounter - 1;
+        IntMap<StateData> states = history != null
+                ? history.get(snapshotId)
+                : null;
+        if (states == null) {
+            return null;
+        }
+
+        CmdSnapshot snapshot = new CmdSnapshot(snapshotId, -1);
+        for (IntMap.Entry<StateData> entry : states) {
+            snapshot.addDelta(entry.getKey(), DeltaSyncData.changedFields(
+                    entry.getValue(), null), entry.getValue());
+        }
+
+        return snapshot;
     }
 
     private void doMessage(int syncId, Command command) {
@@ -117,11 +424,36 @@ public class Sync extends AbstractAppState implements CommandHandler {
 
     public void removeEntity(int id) {
         syncObjects.remove(id);
+        pool.forget(id);
     }
 
     public void clear() {
         syncObjects.clear();
         stateDataQueue.clear();
+        synchronized (incomingLock) {
+            incoming.clear();
+        }
+        for (SnapshotHistory history : sentSnapshots.values()) {
+            history.clear();
+        }
+        sentSnapshots.clear();
+        receivedSnapshots.clear();
+        schedulers.clear();
+        for (StateData data : produced) {
+            pool.release(data);
+        }
+        produced.clear();
+        pool.clear();
+        states.clear();
+        candidates.clear();
+    }
+
+    public void removeConnection(HostedConnection connection) {
+        SnapshotHistory history = sentSnapshots.remove(connection);
+        if (history != null) {
+            history.clear();
+        }
+        schedulers.remove(connection);
     }
 
     public void stopListening() {
@@ -150,23 +482,89 @@ public class Sync extends AbstractAppState implements CommandHandler {
         }
     }
 
-    private void clientHandleCommands(final Command command) {
-        app.enqueue(() -> {
-            if (command instanceof StateData) {
-                stateDataQueue.add((StateData) command);
+    private void clientHandleCommands(Command command) {
+        synchronized (incomingLock) {
+            incoming.addLast(command);
+        }
+    }
+
+    private void readSnapshot(CmdSnapshot snapshot) {
+        int snapshotId = snapshot.getSnapshotId();
+        if (snapshotId <= receivedSnapshots.getAcknowledged()) {
+            return;
+        }
+
+        IntMap<StateData> states = receivedSnapshots.createMap();
+        if (snapshot.getBaselineId() != -1) {
+            IntMap<StateData> baseline =
+                    receivedSnapshots.get(snapshot.getBaselineId());
+            if (baseline == null) {
+                // Server will fall back to full state if we don't ack
+                return;
             }
-            return null;
-        });
+
+            for (IntMap.Entry<StateData> entry : baseline) {
+                states.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        for (CmdSnapshot.Entry entry : snapshot.getEntries()) {
+            if (entry.isRemoval()) {
+                states.remove(entry.syncId);
+                continue;
+            }
+
+            DeltaSyncData delta = (DeltaSyncData) entry.data;
+            int allFields = (1 << delta.getFieldCount()) - 1;
+            if (entry.mask != allFields) {
+                StateData previous = states.get(entry.syncId);
+                if (previous == null
+                        || previous.getClass() != entry.data.getClass()) {
+                    return;
+                }
+
+                for (int field = 0; field < delta.getFieldCount(); field++) {
+                    if ((entry.mask & (1 << field)) == 0) {
+                        delta.copyField(field, previous);
+                    }
+                }
+            }
+
+            states.put(entry.syncId, entry.data);
+        }
+
+        receivedSnapshots.put(snapshotId, states);
+        receivedSnapshots.acknowledge(snapshotId);
+        sender.addCommand(new CmdSnapshotAck(snapshotId));
+
+        // Entries carried over from baseline have been applied already
+        for (CmdSnapshot.Entry entry : snapshot.getEntries()) {
+            if (!entry.isRemoval()) {
+                stateDataQueue.addLast(states.get(entry.syncId));
+            }
+        }
     }
 
-    private void serverHandleCommands(HostedConnection source,
+    private void serverHandleCommands(final HostedConnection source,
             final Command command) {
+        if (command instanceof CmdSnapshotAck) {
+            final int snapshotId = ((CmdSnapshotAck) command).getSnapshotId();
+            app.enqueue(() -> {
+                SnapshotHistory history = sentSnapshots.get(source);
+                if (history != null) {
+                    history.acknowledge(snapshotId);
+                }
+                return null;
+            });
+            return;
+        }
+
         if (!listening) {
             return;
         }
 
         int player = ServerClientData.getPlayerId(source.getId());
-        final int syncId = PlayerData.getIntData(player, PlayerData.ENTITY_ID);
+        final int syncId = PlayerData.getEntityId(player);
         if (syncId != -1) {
             app.enqueue(() -> {
                 doMessage(syncId, command);
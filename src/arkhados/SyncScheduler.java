@@ -0,0 +1,204 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados;
+
+import arkhados.controls.CCharacterPhysics;
+import arkhados.util.EntityComponents;
+import arkhados.util.UserData;
+import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Spatial;
+import com.jme3.util.IntMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Decides which entities are synchronized to one connection on each sync
+ * tick. Priority of entity depends on its type, its distance to player's
+ * own spatial and its speed. Priority decides how often entity is due:
+ * every tick, every second tick or every fourth tick. Due entities are sent
+ * in order of priority they have accumulated while waiting until byte budget
+ * of tick runs out. Player's own character is always sent and so is first
+ * due entity even if it alone is bigger than budget.
+ */
+public class SyncScheduler {
+
+    // Tick intervals of tiers and lowest priority that belongs to each
+    private static final int[] TIER_INTERVALS = {1, 2, 4};
+    private static final float[] TIER_PRIORITIES = {0.5f, 0.2f, 0f};
+    private static final float ENEMY_CHARACTER = 1f;
+    private static final float ALLIED_CHARACTER = 0.7f;
+    private static final float PROJECTILE = 0.8f;
+    private static final float OTHER = 0.3f;
+    // Distance where priority is halved
+    private static final float DISTANCE_SCALE = 40f;
+    // Speed where priority is doubled
+    private static final float SPEED_SCALE = 30f;
+    private final IntMap<Entry> entries = new IntMap<>();
+    private final List<Entry> due = new ArrayList<>();
+    private final Vector3f velocity = new Vector3f();
+    private int tick = 0;
+
+    /**
+     * @param observer player's own spatial or null
+     * @param candidates entities that connection is aware of and that have
+     * data to send, by sync id
+     * @param sizeOf estimated bytes that sending given sync id costs
+     * @param budget bytes that can be sent this tick. Zero or less means that
+     * there is no limit.
+     * @param store sync ids that should be sent this tick are added here
+     */
+    public void select(Spatial observer, IntMap<Spatial> candidates,
+            IntUnaryOperator sizeOf, int budget, List<Integer> store) {
+        ++tick;
+        due.clear();
+
+        for (IntMap.Entry<Spatial> candidate : candidates) {
+            int syncId = candidate.getKey();
+            Spatial spatial = candidate.getValue();
+            Entry entry = entries.get(syncId);
+            if (entry == null) {
+                entry = new Entry(syncId);
+                entries.put(syncId, entry);
+            }
+
+            entry.seen = tick;
+            if (spatial == observer) {
+                // Own character does not wait and does not count
+                store.add(syncId);
+                entry.reset(tick);
+                continue;
+            }
+
+            float priority = priority(observer, spatial);
+            entry.accumulated += priority;
+            if (tick - entry.sent >= interval(priority)) {
+                due.add(entry);
+            }
+        }
+
+        due.sort((a, b) -> Float.compare(b.accumulated, a.accumulated));
+
+        int left = budget;
+        for (Entry entry : due) {
+            int size = sizeOf.applyAsInt(entry.syncId);
+            if (budget > 0 && size > left && left < budget) {
+                // Smaller ones may still fit
+                continue;
+            }
+
+            left -= size;
+            store.add(entry.syncId);
+            entry.reset(tick);
+        }
+
+        forgetRemoved();
+    }
+
+    private float priority(Spatial observer, Spatial entity) {
+        EntityComponents components = EntityComponents.of(entity);
+        float weight;
+        if (components.getPhysics() != null) {
+            weight = isAlly(observer, entity)
+                    ? ALLIED_CHARACTER
+                    : ENEMY_CHARACTER;
+        } else if (components.getProjectile() != null) {
+            weight = PROJECTILE;
+        } else {
+            weight = OTHER;
+        }
+
+        if (observer != null) {
+            float distance = observer.getWorldTranslation()
+                    .distance(entity.getWorldTranslation());
+            weight /= 1f + distance / DISTANCE_SCALE;
+        }
+
+        return weight
+                * (1f + Math.min(1f, speedOf(components) / SPEED_SCALE));
+    }
+
+    private float speedOf(EntityComponents components) {
+        CCharacterPhysics physics = components.getPhysics();
+        if (physics != null) {
+            return physics.getVelocity().length();
+        }
+
+        RigidBodyControl body = components.getRigidBody();
+        if (body != null && !body.isKinematic()) {
+            body.getLinearVelocity(velocity);
+            return velocity.length();
+        }
+
+        return 0f;
+    }
+
+    private static boolean isAlly(Spatial observer, Spatial entity) {
+        if (observer == null) {
+            return false;
+        }
+
+        Object observerTeam = observer.getUserData(UserData.TEAM_ID);
+        return observerTeam != null
+                && observerTeam.equals(entity.getUserData(UserData.TEAM_ID));
+    }
+
+    private static int interval(float priority) {
+        for (int i = 0; i < TIER_PRIORITIES.length; i++) {
+            if (priority >= TIER_PRIORITIES[i]) {
+                return TIER_INTERVALS[i];
+            }
+        }
+
+        return TIER_INTERVALS[TIER_INTERVALS.length - 1];
+    }
+
+    private void forgetRemoved() {
+        List<Integer> removed = null;
+        for (IntMap.Entry<Entry> entry : entries) {
+            if (entry.getValue().seen != tick) {
+                if (removed == null) {
+                    removed = new ArrayList<>();
+                }
+                removed.add(entry.getKey());
+            }
+        }
+
+        if (removed != null) {
+            for (int syncId : removed) {
+                entries.remove(syncId);
+            }
+        }
+    }
+
+    private static class Entry {
+
+        final int syncId;
+        float accumulated = 0f;
+        // Entities are due immediately when they become candidates
+        int sent = Integer.MIN_VALUE / 2;
+        int seen;
+
+        Entry(int syncId) {
+            this.syncId = syncId;
+        }
+
+        void reset(int tick) {
+            accumulated = 0f;
+            sent = tick;
+        }
+    }
+}
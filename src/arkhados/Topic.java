@@ -25,4 +25,5 @@ public class Topic {
     public static final int CLIENT_WORLD_CREATED = 6;
     public static final int FIRST_BLOOD_HAPPENED = 7;
     public static final int TEAM_STATISTICS_REQUEST = 8;
+    public static final int SERVER_STATISTICS_REQUEST = 9;
 }
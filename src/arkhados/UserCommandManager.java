@@ -15,6 +15,7 @@
 package arkhados;
 
 import arkhados.controls.CCharacterHud;
+import arkhados.controls.CCharacterPrediction;
 import arkhados.controls.CFreeCamera;
 import arkhados.controls.CInfluenceInterface;
 import arkhados.controls.CSpellCast;
@@ -22,6 +23,7 @@ import arkhados.effects.Death;
 import arkhados.messages.usercommands.CmdUcCastSpell;
 import arkhados.messages.usercommands.CmdUcMouseTarget;
 import arkhados.messages.usercommands.CmdUcWalkDirection;
+import arkhados.net.ReliableSender;
 import arkhados.net.Sender;
 import arkhados.ui.hud.ClientHud;
 import arkhados.util.InputMapping;
@@ -54,6 +56,7 @@ public class UserCommandManager extends AbstractAppState {
     private Node character;
     private int down = 0;
     private int right = 0;
+    private int inputSequence = 0;
     private boolean inputListenersActive = false;
     private float mouseTargetUpdateTimer = 0f;
     private Plane floorPlane = new Plane(Vector3f.UNIT_Y, 0f);
@@ -210,8 +213,16 @@ public class UserCommandManager extends AbstractAppState {
     }
 
     private void sendWalkDirection() {
-        app.getStateManager().getState(Sender.class)
-                .addCommand(new CmdUcWalkDirection(down, right));
+        app.getStateManager().getState(Sender.class).addCommand(
+                new CmdUcWalkDirection(down, right, ++inputSequence));
+
+        if (character != null) {
+            CCharacterPrediction prediction
+                    = character.getControl(CCharacterPrediction.class);
+            if (prediction != null) {
+                prediction.inputChanged(inputSequence, down, right);
+            }
+        }
     }
 
     @Override
@@ -305,6 +316,7 @@ public class UserCommandManager extends AbstractAppState {
         hud.hideStatistics();
 
         character.getControl(CCharacterHud.class).setHud(hud);
+        addPrediction();
         followPlayer();
         characterChanged = false;
         return true;
@@ -315,7 +327,20 @@ public class UserCommandManager extends AbstractAppState {
             return;
         }
 
-        app.getStateManager().getState(Sender.class)
-                .addCommand(new CmdUcWalkDirection(down, right));
+        sendWalkDirection();
+    }
+
+    private void addPrediction() {
+        if (!ClientSettings.isPredictionEnabled()
+                || character.getControl(CCharacterPrediction.class) != null
+                || !(app.getStateManager().getState(Sender.class)
+                instanceof ReliableSender)) {
+            return;
+        }
+
+        CCharacterPrediction prediction
+                = new CCharacterPrediction(app.getStateManager());
+        character.addControl(prediction);
+        prediction.inputChanged(inputSequence, down, right);
     }
 }
\ No newline at end of file
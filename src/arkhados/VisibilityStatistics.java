@@ -0,0 +1,99 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados;
+
+/**
+ * Counts how visibility tests of ServerFog were answered during one
+ * visibility pass.
+ */
+public class VisibilityStatistics {
+
+    private int tests;
+    private int culledByDistance;
+    private int reused;
+    private int occluderTests;
+    private int segmentTests;
+
+    public void countTest() {
+        ++tests;
+    }
+
+    public void countCulledByDistance() {
+        ++culledByDistance;
+    }
+
+    public void countReused() {
+        ++reused;
+    }
+
+    public void countOccluderTest() {
+        ++occluderTests;
+    }
+
+    public void addSegmentTests(int amount) {
+        segmentTests += amount;
+    }
+
+    /**
+     * @return all visibility tests, including those that were answered
+     * without line of sight test
+     */
+    public int getTests() {
+        return tests;
+    }
+
+    public int getCulledByDistance() {
+        return culledByDistance;
+    }
+
+    /**
+     * @return tests where neither end had moved enough since previous line
+     * of sight test so its result was used
+     */
+    public int getReused() {
+        return reused;
+    }
+
+    public int getOccluderTests() {
+        return occluderTests;
+    }
+
+    public int getSegmentTests() {
+        return segmentTests;
+    }
+
+    public void add(VisibilityStatistics other) {
+        tests += other.tests;
+        culledByDistance += other.culledByDistance;
+        reused += other.reused;
+        occluderTests += other.occluderTests;
+        segmentTests += other.segmentTests;
+    }
+
+    public void reset() {
+        tests = 0;
+        culledByDistance = 0;
+        reused = 0;
+        occluderTests = 0;
+        segmentTests = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("tests: %d, culled by distance: %d, reused: %d,"
+                + " occluder tests: %d, segment tests: %d", tests,
+                culledByDistance, reused, occluderTests, segmentTests);
+    }
+}
@@ -0,0 +1,494 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Triangle;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.SceneGraphVisitorAdapter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 2D representation of walls for line of sight tests. Triangle edges of
+ * wall meshes are projected to XZ-plane and each segment remembers height
+ * range of triangles it came from. Segments are stored in uniform grid and
+ * line of sight test only visits cells that line passes through.
+ *
+ * WallOccluders is immutable after construction. All mutable state of tests
+ * is in Query, so different threads can test at same time if each uses its
+ * own Query.
+ */
+public class WallOccluders {
+
+    private static final float CELL_SIZE = 16f;
+    private static final float EPSILON = 0.001f;
+    private static final float KEY_PRECISION = 100f;
+    private float[] ax;
+    private float[] az;
+    private float[] bx;
+    private float[] bz;
+    private float[] yMin;
+    private float[] yMax;
+    private int[][] cells;
+    private int cellsX;
+    private int cellsZ;
+    private float minX;
+    private float minZ;
+
+    public WallOccluders(Node walls) {
+        final List<float[]> segments = new ArrayList<>();
+        final Map<String, float[]> unique = new HashMap<>();
+
+        walls.depthFirstTraversal(new SceneGraphVisitorAdapter() {
+            @Override
+            public void visit(Geometry geom) {
+                addTriangles(geom, segments, unique);
+            }
+        });
+
+        buildGrid(segments);
+    }
+
+    public Query createQuery() {
+        return new Query(getSegmentCount());
+    }
+
+    /**
+     * @return true if line from start to end is blocked by a wall
+     */
+    public boolean isBlocked(Vector3f start, Vector3f end, Query query) {
+        if (cells == null) {
+            return false;
+        }
+
+        float dx = end.x - start.x;
+        float dz = end.z - start.z;
+
+        // Clip line to grid area
+        float[] range = query.clipRange;
+        range[0] = 0f;
+        range[1] = 1f;
+        float maxX = minX + cellsX * CELL_SIZE;
+        float maxZ = minZ + cellsZ * CELL_SIZE;
+        if (!clip(-dx, start.x - minX, range)
+                || !clip(dx, maxX - start.x, range)
+                || !clip(-dz, start.z - minZ, range)
+                || !clip(dz, maxZ - start.z, range)) {
+            return false;
+        }
+
+        ++query.stamp;
+
+        int x = cellX(start.x + dx * range[0]);
+        int z = cellZ(start.z + dz * range[0]);
+        int endX = cellX(start.x + dx * range[1]);
+        int endZ = cellZ(start.z + dz * range[1]);
+
+        int stepX = dx > 0f ? 1 : -1;
+        int stepZ = dz > 0f ? 1 : -1;
+        float deltaX = dx != 0f ? CELL_SIZE / FastMath.abs(dx)
+                : Float.POSITIVE_INFINITY;
+        float deltaZ = dz != 0f ? CELL_SIZE / FastMath.abs(dz)
+                : Float.POSITIVE_INFINITY;
+        float nextX = dx != 0f
+                ? (minX + (x + (dx > 0f ? 1 : 0)) * CELL_SIZE - start.x) / dx
+                : Float.POSITIVE_INFINITY;
+        float nextZ = dz != 0f
+                ? (minZ + (z + (dz > 0f ? 1 : 0)) * CELL_SIZE - start.z) / dz
+                : Float.POSITIVE_INFINITY;
+
+        int maxSteps = cellsX + cellsZ + 2;
+        for (int step = 0; step < maxSteps; step++) {
+            if (testCell(x, z, start, end, query)) {
+                return true;
+            }
+
+            if (x == endX && z == endZ) {
+                break;
+            }
+
+            if (nextX < nextZ) {
+                x += stepX;
+                nextX += deltaX;
+            } else {
+                z += stepZ;
+                nextZ += deltaZ;
+            }
+
+            if (x < 0 || x >= cellsX || z < 0 || z >= cellsZ) {
+                break;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return fraction of line from start to end where circle of radius
+     * first touches a wall or -1 if it does not touch any. Height of line at
+     * that point must be within height range of wall extended by radius.
+     */
+    public float sweep(Vector3f start, Vector3f end, float radius,
+            Query query) {
+        if (cells == null) {
+            return -1f;
+        }
+
+        int x0 = cellX(Math.min(start.x, end.x) - radius);
+        int x1 = cellX(Math.max(start.x, end.x) + radius);
+        int z0 = cellZ(Math.min(start.z, end.z) - radius);
+        int z1 = cellZ(Math.max(start.z, end.z) + radius);
+
+        ++query.stamp;
+        float first = -1f;
+
+        for (int z = z0; z <= z1; z++) {
+            for (int x = x0; x <= x1; x++) {
+                int[] cell = cells[z * cellsX + x];
+                if (cell == null) {
+                    continue;
+                }
+
+                for (int segment : cell) {
+                    if (query.lastTested[segment] == query.stamp) {
+                        continue;
+                    }
+                    query.lastTested[segment] = query.stamp;
+                    ++query.segmentTests;
+
+                    float t = sweepSegment(segment, start, end, radius);
+                    if (t < 0f || (first >= 0f && t >= first)) {
+                        continue;
+                    }
+
+                    float y = start.y + t * (end.y - start.y);
+                    if (y >= yMin[segment] - radius
+                            && y <= yMax[segment] + radius) {
+                        first = t;
+                    }
+                }
+            }
+        }
+
+        return first;
+    }
+
+    /**
+     * @return fraction of line where circle first touches segment or -1
+     */
+    private float sweepSegment(int segment, Vector3f start, Vector3f end,
+            float radius) {
+        float ex = bx[segment] - ax[segment];
+        float ez = bz[segment] - az[segment];
+        float length = FastMath.sqrt(ex * ex + ez * ez);
+        float ux = ex / length;
+        float uz = ez / length;
+
+        // Start and movement in coordinates of segment
+        float px = start.x - ax[segment];
+        float pz = start.z - az[segment];
+        float along = px * ux + pz * uz;
+        float across = pz * ux - px * uz;
+        float dx = end.x - start.x;
+        float dz = end.z - start.z;
+        float dAlong = dx * ux + dz * uz;
+        float dAcross = dz * ux - dx * uz;
+
+        float offset = along - FastMath.clamp(along, 0f, length);
+        if (offset * offset + across * across <= radius * radius) {
+            return 0f;
+        }
+
+        float first = -1f;
+        if (dAcross != 0f) {
+            float side = across > 0f ? radius : -radius;
+            float t = (side - across) / dAcross;
+            float hit = along + t * dAlong;
+            if (t >= 0f && t <= 1f && hit >= 0f && hit <= length) {
+                first = t;
+            }
+        }
+
+        first = earlier(first, circleHit(px, pz, dx, dz, radius));
+        first = earlier(first, circleHit(start.x - bx[segment],
+                start.z - bz[segment], dx, dz, radius));
+        return first;
+    }
+
+    /**
+     * @param px start relative to center of circle
+     * @return fraction of movement where point enters circle, 0 if it starts
+     * inside or -1 if it does not enter during movement
+     */
+    public static float circleHit(float px, float pz, float dx, float dz,
+            float radius) {
+        float c = px * px + pz * pz - radius * radius;
+        if (c <= 0f) {
+            return 0f;
+        }
+
+        float a = dx * dx + dz * dz;
+        float b = px * dx + pz * dz;
+        float discriminant = b * b - a * c;
+        if (a == 0f || b >= 0f || discriminant < 0f) {
+            return -1f;
+        }
+
+        float t = (-b - FastMath.sqrt(discriminant)) / a;
+        return t <= 1f ? t : -1f;
+    }
+
+    private static float earlier(float a, float b) {
+        if (a < 0f) {
+            return b;
+        }
+        return b < 0f ? a : Math.min(a, b);
+    }
+
+    public int getSegmentCount() {
+        return ax == null ? 0 : ax.length;
+    }
+
+    private boolean testCell(int x, int z, Vector3f start, Vector3f end,
+            Query query) {
+        int[] cell = cells[z * cellsX + x];
+        if (cell == null) {
+            return false;
+        }
+
+        float rx = end.x - start.x;
+        float rz = end.z - start.z;
+
+        for (int segment : cell) {
+            if (query.lastTested[segment] == query.stamp) {
+                continue;
+            }
+            query.lastTested[segment] = query.stamp;
+            ++query.segmentTests;
+
+            float sx = bx[segment] - ax[segment];
+            float sz = bz[segment] - az[segment];
+            float denominator = rx * sz - rz * sx;
+            if (FastMath.abs(denominator) < EPSILON) {
+                continue;
+            }
+
+            float qx = ax[segment] - start.x;
+            float qz = az[segment] - start.z;
+            float t = (qx * sz - qz * sx) / denominator;
+            float u = (qx * rz - qz * rx) / denominator;
+            if (t < 0f || t > 1f || u < 0f || u > 1f) {
+                continue;
+            }
+
+            float y = start.y + t * (end.y - start.y);
+            if (y >= yMin[segment] - EPSILON && y <= yMax[segment] + EPSILON) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean clip(float p, float q, float[] range) {
+        if (p == 0f) {
+            return q >= 0f;
+        }
+
+        float r = q / p;
+        if (p < 0f) {
+            if (r > range[1]) {
+                return false;
+            }
+            range[0] = Math.max(range[0], r);
+        } else {
+            if (r < range[0]) {
+                return false;
+            }
+            range[1] = Math.min(range[1], r);
+        }
+
+        return true;
+    }
+
+    private static void addTriangles(Geometry geom, List<float[]> segments,
+            Map<String, float[]> unique) {
+        Mesh mesh = geom.getMesh();
+        Matrix4f transform = geom.getWorldMatrix();
+        Triangle triangle = new Triangle();
+        Vector3f[] corners = {new Vector3f(), new Vector3f(), new Vector3f()};
+
+        for (int i = 0; i < mesh.getTriangleCount(); i++) {
+            mesh.getTriangle(i, triangle);
+            transform.mult(triangle.get1(), corners[0]);
+            transform.mult(triangle.get2(), corners[1]);
+            transform.mult(triangle.get3(), corners[2]);
+
+            float low = Math.min(corners[0].y,
+                    Math.min(corners[1].y, corners[2].y));
+            float high = Math.max(corners[0].y,
+                    Math.max(corners[1].y, corners[2].y));
+
+            for (int j = 0; j < 3; j++) {
+                addSegment(corners[j], corners[(j + 1) % 3], low, high,
+                        segments, unique);
+            }
+        }
+    }
+
+    private static void addSegment(Vector3f a, Vector3f b, float low,
+            float high, List<float[]> segments, Map<String, float[]> unique) {
+        if (FastMath.abs(a.x - b.x) < EPSILON
+                && FastMath.abs(a.z - b.z) < EPSILON) {
+            return;
+        }
+
+        String keyA = key(a);
+        String keyB = key(b);
+        String key = keyA.compareTo(keyB) < 0
+                ? keyA + ";" + keyB
+                : keyB + ";" + keyA;
+
+        float[] existing = unique.get(key);
+        if (existing != null) {
+            existing[4] = Math.min(existing[4], low);
+            existing[5] = Math.max(existing[5], high);
+            return;
+        }
+
+        float[] segment = {a.x, a.z, b.x, b.z, low, high};
+        unique.put(key, segment);
+        segments.add(segment);
+    }
+
+    private static String key(Vector3f v) {
+        return Math.round(v.x * KEY_PRECISION) + ","
+                + Math.round(v.z * KEY_PRECISION);
+    }
+
+    private void buildGrid(List<float[]> segments) {
+        if (segments.isEmpty()) {
+            return;
+        }
+
+        int count = segments.size();
+        ax = new float[count];
+        az = new float[count];
+        bx = new float[count];
+        bz = new float[count];
+        yMin = new float[count];
+        yMax = new float[count];
+
+        minX = Float.POSITIVE_INFINITY;
+        minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxZ = Float.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < count; i++) {
+            float[] segment = segments.get(i);
+            ax[i] = segment[0];
+            az[i] = segment[1];
+            bx[i] = segment[2];
+            bz[i] = segment[3];
+            yMin[i] = segment[4];
+            yMax[i] = segment[5];
+            minX = Math.min(minX, Math.min(ax[i], bx[i]));
+            minZ = Math.min(minZ, Math.min(az[i], bz[i]));
+            maxX = Math.max(maxX, Math.max(ax[i], bx[i]));
+            maxZ = Math.max(maxZ, Math.max(az[i], bz[i]));
+        }
+
+        // Margin so that no segment lies exactly on outer border
+        minX -= CELL_SIZE / 2f;
+        minZ -= CELL_SIZE / 2f;
+        cellsX = (int) FastMath.ceil((maxX - minX) / CELL_SIZE) + 1;
+        cellsZ = (int) FastMath.ceil((maxZ - minZ) / CELL_SIZE) + 1;
+
+        int cellCount = cellsX * cellsZ;
+        List<List<Integer>> lists = new ArrayList<>(cellCount);
+        for (int i = 0; i < cellCount; i++) {
+            lists.add(null);
+        }
+        for (int i = 0; i < count; i++) {
+            int x0 = cellX(Math.min(ax[i], bx[i]) - EPSILON);
+            int x1 = cellX(Math.max(ax[i], bx[i]) + EPSILON);
+            int z0 = cellZ(Math.min(az[i], bz[i]) - EPSILON);
+            int z1 = cellZ(Math.max(az[i], bz[i]) + EPSILON);
+            for (int z = z0; z <= z1; z++) {
+                for (int x = x0; x <= x1; x++) {
+                    int index = z * cellsX + x;
+                    if (lists.get(index) == null) {
+                        lists.set(index, new ArrayList<Integer>());
+                    }
+                    lists.get(index).add(i);
+                }
+            }
+        }
+
+        cells = new int[cellCount][];
+        for (int i = 0; i < cellCount; i++) {
+            List<Integer> list = lists.get(i);
+            if (list == null) {
+                continue;
+            }
+            cells[i] = new int[list.size()];
+            for (int j = 0; j < cells[i].length; j++) {
+                cells[i][j] = list.get(j);
+            }
+        }
+    }
+
+    private int cellX(float x) {
+        int cell = (int) ((x - minX) / CELL_SIZE);
+        return cell < 0 ? 0 : cell >= cellsX ? cellsX - 1 : cell;
+    }
+
+    private int cellZ(float z) {
+        int cell = (int) ((z - minZ) / CELL_SIZE);
+        return cell < 0 ? 0 : cell >= cellsZ ? cellsZ - 1 : cell;
+    }
+
+    /**
+     * Working memory of line of sight and sweep tests. Not thread safe.
+     */
+    public static class Query {
+
+        private final int[] lastTested;
+        private final float[] clipRange = new float[2];
+        private int stamp = 0;
+        private int segmentTests = 0;
+
+        private Query(int segmentCount) {
+            lastTested = new int[segmentCount];
+        }
+
+        /**
+         * @return how many segment intersection tests have been done since
+         * last call
+         */
+        public int pollSegmentTests() {
+            int tests = segmentTests;
+            segmentTests = 0;
+            return tests;
+        }
+    }
+}
@@ -34,20 +34,26 @@ import com.jme3.math.Vector3f;
 import com.jme3.renderer.Camera;
 import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import arkhados.controls.CCharacterPhysics;
 import arkhados.controls.CEntityEvent;
 import arkhados.controls.CEntityVariable;
+import arkhados.controls.CInfluenceInterface;
+import arkhados.controls.CProjectile;
 import arkhados.controls.CSyncInterpolation;
 import arkhados.controls.CTimedExistence;
 import arkhados.controls.CUserInput;
 import arkhados.effects.BuffEffect;
 import arkhados.messages.sync.CmdAddEntity;
 import arkhados.messages.sync.CmdRemoveEntity;
+import arkhados.messages.sync.statedata.FieldEncoding;
 import arkhados.net.Sender;
 import arkhados.spell.Spell;
 import arkhados.spell.buffs.info.BuffInfo;
 import arkhados.util.BuildParameters;
+import arkhados.util.EntityComponents;
 import arkhados.util.EntityFactory;
 import arkhados.util.PhysicsWorkaround;
 import arkhados.util.RemovalReasons;
@@ -76,6 +82,8 @@ public class World extends AbstractAppState {
     private Node fakeWorldRoot;
     private AbstractArena arena = new PillarArena();
     private final IntMap<Spatial> entities = new IntMap<>();
+    private final EntityAttributes attributes = new EntityAttributes();
+    private SpatialGrid spatialGrid;
     private Sync sync;
     private short idCounter = 0;
     private boolean isClient = false;
@@ -95,12 +103,17 @@ public class World extends AbstractAppState {
     private Camera cam;
     private EntityFactory entityFactory;
     private ServerWorldCollisionListener serverCollisionListener = null;
+    private final CollisionDispatcher collisionDispatcher
+            = new CollisionDispatcher();
+    private ProjectileSweeper projectileSweeper;
     private ClientMain clientMain;
     private float worldTime = 0f;
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
         CTimedExistence.setWorld(this);
+        CCharacterPhysics.setWorld(this);
+        CProjectile.setWorld(this);
         Selector.setWorld(this);
         super.initialize(stateManager, app);
         this.app = (SimpleApplication) app;
@@ -115,9 +128,13 @@ public class World extends AbstractAppState {
 
         Sender sender = stateManager.getState(Sender.class);
 
+        space.addCollisionListener(collisionDispatcher);
+
         if (sender.isServer()) {
             serverCollisionListener = new ServerWorldCollisionListener(this);
-            space.addCollisionListener(serverCollisionListener);
+            collisionDispatcher.addListener(serverCollisionListener);
+            projectileSweeper =
+                    new ProjectileSweeper(this, serverCollisionListener);
             entityFactory = new EntityFactory();
         } else if (isClient()) {
             clientMain = (ClientMain) app;
@@ -141,6 +158,10 @@ public class World extends AbstractAppState {
         Spell.initSpells(entityFactory, this);
         BuffInfo.initBuffs();
         BuffEffect.setAssetManager(assetManager);
+
+        if (effectHandler != null) {
+            effectHandler.prewarm();
+        }
     }
 
     public void loadLevel() {
@@ -169,6 +190,8 @@ public class World extends AbstractAppState {
         worldRoot.setName("world-root");
 
         arena.readWorld(this, assetManager);
+        FieldEncoding.setPositionExtent(arena.getPositionBound());
+        spatialGrid = new SpatialGrid(arena.getPositionBound());
     }
 
     public void attachLevel() {
@@ -185,8 +208,9 @@ public class World extends AbstractAppState {
         cam.lookAt(Vector3f.ZERO, Vector3f.UNIT_Y);
 
         if (isServer()) {
-            app.getStateManager().getState(ServerFog.class)
-                    .setWalls((Node) worldRoot.getChild("Walls"));
+            ServerFog fog = app.getStateManager().getState(ServerFog.class);
+            fog.setWalls((Node) worldRoot.getChild("Walls"));
+            projectileSweeper.setWalls(fog.getWallOccluders());
         } else {
             ClientFog fog = app.getStateManager().getState(ClientFog.class);
             app.getViewPort().addProcessor(fog);
@@ -234,7 +258,7 @@ public class World extends AbstractAppState {
         entity.setUserData(UserData.ENTITY_ID, id);
         entity.setUserData(UserData.INVISIBLE_TO_ALL, false);
         entity.setUserData(UserData.INVISIBLE_TO_ENEMY, false);
-        int teamId = PlayerData.getIntData(playerId, PlayerData.TEAM_ID);
+        int teamId = PlayerData.getTeamId(playerId);
         entity.setUserData(UserData.TEAM_ID, teamId);
         if (isServer()) {
             entity.setUserData(UserData.BIRTHTIME, worldTime);
@@ -243,16 +267,25 @@ public class World extends AbstractAppState {
         }
 
         entities.put(id, entity);
+        attributes.register(id, entity);
+        EntityComponents components = EntityComponents.of(entity);
+        CInfluenceInterface cInfluence = components.getInfluence();
+        if (cInfluence != null) {
+            cInfluence.setAttributes(attributes, id);
+        }
         sync.addObject(id, entity);
 
-        PhysicsWorkaround.addAll(space, entity);
+        // Server moves projectiles itself, see ProjectileSweeper
+        if (isClient() || components.getProjectile() == null) {
+            PhysicsWorkaround.addAll(space, entity);
+        }
 
         worldRoot.attachChild(entity);
+        spatialGrid.add(entity, isUpdatedByControl(entity));
         CEntityVariable cVariable = new CEntityVariable(this, sender);
         entity.addControl(cVariable);
 
-        boolean isCharacter =
-                entity.getControl(CCharacterPhysics.class) != null;
+        boolean isCharacter = components.getPhysics() != null;
 
         if (isCharacter) {
             logger.log(Level.INFO, "Adding entity {0} for player {1}",
@@ -272,6 +305,9 @@ public class World extends AbstractAppState {
             entity.addControl(cUserInput);
         }
 
+        // Pick up controls that were added above
+        EntityComponents.attach(entity);
+
         boolean followMe = entity.getUserDataKeys()
                 .contains(UserData.FOLLOW_ME);
 
@@ -311,9 +347,10 @@ public class World extends AbstractAppState {
         Spatial spatial = getEntity(id);
         spatial.setUserData(UserData.INVISIBLE_TO_ALL, true);
         spatial.removeFromParent();
+        spatialGrid.remove(spatial);
         sync.removeEntity(id);
 
-        CCharacterPhysics physics = spatial.getControl(CCharacterPhysics.class);
+        CCharacterPhysics physics = EntityComponents.of(spatial).getPhysics();
         if (physics != null) {
             physics.setEnabled(false);
         }
@@ -328,7 +365,7 @@ public class World extends AbstractAppState {
         worldRoot.attachChild(spatial);
         sync.addObject(id, spatial);
 
-        CCharacterPhysics physics = spatial.getControl(CCharacterPhysics.class);
+        CCharacterPhysics physics = EntityComponents.of(spatial).getPhysics();
         if (physics != null) {
             physics.setEnabled(true);
         }
@@ -340,18 +377,27 @@ public class World extends AbstractAppState {
         }
 
         setEntityTranslation(spatial, location, rotation);
+        spatialGrid.add(spatial, isUpdatedByControl(spatial));
+    }
+
+    private static boolean isUpdatedByControl(Spatial entity) {
+        EntityComponents components = EntityComponents.of(entity);
+        return components.getPhysics() != null
+                || components.getProjectile() != null;
     }
 
     private void setEntityTranslation(Spatial entity, Vector3f location,
             Quaternion rotation) {
-        RigidBodyControl rigid = entity.getControl(RigidBodyControl.class);
+        EntityComponents components = EntityComponents.of(entity);
+        RigidBodyControl rigid = components.getRigidBody();
+        CCharacterPhysics physics = components.getPhysics();
         if (rigid != null && !rigid.isKinematic()) {
             rigid.setPhysicsLocation(location);
             rigid.setPhysicsRotation(rotation.toRotationMatrix());
-        } else if (entity.getControl(CCharacterPhysics.class) != null) {
-            entity.getControl(CCharacterPhysics.class).warp(location);
+        } else if (physics != null) {
+            physics.warp(location);
             entity.setLocalTranslation(location);
-            entity.getControl(CCharacterPhysics.class).setViewDirection(
+            physics.setViewDirection(
                     rotation.mult(Vector3f.UNIT_Z).setY(0).normalizeLocal());
         } else {
             entity.setLocalTranslation(location);
@@ -367,6 +413,8 @@ public class World extends AbstractAppState {
             return;
         }
 
+        unregisterAttributes(id, spatial);
+
         ServerFog serverFog = app.getStateManager().getState(ServerFog.class);
 
         sync.removeEntity(id);
@@ -406,6 +454,7 @@ public class World extends AbstractAppState {
         }
 
         spatial.removeFromParent();
+        spatialGrid.remove(spatial);
         LightControl cLight = spatial.getControl(LightControl.class);
         if (cLight != null) {
             Light light = cLight.getLight();
@@ -415,12 +464,53 @@ public class World extends AbstractAppState {
         }
 
         PhysicsWorkaround.removeAll(space, spatial);
+
+        if (entityFactory.recycle(spatial)) {
+            // Added again when entity is reused
+            spatial.removeControl(CEntityVariable.class);
+        }
+    }
+
+    /**
+     * Removes every entity without removal effects. Replay uses this before
+     * jumping to another time.
+     */
+    public void removeAllEntities() {
+        List<Integer> ids = new ArrayList<>(entities.size());
+        for (IntMap.Entry<Spatial> entry : entities) {
+            ids.add(entry.getKey());
+        }
+
+        for (int id : ids) {
+            removeEntity(id, -1);
+        }
+    }
+
+    /**
+     * Id may be given to new entity so removed entity must not use
+     * attributes anymore.
+     */
+    private void unregisterAttributes(int id, Spatial spatial) {
+        attributes.unregister(id);
+        CInfluenceInterface cInfluence =
+                spatial.getControl(CInfluenceInterface.class);
+        if (cInfluence != null) {
+            cInfluence.setAttributes(null, -1);
+        }
+    }
+
+    public EntityAttributes getAttributes() {
+        return attributes;
     }
 
     @Override
     public void update(float tpf) {
         super.update(tpf);
         worldTime += tpf;
+        entityFactory.update();
+        if (spatialGrid != null) {
+            spatialGrid.updateUntracked();
+        }
     }
 
     public boolean isServer() {
@@ -440,8 +530,15 @@ public class World extends AbstractAppState {
             space.removeAll(worldRoot);
             rootNode.detachChild(worldRoot);
         }
+        for (IntMap.Entry<Spatial> entry : entities) {
+            unregisterAttributes(entry.getKey(), entry.getValue());
+        }
         entities.clear();
+        collisionDispatcher.clearSubscriptions();
         sync.clear();
+        if (spatialGrid != null) {
+            spatialGrid.clear();
+        }
 
         idCounter = 0;
 
@@ -456,6 +553,7 @@ public class World extends AbstractAppState {
     @Override
     public void cleanup() {
         super.cleanup();
+        space.removeCollisionListener(collisionDispatcher);
         if (worldRoot != null) {
             rootNode.detachChild(worldRoot);
         }
@@ -469,6 +567,21 @@ public class World extends AbstractAppState {
         return entities.get(id);
     }
 
+    /**
+     * @return copy of current entities
+     */
+    public List<Spatial> getEntities() {
+        List<Spatial> list = new ArrayList<>(entities.size());
+        for (IntMap.Entry<Spatial> entry : entities) {
+            list.add(entry.getValue());
+        }
+        return list;
+    }
+
+    public SpatialGrid getSpatialGrid() {
+        return spatialGrid;
+    }
+
     public boolean validateLocation(Vector3f location) {
         return arena.validateLocation(location);
     }
@@ -477,6 +590,17 @@ public class World extends AbstractAppState {
         return clientMain;
     }
 
+    /**
+     * @return null on client
+     */
+    public ProjectileSweeper getProjectileSweeper() {
+        return projectileSweeper;
+    }
+
+    public CollisionDispatcher getCollisionDispatcher() {
+        return collisionDispatcher;
+    }
+
     public PhysicsSpace getSpace() {
         return space;
     }
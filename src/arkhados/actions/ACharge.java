@@ -15,8 +15,10 @@
 package arkhados.actions;
 
 import arkhados.CharacterInteraction;
+import arkhados.CollisionDispatcher;
 import arkhados.CollisionGroups;
 import arkhados.Globals;
+import arkhados.World;
 import arkhados.controls.CActionQueue;
 import arkhados.controls.CCharacterMovement;
 import arkhados.controls.CCharacterPhysics;
@@ -75,7 +77,7 @@ public class ACharge extends EntityAction
         ghost.setUserObject(spatial);
 
         physics.getPhysicsSpace().add(ghost);
-        physics.getPhysicsSpace().addCollisionListener(this);
+        getCollisionDispatcher().subscribe(ghost, this);
     }
 
     @Override
@@ -114,6 +116,11 @@ public class ACharge extends EntityAction
         return true;
     }
 
+    private CollisionDispatcher getCollisionDispatcher() {
+        return Globals.app.getStateManager().getState(World.class)
+                .getCollisionDispatcher();
+    }
+
     private void collided(Spatial target) {
         int myTeam = spatial.getUserData(UserData.TEAM_ID);
         int targetTeam = target.getUserData(UserData.TEAM_ID);
@@ -146,8 +153,7 @@ public class ACharge extends EntityAction
         super.end();
 
         Globals.app.enqueue(() -> {
-            ghost.getPhysicsSpace()
-                    .removeCollisionListener(ACharge.this);
+            getCollisionDispatcher().unsubscribe(ghost, ACharge.this);
             ghost.getPhysicsSpace().remove(ghost);
             ghostNode.removeFromParent();
             ghostNode.removeControl(ghost);
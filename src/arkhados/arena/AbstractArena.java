@@ -16,6 +16,8 @@ package arkhados.arena;
 
 import arkhados.World;
 import com.jme3.asset.AssetManager;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.FastMath;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Node;
 
@@ -23,11 +25,21 @@ public abstract class AbstractArena {
     private Node terrain;
     private World world;
     private AssetManager assetManager;
+    private float positionBound;
 
     public void readWorld(World world, AssetManager assetManager) {
         this.world = world;
         this.assetManager = assetManager;
         this.terrain = (Node)this.world.getWorldRoot().getChild("terrain");
+        // Computed before subclasses attach anything client-only to terrain
+        // so that server and client get same value
+        BoundingBox bounds = (BoundingBox) terrain.getWorldBound();
+        Vector3f center = bounds.getCenter();
+        Vector3f extent = bounds.getExtent(new Vector3f());
+        float reach = FastMath.abs(center.x) + extent.x;
+        reach = Math.max(reach, FastMath.abs(center.y) + extent.y);
+        reach = Math.max(reach, FastMath.abs(center.z) + extent.z);
+        positionBound = reach * 2f;
     }
 
     public abstract boolean validateLocation(Vector3f location);
@@ -41,6 +53,15 @@ public abstract class AbstractArena {
     }
 
     public abstract Vector3f getSpawnPoint(int teamId);
+
+    /**
+     * @return largest absolute coordinate that entities are expected to
+     * have. It has some margin because characters can be knocked outside
+     * the terrain.
+     */
+    public float getPositionBound() {
+        return positionBound;
+    }
     
     protected AssetManager getAssetManager() {
         return assetManager;
@@ -0,0 +1,331 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.bot;
+
+import arkhados.Topic;
+import arkhados.messages.CmdClientLogin;
+import arkhados.messages.CmdClientSettings;
+import arkhados.messages.CmdPlayerKill;
+import arkhados.messages.CmdSelectHero;
+import arkhados.messages.CmdSelectTeam;
+import arkhados.messages.CmdServerLogin;
+import arkhados.messages.CmdServerStatistics;
+import arkhados.messages.CmdSetPlayersCharacter;
+import arkhados.messages.CmdTeamAcceptance;
+import arkhados.messages.CmdTeamOptions;
+import arkhados.messages.CmdTopicOnly;
+import arkhados.messages.usercommands.CmdUcCastSpell;
+import arkhados.messages.usercommands.CmdUcMouseTarget;
+import arkhados.messages.usercommands.CmdUcWalkDirection;
+import arkhados.net.Command;
+import arkhados.net.CommandHandler;
+import arkhados.net.OneTrueMessage;
+import arkhados.net.WindowedClientSender;
+import arkhados.net.WindowedReceiver;
+import com.jme3.app.LegacyApplication;
+import com.jme3.math.Vector3f;
+import com.jme3.network.Client;
+import com.jme3.network.ClientStateListener;
+import com.jme3.network.Message;
+import com.jme3.network.MessageListener;
+import com.jme3.network.Network;
+import com.jme3.network.serializing.Serializer;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless client that logs in, picks heroes and lets its behavior play.
+ * Has its own sender and receiver so that many bots can run in one JVM.
+ * Nothing runs on its own thread: messages wait in application's queue until
+ * tick is called.
+ */
+public class BotClient extends LegacyApplication
+        implements CommandHandler, ClientStateListener {
+
+    private static final String[] HEROES = {"EmberMage", "EliteSoldier",
+        "Venator", "RockGolem", "Shadowmancer"};
+    private static final float HANDSHAKE_INTERVAL = 1f;
+    private static final float STATISTICS_INTERVAL = 1f;
+    // Request is sent again if response takes longer than this
+    private static final long STATISTICS_TIMEOUT = 5000000000L;
+    private final String name;
+    private final BotBehavior behavior;
+    private final Random random;
+    private final WindowedClientSender sender = new WindowedClientSender();
+    private final WindowedReceiver receiver = new WindowedReceiver();
+    private Client client;
+    private float handshakeTimer = -1f;
+    private boolean loggedIn = false;
+    private int playerId = -1;
+    private int characterId = -1;
+    private int inputSequence = 0;
+    private float statisticsTimer = 0f;
+    private long statisticsRequested = -1;
+    private CmdServerStatistics serverStatistics;
+    private long roundTripNanos = 0;
+    private long maxRoundTripNanos = 0;
+    private int roundTrips = 0;
+    // Written by network thread
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final ByteBuffer measureBuffer = ByteBuffer.allocate(65536);
+    private volatile boolean disconnected = false;
+
+    public BotClient(String name, BotBehavior behavior, long seed) {
+        this.name = name;
+        this.behavior = behavior;
+        this.random = new Random(seed);
+
+        receiver.registerCommandHandler(sender);
+        receiver.registerCommandHandler(this);
+        stateManager.attach(sender);
+        stateManager.attach(receiver);
+    }
+
+    public void connect(String address, int port) throws IOException {
+        client = Network.connectToServer(address, port, port);
+        client.addClientStateListener(this);
+        client.addMessageListener(new MessageListener<Client>() {
+            @Override
+            public void messageReceived(Client source, Message message) {
+                receivedBytes.addAndGet(measure(message));
+                enqueue(() -> {
+                    receiver.messageReceived(source, message);
+                    return null;
+                });
+            }
+        }, OneTrueMessage.class);
+        sender.setClient(client);
+        // Initializes sender and receiver before any message is handled
+        stateManager.update(0f);
+        client.start();
+    }
+
+    /**
+     * Handles everything received since previous tick, lets behavior play
+     * and sends commands. Must not be called from more than one thread.
+     */
+    public void tick(float tpf) {
+        runQueuedTasks();
+
+        if (handshakeTimer >= 0f) {
+            handshakeTimer -= tpf;
+            if (handshakeTimer < 0f) {
+                requestHandshake();
+            }
+        }
+
+        if (characterId != -1) {
+            behavior.update(this, tpf);
+        }
+
+        statisticsTimer -= tpf;
+        if (loggedIn && statisticsTimer <= 0f && (statisticsRequested == -1
+                || System.nanoTime() - statisticsRequested
+                > STATISTICS_TIMEOUT)) {
+            sender.addCommand(
+                    new CmdTopicOnly(Topic.SERVER_STATISTICS_REQUEST));
+            statisticsRequested = System.nanoTime();
+            statisticsTimer = STATISTICS_INTERVAL;
+        }
+
+        stateManager.update(tpf);
+    }
+
+    public void walk(int down, int right) {
+        sender.addCommand(new CmdUcWalkDirection(down, right,
+                ++inputSequence));
+    }
+
+    public void aim(Vector3f location) {
+        sender.addCommand(new CmdUcMouseTarget(location.clone()));
+    }
+
+    public void cast(int input, boolean modifier, Vector3f location) {
+        sender.addCommand(
+                new CmdUcCastSpell(input, modifier, location.clone()));
+    }
+
+    @Override
+    public void readGuaranteed(Object source, Command command) {
+        if (command instanceof CmdTopicOnly) {
+            handleTopic((CmdTopicOnly) command);
+        } else if (command instanceof CmdServerLogin) {
+            handleLogin((CmdServerLogin) command);
+        } else if (command instanceof CmdTeamOptions) {
+            CmdTeamOptions options = (CmdTeamOptions) command;
+            String team = options.teamOptions
+                    .get(random.nextInt(options.teamOptions.size()));
+            sender.addCommand(new CmdSelectTeam(team));
+        } else if (command instanceof CmdTeamAcceptance) {
+            CmdTeamAcceptance acceptance = (CmdTeamAcceptance) command;
+            if (acceptance.getPlayerId() == playerId) {
+                selectHero();
+            }
+        } else if (command instanceof CmdSetPlayersCharacter) {
+            CmdSetPlayersCharacter set = (CmdSetPlayersCharacter) command;
+            if (set.getPlayerId() == playerId) {
+                characterId = set.getEntityId();
+            }
+        } else if (command instanceof CmdPlayerKill) {
+            if (((CmdPlayerKill) command).getDiedPlayerId() == playerId) {
+                characterId = -1;
+                selectHero();
+            }
+        } else if (command instanceof CmdServerStatistics) {
+            handleStatistics((CmdServerStatistics) command);
+        }
+    }
+
+    @Override
+    public void readUnreliable(Object source, Command command) {
+        if (command instanceof CmdTopicOnly) {
+            handleTopic((CmdTopicOnly) command);
+        }
+    }
+
+    private void handleTopic(CmdTopicOnly command) {
+        switch (command.getTopicId()) {
+            case Topic.CONNECTION_ESTABLISHED:
+                requestHandshake();
+                break;
+            case Topic.UDP_HANDSHAKE_ACK:
+                if (handshakeTimer >= 0f) {
+                    handshakeTimer = -1f;
+                    sender.addCommand(new CmdClientLogin(name));
+                }
+                break;
+        }
+    }
+
+    private void requestHandshake() {
+        sender.addCommand(
+                new CmdTopicOnly(Topic.UDP_HANDSHAKE_REQUEST, false));
+        handshakeTimer = HANDSHAKE_INTERVAL;
+    }
+
+    private void handleLogin(CmdServerLogin command) {
+        if (!command.isAccepted()) {
+            return;
+        }
+
+        loggedIn = true;
+        playerId = command.getPlayerId();
+        sender.addCommand(new CmdClientSettings(false));
+        sender.addCommand(new CmdTopicOnly(Topic.CLIENT_WORLD_CREATED));
+
+        // In team deathmatch hero is selected after team is accepted
+        if (!"TeamDeathmatch".equals(command.getGameMode())) {
+            selectHero();
+        }
+    }
+
+    private void selectHero() {
+        sender.addCommand(
+                new CmdSelectHero(HEROES[random.nextInt(HEROES.length)]));
+    }
+
+    private void handleStatistics(CmdServerStatistics command) {
+        serverStatistics = command;
+        if (statisticsRequested == -1) {
+            return;
+        }
+
+        long roundTrip = System.nanoTime() - statisticsRequested;
+        roundTripNanos += roundTrip;
+        maxRoundTripNanos = Math.max(maxRoundTripNanos, roundTrip);
+        roundTrips++;
+        statisticsRequested = -1;
+    }
+
+    /**
+     * @return approximate size of message's payload. Headers added by
+     * network layer are not counted.
+     */
+    private int measure(Message message) {
+        measureBuffer.clear();
+        try {
+            Serializer.writeClassAndObject(measureBuffer, message);
+            return measureBuffer.position();
+        } catch (IOException | BufferOverflowException ex) {
+            return measureBuffer.capacity();
+        }
+    }
+
+    @Override
+    public void clientConnected(Client c) {
+    }
+
+    @Override
+    public void clientDisconnected(Client c, DisconnectInfo info) {
+        disconnected = true;
+    }
+
+    public void close() {
+        if (client != null && client.isConnected()) {
+            client.close();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isInGame() {
+        return characterId != -1;
+    }
+
+    public boolean isLoggedIn() {
+        return loggedIn;
+    }
+
+    public boolean isDisconnected() {
+        return disconnected;
+    }
+
+    /**
+     * @return bytes received since previous call
+     */
+    public long takeReceivedBytes() {
+        return receivedBytes.getAndSet(0);
+    }
+
+    /**
+     * @return latest server statistics or null if none has arrived yet
+     */
+    public CmdServerStatistics getServerStatistics() {
+        return serverStatistics;
+    }
+
+    public int getRoundTrips() {
+        return roundTrips;
+    }
+
+    public long getRoundTripNanos() {
+        return roundTripNanos;
+    }
+
+    public long getMaxRoundTripNanos() {
+        return maxRoundTripNanos;
+    }
+
+    public void resetRoundTrips() {
+        roundTripNanos = 0;
+        maxRoundTripNanos = 0;
+        roundTrips = 0;
+    }
+}
@@ -0,0 +1,146 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.bot;
+
+import arkhados.messages.CmdServerStatistics;
+import arkhados.messages.MessageUtils;
+import arkhados.settings.server.Settings;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Puts load on server by running many bots in one JVM and reports server
+ * tick time, bytes received per client per second and command round trip
+ * time.
+ *
+ * Usage: BotMain [address] [port] [bots] [seconds] [script]
+ *
+ * Bots play randomly unless script for ScriptedBehavior is given.
+ */
+public class BotMain {
+
+    private static final long TICK_NANOS = 1000000000L / 60;
+    private static final float REPORT_INTERVAL = 5f;
+    // Half width of area where random bots aim
+    private static final float AIM_EXTENT = 60f;
+
+    public static void main(String[] args) throws IOException,
+            InterruptedException {
+        String address = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1
+                ? Integer.parseInt(args[1])
+                : Settings.get().General().getPort();
+        int count = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        float duration = args.length > 3 ? Float.parseFloat(args[3]) : 60f;
+        List<ScriptedBehavior.Step> script = args.length > 4
+                ? ScriptedBehavior.load(Paths.get(args[4]))
+                : null;
+
+        MessageUtils.registerDataClasses();
+        MessageUtils.registerMessages();
+
+        List<BotClient> bots = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            BotBehavior behavior = script != null
+                    ? new ScriptedBehavior(script)
+                    : new RandomBehavior(i, AIM_EXTENT);
+            BotClient bot = new BotClient("Bot" + i, behavior, i);
+            bot.connect(address, port);
+            bots.add(bot);
+        }
+
+        long start = System.nanoTime();
+        long previous = start;
+        long lastReport = start;
+        long next = start;
+        while (previous - start < (long) (duration * 1e9)) {
+            long now = System.nanoTime();
+            float tpf = (now - previous) / 1e9f;
+            previous = now;
+
+            for (BotClient bot : bots) {
+                bot.tick(tpf);
+            }
+
+            if (now - lastReport >= (long) (REPORT_INTERVAL * 1e9)) {
+                report(bots, (now - start) / 1e9f, (now - lastReport) / 1e9f);
+                lastReport = now;
+            }
+
+            next += TICK_NANOS;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+            } else {
+                next = System.nanoTime();
+            }
+        }
+
+        for (BotClient bot : bots) {
+            bot.close();
+        }
+    }
+
+    private static void report(List<BotClient> bots, float time,
+            float interval) {
+        int inGame = 0;
+        int disconnected = 0;
+        long bytes = 0;
+        long roundTripNanos = 0;
+        long maxRoundTripNanos = 0;
+        int roundTrips = 0;
+        CmdServerStatistics server = null;
+
+        for (BotClient bot : bots) {
+            if (bot.isInGame()) {
+                inGame++;
+            }
+            if (bot.isDisconnected()) {
+                disconnected++;
+            }
+            bytes += bot.takeReceivedBytes();
+            roundTripNanos += bot.getRoundTripNanos();
+            maxRoundTripNanos = Math.max(maxRoundTripNanos,
+                    bot.getMaxRoundTripNanos());
+            roundTrips += bot.getRoundTrips();
+            bot.resetRoundTrips();
+            if (server == null) {
+                server = bot.getServerStatistics();
+            }
+        }
+
+        StringBuilder line = new StringBuilder();
+        line.append(String.format("[%6.1f s] %d/%d bots in game, %d lost",
+                time, inGame, bots.size(), disconnected));
+        if (server != null) {
+            line.append(String.format(
+                    " | tick avg %.2f ms max %.2f ms at %d/s"
+                    + ", %.1f lookups/tick",
+                    server.getAverageTickMs(), server.getMaxTickMs(),
+                    server.getTicks(), server.getControlLookupsPerTick()));
+        }
+        line.append(String.format(" | %.0f B/s per client",
+                bytes / (float) bots.size() / interval));
+        if (roundTrips > 0) {
+            line.append(String.format(" | rtt avg %.1f ms max %.1f ms",
+                    roundTripNanos / 1e6f / roundTrips,
+                    maxRoundTripNanos / 1e6f));
+        }
+
+        System.out.println(line);
+    }
+}
@@ -0,0 +1,74 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.bot;
+
+import arkhados.util.InputMapping;
+import com.jme3.math.Vector3f;
+import java.util.Random;
+
+/**
+ * Walks to random directions, moves mouse target around and casts random
+ * spells at it.
+ */
+public class RandomBehavior implements BotBehavior {
+
+    private static final String[] SPELLS = {InputMapping.M1, InputMapping.M2,
+        InputMapping.Q, InputMapping.E, InputMapping.R, InputMapping.SPACE};
+    // Same as how often real client sends its mouse target
+    private static final float AIM_INTERVAL = 0.075f;
+    private final Random random;
+    private final float extent;
+    private final Vector3f target = new Vector3f();
+    private float walkTimer = 0f;
+    private float aimTimer = 0f;
+    private float castTimer = 0f;
+
+    /**
+     * @param extent mouse targets are picked from square with half width
+     * extent around origin
+     */
+    public RandomBehavior(long seed, float extent) {
+        this.random = new Random(seed);
+        this.extent = extent;
+    }
+
+    @Override
+    public void update(BotClient bot, float tpf) {
+        walkTimer -= tpf;
+        if (walkTimer <= 0f) {
+            bot.walk(random.nextInt(3) - 1, random.nextInt(3) - 1);
+            target.set(randomCoordinate(), 0f, randomCoordinate());
+            walkTimer = 0.5f + random.nextFloat() * 1.5f;
+        }
+
+        aimTimer -= tpf;
+        if (aimTimer <= 0f) {
+            bot.aim(target);
+            aimTimer = AIM_INTERVAL;
+        }
+
+        castTimer -= tpf;
+        if (castTimer <= 0f) {
+            String spell = SPELLS[random.nextInt(SPELLS.length)];
+            bot.cast(InputMapping.getId(spell), random.nextInt(4) == 0,
+                    target);
+            castTimer = 0.3f + random.nextFloat() * 1.2f;
+        }
+    }
+
+    private float randomCoordinate() {
+        return (random.nextFloat() * 2f - 1f) * extent;
+    }
+}
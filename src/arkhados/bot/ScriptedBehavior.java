@@ -0,0 +1,139 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.bot;
+
+import arkhados.util.InputMapping;
+import com.jme3.math.Vector3f;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Plays script from file and starts again after its last step. Each line
+ * has time in seconds followed by one of
+ *
+ * walk &lt;down&gt; &lt;right&gt;
+ * aim &lt;x&gt; &lt;z&gt;
+ * cast &lt;input&gt; [modifier]
+ *
+ * where input is name of input mapping like m1 or q. Spells are cast at
+ * latest aim location. Empty lines and lines starting with # are ignored.
+ */
+public class ScriptedBehavior implements BotBehavior {
+
+    private final List<Step> steps;
+    private final Vector3f target = new Vector3f();
+    private float time = 0f;
+    private int next = 0;
+
+    public ScriptedBehavior(List<Step> steps) {
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException("Script has no steps");
+        }
+        this.steps = steps;
+    }
+
+    @Override
+    public void update(BotClient bot, float tpf) {
+        time += tpf;
+        while (next < steps.size() && steps.get(next).time <= time) {
+            steps.get(next).action.accept(this, bot);
+            next++;
+        }
+
+        if (next == steps.size()) {
+            time -= steps.get(next - 1).time;
+            next = 0;
+        }
+    }
+
+    public static List<Step> load(Path path) throws IOException {
+        List<Step> steps = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(path)) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            try {
+                steps.add(parse(line.split("\\s+")));
+            } catch (RuntimeException ex) {
+                throw new IOException(path + ":" + lineNumber + ": "
+                        + ex.getMessage(), ex);
+            }
+        }
+
+        Collections.sort(steps, (a, b) -> Float.compare(a.time, b.time));
+        return steps;
+    }
+
+    private static Step parse(String[] words) {
+        if (words.length < 2) {
+            throw new IllegalArgumentException("Expected time and action");
+        }
+
+        float time = Float.parseFloat(words[0]);
+        switch (words[1]) {
+            case "walk": {
+                int down = Integer.parseInt(words[2]);
+                int right = Integer.parseInt(words[3]);
+                return new Step(time, (script, bot) -> bot.walk(down, right));
+            }
+            case "aim": {
+                float x = Float.parseFloat(words[2]);
+                float z = Float.parseFloat(words[3]);
+                return new Step(time, (script, bot) -> {
+                    script.target.set(x, 0f, z);
+                    bot.aim(script.target);
+                });
+            }
+            case "cast": {
+                Integer input = InputMapping.getId(words[2]);
+                if (input == null) {
+                    throw new IllegalArgumentException(
+                            "Unknown input " + words[2]);
+                }
+                boolean modifier = words.length > 3
+                        && "modifier".equals(words[3]);
+                return new Step(time, (script, bot)
+                        -> bot.cast(input, modifier, script.target));
+            }
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown action " + words[1]);
+        }
+    }
+
+    public static class Step {
+
+        private final float time;
+        private final Action action;
+
+        private Step(float time, Action action) {
+            this.time = time;
+            this.action = action;
+        }
+    }
+
+    private interface Action {
+
+        void accept(ScriptedBehavior script, BotClient bot);
+    }
+}
@@ -241,9 +241,13 @@ class CEliteSoldierSync extends AbstractControl implements CSync {
 
     @Override
     public StateData getSyncableData(StateData stateData) {
-        return new EliteSoldierSyncData(
-                (int) getSpatial().getUserData(UserData.ENTITY_ID),
-                getSpatial());
+        int id = getSpatial().getUserData(UserData.ENTITY_ID);
+        if (stateData instanceof EliteSoldierSyncData) {
+            ((EliteSoldierSyncData) stateData).set(id, getSpatial());
+            return stateData;
+        }
+
+        return new EliteSoldierSyncData(id, getSpatial());
     }
 
     @Override
@@ -2,9 +2,11 @@ package arkhados.characters;
 
 import arkhados.controls.CEliteSoldierAmmunition;
 import arkhados.messages.sync.statedata.CharacterSyncData;
+import arkhados.messages.sync.statedata.StateData;
 import arkhados.ui.hud.elitesoldier.CEliteSoldierHud;
 import com.jme3.network.serializing.Serializable;
 import com.jme3.scene.Spatial;
+import java.nio.ByteBuffer;
 
 @Serializable
 public class EliteSoldierSyncData extends CharacterSyncData {
@@ -18,7 +20,12 @@ public class EliteSoldierSyncData extends CharacterSyncData {
 
     public EliteSoldierSyncData(int id, Spatial spatial) {
         super(id, spatial);
-        CEliteSoldierAmmunition ammunition = 
+    }
+
+    @Override
+    public void set(int id, Spatial spatial) {
+        super.set(id, spatial);
+        CEliteSoldierAmmunition ammunition =
                 spatial.getControl(CEliteSoldierAmmunition.class);
         ammunition.addAmmoSynchronizationData(this, 0);
     }
@@ -46,4 +53,57 @@ public class EliteSoldierSyncData extends CharacterSyncData {
     public void setRockets(int rockets) {
         this.rockets = (byte) rockets;
     }
-}
\ No newline at end of file
+
+    @Override
+    public int getFieldCount() {
+        return super.getFieldCount() + 1;
+    }
+
+    @Override
+    public boolean fieldEquals(int field, StateData other) {
+        if (field < super.getFieldCount()) {
+            return super.fieldEquals(field, other);
+        }
+
+        EliteSoldierSyncData o = (EliteSoldierSyncData) other;
+        return pellets == o.pellets && plasmas == o.plasmas
+                && rockets == o.rockets;
+    }
+
+    @Override
+    public void copyField(int field, StateData from) {
+        if (field < super.getFieldCount()) {
+            super.copyField(field, from);
+            return;
+        }
+
+        EliteSoldierSyncData o = (EliteSoldierSyncData) from;
+        pellets = o.pellets;
+        plasmas = o.plasmas;
+        rockets = o.rockets;
+    }
+
+    @Override
+    public void writeField(int field, ByteBuffer buffer) {
+        if (field < super.getFieldCount()) {
+            super.writeField(field, buffer);
+            return;
+        }
+
+        buffer.put(pellets);
+        buffer.put(plasmas);
+        buffer.put(rockets);
+    }
+
+    @Override
+    public void readField(int field, ByteBuffer buffer) {
+        if (field < super.getFieldCount()) {
+            super.readField(field, buffer);
+            return;
+        }
+
+        pellets = buffer.get();
+        plasmas = buffer.get();
+        rockets = buffer.get();
+    }
+}
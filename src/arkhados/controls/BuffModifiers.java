@@ -0,0 +1,189 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.controls;
+
+import arkhados.spell.buffs.AbleToCastWhileMovingBuff;
+import arkhados.spell.buffs.AbstractBuff;
+import arkhados.spell.buffs.ArmorBuff;
+import arkhados.spell.buffs.CastSpeedBuff;
+import arkhados.spell.buffs.CrowdControlBuff;
+import arkhados.spell.buffs.DamageBuff;
+import arkhados.spell.buffs.LifeStealBuff;
+import arkhados.spell.buffs.PetrifyCC;
+import arkhados.spell.buffs.SlowCC;
+import arkhados.spell.buffs.SpeedBuff;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Combined effect of buffs that modify character's stats. Buffs are sorted
+ * by type when they are added or removed and the combined values are
+ * calculated again only after that or after some buff has reported that
+ * its value has changed.
+ */
+class BuffModifiers {
+
+    // SlowCCs and SpeedBuffs in order they were added
+    private final List<AbstractBuff> speedBuffs = new ArrayList<>();
+    private final List<DamageBuff> damageBuffs = new ArrayList<>();
+    private final List<LifeStealBuff> lifeStealBuffs = new ArrayList<>();
+    private final List<CastSpeedBuff> castSpeedBuffs = new ArrayList<>();
+    // ArmorBuffs and PetrifyCCs in order they were added
+    private final List<AbstractBuff> mitigators = new ArrayList<>();
+    private int movePreventers = 0;
+    private int castPreventers = 0;
+    private int castWhileMovingBuffs = 0;
+    private boolean dirty = false;
+    private float speedFactor = 1f;
+    private float speedConstant = 0f;
+    private float damageFactor = 1f;
+    private float lifeSteal = 0f;
+    private float castSpeedFactor = 1f;
+
+    void add(AbstractBuff buff) {
+        count(buff, 1);
+        if (buff instanceof SlowCC || buff instanceof SpeedBuff) {
+            speedBuffs.add(buff);
+        } else if (buff instanceof DamageBuff) {
+            damageBuffs.add((DamageBuff) buff);
+        } else if (buff instanceof LifeStealBuff) {
+            lifeStealBuffs.add((LifeStealBuff) buff);
+        } else if (buff instanceof CastSpeedBuff) {
+            castSpeedBuffs.add((CastSpeedBuff) buff);
+        }
+
+        if (buff instanceof ArmorBuff || buff instanceof PetrifyCC) {
+            mitigators.add(buff);
+        }
+
+        dirty = true;
+    }
+
+    void remove(AbstractBuff buff) {
+        count(buff, -1);
+        if (buff instanceof SlowCC || buff instanceof SpeedBuff) {
+            speedBuffs.remove(buff);
+        } else if (buff instanceof DamageBuff) {
+            damageBuffs.remove(buff);
+        } else if (buff instanceof LifeStealBuff) {
+            lifeStealBuffs.remove(buff);
+        } else if (buff instanceof CastSpeedBuff) {
+            castSpeedBuffs.remove(buff);
+        }
+
+        mitigators.remove(buff);
+        dirty = true;
+    }
+
+    private void count(AbstractBuff buff, int change) {
+        if (buff instanceof CrowdControlBuff) {
+            CrowdControlBuff cc = (CrowdControlBuff) buff;
+            if (cc.preventsMoving()) {
+                movePreventers += change;
+            }
+            if (cc.preventsCasting()) {
+                castPreventers += change;
+            }
+        } else if (buff instanceof AbleToCastWhileMovingBuff) {
+            castWhileMovingBuffs += change;
+        }
+    }
+
+    void markDirty() {
+        dirty = true;
+    }
+
+    private void recalculate() {
+        if (!dirty) {
+            return;
+        }
+
+        dirty = false;
+
+        speedFactor = 1f;
+        speedConstant = 0f;
+        for (AbstractBuff buff : speedBuffs) {
+            if (buff instanceof SlowCC) {
+                speedFactor *= ((SlowCC) buff).getSlowFactor();
+            } else {
+                SpeedBuff speedBuff = (SpeedBuff) buff;
+                speedFactor *= speedBuff.getFactor();
+                speedConstant += speedBuff.getConstant();
+            }
+        }
+
+        damageFactor = 1f;
+        for (DamageBuff buff : damageBuffs) {
+            damageFactor *= buff.getFactor();
+        }
+
+        lifeSteal = 0f;
+        for (LifeStealBuff buff : lifeStealBuffs) {
+            lifeSteal += buff.getAmount();
+        }
+
+        castSpeedFactor = 1f;
+        for (CastSpeedBuff buff : castSpeedBuffs) {
+            castSpeedFactor *= buff.getFactor();
+        }
+    }
+
+    float getSpeedFactor() {
+        recalculate();
+        return speedFactor;
+    }
+
+    float getSpeedConstant() {
+        recalculate();
+        return speedConstant;
+    }
+
+    float getDamageFactor() {
+        recalculate();
+        return damageFactor;
+    }
+
+    /**
+     * @return life steal added to base life steal
+     */
+    float getLifeSteal() {
+        recalculate();
+        return lifeSteal;
+    }
+
+    float getCastSpeedFactor() {
+        recalculate();
+        return castSpeedFactor;
+    }
+
+    boolean preventsMoving() {
+        return movePreventers > 0;
+    }
+
+    boolean preventsCasting() {
+        return castPreventers > 0;
+    }
+
+    boolean allowsCastingWhileMoving() {
+        return castWhileMovingBuffs > 0;
+    }
+
+    /**
+     * @return ArmorBuff or PetrifyCC that was added first or null
+     */
+    AbstractBuff getMitigator() {
+        return mitigators.isEmpty() ? null : mitigators.get(0);
+    }
+}
@@ -19,6 +19,7 @@ import arkhados.PlayerData;
 import arkhados.actions.ADelay;
 import arkhados.spell.buffs.AbstractBuffBuilder;
 import arkhados.spell.influences.Influence;
+import arkhados.util.EntityComponents;
 import arkhados.util.UserData;
 import com.jme3.bullet.PhysicsSpace;
 import com.jme3.bullet.PhysicsTickListener;
@@ -97,7 +98,8 @@ public class CAreaEffect extends AbstractControl
     @Override
     public void physicsTick(PhysicsSpace space, float tpf) {
         // HACK
-        CActionQueue actionQueue = getSpatial().getControl(CActionQueue.class);
+        CActionQueue actionQueue = EntityComponents.of(spatial)
+                .getActionQueue();
         if (actionQueue != null && actionQueue.getCurrent() instanceof ADelay) {
             return;
         }
@@ -112,15 +114,14 @@ public class CAreaEffect extends AbstractControl
             }
             Spatial other = (Spatial) collisionObject.getUserObject();
             CInfluenceInterface targetInterface =
-                    other.getControl(CInfluenceInterface.class);
+                    EntityComponents.of(other).getInfluence();
 
             if (targetInterface == null) {
                 continue;
             }
 
             int othersPlayerId = other.getUserData(UserData.PLAYER_ID);
-            int othersTeamId = PlayerData.getIntData(othersPlayerId,
-                    PlayerData.TEAM_ID);
+            int othersTeamId = PlayerData.getTeamId(othersPlayerId);
             boolean sameTeam = myTeamId == othersTeamId;
             for (Influence influence : influences) {
                 if (sameTeam && influence.isFriendly()) {
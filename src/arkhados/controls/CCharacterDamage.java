@@ -14,7 +14,7 @@
  along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
 package arkhados.controls;
 
-import arkhados.util.UserData;
+import arkhados.util.FloatAttribute;
 import com.jme3.math.FastMath;
 import com.jme3.renderer.RenderManager;
 import com.jme3.renderer.ViewPort;
@@ -29,13 +29,12 @@ public class CCharacterDamage extends AbstractControl {
             return 0f;
         }
 
-        float healthBefore =
-                spatial.getUserData(UserData.HEALTH_CURRENT);
+        float healthBefore = me.getAttribute(FloatAttribute.HEALTH_CURRENT);
 
         damage = me.mitigateDamage(damage);
 
         float health = FastMath.clamp(healthBefore - damage, 0, healthBefore);
-        spatial.setUserData(UserData.HEALTH_CURRENT, health);
+        me.setAttribute(FloatAttribute.HEALTH_CURRENT, health);
 
         if (health == 0.0f) {
             me.death();
@@ -14,6 +14,7 @@
  along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
 package arkhados.controls;
 
+import arkhados.util.FloatAttribute;
 import arkhados.util.UserData;
 import com.jme3.math.FastMath;
 import com.jme3.renderer.RenderManager;
@@ -60,11 +61,10 @@ public class CCharacterHeal extends AbstractControl {
             return 0f;
         }
         // TODO: Healing mitigation from negative buff
-        float healthBefore = 
-                spatial.getUserData(UserData.HEALTH_CURRENT);
+        float healthBefore = me.getAttribute(FloatAttribute.HEALTH_CURRENT);
         float health = FastMath.clamp(healthBefore + healing, healthBefore,
                 getHealingCap());
-        spatial.setUserData(UserData.HEALTH_CURRENT, health);
+        me.setAttribute(FloatAttribute.HEALTH_CURRENT, health);
         return health - healthBefore;
     }
 
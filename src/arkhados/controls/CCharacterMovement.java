@@ -14,7 +14,8 @@
  along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
 package arkhados.controls;
 
-import arkhados.util.UserData;
+import arkhados.util.EntityComponents;
+import arkhados.util.FloatAttribute;
 import com.jme3.math.Vector3f;
 import com.jme3.renderer.RenderManager;
 import com.jme3.renderer.ViewPort;
@@ -36,8 +37,8 @@ public class CCharacterMovement extends AbstractControl {
     }
 
     public void setWalkDirection(Vector3f direction) {
-        CInfluenceInterface cInfluence
-                = spatial.getControl(CInfluenceInterface.class);
+        CInfluenceInterface cInfluence = EntityComponents.of(spatial)
+                .getInfluence();
 
         if (cPhysics.isMotionControlled() || !cInfluence.canMove()) {
             return;
@@ -45,7 +46,7 @@ public class CCharacterMovement extends AbstractControl {
             return;
         }
 
-        float speed = spatial.getUserData(UserData.SPEED_MOVEMENT);
+        float speed = cInfluence.getAttribute(FloatAttribute.SPEED_MOVEMENT);
         Vector3f scaledDirection = direction.normalize().multLocal(speed);
 
         cPhysics.setWalkDirection(scaledDirection);
@@ -56,7 +57,8 @@ public class CCharacterMovement extends AbstractControl {
             return;
         }
 
-        float speed = spatial.getUserData(UserData.SPEED_MOVEMENT);
+        float speed = EntityComponents.of(spatial).getInfluence()
+                .getAttribute(FloatAttribute.SPEED_MOVEMENT);
 
         Vector3f scaledDirection
                 = getWalkDirection().normalize().multLocal(speed);
@@ -68,39 +70,38 @@ public class CCharacterMovement extends AbstractControl {
     }
 
     public void stop() {
-        spatial.getControl(CCharacterPhysics.class)
-                .setWalkDirection(Vector3f.ZERO);
+        cPhysics.setWalkDirection(Vector3f.ZERO);
     }
 
     public void setSpeedToBase() {
         if (!isSpeedConstant()) {
-            float msBase
-                    = spatial.getUserData(UserData.SPEED_MOVEMENT_BASE);
-            spatial.setUserData(UserData.SPEED_MOVEMENT, msBase);
+            CInfluenceInterface cInfluence = EntityComponents.of(spatial)
+                    .getInfluence();
+            float msBase = cInfluence
+                    .getAttribute(FloatAttribute.SPEED_MOVEMENT_BASE);
+            cInfluence.stageAttribute(FloatAttribute.SPEED_MOVEMENT, msBase);
         }
     }
 
     public void updateMovement(float tpf) {
 
-        CInfluenceInterface cInfluence
-                = spatial.getControl(CInfluenceInterface.class);
-        CSpellCast cSpell
-                = spatial.getControl(CSpellCast.class);
+        EntityComponents components = EntityComponents.of(spatial);
+        CInfluenceInterface cInfluence = components.getInfluence();
+        CSpellCast cSpell = components.getSpellCast();
 
         if (!cPhysics.getDictatedDirection().equals(Vector3f.ZERO)
                 || cPhysics.isMotionControlled() || cInfluence.isDead()) {
             return;
         }
 
-        CUserInput cInput = spatial.getControl(CUserInput.class);
+        CUserInput cInput = components.getUserInput();
 
         if (cInfluence.canMove() && (cInfluence.isAbleToCastWhileMoving()
                 || (!cSpell.isCasting() && !cSpell.isChanneling()))) {
             if (cInfluence.canControlMovement()) {
                 Vector3f direction = cInput.giveInputDirection();
                 if (!direction.equals(Vector3f.ZERO) && cPhysics.isEnabled()) {
-                    spatial.getControl(CCharacterPhysics.class)
-                            .setViewDirection(direction);
+                    cPhysics.setViewDirection(direction);
                 }
 
                 setWalkDirection(direction);
@@ -115,8 +116,7 @@ public class CCharacterMovement extends AbstractControl {
 
         if (cSpell.isCasting() || cSpell.isChanneling()) {
             Vector3f targetDir = cInput.giveTargetDirection();
-            spatial.getControl(CCharacterPhysics.class)
-                    .setViewDirection(targetDir);
+            cPhysics.setViewDirection(targetDir);
         }
     }
 
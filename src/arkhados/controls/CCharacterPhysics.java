@@ -15,6 +15,7 @@
 package arkhados.controls;
 
 import arkhados.CollisionGroups;
+import arkhados.World;
 import com.jme3.bullet.PhysicsSpace;
 import com.jme3.bullet.collision.shapes.CapsuleCollisionShape;
 import com.jme3.bullet.control.BetterCharacterControl;
@@ -30,6 +31,7 @@ import com.jme3.util.TempVars;
 public class CCharacterPhysics extends BetterCharacterControl {
 
     private static final float BASE_DAMPING = 1 / 30f;
+    private static World world;
     private Vector3f impulseToApply = null;
     private Vector3f queuedLinearVelocity = null;
     private Vector3f targetLocation = new Vector3f();
@@ -140,6 +142,8 @@ public class CCharacterPhysics extends BetterCharacterControl {
     @Override
     public void update(float tpf) {
         super.update(tpf);
+        // Motion controlled characters move even when physics is disabled
+        world.getSpatialGrid().update(spatial);
     }
 
     public void applyImpulse(Vector3f impulse) {
@@ -172,6 +176,26 @@ public class CCharacterPhysics extends BetterCharacterControl {
         return targetLocation.subtract(spatial.getLocalTranslation());
     }
 
+    public static void setWorld(World world) {
+        CCharacterPhysics.world = world;
+    }
+
+    /**
+     * @return true if character can currently be hit by projectiles
+     */
+    public boolean isSolid() {
+        return isEnabled()
+                && rigidBody.getCollisionGroup() == CollisionGroups.CHARACTERS;
+    }
+
+    public float getRadius() {
+        return getFinalRadius();
+    }
+
+    public float getHeight() {
+        return getFinalHeight();
+    }
+
     public CapsuleCollisionShape getCapsuleShape() {
         CapsuleCollisionShape capsuleCollisionShape =
                 new CapsuleCollisionShape(getFinalRadius(),
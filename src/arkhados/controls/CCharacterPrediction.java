@@ -0,0 +1,280 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.controls;
+
+import arkhados.net.ReliableChannel;
+import arkhados.net.ReliableSender;
+import arkhados.net.Sender;
+import arkhados.util.FloatAttribute;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.control.AbstractControl;
+
+/**
+ * Moves character of local player as soon as walk direction changes instead
+ * of waiting for server. When state of character arrives, movement that
+ * server could not have seen yet is replayed on top of it and difference to
+ * predicted location is corrected gradually.
+ *
+ * Server is followed as before whenever its walk direction does not match
+ * input it has acknowledged, for example while character is stunned,
+ * casting or being pushed. Only used on client.
+ */
+public class CCharacterPrediction extends AbstractControl {
+
+    private static final int HISTORY_SIZE = 256;
+    private static final int INPUT_HISTORY_SIZE = 64;
+    // Corrections longer than this are applied at once
+    private static final float SNAP_DISTANCE_SQUARED = FastMath.sqr(8f);
+    // Part of remaining correction that is applied per second
+    private static final float CORRECTION_RATE = 10f;
+    // Cosine of largest accepted angle between server's walk direction and
+    // acknowledged input
+    private static final float AGREEMENT = 0.95f;
+    private static final float STILL_SQUARED = 0.0001f;
+    private final AppStateManager stateManager;
+    // Movement of each predicted frame as ring buffer
+    private final float[] frameTimes = new float[HISTORY_SIZE];
+    private final int[] frameSequences = new int[HISTORY_SIZE];
+    private final float[] frameX = new float[HISTORY_SIZE];
+    private final float[] frameZ = new float[HISTORY_SIZE];
+    private int oldestFrame = 0;
+    private int frames = 0;
+    // Walk directions indexed by sequence
+    private final byte[] downs = new byte[INPUT_HISTORY_SIZE];
+    private final byte[] rights = new byte[INPUT_HISTORY_SIZE];
+    private int sequence = 0;
+    private int acknowledged = 0;
+    private boolean freshAck = false;
+    private boolean predicting = false;
+    private float speed = 0f;
+    private float time = 0f;
+    private final Vector3f previousLocation = new Vector3f();
+    private final Vector3f correction = new Vector3f();
+    private final Vector3f temp = new Vector3f();
+
+    public CCharacterPrediction(AppStateManager stateManager) {
+        this.stateManager = stateManager;
+    }
+
+    /**
+     * Called when player's walk direction has been sent to server.
+     */
+    public void inputChanged(int sequence, int down, int right) {
+        this.sequence = sequence;
+        int index = sequence & (INPUT_HISTORY_SIZE - 1);
+        downs[index] = (byte) down;
+        rights[index] = (byte) right;
+
+        if (predicting) {
+            applyInput();
+        }
+    }
+
+    /**
+     * Called when server tells which input next state of character is based
+     * on.
+     */
+    public void acknowledge(int sequence) {
+        acknowledged = sequence;
+        freshAck = true;
+    }
+
+    /**
+     * @return true if state from server was taken into account and should
+     * not be applied directly
+     */
+    public boolean reconcile(Vector3f location, Vector3f walkDirection) {
+        if (!freshAck) {
+            // State was sent without acknowledgement so it is older than
+            // what has been predicted already
+            return predicting;
+        }
+        freshAck = false;
+
+        if (!followsInput(walkDirection)) {
+            if (predicting) {
+                stopPredicting();
+            }
+            return false;
+        }
+
+        float walkSpeedSquared = walkDirection.lengthSquared();
+        if (walkSpeedSquared > STILL_SQUARED) {
+            speed = FastMath.sqrt(walkSpeedSquared);
+        }
+
+        if (!predicting) {
+            startPredicting();
+        }
+
+        forgetSeenFrames();
+
+        temp.set(location);
+        for (int i = 0; i < frames; i++) {
+            int index = (oldestFrame + i) % HISTORY_SIZE;
+            temp.x += frameX[index];
+            temp.z += frameZ[index];
+        }
+
+        Vector3f current = spatial.getLocalTranslation();
+        correction.set(temp.x - current.x, 0f, temp.z - current.z);
+        if (correction.lengthSquared() > SNAP_DISTANCE_SQUARED) {
+            temp.y = current.y;
+            getBody().warp(temp);
+            previousLocation.set(temp);
+            correction.zero();
+        }
+
+        return true;
+    }
+
+    @Override
+    protected void controlUpdate(float tpf) {
+        time += tpf;
+        if (!predicting) {
+            return;
+        }
+
+        Vector3f location = spatial.getLocalTranslation();
+        addFrame(location.x - previousLocation.x,
+                location.z - previousLocation.z);
+        previousLocation.set(location);
+
+        if (correction.lengthSquared() < STILL_SQUARED) {
+            correction.zero();
+            return;
+        }
+
+        float fraction = Math.min(1f, tpf * CORRECTION_RATE);
+        temp.set(correction).multLocal(fraction);
+        correction.subtractLocal(temp);
+        temp.addLocal(location);
+        getBody().warp(temp);
+        previousLocation.set(temp);
+    }
+
+    /**
+     * Server's walk direction follows acknowledged input only if nothing
+     * else is controlling character.
+     */
+    private boolean followsInput(Vector3f walkDirection) {
+        int index = acknowledged & (INPUT_HISTORY_SIZE - 1);
+        temp.set(rights[index], 0f, downs[index]);
+        boolean inputStill = temp.lengthSquared() == 0f;
+        boolean serverStill = walkDirection.lengthSquared() <= STILL_SQUARED;
+        if (inputStill || serverStill) {
+            return inputStill && serverStill;
+        }
+
+        temp.normalizeLocal();
+        float cos = temp.dot(walkDirection)
+                / FastMath.sqrt(walkDirection.lengthSquared());
+        return cos >= AGREEMENT;
+    }
+
+    /**
+     * Frames are forgotten when server had acknowledged their input and
+     * they were predicted at least one round trip ago.
+     */
+    private void forgetSeenFrames() {
+        float cutoff = time - getRoundTripTime();
+        while (frames > 0 && frameSequences[oldestFrame] <= acknowledged
+                && frameTimes[oldestFrame] <= cutoff) {
+            oldestFrame = (oldestFrame + 1) % HISTORY_SIZE;
+            --frames;
+        }
+    }
+
+    private void addFrame(float x, float z) {
+        if (frames == HISTORY_SIZE) {
+            oldestFrame = (oldestFrame + 1) % HISTORY_SIZE;
+            --frames;
+        }
+
+        int index = (oldestFrame + frames) % HISTORY_SIZE;
+        frameTimes[index] = time;
+        frameSequences[index] = sequence;
+        frameX[index] = x;
+        frameZ[index] = z;
+        ++frames;
+    }
+
+    private void startPredicting() {
+        predicting = true;
+        frames = 0;
+        correction.zero();
+        previousLocation.set(spatial.getLocalTranslation());
+        spatial.getControl(CSyncInterpolation.class).setEnabled(false);
+
+        if (speed == 0f) {
+            speed = spatial.getControl(CInfluenceInterface.class)
+                    .getAttribute(FloatAttribute.SPEED_MOVEMENT);
+        }
+
+        applyInput();
+    }
+
+    private void stopPredicting() {
+        predicting = false;
+        frames = 0;
+        correction.zero();
+        spatial.getControl(CSyncInterpolation.class).setEnabled(true);
+    }
+
+    private void applyInput() {
+        int index = sequence & (INPUT_HISTORY_SIZE - 1);
+        temp.set(rights[index], 0f, downs[index]);
+        CCharacterPhysics body = getBody();
+        if (temp.lengthSquared() == 0f) {
+            body.setWalkDirection(Vector3f.ZERO);
+            return;
+        }
+
+        temp.normalizeLocal();
+        body.setViewDirection(temp);
+        body.setWalkDirection(temp.multLocal(speed));
+    }
+
+    private float getRoundTripTime() {
+        Sender sender = stateManager.getState(Sender.class);
+        if (!(sender instanceof ReliableSender)) {
+            return 0f;
+        }
+
+        ReliableChannel channel = ((ReliableSender) sender).getChannel(null);
+        if (channel == null) {
+            return 0f;
+        }
+
+        float rtt = channel.getRoundTripTime();
+        return rtt < 0f ? 0f : rtt;
+    }
+
+    private CCharacterPhysics getBody() {
+        return spatial.getControl(CCharacterPhysics.class);
+    }
+
+    public boolean isPredicting() {
+        return predicting;
+    }
+
+    @Override
+    protected void controlRender(RenderManager rm, ViewPort vp) {
+    }
+}
@@ -33,8 +33,13 @@ public class CCharacterSync extends AbstractControl implements CSync {
 
     @Override
     public StateData getSyncableData(StateData stateData) {
-        return new CharacterSyncData(
-                (int) getSpatial().getUserData(UserData.ENTITY_ID),
-                getSpatial());
+        int id = getSpatial().getUserData(UserData.ENTITY_ID);
+        if (stateData != null
+                && stateData.getClass() == CharacterSyncData.class) {
+            ((CharacterSyncData) stateData).set(id, getSpatial());
+            return stateData;
+        }
+
+        return new CharacterSyncData(id, getSpatial());
     }
 }
\ No newline at end of file
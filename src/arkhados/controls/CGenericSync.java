@@ -33,7 +33,12 @@ public class CGenericSync extends AbstractControl implements CSync{
 
     @Override
     public StateData getSyncableData(StateData stateData) {
-        return new GenericSyncData((int) 
-                getSpatial().getUserData(UserData.ENTITY_ID), spatial);
+        int id = getSpatial().getUserData(UserData.ENTITY_ID);
+        if (stateData instanceof GenericSyncData) {
+            ((GenericSyncData) stateData).set(id, spatial);
+            return stateData;
+        }
+
+        return new GenericSyncData(id, spatial);
     }    
 }
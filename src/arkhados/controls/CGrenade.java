@@ -15,6 +15,7 @@
 package arkhados.controls;
 
 import arkhados.CharacterInteraction;
+import arkhados.CollisionDispatcher;
 import arkhados.Globals;
 import arkhados.PlayerData;
 import arkhados.World;
@@ -105,8 +106,13 @@ public class CGrenade extends AbstractControl implements PhysicsControl,
     @Override
     public StateData getSyncableData(StateData stateData) {
         int id = spatial.getUserData(UserData.ENTITY_ID);
-        return new ProjectileSyncData(id,
-                spatial.getControl(RigidBodyControl.class));
+        RigidBodyControl body = spatial.getControl(RigidBodyControl.class);
+        if (stateData instanceof ProjectileSyncData) {
+            ((ProjectileSyncData) stateData).set(id, body);
+            return stateData;
+        }
+
+        return new ProjectileSyncData(id, body);
     }
 
     @Override
@@ -132,8 +138,7 @@ public class CGrenade extends AbstractControl implements PhysicsControl,
     private void damage(Spatial other, CInfluenceInterface otherInterface) {
         int grenadeTeamId = spatial.getUserData(UserData.TEAM_ID);
         int targetPlayerId = other.getUserData(UserData.PLAYER_ID);
-        int targetTeamId =
-                PlayerData.getIntData(targetPlayerId, PlayerData.TEAM_ID);
+        int targetTeamId = PlayerData.getTeamId(targetPlayerId);
 
         if (targetTeamId == grenadeTeamId) {
             return;
@@ -208,12 +213,15 @@ public class CGrenade extends AbstractControl implements PhysicsControl,
 
     @Override
     public void setPhysicsSpace(final PhysicsSpace space) {
+        RigidBodyControl body = spatial.getControl(RigidBodyControl.class);
         Globals.app.enqueue(() -> {
+            CollisionDispatcher dispatcher = Globals.app.getStateManager()
+                    .getState(World.class).getCollisionDispatcher();
             if (CGrenade.this.space == null && space != null) {
-                space.addCollisionListener(CGrenade.this);
+                dispatcher.subscribe(body, CGrenade.this);
                 space.addTickListener(CGrenade.this);
             } else if (CGrenade.this.space != null && space == null) {
-                CGrenade.this.space.removeCollisionListener(CGrenade.this);
+                dispatcher.unsubscribe(body, CGrenade.this);
                 CGrenade.this.space.removeTickListener(CGrenade.this);
             }
             
@@ -14,36 +14,35 @@
  along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
 package arkhados.controls;
 
+import arkhados.EntityAttributes;
 import arkhados.Globals;
-import arkhados.spell.buffs.AbleToCastWhileMovingBuff;
 import arkhados.spell.buffs.AbsorbingShieldBuff;
 import arkhados.spell.buffs.AbstractBuff;
 import arkhados.spell.buffs.ArmorBuff;
 import arkhados.spell.buffs.BlindCC;
 import arkhados.spell.buffs.CrowdControlBuff;
-import arkhados.spell.buffs.CastSpeedBuff;
-import arkhados.spell.buffs.DamageBuff;
-import arkhados.spell.buffs.LifeStealBuff;
 import arkhados.spell.buffs.PetrifyCC;
-import arkhados.spell.buffs.SlowCC;
-import arkhados.spell.buffs.SpeedBuff;
 import arkhados.spell.influences.Influence;
 import arkhados.spell.influences.SlowInfluence;
 import arkhados.spell.influences.SpeedInfluence;
-import arkhados.util.UserData;
+import arkhados.util.EntityComponents;
+import arkhados.util.FloatAttribute;
 import com.jme3.math.Vector3f;
 import com.jme3.renderer.RenderManager;
 import com.jme3.renderer.ViewPort;
 import com.jme3.scene.control.AbstractControl;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 public class CInfluenceInterface extends AbstractControl {
 
     private final List<AbstractBuff> buffs = new ArrayList<>();
+    private final List<AbstractBuff> buffsView =
+            Collections.unmodifiableList(buffs);
+    private final BuffModifiers modifiers = new BuffModifiers();
     private final List<BlindCC> blinds = new ArrayList<>();
-    private final List<CastSpeedBuff> numbs = new ArrayList<>();
     private final List<Influence> influences = new ArrayList<>();
     private final List<SlowInfluence> slowInfluences = new ArrayList<>();
     private final List<SpeedInfluence> speedInfluences = new ArrayList<>();
@@ -53,17 +52,16 @@ public class CInfluenceInterface extends AbstractControl {
     private boolean immuneToProjectiles = false;
     // HACK: Maybe this should be global?
     private boolean isServer = true;
+    private EntityAttributes attributes;
+    private int entityId = -1;
 
     public float mitigateDamage(float damage) {
         // TODO: Generic damage mitigation by shields, petrify etc.
-        for (AbstractBuff buff : buffs) {
-            if (buff instanceof ArmorBuff) {
-                damage = ((ArmorBuff) buff).mitigate(damage);
-                break;
-            } else if (buff instanceof PetrifyCC) {
-                damage = ((PetrifyCC) buff).damage(damage);
-                break;
-            }
+        AbstractBuff mitigator = modifiers.getMitigator();
+        if (mitigator instanceof ArmorBuff) {
+            damage = ((ArmorBuff) mitigator).mitigate(damage);
+        } else if (mitigator instanceof PetrifyCC) {
+            damage = ((PetrifyCC) mitigator).damage(damage);
         }
 
         return damage;
@@ -75,9 +73,11 @@ public class CInfluenceInterface extends AbstractControl {
         }
 
         buffs.add(buff);
+        modifiers.add(buff);
 
+        EntityComponents components = EntityComponents.of(spatial);
         if (!buff.isFriendly()) {
-            getSpatial().getControl(CResting.class).stopRegen();
+            components.getResting().stopRegen();
         }
 
         if (!(buff instanceof CrowdControlBuff)) {
@@ -87,42 +87,32 @@ public class CInfluenceInterface extends AbstractControl {
         CrowdControlBuff cc = (CrowdControlBuff) buff;
 
         if (cc.preventsMoving()) {
-            spatial.getControl(CCharacterMovement.class).stop();
+            components.getMovement().stop();
         }
 
         if (cc.preventsCasting()) {
-            spatial.getControl(CSpellCast.class).setCasting(false);
-            spatial.getControl(CActionQueue.class).clear();
+            components.getSpellCast().setCasting(false);
+            components.getActionQueue().clear();
         }
     }
 
     public void setHealth(float health) {
-        float healthBefore = spatial
-                .getUserData(UserData.HEALTH_CURRENT);
-        spatial.setUserData(UserData.HEALTH_CURRENT, health);
+        float healthBefore = getAttribute(FloatAttribute.HEALTH_CURRENT);
+        setAttribute(FloatAttribute.HEALTH_CURRENT, health);
         if (healthBefore > 0f && health == 0f && !dead) {
             death();
         } else if (health < healthBefore && !isServer && health > 0f) {
-            spatial.getControl(CCharacterSound.class)
+            EntityComponents.of(spatial).getSound()
                     .suffer(healthBefore - health);
         }
     }
 
     public boolean canMove() {
-        for (AbstractBuff buff : buffs) {
-            if (buff instanceof CrowdControlBuff) {
-                if (((CrowdControlBuff) buff).preventsMoving()) {
-                    return false;
-                }
-            }
-        }
-
-        return true;
+        return !modifiers.preventsMoving();
     }
 
     public boolean canControlMovement() {
-        CCharacterPhysics physics
-                = spatial.getControl(CCharacterPhysics.class);
+        CCharacterPhysics physics = EntityComponents.of(spatial).getPhysics();
         if (!physics.getDictatedDirection().equals(Vector3f.ZERO)) {
             return false;
         }
@@ -135,28 +125,21 @@ public class CInfluenceInterface extends AbstractControl {
     }
 
     public boolean canCast() {
-        if (spatial.getControl(CMovementForcer.class) != null) {
+        if (EntityComponents.lookup(spatial, CMovementForcer.class) != null) {
             return false;
         }
 
-        for (AbstractBuff buff : buffs) {
-            if (buff instanceof CrowdControlBuff) {
-                if (((CrowdControlBuff) buff).preventsCasting()) {
-                    return false;
-                }
-            }
-        }
-
-        return true;
+        return !modifiers.preventsCasting();
     }
 
     public void death() {
         dead = true;
-        spatial.getControl(CCharacterMovement.class).stop();
-        spatial.getControl(CCharacterAnimation.class).death();
-        spatial.getControl(CSpellCast.class).setEnabled(false);
+        EntityComponents components = EntityComponents.of(spatial);
+        components.getMovement().stop();
+        components.getAnimation().death();
+        components.getSpellCast().setEnabled(false);
         if (!isServer) {
-            spatial.getControl(CCharacterSound.class).death();
+            components.getSound().death();
         }
     }
 
@@ -170,14 +153,13 @@ public class CInfluenceInterface extends AbstractControl {
          * First set entity's attributes to their defaults like damagefactor and
          * movement speed.
          */
-        spatial.setUserData(UserData.DAMAGE_FACTOR, 1f);
-        float lifeStealBase
-                = spatial.getUserData(UserData.LIFE_STEAL_BASE);
-        spatial.setUserData(UserData.LIFE_STEAL, lifeStealBase);
+        stageAttribute(FloatAttribute.DAMAGE_FACTOR, 1f);
+        float lifeStealBase = getAttribute(FloatAttribute.LIFE_STEAL_BASE);
+        stageAttribute(FloatAttribute.LIFE_STEAL, lifeStealBase);
         immuneToProjectiles = false;
 
-        CCharacterMovement cMovement
-                = spatial.getControl(CCharacterMovement.class);
+        CCharacterMovement cMovement = EntityComponents.of(spatial)
+                .getMovement();
         /**
          * Some buff or action might require entity's speed to remain constant
          * until the end (for example, Venator's ChargeAction).
@@ -185,11 +167,16 @@ public class CInfluenceInterface extends AbstractControl {
         cMovement.setSpeedToBase();
 
         applyBuffs(tpf);
-        applySlowsAndSpeedBuffs();
+        applySlowsAndSpeedBuffs(cMovement);
         applyDamageBuffs();
         applyLifeStealBuffs();
         applyInfluences(tpf);
 
+        // Only values that differ from previous frame are written
+        if (attributes != null) {
+            attributes.flush(entityId);
+        }
+
         // Why is this here?
         if (isServer) {
             cMovement.updateMovement(tpf);
@@ -197,42 +184,20 @@ public class CInfluenceInterface extends AbstractControl {
     }
 
     private void applyDamageBuffs() {
-        float damageFactor = 1f;
-        for (AbstractBuff buff : buffs) {
-            if (buff instanceof DamageBuff) {
-                damageFactor *= ((DamageBuff) buff).getFactor();
-            }
-        }
-
-        spatial.setUserData(UserData.DAMAGE_FACTOR, damageFactor);
+        stageAttribute(FloatAttribute.DAMAGE_FACTOR,
+                modifiers.getDamageFactor());
     }
 
     private void applyLifeStealBuffs() {
-        float lifeSteal = spatial.getUserData(UserData.LIFE_STEAL_BASE);
-        for (AbstractBuff buff : buffs) {
-            if (buff instanceof LifeStealBuff) {
-                LifeStealBuff lifeStealBuff = (LifeStealBuff) buff;
-                lifeSteal += lifeStealBuff.getAmount();
-            }
-        }
-
-        spatial.setUserData(UserData.LIFE_STEAL, lifeSteal);
+        float lifeStealBase = getAttribute(FloatAttribute.LIFE_STEAL_BASE);
+        stageAttribute(FloatAttribute.LIFE_STEAL,
+                lifeStealBase + modifiers.getLifeSteal());
     }
 
-    private void applySlowsAndSpeedBuffs() {
-        if (!spatial.getControl(CCharacterMovement.class).isSpeedConstant()) {
-            float speedFactor = 1f;
-            float constantSpeedAddition = 0f;
-
-            for (AbstractBuff buff : buffs) {
-                if (buff instanceof SlowCC) {
-                    speedFactor *= ((SlowCC) buff).getSlowFactor();
-                } else if (buff instanceof SpeedBuff) {
-                    SpeedBuff speedBuff = (SpeedBuff) buff;
-                    speedFactor *= speedBuff.getFactor();
-                    constantSpeedAddition += speedBuff.getConstant();
-                }
-            }
+    private void applySlowsAndSpeedBuffs(CCharacterMovement cMovement) {
+        if (!cMovement.isSpeedConstant()) {
+            float speedFactor = modifiers.getSpeedFactor();
+            float constantSpeedAddition = modifiers.getSpeedConstant();
 
             for (SlowInfluence slow : slowInfluences) {
                 speedFactor *= slow.getSlowFactor();
@@ -247,10 +212,9 @@ public class CInfluenceInterface extends AbstractControl {
 
             speedInfluences.clear();
 
-            float msCurrent
-                    = spatial.getUserData(UserData.SPEED_MOVEMENT);
+            float msCurrent = getAttribute(FloatAttribute.SPEED_MOVEMENT);
 
-            spatial.setUserData(UserData.SPEED_MOVEMENT,
+            stageAttribute(FloatAttribute.SPEED_MOVEMENT,
                     msCurrent * speedFactor + constantSpeedAddition);
         }
     }
@@ -262,6 +226,7 @@ public class CInfluenceInterface extends AbstractControl {
             if (!buff.shouldContinue()) {
                 buff.destroy();
                 it.remove();
+                modifiers.remove(buff);
             }
         }
     }
@@ -286,12 +251,53 @@ public class CInfluenceInterface extends AbstractControl {
         isServer = flag;
     }
 
+    /**
+     * Lets attributes of character be used without going through user
+     * data. World sets this when it adds character.
+     *
+     * @param attributes attributes where character is registered or null
+     * if it is not registered anymore
+     */
+    public void setAttributes(EntityAttributes attributes, int entityId) {
+        this.attributes = attributes;
+        this.entityId = entityId;
+    }
+
+    public float getAttribute(FloatAttribute attribute) {
+        if (attributes != null) {
+            return attributes.getFloat(entityId, attribute);
+        }
+
+        return spatial.getUserData(attribute.getUserDataKey());
+    }
+
+    public void setAttribute(FloatAttribute attribute, float value) {
+        if (attributes != null) {
+            attributes.setFloat(entityId, attribute, value);
+        } else {
+            spatial.setUserData(attribute.getUserDataKey(), value);
+        }
+    }
+
+    /**
+     * Like setAttribute but user data is written at end of update. Used for
+     * values that are recalculated every frame.
+     */
+    void stageAttribute(FloatAttribute attribute, float value) {
+        if (attributes != null) {
+            attributes.stageFloat(entityId, attribute, value);
+        } else {
+            spatial.setUserData(attribute.getUserDataKey(), value);
+        }
+    }
+
     public void removeDamageSensitiveBuffs() {
         for (Iterator<AbstractBuff> it = buffs.iterator(); it.hasNext();) {
             AbstractBuff buff = it.next();
             if (buff.isDamageSensitive()) {
                 buff.destroy();
                 it.remove();
+                modifiers.remove(buff);
             }
         }
     }
@@ -312,18 +318,29 @@ public class CInfluenceInterface extends AbstractControl {
         this.immuneToProjectiles = immuneToProjectiles;
     }
 
+    /**
+     * @return read-only view of buffs. Use addBuff and removeBuff to change
+     * them.
+     */
     public List<AbstractBuff> getBuffs() {
-        return buffs;
+        return buffsView;
     }
 
-    private <T extends AbstractBuff> boolean hasBuff(Class<T> buffClass) {
-        for (AbstractBuff buff : buffs) {
-            if (buffClass.isAssignableFrom(buff.getClass())) {
-                return true;
-            }
+    /**
+     * Removes buff without destroying it.
+     */
+    public void removeBuff(AbstractBuff buff) {
+        if (buffs.remove(buff)) {
+            modifiers.remove(buff);
         }
+    }
 
-        return false;
+    /**
+     * Must be called when attached buff's speed, damage or other modifier
+     * changes so that it is taken into account.
+     */
+    public void buffModifiersChanged() {
+        modifiers.markDirty();
     }
 
     public void addInfluence(Influence influence) {
@@ -346,7 +363,7 @@ public class CInfluenceInterface extends AbstractControl {
     }
 
     public boolean isAbleToCastWhileMoving() {
-        return hasBuff(AbleToCastWhileMovingBuff.class);
+        return modifiers.allowsCastingWhileMoving();
     }
 
     public List<BlindCC> getBlinds() {
@@ -357,7 +374,7 @@ public class CInfluenceInterface extends AbstractControl {
         return !blinds.isEmpty();
     }
 
-    public List<CastSpeedBuff> getCastSpeedBuffs() {
-        return numbs;
+    public float getCastSpeedFactor() {
+        return modifiers.getCastSpeedFactor();
     }
 }
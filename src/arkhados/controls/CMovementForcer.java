@@ -15,8 +15,10 @@
 package arkhados.controls;
 
 import arkhados.CharacterInteraction;
+import arkhados.CollisionDispatcher;
 import arkhados.CollisionGroups;
 import arkhados.Globals;
+import arkhados.World;
 import arkhados.actions.ATrance;
 import arkhados.actions.EntityAction;
 import arkhados.spell.buffs.AbstractBuffBuilder;
@@ -79,7 +81,7 @@ public class CMovementForcer extends AbstractControl implements
         ghostNode.addControl(ghost);
         ghost.setUserObject(spatial);
         physics.getPhysicsSpace().add(ghost);
-        physics.getPhysicsSpace().addCollisionListener(this);
+        getCollisionDispatcher().subscribe(ghost, this);
     }
 
     @Override
@@ -110,6 +112,11 @@ public class CMovementForcer extends AbstractControl implements
         }
     }
 
+    private CollisionDispatcher getCollisionDispatcher() {
+        return Globals.app.getStateManager().getState(World.class)
+                .getCollisionDispatcher();
+    }
+
     @Override
     protected void controlRender(RenderManager rm, ViewPort vp) {
     }
@@ -137,7 +144,7 @@ public class CMovementForcer extends AbstractControl implements
     private void end() {
         Globals.app.enqueue(() -> {
             PhysicsSpace physicsSpace = ghost.getPhysicsSpace();
-            physicsSpace.removeCollisionListener(CMovementForcer.this);
+            getCollisionDispatcher().unsubscribe(ghost, CMovementForcer.this);
             physicsSpace.remove(ghost);
             ghostNode.removeFromParent();
             ghostNode.removeControl(ghost);
@@ -15,6 +15,7 @@
 package arkhados.controls;
 
 import arkhados.CollisionGroups;
+import arkhados.ProjectileSweeper;
 import com.jme3.bullet.control.RigidBodyControl;
 import com.jme3.math.Vector3f;
 import com.jme3.renderer.RenderManager;
@@ -47,6 +48,7 @@ public class CProjectile extends AbstractControl implements CSync {
     // This is if we want spatial to behave like projectile without certain properties
     private boolean isProjectile = true;
     private final Set<Spatial> hurtList = new HashSet<>();
+    private ProjectileSweeper.Profile sweepProfile;
 
     public void setTarget(Vector3f target) {
         float speedMovement =
@@ -95,6 +97,15 @@ public class CProjectile extends AbstractControl implements CSync {
 
     @Override
     protected void controlUpdate(float tpf) {
+        // On server projectile is not in physics space and moves itself
+        if (direction != null && world.isServer()) {
+            world.getProjectileSweeper().move(this, direction, tpf);
+            if (spatial.getParent() == null) {
+                return;
+            }
+        }
+
+        world.getSpatialGrid().update(spatial);
         if (direction == null) {
             rigidBodyControl.setGravity(Vector3f.ZERO);
             return;
@@ -151,9 +162,13 @@ public class CProjectile extends AbstractControl implements CSync {
     public StateData getSyncableData(StateData stateData) {
         if (needsSync) {
             needsSync = true;
-            return new ProjectileSyncData(
-                    (int) getSpatial().getUserData(UserData.ENTITY_ID),
-                    rigidBodyControl);
+            int id = getSpatial().getUserData(UserData.ENTITY_ID);
+            if (stateData instanceof ProjectileSyncData) {
+                ((ProjectileSyncData) stateData).set(id, rigidBodyControl);
+                return stateData;
+            }
+
+            return new ProjectileSyncData(id, rigidBodyControl);
         }
 
         return null;
@@ -174,4 +189,30 @@ public class CProjectile extends AbstractControl implements CSync {
     public Set<Spatial> getHurted() {
         return hurtList;
     }
+
+    /**
+     * Forgets previous flight so that projectile can be launched again.
+     * Splash action and projectile flag are returned to defaults of new
+     * CProjectile, so builder must set them again in its reset if it sets
+     * them in build. Sweep profile is kept.
+     */
+    public void reset() {
+        direction = null;
+        age = 0f;
+        range = 0f;
+        speed = 0f;
+        ownerInterface = null;
+        splashAction = null;
+        needsSync = true;
+        isProjectile = true;
+        hurtList.clear();
+    }
+
+    public ProjectileSweeper.Profile getSweepProfile() {
+        return sweepProfile;
+    }
+
+    public void setSweepProfile(ProjectileSweeper.Profile sweepProfile) {
+        this.sweepProfile = sweepProfile;
+    }
 }
\ No newline at end of file
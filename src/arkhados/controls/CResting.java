@@ -14,6 +14,7 @@
  along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
 package arkhados.controls;
 
+import arkhados.util.EntityComponents;
 import com.jme3.math.Vector3f;
 import com.jme3.renderer.RenderManager;
 import com.jme3.renderer.ViewPort;
@@ -33,7 +34,7 @@ public class CResting extends AbstractControl {
     }
 
     private void regenerate(float tpf) {
-        CCharacterHeal cHeal = spatial.getControl(CCharacterHeal.class);
+        CCharacterHeal cHeal = EntityComponents.of(spatial).getHeal();
         cHeal.regenerate(2.1f * idleTime * tpf);
     }
 
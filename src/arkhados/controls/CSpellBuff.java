@@ -34,6 +34,14 @@ public class CSpellBuff extends AbstractControl {
         buffs.add(buff);
     }
 
+    /**
+     * Removes all buffs and owner so that entity can be reused.
+     */
+    public void clear() {
+        buffs.clear();
+        ownerInterface = null;
+    }
+
     @Override
     protected void controlUpdate(float tpf) {
     }
@@ -29,7 +29,7 @@ import arkhados.messages.sync.CmdStartCastingSpell;
 import arkhados.spell.Spell;
 import arkhados.spell.SpellCastListener;
 import arkhados.spell.SpellCastValidator;
-import arkhados.spell.buffs.CastSpeedBuff;
+import arkhados.util.EntityComponents;
 import arkhados.util.UserData;
 import com.jme3.scene.Node;
 import com.jme3.util.IntMap;
@@ -172,14 +172,8 @@ public class CSpellCast extends AbstractControl {
     }
 
     private float calculateCastSpeedFactor() {
-        List<CastSpeedBuff> buffs = spatial
-                .getControl(CInfluenceInterface.class).getCastSpeedBuffs();
-        float newFactor = 1f;
-        for (CastSpeedBuff buff : buffs) {
-            newFactor *= buff.getFactor();
-        }
-
-        return newFactor;
+        return EntityComponents.of(spatial).getInfluence()
+                .getCastSpeedFactor();
     }
 
     private boolean validateCast(final Spell spell) {
@@ -63,6 +63,17 @@ public class CTimedExistence extends AbstractControl {
     protected void controlRender(RenderManager rm, ViewPort vp) {
     }
 
+    /**
+     * Starts counting time again from zero.
+     */
+    public void restart() {
+        age = 0f;
+    }
+
+    public float getAge() {
+        return age;
+    }
+
     public static void setWorld(World world) {
         CTimedExistence.world = world;
     }
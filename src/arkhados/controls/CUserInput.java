@@ -17,6 +17,7 @@ package arkhados.controls;
 import arkhados.Globals;
 import arkhados.PlayerData;
 import arkhados.ServerInputState;
+import arkhados.util.EntityComponents;
 import arkhados.util.UserData;
 import com.jme3.math.Vector3f;
 import com.jme3.renderer.RenderManager;
@@ -36,10 +37,9 @@ public class CUserInput extends AbstractControl {
     }
 
     public void updateDirection() {
-        CInfluenceInterface influenceInterface =
-                spatial.getControl(CInfluenceInterface.class);
-        CCharacterPhysics physics =
-                spatial.getControl(CCharacterPhysics.class);
+        EntityComponents components = EntityComponents.of(spatial);
+        CInfluenceInterface influenceInterface = components.getInfluence();
+        CCharacterPhysics physics = components.getPhysics();
 
         if (!influenceInterface.canControlMovement()
                 || !influenceInterface.canMove()
@@ -62,8 +62,7 @@ public class CUserInput extends AbstractControl {
             boolean commandMoveInterrupts = commandMoveInterruptsBoolean != null
                     && commandMoveInterruptsBoolean;
 
-            CSpellCast castControl =
-                    spatial.getControl(CSpellCast.class);
+            CSpellCast castControl = components.getSpellCast();
             if (castControl.isChanneling() || commandMoveInterrupts) {
                 castControl.safeInterrupt();
             }
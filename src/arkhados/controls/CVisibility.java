@@ -20,5 +20,11 @@ import com.jme3.scene.control.Control;
 
 
 public interface CVisibility extends Control {
-    public Vector3f giveClosestPoint(Vector3f lookerLocation);
+    /**
+     * @param location location of spatial that is used instead of reading
+     * it from spatial. ServerFog may call this outside of main thread so
+     * implementations must not read spatial.
+     */
+    public Vector3f giveClosestPoint(Vector3f lookerLocation,
+            Vector3f location);
 }
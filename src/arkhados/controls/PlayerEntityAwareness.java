@@ -31,37 +31,52 @@
  */
 package arkhados.controls;
 
+import arkhados.FogSnapshot;
+import arkhados.FogSnapshot.EntityState;
+import arkhados.FogSnapshot.ObserverState;
 import arkhados.ServerFog;
+import arkhados.VisibilityStatistics;
+import arkhados.WallOccluders;
 import arkhados.util.UserData;
-import com.jme3.bullet.control.RigidBodyControl;
-import com.jme3.collision.CollisionResults;
 import com.jme3.math.FastMath;
-import com.jme3.math.Ray;
 import com.jme3.math.Vector3f;
-import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class PlayerEntityAwareness {
 
     private static final float BLIND_RANGE_SQUARED = FastMath.sqr(20f);
+    // Line of sight is tested again only if either end has moved this much
+    private static final float RETEST_DISTANCE_SQUARED = FastMath.sqr(0.25f);
     private static final Logger logger
             = Logger.getLogger(PlayerEntityAwareness.class.getName());
     private Spatial ownSpatial;
-    private Map<Spatial, Boolean> entityFlags = new HashMap<>(6);
+    // Indexed by entity id. Entity ids are shorts so index is its low bits.
+    private Visibility[] visibilities = new Visibility[64];
+    // Same visibilities in order they were added. Removed ones are left as
+    // null so that order is kept and compacted away once there are many.
+    private final List<Visibility> tracked = new ArrayList<>();
+    private int removedCount = 0;
     private final int playerId;
-    private Node walls;
-    private Ray ray = new Ray();
+    private int slot = -1;
+    private WallOccluders occluders;
+    private WallOccluders.Query occluderQuery;
     private float rangeSquared = FastMath.sqr(170f);
-    private Vector3f _reUsableVec = new Vector3f();
     private ServerFog fog;
+    private final List<Visibility> changed = new ArrayList<>();
+    // Reused by testVisibility that reads live spatials
+    private final EntityState entityScratch = new EntityState();
+    private final ObserverState observerScratch = new ObserverState();
 
-    public PlayerEntityAwareness(int playerId, Node walls, ServerFog fog) {
+    public PlayerEntityAwareness(int playerId, WallOccluders occluders,
+            ServerFog fog) {
         this.playerId = playerId;
-        this.walls = walls;
+        this.occluders = occluders;
+        this.occluderQuery = occluders.createQuery();
         this.fog = fog;
     }
 
@@ -69,15 +84,17 @@ public class PlayerEntityAwareness {
         if (ownSpatial == null) {
             return;
         }
-        for (Map.Entry<Spatial, Boolean> entry : entityFlags.entrySet()) {
-            Spatial character = entry.getKey();
-
-            boolean previousFlag = entry.getValue();
-            boolean newFlag;
+        for (int i = 0; i < tracked.size(); i++) {
+            Visibility visibility = tracked.get(i);
+            if (visibility == null) {
+                continue;
+            }
+            Spatial character = visibility.entity;
 
-            newFlag = testVisibility(character);
+            boolean previousFlag = visibility.sees;
+            boolean newFlag = testVisibility(character, visibility);
 
-            entry.setValue(newFlag);
+            visibility.sees = newFlag;
 
             if (newFlag != previousFlag) {
                 fog.visibilityChanged(this, character, newFlag);
@@ -85,7 +102,80 @@ public class PlayerEntityAwareness {
         }
     }
 
+    /**
+     * Adds everything that update needs to snapshot. Must be called on main
+     * thread.
+     */
+    public void capture(FogSnapshot snapshot) {
+        if (ownSpatial == null) {
+            return;
+        }
+
+        snapshot.addObserver(ownSpatial);
+        for (Visibility visibility : tracked) {
+            if (visibility != null) {
+                snapshot.addEntity(visibility.entity);
+            }
+        }
+    }
+
+    /**
+     * Same as update but reads only snapshot so it can be called from any
+     * thread as long as nothing else uses this awareness at same time.
+     * Changes are not reported until publishChanges is called.
+     */
+    public void update(FogSnapshot snapshot,
+            VisibilityStatistics statistics) {
+        ObserverState observer = snapshot.getObserver(ownSpatial);
+        if (observer == null) {
+            return;
+        }
+
+        for (Visibility visibility : tracked) {
+            if (visibility == null) {
+                continue;
+            }
+            Spatial entity = visibility.entity;
+            statistics.countTest();
+
+            EntityState state = snapshot.getEntity(entity);
+            boolean newFlag = state != null && testVisibility(entity, state,
+                    observer, visibility, statistics);
+
+            if (newFlag != visibility.sees) {
+                visibility.sees = newFlag;
+                changed.add(visibility);
+            }
+        }
+    }
+
+    /**
+     * Reports changes found by update(FogSnapshot, VisibilityStatistics) to
+     * ServerFog in order they were found. Must be called on main thread.
+     */
+    public void publishChanges() {
+        for (Visibility visibility : changed) {
+            if (visibility.index != -1) {
+                fog.visibilityChanged(this, visibility.entity,
+                        visibility.sees);
+            }
+        }
+
+        changed.clear();
+    }
+
     public boolean testVisibility(Spatial other) {
+        return testVisibility(other, null);
+    }
+
+    /**
+     * @param cache previous line of sight test between these two. If it is
+     * given and nothing has moved much, its result is used.
+     */
+    private boolean testVisibility(Spatial other, Visibility cache) {
+        VisibilityStatistics statistics = fog.getVisibilityStatistics();
+        statistics.countTest();
+
         if (other == null) {
             return false;
         }
@@ -98,62 +188,62 @@ public class PlayerEntityAwareness {
                     playerId);
             return false;
         }
+
+        FogSnapshot.captureEntity(other, entityScratch);
+        FogSnapshot.captureObserver(getOwnSpatial(), observerScratch);
+        return testVisibility(other, entityScratch, observerScratch, cache,
+                statistics);
+    }
+
+    private boolean testVisibility(Spatial other, EntityState state,
+            ObserverState observer, Visibility cache,
+            VisibilityStatistics statistics) {
+        if (state.invisibleToAll) {
+            return false;
+        }
         if (other == getOwnSpatial()) {
             return true;
         }
 
-        Vector3f otherLocation;
-
-        RigidBodyControl rigidBody = other.getControl(RigidBodyControl.class);
-        otherLocation = rigidBody != null
-                ? rigidBody.getPhysicsLocation()
-                : other.getLocalTranslation();
-
-        CVisibility cVisibility = other.getControl(CVisibility.class);
-        Vector3f ownLocation = getOwnSpatial().getLocalTranslation();
-        Vector3f closestPoint;
-
-        closestPoint = cVisibility == null
-                ? otherLocation
-                : cVisibility.giveClosestPoint(ownLocation);
+        Vector3f ownLocation = observer.location;
+        Vector3f closestPoint = state.cVisibility == null
+                ? state.location
+                : state.cVisibility.giveClosestPoint(ownLocation,
+                        state.location);
 
         float distanceSquared = closestPoint.distanceSquared(ownLocation);
 
         if (distanceSquared > rangeSquared) {
+            statistics.countCulledByDistance();
             return false;
         }
 
-        CInfluenceInterface influenceInterface
-                = getOwnSpatial().getControl(CInfluenceInterface.class);
-        if (influenceInterface != null
-                && influenceInterface.isBlind()
-                && distanceSquared > BLIND_RANGE_SQUARED) {
+        if (observer.blind && distanceSquared > BLIND_RANGE_SQUARED) {
             return false;
         }
 
-        return wallTest(closestPoint, FastMath.sqrt(distanceSquared));
-    }
-
-    private boolean wallTest(Vector3f location, float distance) {
-        Vector3f direction = _reUsableVec;
-        direction.set(location);
-        direction.subtractLocal(getOwnSpatial().getLocalTranslation())
-                .normalizeLocal();
-
-        CollisionResults collisionResults = new CollisionResults();
+        if (cache != null && cache.wallTested
+                && cache.from.distanceSquared(ownLocation)
+                <= RETEST_DISTANCE_SQUARED
+                && cache.to.distanceSquared(closestPoint)
+                <= RETEST_DISTANCE_SQUARED) {
+            statistics.countReused();
+            return cache.clear;
+        }
 
-        ray.setOrigin(getOwnSpatial().getLocalTranslation());
-        ray.setDirection(direction);
-        ray.setLimit(distance);
-        walls.collideWith(ray, collisionResults);
+        statistics.countOccluderTest();
+        boolean clear = !occluders.isBlocked(ownLocation, closestPoint,
+                occluderQuery);
+        statistics.addSegmentTests(occluderQuery.pollSegmentTests());
 
-        if (collisionResults.size() == 0
-                || collisionResults.getClosestCollision()
-                .getDistance() > distance) {
-            return true;
+        if (cache != null) {
+            cache.wallTested = true;
+            cache.from.set(ownLocation);
+            cache.to.set(closestPoint);
+            cache.clear = clear;
         }
 
-        return false;
+        return clear;
     }
 
     public ServerFog getFog() {
@@ -161,29 +251,100 @@ public class PlayerEntityAwareness {
     }
 
     public boolean isAwareOf(Spatial other) {
+        return isAwareOf(other.getUserData(UserData.ENTITY_ID), other);
+    }
+
+    /**
+     * Same as isAwareOf(Spatial) but does not need to look up entity id.
+     */
+    public boolean isAwareOf(int entityId, Spatial other) {
         if (other == getOwnSpatial() && !((boolean) other
                 .getUserData(UserData.INVISIBLE_TO_ALL))) {
             return true;
         }
-        if (!entityFlags.containsKey(other)) {
+        Visibility visibility = getVisibility(entityId, other);
+        if (visibility == null) {
             return true; // This needs explanation. It seems counter-intuitive
         }
 
-        return entityFlags.get(other);
+        return visibility.sees;
     }
 
     public boolean addEntity(Spatial character) {
-        boolean sees = testVisibility(character);
-        entityFlags.put(character, sees);
-        return sees;
+        if (character == null) {
+            return false;
+        }
+
+        int entityId = character.getUserData(UserData.ENTITY_ID);
+        Visibility visibility = new Visibility(character);
+        visibility.sees = testVisibility(character, visibility);
+
+        int index = entityId & 0xFFFF;
+        if (index >= visibilities.length) {
+            visibilities = Arrays.copyOf(visibilities,
+                    Math.max(index + 1, visibilities.length * 2));
+        }
+
+        Visibility previous = visibilities[index];
+        if (previous != null) {
+            // Same entity added again or id is reused by new entity
+            visibility.index = previous.index;
+            previous.index = -1;
+            tracked.set(visibility.index, visibility);
+        } else {
+            visibility.index = tracked.size();
+            tracked.add(visibility);
+        }
+
+        visibilities[index] = visibility;
+        return visibility.sees;
     }
 
     public boolean removeEntity(Spatial entity) {
-        Boolean saw = entityFlags.remove(entity);
-        if (saw == null) {
+        int entityId = entity.getUserData(UserData.ENTITY_ID);
+        Visibility visibility = getVisibility(entityId, entity);
+        if (visibility == null) {
             return false;
         }
-        return saw;
+
+        visibilities[entityId & 0xFFFF] = null;
+        tracked.set(visibility.index, null);
+        visibility.index = -1;
+        if (++removedCount > tracked.size() / 2) {
+            compact();
+        }
+
+        return visibility.sees;
+    }
+
+    /**
+     * Drops removed visibilities from tracked without changing order of
+     * remaining ones.
+     */
+    private void compact() {
+        int kept = 0;
+        for (int i = 0; i < tracked.size(); i++) {
+            Visibility visibility = tracked.get(i);
+            if (visibility != null) {
+                visibility.index = kept;
+                tracked.set(kept++, visibility);
+            }
+        }
+
+        tracked.subList(kept, tracked.size()).clear();
+        removedCount = 0;
+    }
+
+    private Visibility getVisibility(int entityId, Spatial entity) {
+        int index = entityId & 0xFFFF;
+        if (index >= visibilities.length) {
+            return null;
+        }
+
+        Visibility visibility = visibilities[index];
+        return visibility != null && visibility.entity == entity
+                ? visibility
+                : null;
     }
 
     public Spatial getOwnSpatial() {
@@ -197,4 +358,31 @@ public class PlayerEntityAwareness {
     public void setOwnSpatial(Spatial ownNode) {
         this.ownSpatial = ownNode;
     }
+
+    /**
+     * @return index of this awareness in ServerFog's observer sets or -1
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    private static class Visibility {
+
+        final Spatial entity;
+        // Index in tracked or -1 if entity has been removed
+        int index = -1;
+        boolean sees;
+        boolean wallTested;
+        boolean clear;
+        final Vector3f from = new Vector3f();
+        final Vector3f to = new Vector3f();
+
+        Visibility(Spatial entity) {
+            this.entity = entity;
+        }
+    }
 }
@@ -34,4 +34,12 @@ public class EffectBox {
             effect.execute(root, location, null);
         }
     }
+
+    public void prewarm() {
+        for (IntMap.Entry<WorldEffect> entry : actionEffects) {
+            if (entry.getValue() instanceof PooledEffect) {
+                ((PooledEffect) entry.getValue()).prewarm();
+            }
+        }
+    }
 }
@@ -0,0 +1,116 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.effects;
+
+import arkhados.controls.CTimedExistence;
+import com.jme3.effect.ParticleEmitter;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
+
+/**
+ * Reuses particle emitters of one kind so that firing an effect only
+ * moves and restarts an emitter instead of building new emitter and
+ * material. There are never more than capacity emitters. If all of them
+ * are busy, the one that was fired longest ago is restarted unless it was
+ * fired during this same frame.
+ */
+public class EmitterPool {
+
+    public interface Factory {
+
+        /**
+         * Should return emitter that emits nothing until emitAllParticles
+         * is called. Emitters of same pool should share their material.
+         */
+        ParticleEmitter create();
+    }
+
+    private final ParticleEmitter[] emitters;
+    private final float lifeTime;
+    private final Factory factory;
+    // Index of emitter that is restarted if all are busy
+    private int next = 0;
+
+    /**
+     * @param lifeTime seconds that emitter stays in scene after it has
+     * been fired
+     */
+    public EmitterPool(int capacity, float lifeTime, Factory factory) {
+        this.emitters = new ParticleEmitter[capacity];
+        this.lifeTime = lifeTime;
+        this.factory = factory;
+    }
+
+    /**
+     * Builds all emitters now so that first effects do not have to.
+     */
+    public void prewarm() {
+        for (int i = 0; i < emitters.length; i++) {
+            if (emitters[i] == null) {
+                emitters[i] = create();
+            }
+        }
+    }
+
+    /**
+     * Attaches emitter to root at location and emits all its particles.
+     *
+     * @return fired emitter or null if all emitters were already fired
+     * during this frame
+     */
+    public ParticleEmitter fire(Node root, Vector3f location) {
+        ParticleEmitter emitter = take();
+        if (emitter == null) {
+            return null;
+        }
+
+        emitter.killAllParticles();
+        root.attachChild(emitter);
+        emitter.setLocalTranslation(location);
+        emitter.getControl(CTimedExistence.class).restart();
+        emitter.emitAllParticles();
+        return emitter;
+    }
+
+    private ParticleEmitter take() {
+        for (int i = 0; i < emitters.length; i++) {
+            int index = (next + i) % emitters.length;
+            if (emitters[index] == null) {
+                emitters[index] = create();
+            }
+
+            // CTimedExistence detaches emitter when it is done
+            if (emitters[index].getParent() == null) {
+                next = (index + 1) % emitters.length;
+                return emitters[index];
+            }
+        }
+
+        ParticleEmitter oldest = emitters[next];
+        // Its age has not been updated yet so all were fired in this frame
+        if (oldest.getControl(CTimedExistence.class).getAge() == 0f) {
+            return null;
+        }
+
+        next = (next + 1) % emitters.length;
+        return oldest;
+    }
+
+    private ParticleEmitter create() {
+        ParticleEmitter emitter = factory.create();
+        emitter.addControl(new CTimedExistence(lifeTime));
+        return emitter;
+    }
+}
@@ -27,20 +27,43 @@ import com.jme3.math.ColorRGBA;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Node;
 
-public class RocketExplosionEffect implements WorldEffect {
+public class RocketExplosionEffect implements WorldEffect, PooledEffect {
+
+    // Most explosions that can be visible at same time
+    private static final int CAPACITY = 4;
+    // Pools are created when needed so that server does not load textures
+    private EmitterPool fires;
+    private EmitterPool smokePuffs;
+    private EmitterPool shockwaves;
 
     public RocketExplosionEffect() {
     }
 
-    private ParticleEmitter createSmokePuff() {
+    private void createPools() {
+        Material fireMaterial = createMaterial("Effects/flame.png");
+        Material smokeMaterial = createMaterial("Effects/flame_alpha.png");
+        smokeMaterial.getAdditionalRenderState().setBlendMode(BlendMode.Alpha);
+        Material waveMaterial = createMaterial("Effects/shockwave.png");
+
+        fires = new EmitterPool(CAPACITY, 5f,
+                () -> createFire(fireMaterial));
+        smokePuffs = new EmitterPool(CAPACITY, 5f,
+                () -> createSmokePuff(smokeMaterial));
+        shockwaves = new EmitterPool(CAPACITY, 5f,
+                () -> createShockwave(waveMaterial));
+    }
+
+    private static Material createMaterial(String texture) {
+        Material material = new Material(Globals.assets,
+                "Common/MatDefs/Misc/Particle.j3md");
+        material.setTexture("Texture", Globals.assets.loadTexture(texture));
+        return material;
+    }
+
+    private static ParticleEmitter createSmokePuff(Material material) {
         ParticleEmitter smokePuff = new ParticleEmitter("smoke-puff",
                 ParticleMesh.Type.Triangle, 20);
-        Material mat = new Material(Globals.assets,
-                "Common/MatDefs/Misc/Particle.j3md");
-        mat.setTexture("Texture",
-                Globals.assets.loadTexture("Effects/flame_alpha.png"));
-        mat.getAdditionalRenderState().setBlendMode(BlendMode.Alpha);
-        smokePuff.setMaterial(mat);
+        smokePuff.setMaterial(material);
         smokePuff.setImagesX(2);
         smokePuff.setImagesY(2);
         smokePuff.setSelectRandomImage(true);
@@ -65,19 +88,15 @@ public class RocketExplosionEffect implements WorldEffect {
         return smokePuff;
     }
 
-    private ParticleEmitter createFire() {
+    private static ParticleEmitter createFire(Material material) {
         ParticleEmitter fire = new ParticleEmitter("fire-emitter",
                 ParticleMesh.Type.Triangle, 200);
-        Material material = new Material(Globals.assets,
-                "Common/MatDefs/Misc/Particle.j3md");
-        material.setTexture("Texture",
-                Globals.assets.loadTexture("Effects/flame.png"));
         fire.setMaterial(material);
         fire.setImagesX(2);
         fire.setImagesY(2);
         fire.setSelectRandomImage(true);
         fire.setGravity(Vector3f.ZERO);
-        fire.setParticlesPerSec(100);
+        fire.setParticlesPerSec(0);
         fire.setRandomAngle(true);
         fire.setStartColor(new ColorRGBA(0.95f, 0.150f, 0.0f, 0.40f));
         fire.setEndColor(new ColorRGBA(1.0f, 1.0f, 0.0f, 0.0f));
@@ -92,14 +111,10 @@ public class RocketExplosionEffect implements WorldEffect {
         return fire;
     }
 
-    private ParticleEmitter createShockwave() {
+    private static ParticleEmitter createShockwave(Material material) {
         ParticleEmitter wave = new ParticleEmitter("shockwave-emitter",
                 ParticleMesh.Type.Triangle, 2);
-        Material materialRed = new Material(Globals.assets,
-                "Common/MatDefs/Misc/Particle.j3md");
-        materialRed.setTexture("Texture",
-                Globals.assets.loadTexture("Effects/shockwave.png"));
-        wave.setMaterial(materialRed);
+        wave.setMaterial(material);
         wave.setImagesX(1);
         wave.setImagesY(1);
 
@@ -118,39 +133,35 @@ public class RocketExplosionEffect implements WorldEffect {
         return wave;
     }
 
+    @Override
+    public void prewarm() {
+        if (fires == null) {
+            createPools();
+        }
+        fires.prewarm();
+        smokePuffs.prewarm();
+        shockwaves.prewarm();
+    }
+
     @Override
     public EffectHandle execute(Node root, Vector3f location, String p) {
-        ParticleEmitter fire = createFire();
-        ParticleEmitter smoke = createSmokePuff();
-        ParticleEmitter wave = createShockwave();
+        if (fires == null) {
+            createPools();
+        }
 
-        Node explosion = new Node("explosion");
-        root.attachChild(explosion);
-        explosion.setLocalTranslation(location);
-        explosion.move(0f, 3f, 0f);
+        Vector3f center = location.add(0f, 3f, 0f);
+        fires.fire(root, center);
+        smokePuffs.fire(root, center);
+        shockwaves.fire(root, center);
 
         AudioNode sound = new AudioNode(Globals.assets,
                 "Effects/Sound/FireballExplosion.wav");
         sound.setPositional(true);
         sound.setReverbEnabled(false);
         sound.setVolume(5f);
-
-        explosion.attachChild(fire);
-        explosion.attachChild(smoke);
-        explosion.attachChild(wave);
-        explosion.attachChild(sound);        
-
-
-        
-        explosion.addControl(new CTimedExistence(5f));
-
-        fire.emitAllParticles();
-        smoke.emitAllParticles();
-        wave.emitAllParticles();
-
-        fire.setParticlesPerSec(0);
-        smoke.setParticlesPerSec(0);
-
+        root.attachChild(sound);
+        sound.setLocalTranslation(center);
+        sound.addControl(new CTimedExistence(5f));
 
         sound.play();
         return null;
@@ -15,7 +15,6 @@
 package arkhados.effects;
 
 import arkhados.Globals;
-import arkhados.controls.CTimedExistence;
 import arkhados.spell.spells.rockgolem.Toss;
 import com.jme3.effect.ParticleEmitter;
 import com.jme3.effect.ParticleMesh;
@@ -26,17 +25,25 @@ import com.jme3.math.ColorRGBA;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Node;
 
-public class TossHitEffect implements WorldEffect {
+public class TossHitEffect implements WorldEffect, PooledEffect {
 
-    private ParticleEmitter createParticleEffect() {
-        ParticleEmitter dust = new ParticleEmitter("smoke-puff",
-                ParticleMesh.Type.Triangle, 80);
+    // Created when needed so that server does not load textures
+    private EmitterPool dustClouds;
+
+    private void createPool() {
         Material material = new Material(Globals.assets,
                 "Common/MatDefs/Misc/Particle.j3md");
         material.setTexture("Texture",
                 Globals.assets.loadTexture("Effects/flame_alpha.png"));
         material.getAdditionalRenderState()
                 .setBlendMode(RenderState.BlendMode.Alpha);
+        dustClouds = new EmitterPool(3, 1f,
+                () -> createParticleEffect(material));
+    }
+
+    private static ParticleEmitter createParticleEffect(Material material) {
+        ParticleEmitter dust = new ParticleEmitter("smoke-puff",
+                ParticleMesh.Type.Triangle, 80);
         dust.setMaterial(material);
         dust.setImagesX(2);
         dust.setImagesY(2);
@@ -65,6 +72,14 @@ public class TossHitEffect implements WorldEffect {
         return dust;
     }
 
+    @Override
+    public void prewarm() {
+        if (dustClouds == null) {
+            createPool();
+        }
+        dustClouds.prewarm();
+    }
+
     @Override
     public EffectHandle execute(Node root, Vector3f location, String p) {
         SimpleSoundEffect earthQuake =
@@ -72,11 +87,10 @@ public class TossHitEffect implements WorldEffect {
         earthQuake.setVolume(1.5f);
         earthQuake.execute(root, location, null);
 
-        ParticleEmitter emitter = createParticleEffect();
-        root.attachChild(emitter);
-        emitter.setLocalTranslation(location.add(0, 1f, 0));
-        emitter.emitAllParticles();
-        emitter.addControl(new CTimedExistence(1f));
+        if (dustClouds == null) {
+            createPool();
+        }
+        dustClouds.fire(root, location.add(0, 1f, 0));
         return null;
     }
 }
@@ -0,0 +1,146 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.effects.particle;
+
+import com.jme3.effect.Particle;
+
+/**
+ * Particles of one emitter stored as flat arrays instead of Particle
+ * objects. Live particles are always at indices [0, count) in order they
+ * were emitted. Vectors take three consecutive floats.
+ */
+final class ParticleArrays {
+
+    final int capacity;
+    int count = 0;
+    final float[] position;
+    final float[] velocity;
+    final float[] life;
+    final float[] startLife;
+    final float[] size;
+    final float[] angle;
+    final float[] rotateSpeed;
+    // ABGR like in color buffer
+    final int[] color;
+    final int[] imageIndex;
+    // Influencers only know Particle so it is used while emitting
+    final Particle spawn = new Particle();
+    // Bounds of live particles: min x, y, z and max x, y, z
+    final float[] bounds = new float[6];
+
+    ParticleArrays(int capacity) {
+        this.capacity = capacity;
+        position = new float[capacity * 3];
+        velocity = new float[capacity * 3];
+        life = new float[capacity];
+        startLife = new float[capacity];
+        size = new float[capacity];
+        angle = new float[capacity];
+        rotateSpeed = new float[capacity];
+        color = new int[capacity];
+        imageIndex = new int[capacity];
+    }
+
+    /**
+     * Adds particle with state of spawn.
+     *
+     * @return index of new particle or -1 if there is no room
+     */
+    int add() {
+        if (count >= capacity) {
+            return -1;
+        }
+
+        int i = count++;
+        int v = i * 3;
+        position[v] = spawn.position.x;
+        position[v + 1] = spawn.position.y;
+        position[v + 2] = spawn.position.z;
+        velocity[v] = spawn.velocity.x;
+        velocity[v + 1] = spawn.velocity.y;
+        velocity[v + 2] = spawn.velocity.z;
+        life[i] = spawn.life;
+        startLife[i] = spawn.startlife;
+        size[i] = spawn.size;
+        angle[i] = spawn.angle;
+        rotateSpeed[i] = spawn.rotateSpeed;
+        color[i] = spawn.color.asIntABGR();
+        imageIndex[i] = spawn.imageIndex;
+        return i;
+    }
+
+    /**
+     * Removes particles whose life has run out. Order of remaining
+     * particles does not change.
+     */
+    void compact() {
+        int to = 0;
+        for (int from = 0; from < count; from++) {
+            if (life[from] > 0f) {
+                if (from != to) {
+                    move(from, to);
+                }
+                to++;
+            }
+        }
+
+        count = to;
+    }
+
+    void remove(int index) {
+        life[index] = 0f;
+        compact();
+    }
+
+    void resetBounds() {
+        bounds[0] = bounds[1] = bounds[2] = Float.POSITIVE_INFINITY;
+        bounds[3] = bounds[4] = bounds[5] = Float.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Grows bounds to contain particle at index.
+     */
+    void include(int index, float[] bounds) {
+        int v = index * 3;
+        float s = size[index];
+        float x = position[v];
+        float y = position[v + 1];
+        float z = position[v + 2];
+        bounds[0] = Math.min(bounds[0], x - s);
+        bounds[1] = Math.min(bounds[1], y - s);
+        bounds[2] = Math.min(bounds[2], z - s);
+        bounds[3] = Math.max(bounds[3], x + s);
+        bounds[4] = Math.max(bounds[4], y + s);
+        bounds[5] = Math.max(bounds[5], z + s);
+    }
+
+    private void move(int from, int to) {
+        int f = from * 3;
+        int t = to * 3;
+        position[t] = position[f];
+        position[t + 1] = position[f + 1];
+        position[t + 2] = position[f + 2];
+        velocity[t] = velocity[f];
+        velocity[t + 1] = velocity[f + 1];
+        velocity[t + 2] = velocity[f + 2];
+        life[to] = life[from];
+        startLife[to] = startLife[from];
+        size[to] = size[from];
+        angle[to] = angle[from];
+        rotateSpeed[to] = rotateSpeed[from];
+        color[to] = color[from];
+        imageIndex[to] = imageIndex[from];
+    }
+}
@@ -57,6 +57,8 @@ import com.jme3.scene.Spatial;
 import com.jme3.scene.control.Control;
 import com.jme3.util.TempVars;
 import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * <code>ParticleEmitter</code> is a special kind of geometry which simulates a
@@ -78,16 +80,19 @@ public class ParticleEmitter extends Geometry {
     private boolean enabled = true;
     private static final EmitterShape DEFAULT_SHAPE = new EmitterPointShape(Vector3f.ZERO);
     private static final ParticleInfluencer DEFAULT_INFLUENCER = new DefaultParticleInfluencer();
+    // Emitters with at least this many live particles update in parallel
+    // if it is enabled
+    private static final int PARALLEL_THRESHOLD = 4096;
+    private static final int MIN_CHUNK_SIZE = 1024;
     private ParticleEmitterControl control;
     private EmitterShape shape = DEFAULT_SHAPE;
     private ParticleTriMesh particleMesh;
     private ParticleInfluencer particleInfluencer = DEFAULT_INFLUENCER;
     private ParticleMesh.Type meshType;
-    private Particle[] particles;
-    private int firstUnUsed;
-    private int lastUsed;
-//    private int next = 0;
-//    private ArrayList<Integer> unusedIndices = new ArrayList<Integer>();
+    private ParticleArrays particles;
+    private boolean parallelUpdate = false;
+    // Created when first needed and reused on every parallel update
+    private ChunkUpdate[] chunkUpdates;
     private boolean randomAngle;
     private boolean selectRandomImage;
     private boolean facingVelocity;
@@ -106,8 +111,6 @@ public class ParticleEmitter extends Geometry {
     private float startSize = 0.2f;
     private float endSize = 2f;
     private boolean worldSpace = true;
-    //variable that helps with computations
-    private transient Vector3f temp = new Vector3f();
 
     private Vector3f lastPos;
 
@@ -164,7 +167,8 @@ public class ParticleEmitter extends Geometry {
         clone.shape = shape.deepClone();
 
         // Reinitialize particle list
-        clone.setNumParticles(particles.length);
+        clone.setNumParticles(particles.capacity);
+        clone.chunkUpdates = null;
 
         clone.faceNormal = faceNormal.clone();
         clone.startColor = startColor.clone();
@@ -182,7 +186,7 @@ public class ParticleEmitter extends Geometry {
         clone.particleMesh = new ParticleTriMesh();
         clone.setMesh(clone.particleMesh);
 
-        clone.particleMesh.initParticleData(clone, clone.particles.length);
+        clone.particleMesh.initParticleData(clone, clone.particles.capacity);
 
         clone.particleMesh.setImagesXY(clone.imagesX, clone.imagesY);
 
@@ -284,7 +288,7 @@ public class ParticleEmitter extends Geometry {
         particleMesh = new ParticleTriMesh();
         this.setMesh(particleMesh);
 
-        this.setNumParticles(particles.length);
+        this.setNumParticles(particles.capacity);
     }
 
     /**
@@ -320,8 +324,7 @@ public class ParticleEmitter extends Geometry {
      * @return the number of visible particles
      */
     public int getNumVisibleParticles() {
-//        return unusedIndices.size() + next;
-        return lastUsed + 1;
+        return particles.count;
     }
 
     /**
@@ -332,34 +335,33 @@ public class ParticleEmitter extends Geometry {
      * same time with this emitter.
      */
     public final void setNumParticles(int numParticles) {
-        particles = new Particle[numParticles];
-        for (int i = 0; i < numParticles; i++) {
-            particles[i] = new Particle();
-        }
+        particles = new ParticleArrays(numParticles);
         //We have to reinit the mesh's buffers with the new size
-        particleMesh.initParticleData(this, particles.length);
+        particleMesh.initParticleData(this, numParticles);
         particleMesh.setImagesXY(this.imagesX, this.imagesY);
-        firstUnUsed = 0;
-        lastUsed = -1;
     }
 
     public int getMaxNumParticles() {
-        return particles.length;
+        return particles.capacity;
     }
 
     /**
-     * Returns a list of all particles (shouldn't be used in most cases).
-     *
-     * <p>
-     * This includes both existing and non-existing particles. The size of the
-     * array is set to the <code>numParticles</code> value specified in the
-     * constructor or {@link ParticleEmitter#setNumParticles(int) }
-     * method.
-     *
-     * @return a list of all particles.
+     * Returns true if large emitters update their particles on multiple
+     * threads.
+     */
+    public boolean isParallelUpdate() {
+        return parallelUpdate;
+    }
+
+    /**
+     * Set to true to update particles on multiple threads when there are
+     * thousands of them. Smaller emitters are always updated on calling
+     * thread because handing work to other threads would cost more.
+     * Emitting, removing dead particles and filling vertex buffers stay on
+     * calling thread.
      */
-    public Particle[] getParticles() {
-        return particles;
+    public void setParallelUpdate(boolean parallelUpdate) {
+        this.parallelUpdate = parallelUpdate;
     }
 
     /**
@@ -803,13 +805,14 @@ public class ParticleEmitter extends Geometry {
         this.particleInfluencer.setVelocityVariation(variation);
     }
 
-    private Particle emitParticle(Vector3f min, Vector3f max) {
-        int idx = lastUsed + 1;
-        if (idx >= particles.length) {
-            return null;
-        }
-
-        Particle p = particles[idx];
+    /**
+     * @return index of emitted particle or -1 if there was no room
+     */
+    private int emitParticle(float[] bounds) {
+        Particle p = particles.spawn;
+        p.imageIndex = 0;
+        p.angle = 0;
+        p.rotateSpeed = 0;
         if (selectRandomImage) {
             p.imageIndex = FastMath.nextRandomInt(0, imagesY - 1) * imagesX + FastMath.nextRandomInt(0, imagesX - 1);
         }
@@ -832,14 +835,11 @@ public class ParticleEmitter extends Geometry {
             p.rotateSpeed = rotateSpeed * (0.2f + (FastMath.nextRandomFloat() * 2f - 1f) * .8f);
         }
 
-        temp.set(p.position).addLocal(p.size, p.size, p.size);
-        max.maxLocal(temp);
-        temp.set(p.position).subtractLocal(p.size, p.size, p.size);
-        min.minLocal(temp);
-
-        ++lastUsed;
-        firstUnUsed = idx + 1;
-        return p;
+        int index = particles.add();
+        if (index != -1) {
+            particles.include(index, bounds);
+        }
+        return index;
     }
 
     /**
@@ -847,7 +847,7 @@ public class ParticleEmitter extends Geometry {
      * which are currently inactive will be spawned immediately.
      */
     public void emitAllParticles() {
-        emitParticles(particles.length);
+        emitParticles(particles.capacity);
     }
 
     /**
@@ -857,33 +857,27 @@ public class ParticleEmitter extends Geometry {
         // Force world transform to update
         this.getWorldTransform();
 
-        TempVars vars = TempVars.get();
-
         BoundingBox bbox = (BoundingBox) this.getMesh().getBound();
-
-        Vector3f min = vars.vect1;
-        Vector3f max = vars.vect2;
-
-        bbox.getMin(min);
-        bbox.getMax(max);
-
-        if (!Vector3f.isValidVector(min)) {
-            min.set(Vector3f.POSITIVE_INFINITY);
-        }
-        if (!Vector3f.isValidVector(max)) {
-            max.set(Vector3f.NEGATIVE_INFINITY);
+        float[] bounds = particles.bounds;
+        particles.resetBounds();
+        if (particles.count > 0) {
+            Vector3f center = bbox.getCenter();
+            bounds[0] = center.x - bbox.getXExtent();
+            bounds[1] = center.y - bbox.getYExtent();
+            bounds[2] = center.z - bbox.getZExtent();
+            bounds[3] = center.x + bbox.getXExtent();
+            bounds[4] = center.y + bbox.getYExtent();
+            bounds[5] = center.z + bbox.getZExtent();
         }
 
         for (int i = 0; i < num; i++) {
-            if (emitParticle(min, max) == null) {
+            if (emitParticle(bounds) == -1) {
                 break;
             }
         }
 
-        bbox.setMinMax(min, max);
+        setBounds(bbox, bounds);
         this.setBoundRefresh();
-
-        vars.release();
     }
 
     /**
@@ -891,104 +885,141 @@ public class ParticleEmitter extends Geometry {
      * particles will be dead and no longer visible.
      */
     public void killAllParticles() {
-        for (int i = 0; i < particles.length; ++i) {
-            if (particles[i].life > 0) {
-                this.freeParticle(i);
-            }
-        }
+        particles.count = 0;
     }
 
     /**
-     * Kills the particle at the given index.
+     * Kills the particle at the given index. Particles after it move one
+     * index down.
      *
      * @param index The index of the particle to kill
-     * @see #getParticles()
      */
     public void killParticle(int index) {
-        freeParticle(index);
+        particles.remove(index);
     }
 
-    private void freeParticle(int idx) {
-        Particle p = particles[idx];
-        p.life = 0;
-        p.size = 0f;
-        p.color.set(0, 0, 0, 0);
-        p.imageIndex = 0;
-        p.angle = 0;
-        p.rotateSpeed = 0;
-
-        if (idx == lastUsed) {
-            while (lastUsed >= 0 && particles[lastUsed].life == 0) {
-                lastUsed--;
+    /**
+     * Ages particles in [from, to) by tpf and grows bounds to contain them.
+     * Particles whose life runs out are only marked dead so that this can
+     * be run for separate ranges at same time.
+     *
+     * @return true if some particle died
+     */
+    private boolean updateParticles(int from, int to, float tpf,
+            float[] bounds) {
+        ParticleArrays p = particles;
+        float[] position = p.position;
+        float[] velocity = p.velocity;
+        float[] life = p.life;
+        float[] startLife = p.startLife;
+        float[] size = p.size;
+        float[] angle = p.angle;
+        float[] rotateSpeed = p.rotateSpeed;
+        int[] color = p.color;
+        int[] imageIndex = p.imageIndex;
+
+        float gravityX = gravity.x * tpf;
+        float gravityY = gravity.y * tpf;
+        float gravityZ = gravity.z * tpf;
+        ColorRGBA start = startColor;
+        ColorRGBA end = endColor;
+        float fromSize = startSize;
+        float toSize = endSize;
+        boolean animateImage = !selectRandomImage;
+        int images = imagesX;
+        int imageRows = imagesY;
+
+        float minX = bounds[0];
+        float minY = bounds[1];
+        float minZ = bounds[2];
+        float maxX = bounds[3];
+        float maxY = bounds[4];
+        float maxZ = bounds[5];
+
+        boolean died = false;
+        for (int i = from; i < to; i++) {
+            float left = life[i] - tpf;
+            if (left <= 0) {
+                life[i] = 0;
+                died = true;
+                continue;
+            }
+            life[i] = left;
+
+            // applying gravity
+            int v = i * 3;
+            float velocityX = velocity[v] - gravityX;
+            float velocityY = velocity[v + 1] - gravityY;
+            float velocityZ = velocity[v + 2] - gravityZ;
+            velocity[v] = velocityX;
+            velocity[v + 1] = velocityY;
+            velocity[v + 2] = velocityZ;
+            float x = position[v] + velocityX * tpf;
+            float y = position[v + 1] + velocityY * tpf;
+            float z = position[v + 2] + velocityZ * tpf;
+            position[v] = x;
+            position[v + 1] = y;
+            position[v + 2] = z;
+
+            // affecting color, size and angle
+            float b = (startLife[i] - left) / startLife[i];
+            float a = 1f - b;
+            color[i] = toIntABGR(a * start.r + b * end.r,
+                    a * start.g + b * end.g,
+                    a * start.b + b * end.b,
+                    a * start.a + b * end.a);
+            float s = FastMath.interpolateLinear(b, fromSize, toSize);
+            size[i] = s;
+            angle[i] += rotateSpeed[i] * tpf;
+
+            // Computing bounding volume
+            minX = x - s < minX ? x - s : minX;
+            minY = y - s < minY ? y - s : minY;
+            minZ = z - s < minZ ? z - s : minZ;
+            maxX = x + s > maxX ? x + s : maxX;
+            maxY = y + s > maxY ? y + s : maxY;
+            maxZ = z + s > maxZ ? z + s : maxZ;
+
+            if (animateImage) {
+                imageIndex[i] = (int) (b * images * imageRows);
             }
         }
-        if (idx < firstUnUsed) {
-            firstUnUsed = idx;
-        }
-    }
 
-    private void swap(int idx1, int idx2) {
-        Particle p1 = particles[idx1];
-        particles[idx1] = particles[idx2];
-        particles[idx2] = p1;
+        bounds[0] = minX;
+        bounds[1] = minY;
+        bounds[2] = minZ;
+        bounds[3] = maxX;
+        bounds[4] = maxY;
+        bounds[5] = maxZ;
+        return died;
     }
 
-    private void updateParticle(Particle p, float tpf, Vector3f min, Vector3f max) {
-        // applying gravity
-        p.velocity.x -= gravity.x * tpf;
-        p.velocity.y -= gravity.y * tpf;
-        p.velocity.z -= gravity.z * tpf;
-        temp.set(p.velocity).multLocal(tpf);
-        p.position.addLocal(temp);
-
-        // affecting color, size and angle
-        float b = (p.startlife - p.life) / p.startlife;
-        p.color.interpolateLocal(startColor, endColor, b);
-        p.size = FastMath.interpolateLinear(b, startSize, endSize);
-        p.angle += p.rotateSpeed * tpf;
-
-        // Computing bounding volume
-        temp.set(p.position).addLocal(p.size, p.size, p.size);
-        max.maxLocal(temp);
-        temp.set(p.position).subtractLocal(p.size, p.size, p.size);
-        min.minLocal(temp);
-
-        if (!selectRandomImage) {
-            p.imageIndex = (int) (b * imagesX * imagesY);
-        }
+    /**
+     * Same as ColorRGBA.asIntABGR
+     */
+    private static int toIntABGR(float r, float g, float b, float a) {
+        return (((int) (a * 255) & 0xFF) << 24)
+                | (((int) (b * 255) & 0xFF) << 16)
+                | (((int) (g * 255) & 0xFF) << 8)
+                | (((int) (r * 255) & 0xFF));
     }
 
     private void updateParticleState(float tpf) {
         // Force world transform to update
         this.getWorldTransform();
 
-        TempVars vars = TempVars.get();
-
-        Vector3f min = vars.vect1.set(Vector3f.POSITIVE_INFINITY);
-        Vector3f max = vars.vect2.set(Vector3f.NEGATIVE_INFINITY);
-
-        for (int i = 0; i < particles.length; ++i) {
-            Particle p = particles[i];
-            if (p.life == 0) { // particle is dead
-//                assert i <= firstUnUsed;
-                continue;
-            }
-
-            p.life -= tpf;
-            if (p.life <= 0) {
-                this.freeParticle(i);
-                continue;
-            }
+        float[] bounds = particles.bounds;
+        particles.resetBounds();
 
-            updateParticle(p, tpf, min, max);
+        boolean died;
+        if (parallelUpdate && particles.count >= PARALLEL_THRESHOLD) {
+            died = parallelUpdate(tpf, bounds);
+        } else {
+            died = updateParticles(0, particles.count, tpf, bounds);
+        }
 
-            if (firstUnUsed < i) {
-                this.swap(firstUnUsed, i);
-                if (i == lastUsed) {
-                    lastUsed = firstUnUsed;
-                }
-                firstUnUsed++;
-            }
+        if (died) {
+            particles.compact();
         }
 
         // Spawns particles within the tpf timeslot with proper age
@@ -997,17 +1028,22 @@ public class ParticleEmitter extends Geometry {
         tpf += timeDifference;
         while (tpf > interval) {
             tpf -= interval;
-            Particle p = emitParticle(min, max);
-            if (p != null) {
-                p.life -= tpf;
+            int i = emitParticle(bounds);
+            if (i != -1) {
                 if (lastPos != null && isInWorldSpace()) {
-                    p.position.interpolateLocal(lastPos, 1 - tpf / originalTpf);
+                    float change = 1 - tpf / originalTpf;
+                    float[] position = particles.position;
+                    int v = i * 3;
+                    position[v] = (1 - change) * position[v]
+                            + change * lastPos.x;
+                    position[v + 1] = (1 - change) * position[v + 1]
+                            + change * lastPos.y;
+                    position[v + 2] = (1 - change) * position[v + 2]
+                            + change * lastPos.z;
                 }
 
-                if (p.life <= 0) {
-                    freeParticle(lastUsed);
-                } else {
-                    updateParticle(p, tpf, min, max);
+                if (updateParticles(i, i + 1, tpf, bounds)) {
+                    particles.count--;
                 }
             }
         }
@@ -1018,10 +1054,105 @@ public class ParticleEmitter extends Geometry {
         
         lastPos.set(getWorldTranslation());
 
-        BoundingBox bbox = (BoundingBox) this.getMesh().getBound();
-        bbox.setMinMax(min, max);
+        setBounds((BoundingBox) this.getMesh().getBound(), bounds);
         this.setBoundRefresh();
+    }
 
+    /**
+     * Updates live particles in chunks on common fork-join pool. Calling
+     * thread updates first chunk itself and waits for the rest.
+     *
+     * @return true if any particle died
+     */
+    private boolean parallelUpdate(float tpf, float[] bounds) {
+        int count = particles.count;
+        int chunks = Math.min(ForkJoinPool.getCommonPoolParallelism() + 1,
+                count / MIN_CHUNK_SIZE);
+        if (chunkUpdates == null || chunkUpdates.length < chunks) {
+            chunkUpdates = new ChunkUpdate[chunks];
+            for (int i = 0; i < chunks; i++) {
+                chunkUpdates[i] = new ChunkUpdate();
+            }
+        }
+
+        for (int i = 0; i < chunks; i++) {
+            int from = (int) ((long) count * i / chunks);
+            int to = (int) ((long) count * (i + 1) / chunks);
+            chunkUpdates[i].prepare(this, from, to, tpf);
+        }
+
+        for (int i = 1; i < chunks; i++) {
+            chunkUpdates[i].fork();
+        }
+        chunkUpdates[0].quietlyInvoke();
+
+        // Every chunk is waited for before anything is thrown so that no
+        // chunk is left running
+        boolean died = false;
+        Throwable failure = null;
+        for (int i = 0; i < chunks; i++) {
+            ChunkUpdate chunk = chunkUpdates[i];
+            if (i > 0) {
+                chunk.quietlyJoin();
+            }
+            chunk.emitter = null;
+            if (chunk.isCompletedAbnormally()) {
+                failure = chunk.getException();
+                continue;
+            }
+
+            float[] chunkBounds = chunk.bounds;
+            for (int axis = 0; axis < 3; axis++) {
+                bounds[axis] = Math.min(bounds[axis], chunkBounds[axis]);
+                bounds[axis + 3] = Math.max(bounds[axis + 3],
+                        chunkBounds[axis + 3]);
+            }
+            died |= chunk.died;
+        }
+
+        if (failure != null) {
+            throw new IllegalStateException(
+                    "Parallel particle update failed", failure);
+        }
+
+        return died;
+    }
+
+    /**
+     * Updates one range of live particles. Each chunk has bounds of its own
+     * so chunks never write same memory.
+     */
+    private static class ChunkUpdate extends RecursiveAction {
+
+        final float[] bounds = new float[6];
+        ParticleEmitter emitter;
+        int from;
+        int to;
+        float tpf;
+        boolean died;
+
+        void prepare(ParticleEmitter emitter, int from, int to, float tpf) {
+            reinitialize();
+            this.emitter = emitter;
+            this.from = from;
+            this.to = to;
+            this.tpf = tpf;
+            died = false;
+            bounds[0] = bounds[1] = bounds[2] = Float.POSITIVE_INFINITY;
+            bounds[3] = bounds[4] = bounds[5] = Float.NEGATIVE_INFINITY;
+        }
+
+        @Override
+        protected void compute() {
+            died = emitter.updateParticles(from, to, tpf, bounds);
+        }
+    }
+
+    private static void setBounds(BoundingBox bbox, float[] bounds) {
+        TempVars vars = TempVars.get();
+        Vector3f min = vars.vect1.set(bounds[0], bounds[1], bounds[2]);
+        Vector3f max = vars.vect2.set(bounds[3], bounds[4], bounds[5]);
+        bbox.setMinMax(min, max);
         vars.release();
     }
 
@@ -1101,7 +1232,7 @@ public class ParticleEmitter extends Geometry {
         oc.write(shape, "shape", DEFAULT_SHAPE);
         oc.write(meshType, "meshType", ParticleMesh.Type.Triangle);
         oc.write(enabled, "enabled", true);
-        oc.write(particles.length, "numParticles", 0);
+        oc.write(particles.capacity, "numParticles", 0);
         oc.write(particlesPerSec, "particlesPerSec", 0);
         oc.write(lowLife, "lowLife", 0);
         oc.write(highLife, "highLife", 0);
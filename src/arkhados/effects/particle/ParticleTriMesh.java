@@ -31,7 +31,6 @@
  */
 package arkhados.effects.particle;
 
-import com.jme3.effect.Particle;
 import com.jme3.math.FastMath;
 import com.jme3.math.Matrix3f;
 import com.jme3.math.Vector3f;
@@ -41,10 +40,11 @@ import com.jme3.scene.VertexBuffer;
 import com.jme3.scene.VertexBuffer.Format;
 import com.jme3.scene.VertexBuffer.Usage;
 import com.jme3.util.BufferUtils;
-import com.jme3.util.TempVars;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
+import java.util.Arrays;
 
 public class ParticleTriMesh extends Mesh {
 
@@ -54,6 +54,21 @@ public class ParticleTriMesh extends Mesh {
 //    private ParticleComparator comparator = new ParticleComparator();
     private ParticleEmitter emitter;
 //    private Particle[] particlesCopy;
+    // Vertex data is written to these first and then copied to buffers
+    private float[] vertices;
+    private int[] vertexColors;
+    private float[] imageCoords;
+    private IntBuffer colorInts;
+    // Number of particles whose quads were written last time
+    private int filled;
+    private final Vector3f camUp = new Vector3f();
+    private final Vector3f camLeft = new Vector3f();
+    private final Vector3f camDir = new Vector3f();
+    private final Vector3f faceUp = new Vector3f();
+    private final Vector3f faceLeft = new Vector3f();
+    private final Vector3f faceAxis = new Vector3f();
+    private final Vector3f faceUpTurn = new Vector3f();
+    private final Vector3f faceLeftTurn = new Vector3f();
 
     public void initParticleData(ParticleEmitter emitter, int numParticles) {
         setMode(Mesh.Mode.Triangles);
@@ -61,6 +76,10 @@ public class ParticleTriMesh extends Mesh {
         this.emitter = emitter;
 
 //        particlesCopy = new Particle[numParticles];
+        vertices = new float[numParticles * 12];
+        vertexColors = new int[numParticles * 4];
+        imageCoords = new float[numParticles * 8];
+        filled = 0;
 
         // set positions
         FloatBuffer pb = BufferUtils.createVector3Buffer(numParticles * 4);
@@ -76,6 +95,8 @@ public class ParticleTriMesh extends Mesh {
         
         // set colors
         ByteBuffer cb = BufferUtils.createByteBuffer(numParticles * 4 * 4);
+        // Same byte order as cb so ints go to buffer as putInt would put them
+        colorInts = cb.asIntBuffer();
         buf = getBuffer(VertexBuffer.Type.Color);
         if (buf != null) {
             buf.updateData(cb);
@@ -144,14 +165,8 @@ public class ParticleTriMesh extends Mesh {
         }
     }
 
-    public void updateParticleData(Particle[] particles, Camera cam, Matrix3f inverseRotation) {
-//        System.arraycopy(particles, 0, particlesCopy, 0, particlesCopy.length);
-//        comparator.setCamera(cam);
-//        Arrays.sort(particlesCopy, comparator);
-//        SortUtil.qsort(particlesCopy, comparator);
-//        SortUtil.msort(particles, particlesCopy, comparator);
-//        particles = particlesCopy;
-
+    public void updateParticleData(ParticleArrays particles, Camera cam,
+            Matrix3f inverseRotation) {
         VertexBuffer pvb = getBuffer(VertexBuffer.Type.Position);
         FloatBuffer positions = (FloatBuffer) pvb.getData();
 
@@ -161,120 +176,157 @@ public class ParticleTriMesh extends Mesh {
         VertexBuffer tvb = getBuffer(VertexBuffer.Type.TexCoord);
         FloatBuffer texcoords = (FloatBuffer) tvb.getData();
 
-        Vector3f camUp   = cam.getUp();
-        Vector3f camLeft = cam.getLeft();
-        Vector3f camDir  = cam.getDirection();
-
-        inverseRotation.multLocal(camUp);
-        inverseRotation.multLocal(camLeft);
-        inverseRotation.multLocal(camDir);
+        inverseRotation.multLocal(cam.getUp(camUp));
+        inverseRotation.multLocal(cam.getLeft(camLeft));
+        inverseRotation.multLocal(cam.getDirection(camDir));
 
         boolean facingVelocity = emitter.isFacingVelocity();
-
-        Vector3f up = new Vector3f(),
-                 left = new Vector3f();
-
-        if (!facingVelocity){
-            up.set(camUp);
-            left.set(camLeft);
+        Vector3f faceNormal = emitter.getFaceNormal();
+        if (!facingVelocity && faceNormal != null) {
+            faceUp.set(faceNormal).crossLocal(Vector3f.UNIT_X);
+            faceNormal.cross(faceUp, faceLeft);
+            // Rotating around face normal moves up and left towards these
+            faceAxis.set(faceNormal).normalizeLocal();
+            faceAxis.cross(faceUp, faceUpTurn);
+            faceAxis.cross(faceLeft, faceLeftTurn);
         }
 
-        // update data in vertex buffers
-        positions.clear();
-        colors.clear();
-        texcoords.clear();
-        Vector3f faceNormal = emitter.getFaceNormal();
-        
-        for (int i = 0; i < particles.length; i++){
-            Particle p = particles[i];
-            boolean dead = p.life == 0;
-            if (dead){
-                positions.put(0).put(0).put(0);
-                positions.put(0).put(0).put(0);
-                positions.put(0).put(0).put(0);
-                positions.put(0).put(0).put(0);
-                continue;
-            }
-            
-            if (facingVelocity){
-                left.set(p.velocity).normalizeLocal();
-                camDir.cross(left, up);
-                up.multLocal(p.size);
-                left.multLocal(p.size);
-            }else if (faceNormal != null){
-                up.set(faceNormal).crossLocal(Vector3f.UNIT_X);
-                faceNormal.cross(up, left);
-                up.multLocal(p.size);
-                left.multLocal(p.size);
-                if (p.angle != 0) {
-                    TempVars vars = TempVars.get();
-                    vars.vect1.set(faceNormal).normalizeLocal();
-                    vars.quat1.fromAngleNormalAxis(p.angle, vars.vect1);
-                    vars.quat1.multLocal(left);
-                    vars.quat1.multLocal(up);
-                    vars.release();
+        int count = particles.count;
+        float[] position = particles.position;
+        float[] velocity = particles.velocity;
+        float[] size = particles.size;
+        float[] angle = particles.angle;
+        int[] color = particles.color;
+
+        for (int i = 0; i < count; i++) {
+            float s = size[i];
+            float upX, upY, upZ, leftX, leftY, leftZ;
+
+            if (facingVelocity) {
+                int v = i * 3;
+                leftX = velocity[v];
+                leftY = velocity[v + 1];
+                leftZ = velocity[v + 2];
+                float lengthSquared = leftX * leftX + leftY * leftY
+                        + leftZ * leftZ;
+                if (lengthSquared != 1f && lengthSquared != 0f) {
+                    float inverse = 1f / FastMath.sqrt(lengthSquared);
+                    leftX *= inverse;
+                    leftY *= inverse;
+                    leftZ *= inverse;
                 }
-            }else if (p.angle != 0){
-                float cos = FastMath.cos(p.angle) * p.size;
-                float sin = FastMath.sin(p.angle) * p.size;
-
-                left.x = camLeft.x * cos + camUp.x * sin;
-                left.y = camLeft.y * cos + camUp.y * sin;
-                left.z = camLeft.z * cos + camUp.z * sin;
-
-                up.x = camLeft.x * -sin + camUp.x * cos;
-                up.y = camLeft.y * -sin + camUp.y * cos;
-                up.z = camLeft.z * -sin + camUp.z * cos;
-            }else{
-                up.set(camUp);
-                left.set(camLeft);
-                up.multLocal(p.size);
-                left.multLocal(p.size);
+                upX = (camDir.y * leftZ - camDir.z * leftY) * s;
+                upY = (camDir.z * leftX - camDir.x * leftZ) * s;
+                upZ = (camDir.x * leftY - camDir.y * leftX) * s;
+                leftX *= s;
+                leftY *= s;
+                leftZ *= s;
+            } else if (faceNormal != null) {
+                float cos = s;
+                float sin = 0f;
+                if (angle[i] != 0) {
+                    cos = FastMath.cos(angle[i]) * s;
+                    sin = FastMath.sin(angle[i]) * s;
+                }
+                upX = faceUp.x * cos + faceUpTurn.x * sin;
+                upY = faceUp.y * cos + faceUpTurn.y * sin;
+                upZ = faceUp.z * cos + faceUpTurn.z * sin;
+                leftX = faceLeft.x * cos + faceLeftTurn.x * sin;
+                leftY = faceLeft.y * cos + faceLeftTurn.y * sin;
+                leftZ = faceLeft.z * cos + faceLeftTurn.z * sin;
+            } else if (angle[i] != 0) {
+                float cos = FastMath.cos(angle[i]) * s;
+                float sin = FastMath.sin(angle[i]) * s;
+
+                leftX = camLeft.x * cos + camUp.x * sin;
+                leftY = camLeft.y * cos + camUp.y * sin;
+                leftZ = camLeft.z * cos + camUp.z * sin;
+
+                upX = camLeft.x * -sin + camUp.x * cos;
+                upY = camLeft.y * -sin + camUp.y * cos;
+                upZ = camLeft.z * -sin + camUp.z * cos;
+            } else {
+                upX = camUp.x * s;
+                upY = camUp.y * s;
+                upZ = camUp.z * s;
+                leftX = camLeft.x * s;
+                leftY = camLeft.y * s;
+                leftZ = camLeft.z * s;
             }
 
-            positions.put(p.position.x + left.x + up.x)
-                     .put(p.position.y + left.y + up.y)
-                     .put(p.position.z + left.z + up.z);
-
-            positions.put(p.position.x - left.x + up.x)
-                     .put(p.position.y - left.y + up.y)
-                     .put(p.position.z - left.z + up.z);
-
-            positions.put(p.position.x + left.x - up.x)
-                     .put(p.position.y + left.y - up.y)
-                     .put(p.position.z + left.z - up.z);
-
-            positions.put(p.position.x - left.x - up.x)
-                     .put(p.position.y - left.y - up.y)
-                     .put(p.position.z - left.z - up.z);
+            int p = i * 3;
+            float x = position[p];
+            float y = position[p + 1];
+            float z = position[p + 2];
+            int o = i * 12;
+            float[] out = vertices;
+
+            out[o] = x + leftX + upX;
+            out[o + 1] = y + leftY + upY;
+            out[o + 2] = z + leftZ + upZ;
+
+            out[o + 3] = x - leftX + upX;
+            out[o + 4] = y - leftY + upY;
+            out[o + 5] = z - leftZ + upZ;
+
+            out[o + 6] = x + leftX - upX;
+            out[o + 7] = y + leftY - upY;
+            out[o + 8] = z + leftZ - upZ;
+
+            out[o + 9] = x - leftX - upX;
+            out[o + 10] = y - leftY - upY;
+            out[o + 11] = z - leftZ - upZ;
+
+            int c = i * 4;
+            int abgr = color[i];
+            vertexColors[c] = abgr;
+            vertexColors[c + 1] = abgr;
+            vertexColors[c + 2] = abgr;
+            vertexColors[c + 3] = abgr;
+        }
 
-            if (uniqueTexCoords){
-                int imgX = p.imageIndex % imagesX;
-                int imgY = (p.imageIndex - imgX) / imagesY;
+        if (uniqueTexCoords) {
+            int[] imageIndex = particles.imageIndex;
+            for (int i = 0; i < count; i++) {
+                int imgX = imageIndex[i] % imagesX;
+                int imgY = (imageIndex[i] - imgX) / imagesY;
 
                 float startX = ((float) imgX) / imagesX;
                 float startY = ((float) imgY) / imagesY;
                 float endX   = startX + (1f / imagesX);
                 float endY   = startY + (1f / imagesY);
 
-                texcoords.put(startX).put(endY);
-                texcoords.put(endX).put(endY);
-                texcoords.put(startX).put(startY);
-                texcoords.put(endX).put(startY);
+                int t = i * 8;
+                imageCoords[t] = startX;
+                imageCoords[t + 1] = endY;
+                imageCoords[t + 2] = endX;
+                imageCoords[t + 3] = endY;
+                imageCoords[t + 4] = startX;
+                imageCoords[t + 5] = startY;
+                imageCoords[t + 6] = endX;
+                imageCoords[t + 7] = startY;
             }
+        }
 
-            int abgr = p.color.asIntABGR();
-            colors.putInt(abgr);
-            colors.putInt(abgr);
-            colors.putInt(abgr);
-            colors.putInt(abgr);
+        // Quads of particles that died since last update collapse to origin
+        if (filled > count) {
+            Arrays.fill(vertices, count * 12, filled * 12, 0f);
         }
+        int written = Math.max(count, filled);
+        filled = count;
 
+        // update data in vertex buffers
+        positions.clear();
+        positions.put(vertices, 0, written * 12);
         positions.clear();
+
+        colorInts.clear();
+        colorInts.put(vertexColors, 0, count * 4);
         colors.clear();
-        if (!uniqueTexCoords)
-            texcoords.clear();
-        else{
+
+        texcoords.clear();
+        if (uniqueTexCoords) {
+            texcoords.put(imageCoords, 0, count * 8);
             texcoords.clear();
             tvb.updateData(texcoords);
         }
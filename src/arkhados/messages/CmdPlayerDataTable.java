@@ -16,6 +16,7 @@
 package arkhados.messages;
 
 import com.jme3.network.serializing.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 import arkhados.PlayerData;
 import arkhados.net.Command;
@@ -39,7 +40,8 @@ public class CmdPlayerDataTable implements Command {
     }
 
     public static CmdPlayerDataTable makeFromPlayerDataList() {        
-        return new CmdPlayerDataTable(PlayerData.getPlayers());
+        // Copy because list of PlayerData is read-only
+        return new CmdPlayerDataTable(new ArrayList<>(PlayerData.getPlayers()));
     }
 
     @Override
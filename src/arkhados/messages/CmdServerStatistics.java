@@ -0,0 +1,67 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.messages;
+
+import arkhados.net.Command;
+import com.jme3.network.serializing.Serializable;
+
+/**
+ * Tick times of server's latest full second. Sent as response to
+ * Topic.SERVER_STATISTICS_REQUEST.
+ */
+@Serializable
+public class CmdServerStatistics implements Command {
+
+    private float averageTickMs;
+    private float maxTickMs;
+    private short ticks;
+    private float controlLookupsPerTick;
+
+    public CmdServerStatistics() {
+    }
+
+    public CmdServerStatistics(float averageTickMs, float maxTickMs,
+            int ticks, float controlLookupsPerTick) {
+        this.averageTickMs = averageTickMs;
+        this.maxTickMs = maxTickMs;
+        this.ticks = (short) ticks;
+        this.controlLookupsPerTick = controlLookupsPerTick;
+    }
+
+    public float getAverageTickMs() {
+        return averageTickMs;
+    }
+
+    public float getMaxTickMs() {
+        return maxTickMs;
+    }
+
+    public int getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @return controls that had to be looked up from spatial instead of
+     * EntityComponents
+     */
+    public float getControlLookupsPerTick() {
+        return controlLookupsPerTick;
+    }
+
+    @Override
+    public boolean isGuaranteed() {
+        return true;
+    }
+}
@@ -16,16 +16,24 @@ package arkhados.messages;
 
 import arkhados.PlayerData;
 import arkhados.characters.EliteSoldierSyncData;
+import com.jme3.math.Quaternion;
 import com.jme3.network.serializing.Serializer;
+import com.jme3.network.serializing.serializers.FieldSerializer;
 import arkhados.messages.sync.CmdAction;
 import arkhados.messages.sync.CmdAddEntity;
+import arkhados.messages.sync.CmdAddEntitySerializer;
 import arkhados.messages.sync.CmdBuff;
 import arkhados.messages.sync.CmdBuffStacks;
 import arkhados.messages.sync.CmdEndAction;
+import arkhados.messages.sync.CmdInputAck;
 import arkhados.messages.sync.CmdRemoveEntity;
 import arkhados.messages.sync.CmdSetCooldown;
+import arkhados.messages.sync.CmdSnapshot;
+import arkhados.messages.sync.CmdSnapshotAck;
 import arkhados.messages.sync.CmdStartCastingSpell;
+import arkhados.messages.sync.SnapshotSerializer;
 import arkhados.messages.sync.statedata.CharacterSyncData;
+import arkhados.messages.sync.statedata.DeltaSyncDataSerializer;
 import arkhados.messages.sync.statedata.GenericSyncData;
 import arkhados.messages.sync.statedata.ProjectileSyncData;
 import arkhados.messages.sync.statedata.StateData;
@@ -34,7 +42,9 @@ import arkhados.messages.usercommands.CmdUcMouseTarget;
 import arkhados.messages.usercommands.CmdUcWalkDirection;
 import arkhados.net.Ack;
 import arkhados.net.OneTrueMessage;
+import arkhados.net.OneTrueMessageSerializer;
 import arkhados.net.OtmIdCommandListPair;
+import arkhados.net.ReliableAck;
 import arkhados.util.PlayerRoundStats;
 
 /**
@@ -49,7 +59,8 @@ public class MessageUtils {
     }
 
     public static void registerMessages() {
-        Serializer.registerClass(OneTrueMessage.class);
+        Serializer.registerClass(OneTrueMessage.class,
+                new OneTrueMessageSerializer());
         Serializer.registerClass(OtmIdCommandListPair.class);
 
         Serializer.registerClass(Ack.class);
@@ -69,11 +80,20 @@ public class MessageUtils {
         // </Lobby>
 
         // <Sync>
-        Serializer.registerClass(CmdAddEntity.class);
+        Serializer.registerClass(CmdAddEntity.class,
+                new CmdAddEntitySerializer());
+        // FieldSerializer of CmdAddEntity used to register Quaternion
+        // implicitly, right after CmdAddEntity. CmdAddEntitySerializer does
+        // not, so it must be registered explicitly here or every class id
+        // after this shifts and older replays can not be read.
+        Serializer.registerClass(Quaternion.class, new FieldSerializer());
         Serializer.registerClass(CmdRemoveEntity.class);
-        Serializer.registerClasses(StateData.class, CharacterSyncData.class,
-                GenericSyncData.class, ProjectileSyncData.class);
-        Serializer.registerClass(EliteSoldierSyncData.class);
+        Serializer.registerClass(StateData.class);
+        Serializer deltaSerializer = new DeltaSyncDataSerializer();
+        Serializer.registerClass(CharacterSyncData.class, deltaSerializer);
+        Serializer.registerClass(GenericSyncData.class, deltaSerializer);
+        Serializer.registerClass(ProjectileSyncData.class, deltaSerializer);
+        Serializer.registerClass(EliteSoldierSyncData.class, deltaSerializer);
         Serializer.registerClass(CmdStartCastingSpell.class);
         Serializer.registerClass(CmdSetCooldown.class);
         Serializer.registerClass(CmdAction.class);
@@ -94,5 +114,33 @@ public class MessageUtils {
         Serializer.registerClass(CmdPlayerKill.class);
         Serializer.registerClass(CmdWorldEffect.class);        
         // </Other>
+
+        // <Snapshots>
+        Serializer.registerClass(CmdSnapshot.class, new SnapshotSerializer());
+        Serializer.registerClass(CmdSnapshotAck.class);
+        // </Snapshots>
+
+        // <Diagnostics>
+        Serializer.registerClass(CmdServerStatistics.class);
+        // </Diagnostics>
+
+        // Registered last to keep ids of older classes same as in replays
+        Serializer.registerClass(ReliableAck.class);
+        Serializer.registerClass(CmdInputAck.class);
+    }
+
+    /**
+     * Replays recorded before sync data got compact serializers have it
+     * serialized field by field. Registering messages again undoes this.
+     */
+    public static void registerLegacySyncSerializers() {
+        Serializer.registerClass(CmdAddEntity.class, new FieldSerializer());
+        Serializer.registerClass(CharacterSyncData.class,
+                new FieldSerializer());
+        Serializer.registerClass(GenericSyncData.class, new FieldSerializer());
+        Serializer.registerClass(ProjectileSyncData.class,
+                new FieldSerializer());
+        Serializer.registerClass(EliteSoldierSyncData.class,
+                new FieldSerializer());
     }
 }
\ No newline at end of file
@@ -53,4 +53,28 @@ public class CmdAddEntity extends StateData {
         World world = (World) target;
         world.addEntity(entityId, nodeBuilderId, loc, rot, playerId, age);
     }
+
+    public int getEntityId() {
+        return entityId;
+    }
+
+    public int getNodeBuilderId() {
+        return nodeBuilderId;
+    }
+
+    public Vector3f getLocation() {
+        return loc;
+    }
+
+    public Quaternion getRotation() {
+        return rot;
+    }
+
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    public float getAge() {
+        return age;
+    }
 }
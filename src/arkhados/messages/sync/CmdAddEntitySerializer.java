@@ -0,0 +1,55 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.messages.sync;
+
+import arkhados.messages.sync.statedata.FieldEncoding;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.network.serializing.Serializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes CmdAddEntity with quantized location and rotation.
+ */
+public class CmdAddEntitySerializer extends Serializer {
+
+    @Override
+    public <T> T readObject(ByteBuffer data, Class<T> c) throws IOException {
+        int entityId = data.getShort();
+        int nodeBuilderId = data.getShort();
+        Vector3f location = new Vector3f();
+        FieldEncoding.readPosition(data, location);
+        Quaternion rotation = new Quaternion();
+        FieldEncoding.readRotation(data, rotation);
+        int playerId = data.get();
+        float age = data.getFloat();
+
+        return c.cast(new CmdAddEntity(entityId, nodeBuilderId, location,
+                rotation, playerId, age));
+    }
+
+    @Override
+    public void writeObject(ByteBuffer buffer, Object object)
+            throws IOException {
+        CmdAddEntity cmd = (CmdAddEntity) object;
+        buffer.putShort((short) cmd.getEntityId());
+        buffer.putShort((short) cmd.getNodeBuilderId());
+        FieldEncoding.writePosition(buffer, cmd.getLocation());
+        FieldEncoding.writeRotation(buffer, cmd.getRotation());
+        buffer.put((byte) cmd.getPlayerId());
+        buffer.putFloat(cmd.getAge());
+    }
+}
@@ -0,0 +1,57 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.messages.sync;
+
+import arkhados.controls.CCharacterPrediction;
+import arkhados.messages.sync.statedata.StateData;
+import com.jme3.network.serializing.Serializable;
+import com.jme3.scene.Spatial;
+
+/**
+ * Tells player which of their walk directions server had applied when it
+ * sent state of their character. Sent before that state so that client
+ * can reconcile prediction of its own movement against it.
+ */
+@Serializable
+public class CmdInputAck extends StateData {
+
+    private int sequence;
+
+    public CmdInputAck() {
+    }
+
+    public CmdInputAck(int syncId, int sequence) {
+        super(syncId);
+        this.sequence = sequence;
+    }
+
+    @Override
+    public void applyData(Object target) {
+        CCharacterPrediction prediction = ((Spatial) target)
+                .getControl(CCharacterPrediction.class);
+        if (prediction != null) {
+            prediction.acknowledge(sequence);
+        }
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public boolean isGuaranteed() {
+        return false;
+    }
+}
@@ -39,4 +39,8 @@ public class CmdRemoveEntity extends StateData {
         World world = (World) target;
         world.removeEntity(entityId, reason);
     }
+
+    public int getEntityId() {
+        return entityId;
+    }
 }
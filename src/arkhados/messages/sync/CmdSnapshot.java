@@ -0,0 +1,91 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.messages.sync;
+
+import arkhados.messages.sync.statedata.StateData;
+import arkhados.net.Command;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State of all entities that one client is aware of, delta compressed against
+ * snapshot the client has acknowledged. Entities that have not changed since
+ * baseline are left out. Serialized by SnapshotSerializer.
+ */
+public class CmdSnapshot implements Command {
+
+    private int snapshotId;
+    private int baselineId = -1;
+    private final List<Entry> entries = new ArrayList<>();
+
+    public CmdSnapshot() {
+    }
+
+    public CmdSnapshot(int snapshotId, int baselineId) {
+        this.snapshotId = snapshotId;
+        this.baselineId = baselineId;
+    }
+
+    /**
+     * @param mask fields of data that differ from baseline
+     */
+    public void addDelta(int syncId, int mask, StateData data) {
+        entries.add(new Entry(syncId, mask, data));
+    }
+
+    /**
+     * Tells that entity that was in baseline is no longer synchronized.
+     */
+    public void addRemoval(int syncId) {
+        entries.add(new Entry(syncId, 0, null));
+    }
+
+    public int getSnapshotId() {
+        return snapshotId;
+    }
+
+    public int getBaselineId() {
+        return baselineId;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public boolean isGuaranteed() {
+        return false;
+    }
+
+    public static class Entry {
+
+        public final int syncId;
+        public final int mask;
+        /**
+         * Only fields marked in mask are valid. Null if entity was removed.
+         */
+        public final StateData data;
+
+        public Entry(int syncId, int mask, StateData data) {
+            this.syncId = syncId;
+            this.mask = mask;
+            this.data = data;
+        }
+
+        public boolean isRemoval() {
+            return data == null;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.messages.sync;
+
+import arkhados.net.Command;
+import com.jme3.network.serializing.Serializable;
+
+/**
+ * Sent by client when it has successfully decoded and applied CmdSnapshot.
+ * Server can use acknowledged snapshot as baseline for next ones.
+ */
+@Serializable
+public class CmdSnapshotAck implements Command {
+
+    private int snapshotId;
+
+    public CmdSnapshotAck() {
+    }
+
+    public CmdSnapshotAck(int snapshotId) {
+        this.snapshotId = snapshotId;
+    }
+
+    public int getSnapshotId() {
+        return snapshotId;
+    }
+
+    @Override
+    public boolean isGuaranteed() {
+        return false;
+    }
+}
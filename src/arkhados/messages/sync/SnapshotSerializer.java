@@ -0,0 +1,91 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.messages.sync;
+
+import arkhados.messages.sync.statedata.DeltaSyncData;
+import arkhados.messages.sync.statedata.StateData;
+import com.jme3.network.serializing.Serializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes CmdSnapshot entries as syncId, field mask and only the fields marked
+ * in mask. Zero mask means that entity was removed.
+ */
+public class SnapshotSerializer extends Serializer {
+
+    @Override
+    public <T> T readObject(ByteBuffer data, Class<T> c) throws IOException {
+        int snapshotId = data.getInt();
+        int baselineId = data.getInt();
+        CmdSnapshot snapshot = new CmdSnapshot(snapshotId, baselineId);
+
+        int size = data.getShort() & 0xFFFF;
+        for (int i = 0; i < size; i++) {
+            int syncId = data.getShort();
+            int mask = data.get() & 0xFF;
+            if (mask == 0) {
+                snapshot.addRemoval(syncId);
+                continue;
+            }
+
+            Class<?> type = Serializer.readClass(data).getType();
+            StateData stateData;
+            try {
+                stateData = (StateData) type.getDeclaredConstructor()
+                        .newInstance();
+            } catch (ReflectiveOperationException ex) {
+                throw new IOException("Could not instantiate " + type, ex);
+            }
+
+            stateData.setSyncId(syncId);
+            DeltaSyncData delta = (DeltaSyncData) stateData;
+            for (int field = 0; field < delta.getFieldCount(); field++) {
+                if ((mask & (1 << field)) != 0) {
+                    delta.readField(field, data);
+                }
+            }
+
+            snapshot.addDelta(syncId, mask, stateData);
+        }
+
+        return c.cast(snapshot);
+    }
+
+    @Override
+    public void writeObject(ByteBuffer buffer, Object object)
+            throws IOException {
+        CmdSnapshot snapshot = (CmdSnapshot) object;
+        buffer.putInt(snapshot.getSnapshotId());
+        buffer.putInt(snapshot.getBaselineId());
+        buffer.putShort((short) snapshot.getEntries().size());
+
+        for (CmdSnapshot.Entry entry : snapshot.getEntries()) {
+            buffer.putShort((short) entry.syncId);
+            buffer.put((byte) entry.mask);
+            if (entry.isRemoval()) {
+                continue;
+            }
+
+            Serializer.writeClass(buffer, entry.data.getClass());
+            DeltaSyncData delta = (DeltaSyncData) entry.data;
+            for (int field = 0; field < delta.getFieldCount(); field++) {
+                if ((entry.mask & (1 << field)) != 0) {
+                    delta.writeField(field, buffer);
+                }
+            }
+        }
+    }
+}
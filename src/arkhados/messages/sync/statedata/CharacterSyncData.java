@@ -16,15 +16,22 @@
 package arkhados.messages.sync.statedata;
 
 import arkhados.controls.CCharacterPhysics;
+import arkhados.controls.CCharacterPrediction;
 import arkhados.controls.CInfluenceInterface;
 import arkhados.controls.CSyncInterpolation;
 import arkhados.util.UserData;
 import com.jme3.math.Vector3f;
 import com.jme3.network.serializing.Serializable;
 import com.jme3.scene.Spatial;
+import java.nio.ByteBuffer;
 
 @Serializable
-public class CharacterSyncData extends StateData {
+public class CharacterSyncData extends StateData implements DeltaSyncData {
+
+    private static final int LOCATION = 0;
+    private static final int WALK_DIRECTION = 1;
+    private static final int VIEW_DIRECTION = 2;
+    private static final int HEALTH = 3;
 
     private Vector3f location = new Vector3f();
     private Vector3f walkDirection = new Vector3f();
@@ -35,7 +42,15 @@ public class CharacterSyncData extends StateData {
     }
 
     public CharacterSyncData(int id, Spatial spatial) {
-        super(id);        
+        set(id, spatial);
+    }
+
+    /**
+     * Overwrites this with current state of character so that instance can
+     * be reused.
+     */
+    public void set(int id, Spatial spatial) {
+        setSyncId(id);
         location.set(spatial.getLocalTranslation());
         CCharacterPhysics body = spatial.getControl(CCharacterPhysics.class);
         walkDirection.set(body.getWalkDirection());
@@ -47,6 +62,12 @@ public class CharacterSyncData extends StateData {
     public void applyData(Object target) {
         Spatial character = (Spatial) target;
         character.getControl(CInfluenceInterface.class).setHealth(health);
+        CCharacterPrediction prediction
+                = character.getControl(CCharacterPrediction.class);
+        if (prediction != null
+                && prediction.reconcile(location, walkDirection)) {
+            return;
+        }
         character.getControl(CSyncInterpolation.class).interpolate(location);
         CCharacterPhysics body = character.getControl(CCharacterPhysics.class);
         body.warp(location);
@@ -57,5 +78,83 @@ public class CharacterSyncData extends StateData {
     @Override
     public boolean isGuaranteed() {
         return false;
-    }   
-}
\ No newline at end of file
+    }
+
+    @Override
+    public int getFieldCount() {
+        return 4;
+    }
+
+    @Override
+    public boolean fieldEquals(int field, StateData other) {
+        CharacterSyncData o = (CharacterSyncData) other;
+        switch (field) {
+            case LOCATION:
+                return FieldEncoding.samePosition(location, o.location);
+            case WALK_DIRECTION:
+                return FieldEncoding.samePlanarVelocity(walkDirection,
+                        o.walkDirection);
+            case VIEW_DIRECTION:
+                return FieldEncoding.sameDirection(viewDirection,
+                        o.viewDirection);
+            case HEALTH:
+                return FieldEncoding.sameHealth(health, o.health);
+        }
+        return true;
+    }
+
+    @Override
+    public void copyField(int field, StateData from) {
+        CharacterSyncData o = (CharacterSyncData) from;
+        switch (field) {
+            case LOCATION:
+                location.set(o.location);
+                break;
+            case WALK_DIRECTION:
+                walkDirection.set(o.walkDirection);
+                break;
+            case VIEW_DIRECTION:
+                viewDirection.set(o.viewDirection);
+                break;
+            case HEALTH:
+                health = o.health;
+                break;
+        }
+    }
+
+    @Override
+    public void writeField(int field, ByteBuffer buffer) {
+        switch (field) {
+            case LOCATION:
+                FieldEncoding.writePosition(buffer, location);
+                break;
+            case WALK_DIRECTION:
+                FieldEncoding.writePlanarVelocity(buffer, walkDirection);
+                break;
+            case VIEW_DIRECTION:
+                FieldEncoding.writeDirection(buffer, viewDirection);
+                break;
+            case HEALTH:
+                FieldEncoding.writeHealth(buffer, health);
+                break;
+        }
+    }
+
+    @Override
+    public void readField(int field, ByteBuffer buffer) {
+        switch (field) {
+            case LOCATION:
+                FieldEncoding.readPosition(buffer, location);
+                break;
+            case WALK_DIRECTION:
+                FieldEncoding.readPlanarVelocity(buffer, walkDirection);
+                break;
+            case VIEW_DIRECTION:
+                FieldEncoding.readDirection(buffer, viewDirection);
+                break;
+            case HEALTH:
+                health = FieldEncoding.readHealth(buffer);
+                break;
+        }
+    }
+}
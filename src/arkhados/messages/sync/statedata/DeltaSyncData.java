@@ -0,0 +1,60 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.messages.sync.statedata;
+
+import java.nio.ByteBuffer;
+
+/**
+ * StateData that can be split into numbered fields so that only the fields
+ * that differ from an acknowledged baseline need to be sent. Field indices go
+ * from 0 to getFieldCount() - 1 and there can be at most 8 of them. Both
+ * arguments of fieldEquals and copyField are always of the same class as the
+ * receiver.
+ */
+public interface DeltaSyncData {
+
+    public static final int MAX_FIELDS = 8;
+
+    public int getFieldCount();
+
+    public boolean fieldEquals(int field, StateData other);
+
+    public void copyField(int field, StateData from);
+
+    public void writeField(int field, ByteBuffer buffer);
+
+    public void readField(int field, ByteBuffer buffer);
+
+    /**
+     * @return bitmask of fields of data that differ from baseline. If there is
+     * no baseline or it is of different type, all fields are marked.
+     */
+    public static int changedFields(StateData data, StateData baseline) {
+        DeltaSyncData delta = (DeltaSyncData) data;
+        int count = delta.getFieldCount();
+        if (baseline == null || baseline.getClass() != data.getClass()) {
+            return (1 << count) - 1;
+        }
+
+        int mask = 0;
+        for (int i = 0; i < count; i++) {
+            if (!delta.fieldEquals(i, baseline)) {
+                mask |= 1 << i;
+            }
+        }
+
+        return mask;
+    }
+}
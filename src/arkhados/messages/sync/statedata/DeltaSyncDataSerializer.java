@@ -0,0 +1,57 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.messages.sync.statedata;
+
+import com.jme3.network.serializing.Serializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes DeltaSyncData as syncId followed by all of its fields in their
+ * compact encoding.
+ */
+public class DeltaSyncDataSerializer extends Serializer {
+
+    @Override
+    public <T> T readObject(ByteBuffer data, Class<T> c) throws IOException {
+        T object;
+        try {
+            object = c.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            throw new IOException("Could not instantiate " + c, ex);
+        }
+
+        StateData stateData = (StateData) object;
+
+        stateData.setSyncId(data.getShort());
+        DeltaSyncData delta = (DeltaSyncData) stateData;
+        for (int field = 0; field < delta.getFieldCount(); field++) {
+            delta.readField(field, data);
+        }
+
+        return object;
+    }
+
+    @Override
+    public void writeObject(ByteBuffer buffer, Object object)
+            throws IOException {
+        StateData stateData = (StateData) object;
+        buffer.putShort((short) stateData.getSyncId());
+        DeltaSyncData delta = (DeltaSyncData) stateData;
+        for (int field = 0; field < delta.getFieldCount(); field++) {
+            delta.writeField(field, buffer);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.messages.sync.statedata;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import java.nio.ByteBuffer;
+
+/**
+ * Compact wire encoding for fields of sync data.
+ *
+ * Positions are 16 bit fixed point values bounded by position extent, which
+ * World sets from the arena when level is loaded. Rotations use smallest
+ * three encoding in 32 bits, directions on XZ-plane are 8 bit angles and
+ * velocities are half floats or, for walking, an angle and 16 bit fixed point
+ * speed. Health is 16 bit fixed point with 1/16 precision.
+ *
+ * The same* methods tell if two values would be encoded identically, which
+ * is what delta compression needs.
+ */
+public final class FieldEncoding {
+
+    private static final int SHORT_MAX = 0xFFFF;
+    private static final int COMPONENT_MAX = 0x3FF;
+    private static final float HEALTH_SCALE = 16f;
+    private static final float SPEED_SCALE = 256f;
+    private static volatile float positionExtent = 512f;
+
+    private FieldEncoding() {
+    }
+
+    /**
+     * Both server and client must use same extent.
+     */
+    public static void setPositionExtent(float extent) {
+        if (extent <= 0f) {
+            throw new IllegalArgumentException(
+                    "Position extent must be positive");
+        }
+        positionExtent = extent;
+    }
+
+    public static float getPositionExtent() {
+        return positionExtent;
+    }
+
+    public static void writePosition(ByteBuffer buffer, Vector3f position) {
+        buffer.putShort((short) quantizePosition(position.x));
+        buffer.putShort((short) quantizePosition(position.y));
+        buffer.putShort((short) quantizePosition(position.z));
+    }
+
+    public static void readPosition(ByteBuffer buffer, Vector3f store) {
+        float x = dequantizePosition(buffer.getShort() & SHORT_MAX);
+        float y = dequantizePosition(buffer.getShort() & SHORT_MAX);
+        float z = dequantizePosition(buffer.getShort() & SHORT_MAX);
+        store.set(x, y, z);
+    }
+
+    public static boolean samePosition(Vector3f a, Vector3f b) {
+        return quantizePosition(a.x) == quantizePosition(b.x)
+                && quantizePosition(a.y) == quantizePosition(b.y)
+                && quantizePosition(a.z) == quantizePosition(b.z);
+    }
+
+    public static void writeRotation(ByteBuffer buffer, Quaternion rotation) {
+        buffer.putInt(quantizeRotation(rotation));
+    }
+
+    public static void readRotation(ByteBuffer buffer, Quaternion store) {
+        int packed = buffer.getInt();
+        int largest = packed >>> 30;
+        float a = dequantizeComponent((packed >>> 20) & COMPONENT_MAX);
+        float b = dequantizeComponent((packed >>> 10) & COMPONENT_MAX);
+        float c = dequantizeComponent(packed & COMPONENT_MAX);
+        float d = FastMath.sqrt(Math.max(0f, 1f - a * a - b * b - c * c));
+
+        switch (largest) {
+            case 0:
+                store.set(d, a, b, c);
+                break;
+            case 1:
+                store.set(a, d, b, c);
+                break;
+            case 2:
+                store.set(a, b, d, c);
+                break;
+            default:
+                store.set(a, b, c, d);
+                break;
+        }
+    }
+
+    public static boolean sameRotation(Quaternion a, Quaternion b) {
+        return quantizeRotation(a) == quantizeRotation(b);
+    }
+
+    /**
+     * Writes direction on XZ-plane as one byte. Y-component and length are
+     * lost.
+     */
+    public static void writeDirection(ByteBuffer buffer, Vector3f direction) {
+        buffer.put((byte) quantizeAngle(direction));
+    }
+
+    public static void readDirection(ByteBuffer buffer, Vector3f store) {
+        float angle = (buffer.get() & 0xFF) * FastMath.TWO_PI / 256f;
+        store.set(FastMath.sin(angle), 0f, FastMath.cos(angle));
+    }
+
+    public static boolean sameDirection(Vector3f a, Vector3f b) {
+        return quantizeAngle(a) == quantizeAngle(b);
+    }
+
+    /**
+     * Writes vector on XZ-plane as one byte angle and 16 bit fixed point
+     * speed.
+     */
+    public static void writePlanarVelocity(ByteBuffer buffer,
+            Vector3f velocity) {
+        buffer.put((byte) quantizeAngle(velocity));
+        buffer.putShort((short) quantizeSpeed(velocity));
+    }
+
+    public static void readPlanarVelocity(ByteBuffer buffer, Vector3f store) {
+        readDirection(buffer, store);
+        store.multLocal((buffer.getShort() & SHORT_MAX) / SPEED_SCALE);
+    }
+
+    public static boolean samePlanarVelocity(Vector3f a, Vector3f b) {
+        return quantizeAngle(a) == quantizeAngle(b)
+                && quantizeSpeed(a) == quantizeSpeed(b);
+    }
+
+    public static void writeVelocity(ByteBuffer buffer, Vector3f velocity) {
+        buffer.putShort(FastMath.convertFloatToHalf(velocity.x));
+        buffer.putShort(FastMath.convertFloatToHalf(velocity.y));
+        buffer.putShort(FastMath.convertFloatToHalf(velocity.z));
+    }
+
+    public static void readVelocity(ByteBuffer buffer, Vector3f store) {
+        float x = FastMath.convertHalfToFloat(buffer.getShort());
+        float y = FastMath.convertHalfToFloat(buffer.getShort());
+        float z = FastMath.convertHalfToFloat(buffer.getShort());
+        store.set(x, y, z);
+    }
+
+    public static boolean sameVelocity(Vector3f a, Vector3f b) {
+        return FastMath.convertFloatToHalf(a.x)
+                == FastMath.convertFloatToHalf(b.x)
+                && FastMath.convertFloatToHalf(a.y)
+                == FastMath.convertFloatToHalf(b.y)
+                && FastMath.convertFloatToHalf(a.z)
+                == FastMath.convertFloatToHalf(b.z);
+    }
+
+    public static void writeHealth(ByteBuffer buffer, float health) {
+        buffer.putShort((short) quantizeHealth(health));
+    }
+
+    public static float readHealth(ByteBuffer buffer) {
+        return (buffer.getShort() & SHORT_MAX) / HEALTH_SCALE;
+    }
+
+    public static boolean sameHealth(float a, float b) {
+        return quantizeHealth(a) == quantizeHealth(b);
+    }
+
+    private static int quantizePosition(float value) {
+        float extent = positionExtent;
+        float normalized = (value + extent) / (2f * extent);
+        return clamp(Math.round(normalized * SHORT_MAX), SHORT_MAX);
+    }
+
+    private static float dequantizePosition(int value) {
+        float extent = positionExtent;
+        return value / (float) SHORT_MAX * 2f * extent - extent;
+    }
+
+    private static int quantizeRotation(Quaternion rotation) {
+        float x = rotation.getX();
+        float y = rotation.getY();
+        float z = rotation.getZ();
+        float w = rotation.getW();
+        float norm = FastMath.sqrt(x * x + y * y + z * z + w * w);
+        if (norm == 0f) {
+            // Identity rotation
+            w = 1f;
+            norm = 1f;
+        }
+        x /= norm;
+        y /= norm;
+        z /= norm;
+        w /= norm;
+
+        int largest = 0;
+        float max = FastMath.abs(x);
+        if (FastMath.abs(y) > max) {
+            largest = 1;
+            max = FastMath.abs(y);
+        }
+        if (FastMath.abs(z) > max) {
+            largest = 2;
+            max = FastMath.abs(z);
+        }
+        if (FastMath.abs(w) > max) {
+            largest = 3;
+        }
+
+        // Remaining three components in x, y, z, w order
+        float a;
+        float b;
+        float c;
+        float dominant;
+        switch (largest) {
+            case 0:
+                a = y;
+                b = z;
+                c = w;
+                dominant = x;
+                break;
+            case 1:
+                a = x;
+                b = z;
+                c = w;
+                dominant = y;
+                break;
+            case 2:
+                a = x;
+                b = y;
+                c = w;
+                dominant = z;
+                break;
+            default:
+                a = x;
+                b = y;
+                c = z;
+                dominant = w;
+                break;
+        }
+
+        // q and -q are the same rotation so largest can be kept positive
+        float sign = dominant < 0f ? -1f : 1f;
+
+        int packed = largest << 30;
+        packed |= quantizeComponent(a * sign) << 20;
+        packed |= quantizeComponent(b * sign) << 10;
+        packed |= quantizeComponent(c * sign);
+        return packed;
+    }
+
+    private static int quantizeComponent(float value) {
+        float normalized = (value * FastMath.sqrt(2f) + 1f) / 2f;
+        return clamp(Math.round(normalized * COMPONENT_MAX), COMPONENT_MAX);
+    }
+
+    private static float dequantizeComponent(int value) {
+        return (value / (float) COMPONENT_MAX * 2f - 1f) / FastMath.sqrt(2f);
+    }
+
+    private static int quantizeAngle(Vector3f direction) {
+        float angle = FastMath.atan2(direction.x, direction.z);
+        return Math.round(angle / FastMath.TWO_PI * 256f) & 0xFF;
+    }
+
+    private static int quantizeSpeed(Vector3f vector) {
+        float speed = FastMath.sqrt(vector.x * vector.x + vector.z * vector.z);
+        return clamp(Math.round(speed * SPEED_SCALE), SHORT_MAX);
+    }
+
+    private static int quantizeHealth(float health) {
+        return clamp(Math.round(health * HEALTH_SCALE), SHORT_MAX);
+    }
+
+    private static int clamp(int value, int max) {
+        return value < 0 ? 0 : value > max ? max : value;
+    }
+}
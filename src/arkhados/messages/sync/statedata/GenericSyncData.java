@@ -19,9 +19,13 @@ import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
 import com.jme3.network.serializing.Serializable;
 import com.jme3.scene.Spatial;
+import java.nio.ByteBuffer;
 
 @Serializable
-public class GenericSyncData extends StateData {
+public class GenericSyncData extends StateData implements DeltaSyncData {
+
+    private static final int LOCATION = 0;
+    private static final int ROTATION = 1;
 
     private Vector3f location = new Vector3f();
     private Quaternion rotation = new Quaternion();
@@ -30,10 +34,18 @@ public class GenericSyncData extends StateData {
     }        
 
     public GenericSyncData(int syncId, Spatial spatial) {
-        super(syncId);        
+        set(syncId, spatial);
+    }
+
+    /**
+     * Overwrites this with current state of spatial so that instance can be
+     * reused.
+     */
+    public void set(int syncId, Spatial spatial) {
+        setSyncId(syncId);
         this.location.set(spatial.getLocalTranslation());
         this.rotation.set(spatial.getLocalRotation());
-    }        
+    }
 
     @Override
     public void applyData(Object target) {
@@ -51,4 +63,58 @@ public class GenericSyncData extends StateData {
     public boolean isGuaranteed() {
         return false;
     }
-}
\ No newline at end of file
+
+    @Override
+    public int getFieldCount() {
+        return 2;
+    }
+
+    @Override
+    public boolean fieldEquals(int field, StateData other) {
+        GenericSyncData o = (GenericSyncData) other;
+        switch (field) {
+            case LOCATION:
+                return FieldEncoding.samePosition(location, o.location);
+            case ROTATION:
+                return FieldEncoding.sameRotation(rotation, o.rotation);
+        }
+        return true;
+    }
+
+    @Override
+    public void copyField(int field, StateData from) {
+        GenericSyncData o = (GenericSyncData) from;
+        switch (field) {
+            case LOCATION:
+                location.set(o.location);
+                break;
+            case ROTATION:
+                rotation.set(o.rotation);
+                break;
+        }
+    }
+
+    @Override
+    public void writeField(int field, ByteBuffer buffer) {
+        switch (field) {
+            case LOCATION:
+                FieldEncoding.writePosition(buffer, location);
+                break;
+            case ROTATION:
+                FieldEncoding.writeRotation(buffer, rotation);
+                break;
+        }
+    }
+
+    @Override
+    public void readField(int field, ByteBuffer buffer) {
+        switch (field) {
+            case LOCATION:
+                FieldEncoding.readPosition(buffer, location);
+                break;
+            case ROTATION:
+                FieldEncoding.readRotation(buffer, rotation);
+                break;
+        }
+    }
+}
@@ -19,9 +19,14 @@ import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
 import com.jme3.network.serializing.Serializable;
 import com.jme3.scene.Spatial;
+import java.nio.ByteBuffer;
 
 @Serializable
-public class ProjectileSyncData extends StateData {
+public class ProjectileSyncData extends StateData implements DeltaSyncData {
+
+    private static final int LOCATION = 0;
+    private static final int VELOCITY = 1;
+    private static final int ROTATION = 2;
 
     private Vector3f location = new Vector3f();
     private Vector3f velocity = new Vector3f();
@@ -31,7 +36,15 @@ public class ProjectileSyncData extends StateData {
     }
 
     public ProjectileSyncData(int syncId, RigidBodyControl control) {
-        super(syncId);
+        set(syncId, control);
+    }
+
+    /**
+     * Overwrites this with current state of body so that instance can be
+     * reused.
+     */
+    public void set(int syncId, RigidBodyControl control) {
+        setSyncId(syncId);
         control.getPhysicsLocation(this.location);
         control.getLinearVelocity(this.velocity);
         control.getPhysicsRotation(this.rotation);
@@ -49,4 +62,69 @@ public class ProjectileSyncData extends StateData {
     public boolean isGuaranteed() {
         return false;
     }
-}
\ No newline at end of file
+
+    @Override
+    public int getFieldCount() {
+        return 3;
+    }
+
+    @Override
+    public boolean fieldEquals(int field, StateData other) {
+        ProjectileSyncData o = (ProjectileSyncData) other;
+        switch (field) {
+            case LOCATION:
+                return FieldEncoding.samePosition(location, o.location);
+            case VELOCITY:
+                return FieldEncoding.sameVelocity(velocity, o.velocity);
+            case ROTATION:
+                return FieldEncoding.sameRotation(rotation, o.rotation);
+        }
+        return true;
+    }
+
+    @Override
+    public void copyField(int field, StateData from) {
+        ProjectileSyncData o = (ProjectileSyncData) from;
+        switch (field) {
+            case LOCATION:
+                location.set(o.location);
+                break;
+            case VELOCITY:
+                velocity.set(o.velocity);
+                break;
+            case ROTATION:
+                rotation.set(o.rotation);
+                break;
+        }
+    }
+
+    @Override
+    public void writeField(int field, ByteBuffer buffer) {
+        switch (field) {
+            case LOCATION:
+                FieldEncoding.writePosition(buffer, location);
+                break;
+            case VELOCITY:
+                FieldEncoding.writeVelocity(buffer, velocity);
+                break;
+            case ROTATION:
+                FieldEncoding.writeRotation(buffer, rotation);
+                break;
+        }
+    }
+
+    @Override
+    public void readField(int field, ByteBuffer buffer) {
+        switch (field) {
+            case LOCATION:
+                FieldEncoding.readPosition(buffer, location);
+                break;
+            case VELOCITY:
+                FieldEncoding.readVelocity(buffer, velocity);
+                break;
+            case ROTATION:
+                FieldEncoding.readRotation(buffer, rotation);
+                break;
+        }
+    }
+}
@@ -21,6 +21,8 @@ import com.jme3.network.serializing.Serializable;
 @Serializable
 public abstract class StateData implements Command {
     private short syncId = -1;
+    // Number of holders on server when instance is pooled. Not sent.
+    private transient int references = 0;
     
     public StateData() {
     }
@@ -43,4 +45,15 @@ public abstract class StateData implements Command {
     public void setSyncId(int syncId) {
         this.syncId = (short) syncId;
     }
+
+    public void retain() {
+        ++references;
+    }
+
+    /**
+     * @return true if nothing holds this anymore
+     */
+    public boolean release() {
+        return --references <= 0;
+    }
 }
@@ -22,13 +22,16 @@ public class CmdUcWalkDirection extends StateData {
 
     private byte down;
     private byte right;
+    // Grows with every walk direction that client sends
+    private int sequence;
 
     public CmdUcWalkDirection() {
     }
 
-    public CmdUcWalkDirection(int down, int right) {
+    public CmdUcWalkDirection(int down, int right, int sequence) {
         this.down = (byte) down;
         this.right = (byte) right;
+        this.sequence = sequence;
     }
 
     @Override
@@ -42,4 +45,8 @@ public class CmdUcWalkDirection extends StateData {
     public byte getRight() {
         return right;
     }
+
+    public int getSequence() {
+        return sequence;
+    }
 }
@@ -0,0 +1,138 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.net;
+
+import java.util.Locale;
+
+/**
+ * Traffic counters and state of one ReliableChannel at one moment. Rates
+ * are found by comparing two of these.
+ *
+ * Bytes are those of serialized OneTrueMessages. Headers of jME network
+ * protocol, UDP and IP are not included.
+ */
+public class ChannelStatistics {
+
+    private final long messagesSent;
+    private final long bytesSent;
+    private final long messagesReceived;
+    private final long bytesReceived;
+    private final long messagesLost;
+    private final long resends;
+    private final long stalls;
+    private final float roundTripTime;
+    private final int queuedCommands;
+    private final int segmentsInFlight;
+    private final int inFlightBytes;
+
+    ChannelStatistics(long messagesSent, long bytesSent,
+            long messagesReceived, long bytesReceived, long messagesLost,
+            long resends, long stalls, float roundTripTime,
+            int queuedCommands, int segmentsInFlight, int inFlightBytes) {
+        this.messagesSent = messagesSent;
+        this.bytesSent = bytesSent;
+        this.messagesReceived = messagesReceived;
+        this.bytesReceived = bytesReceived;
+        this.messagesLost = messagesLost;
+        this.resends = resends;
+        this.stalls = stalls;
+        this.roundTripTime = roundTripTime;
+        this.queuedCommands = queuedCommands;
+        this.segmentsInFlight = segmentsInFlight;
+        this.inFlightBytes = inFlightBytes;
+    }
+
+    public long getMessagesSent() {
+        return messagesSent;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * @return messages from peer that are missing from order numbers.
+     * Message that arrives late is no longer counted as lost.
+     */
+    public long getMessagesLost() {
+        return messagesLost;
+    }
+
+    public long getResends() {
+        return resends;
+    }
+
+    public long getStalls() {
+        return stalls;
+    }
+
+    /**
+     * @return smoothed round trip time in seconds or -1 if it has not been
+     * measured yet
+     */
+    public float getRoundTripTime() {
+        return roundTripTime;
+    }
+
+    public int getQueuedCommands() {
+        return queuedCommands;
+    }
+
+    public int getSegmentsInFlight() {
+        return segmentsInFlight;
+    }
+
+    public int getInFlightBytes() {
+        return inFlightBytes;
+    }
+
+    /**
+     * @return fraction of messages from peer that were lost since previous
+     */
+    public float getLossSince(ChannelStatistics previous) {
+        long lost = messagesLost - previous.messagesLost;
+        long expected = messagesReceived - previous.messagesReceived + lost;
+        return expected <= 0 ? 0f : Math.max(0, lost) / (float) expected;
+    }
+
+    /**
+     * @return one line summary of what has happened since previous
+     */
+    public String describeSince(ChannelStatistics previous, float seconds) {
+        return String.format(Locale.ROOT, "rtt %s, out %.1f kB/s %.0f msg/s, "
+                + "in %.1f kB/s %.0f msg/s, loss %.1f %%, resends %.1f/s, "
+                + "stalls %.1f/s, queued %d, in flight %d (%d B)",
+                roundTripTime < 0
+                        ? "-"
+                        : String.format(Locale.ROOT, "%.0f ms",
+                                roundTripTime * 1000f),
+                (bytesSent - previous.bytesSent) / 1000f / seconds,
+                (messagesSent - previous.messagesSent) / seconds,
+                (bytesReceived - previous.bytesReceived) / 1000f / seconds,
+                (messagesReceived - previous.messagesReceived) / seconds,
+                getLossSince(previous) * 100f,
+                (resends - previous.resends) / seconds,
+                (stalls - previous.stalls) / seconds,
+                queuedCommands, segmentsInFlight, inFlightBytes);
+    }
+}
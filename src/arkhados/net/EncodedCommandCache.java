@@ -0,0 +1,121 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.net;
+
+import com.jme3.network.serializing.Serializer;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Encodes each command only once even if it is sent to many connections.
+ * Encoded bytes are written to a shared arena and are not modified
+ * afterwards, so messages for all connections can copy them. Commands are
+ * recognized by identity and they must not change before clear is called.
+ */
+public class EncodedCommandCache {
+
+    private static final int ARENA_SIZE = 65536;
+    private final Map<Command, Encoded> encoded = new IdentityHashMap<>();
+    private ByteBuffer arena = ByteBuffer.allocate(ARENA_SIZE);
+    private int encodings = 0;
+    private int copies = 0;
+
+    /**
+     * Writes command to target the same way as
+     * Serializer.writeClassAndObject.
+     */
+    public void write(ByteBuffer target, Command command) throws IOException {
+        Encoded bytes = encoded.get(command);
+        if (bytes == null) {
+            bytes = encode(command);
+            encoded.put(command, bytes);
+            encodings++;
+        } else {
+            copies++;
+        }
+
+        target.put(bytes.array, bytes.offset, bytes.length);
+    }
+
+    /**
+     * Encodes command if it has not been encoded yet so that writing it
+     * later only copies bytes.
+     *
+     * @return bytes that write adds for command
+     */
+    public int sizeOf(Command command) throws IOException {
+        Encoded bytes = encoded.get(command);
+        if (bytes == null) {
+            bytes = encode(command);
+            encoded.put(command, bytes);
+            encodings++;
+        }
+
+        return bytes.length;
+    }
+
+    private Encoded encode(Command command) throws IOException {
+        int start = arena.position();
+        try {
+            Serializer.writeClassAndObject(arena, command);
+        } catch (BufferOverflowException ex) {
+            // Earlier commands keep their reference to old arena
+            arena = ByteBuffer.allocate(ARENA_SIZE);
+            start = 0;
+            Serializer.writeClassAndObject(arena, command);
+        }
+
+        return new Encoded(arena.array(), start, arena.position() - start);
+    }
+
+    /**
+     * Forgets all encoded commands. Should be called once per tick before
+     * messages are sent.
+     */
+    public void clear() {
+        encoded.clear();
+        arena.clear();
+    }
+
+    /**
+     * @return how many times command had to be serialized
+     */
+    public int getEncodings() {
+        return encodings;
+    }
+
+    /**
+     * @return how many times already encoded command was copied
+     */
+    public int getCopies() {
+        return copies;
+    }
+
+    private static class Encoded {
+
+        final byte[] array;
+        final int offset;
+        final int length;
+
+        Encoded(byte[] array, int offset, int length) {
+            this.array = array;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.net;
+
+import com.jme3.network.serializing.Serializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes OneTrueMessage as order number followed by its guaranteed and
+ * unreliable commands. If EncodedCommandCache is in use on writing thread,
+ * commands are copied from it instead of serializing them again.
+ */
+public class OneTrueMessageSerializer extends Serializer {
+
+    private static final ThreadLocal<EncodedCommandCache> caches
+            = new ThreadLocal<>();
+    // Bytes written and read on each thread since they were last polled
+    private static final ThreadLocal<long[]> byteCounts
+            = ThreadLocal.withInitial(() -> new long[2]);
+
+    /**
+     * Sets cache that is used by messages written on this thread.
+     *
+     * @param cache cache or null to stop using it
+     */
+    public static void useCache(EncodedCommandCache cache) {
+        if (cache == null) {
+            caches.remove();
+        } else {
+            caches.set(cache);
+        }
+    }
+
+    /**
+     * @return cache that is in use on this thread or null
+     */
+    public static EncodedCommandCache getCache() {
+        return caches.get();
+    }
+
+    /**
+     * jME serializes messages on thread that sends them so this tells size
+     * of messages that were just sent.
+     *
+     * @return bytes of messages written on this thread since last call
+     */
+    public static long pollBytesWritten() {
+        return poll(0);
+    }
+
+    /**
+     * jME deserializes messages on thread that dispatches them so this
+     * tells size of messages that are being handled.
+     *
+     * @return bytes of messages read on this thread since last call
+     */
+    public static long pollBytesRead() {
+        return poll(1);
+    }
+
+    private static long poll(int index) {
+        long[] counts = byteCounts.get();
+        long bytes = counts[index];
+        counts[index] = 0;
+        return bytes;
+    }
+
+    @Override
+    public <T> T readObject(ByteBuffer data, Class<T> c) throws IOException {
+        int start = data.position();
+        OneTrueMessage message = new OneTrueMessage(data.getInt());
+
+        int pairs = data.getShort() & 0xFFFF;
+        for (int i = 0; i < pairs; i++) {
+            int otmId = data.getInt();
+            List<Command> commands = new ArrayList<>();
+            readCommands(data, commands);
+            message.getGuaranteed()
+                    .add(new OtmIdCommandListPair(otmId, commands));
+        }
+
+        readCommands(data, message.getUnreliables());
+        byteCounts.get()[1] += data.position() - start;
+        return c.cast(message);
+    }
+
+    private static void readCommands(ByteBuffer data, List<Command> store)
+            throws IOException {
+        int count = data.getShort() & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            store.add((Command) Serializer.readClassAndObject(data));
+        }
+    }
+
+    @Override
+    public void writeObject(ByteBuffer buffer, Object object)
+            throws IOException {
+        OneTrueMessage message = (OneTrueMessage) object;
+        EncodedCommandCache cache = caches.get();
+        int start = buffer.position();
+
+        buffer.putInt(message.getOrderNum());
+
+        List<OtmIdCommandListPair> guaranteed = message.getGuaranteed();
+        buffer.putShort((short) guaranteed.size());
+        for (OtmIdCommandListPair pair : guaranteed) {
+            buffer.putInt(pair.getOtmId());
+            writeCommands(buffer, pair.getCommandList(), cache);
+        }
+
+        writeCommands(buffer, message.getUnreliables(), cache);
+        byteCounts.get()[0] += buffer.position() - start;
+    }
+
+    private static void writeCommands(ByteBuffer buffer,
+            List<Command> commands, EncodedCommandCache cache)
+            throws IOException {
+        buffer.putShort((short) commands.size());
+        for (Command command : commands) {
+            if (cache != null) {
+                cache.write(buffer, command);
+            } else {
+                Serializer.writeClassAndObject(buffer, command);
+            }
+        }
+    }
+}
@@ -14,35 +14,91 @@
  along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
 package arkhados.net;
 
+import arkhados.Globals;
+import arkhados.PlayerData;
+import arkhados.ServerFog;
+import arkhados.Sync;
 import arkhados.World;
-import arkhados.replay.ReplayData;
-import arkhados.replay.ReplaySerializer;
+import arkhados.messages.sync.CmdInputAck;
+import arkhados.messages.sync.CmdSnapshot;
+import arkhados.replay.ReplayHeader;
+import arkhados.replay.ReplayWriter;
 import arkhados.settings.server.Settings;
 import arkhados.ui.hud.ServerClientDataStrings;
+import com.jme3.app.state.AppStateManager;
 import com.jme3.network.HostedConnection;
 import com.jme3.network.Server;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class RecordingServerSender extends ServerSender {
+public class RecordingServerSender extends WindowedServerSender {
 
+    private static final Logger logger =
+            Logger.getLogger(RecordingServerSender.class.getName());
+    // Seconds of world time between replay keyframes
+    private static final float KEYFRAME_INTERVAL = 10f;
     private World world;
-    private final ReplayData replayData = new ReplayData();
+    private final ReplayHeader header = new ReplayHeader();
     private final SimpleDateFormat dateFormat
             = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss");
+    private ReplayWriter writer;
+    private boolean writerFailed = false;
+    private float nextKeyframe = 0f;
 
-    private final ReplaySerializer replaySerializer = new ReplaySerializer();
+    public RecordingServerSender(Server server, int maxInFlightBytes) {
+        super(server, maxInFlightBytes);
+    }
+
+    @Override
+    public void update(float tpf) {
+        // Between ticks nothing is half way done, so keyframe is consistent
+        // with commands recorded before and after it
+        if (writer != null && world.getWorldTime() >= nextKeyframe) {
+            recordKeyframe();
+        }
+
+        super.update(tpf);
+    }
+
+    private void recordKeyframe() {
+        float time = world.getWorldTime();
+        nextKeyframe = time + KEYFRAME_INTERVAL;
+
+        AppStateManager stateManager = Globals.app.getStateManager();
+        ServerFog fog = stateManager.getState(ServerFog.class);
+        Sync sync = stateManager.getState(Sync.class);
+        if (fog == null) {
+            return;
+        }
+
+        Map<Integer, List<Command>> keyframe = new LinkedHashMap<>();
+        for (Map.Entry<HostedConnection, List<Command>> entry
+                : fog.createKeyframe().entrySet()) {
+            Integer playerId = entry.getKey()
+                    .getAttribute(ServerClientDataStrings.PLAYER_ID);
+            if (playerId == null) {
+                continue;
+            }
+
+            List<Command> commands = entry.getValue();
+            CmdSnapshot snapshot = sync != null
+                    ? sync.createKeyframeSnapshot(entry.getKey())
+                    : null;
+            if (snapshot != null) {
+                commands.add(snapshot);
+            }
 
-    public RecordingServerSender(Server server) {
-        super(server);
+            keyframe.put(playerId, commands);
+        }
+
+        writer.addKeyframe(time, keyframe);
     }
 
     @Override
@@ -53,7 +109,8 @@ public class RecordingServerSender extends ServerSender {
     }
 
     private void saveCommand(Command command, HostedConnection connection) {
-        if (command instanceof Ack) {
+        // Replays have no local player whose movement would be predicted
+        if (command instanceof Ack || command instanceof CmdInputAck) {
             return;
         }
 
@@ -64,56 +121,53 @@ public class RecordingServerSender extends ServerSender {
             return;
         }
 
-        replayData.addCommand(command, playerId, world.getWorldTime());
+        ReplayWriter replayWriter = getWriter();
+        if (replayWriter == null) {
+            return;
+        }
+
+        replayWriter.addPlayer(playerId,
+                PlayerData.getStringData(playerId, PlayerData.NAME));
+        replayWriter.addCommand(command, playerId, world.getWorldTime());
     }
 
-    public boolean saveToFile() {
+    /**
+     * Replay file is created when first command is recorded.
+     */
+    private ReplayWriter getWriter() {
+        if (writer != null || writerFailed) {
+            return writer;
+        }
+
         File replayDir = new File("replays");
         if (!replayDir.exists()) {
             replayDir.mkdir();
         }
 
-        replayData.getHeader().setVersion("0.7-dev");
-        replayData.getHeader().setGameMode(
-                Settings.get().General().getGameMode());
-        replayData.getHeader().setArena("Pillar Arena"); // TODO: Read arena
+        header.setVersion("0.7-dev");
+        header.setGameMode(Settings.get().General().getGameMode());
+        header.setArena("Pillar Arena"); // TODO: Read arena
+
+        String name = dateFormat.format(header.getDate()) + ".rep";
 
-        ByteBuffer target = ByteBuffer.allocate(314572800);
         try {
-            replaySerializer.writeObject(target, replayData);
-            target.flip();
+            writer = new ReplayWriter(Paths.get(replayDir.toString(), name),
+                    header);
         } catch (IOException ex) {
-            Logger.getLogger(RecordingServerSender.class.getName())
-                    .log(Level.SEVERE, null, ex);
+            writerFailed = true;
+            logger.log(Level.WARNING, "Could not create replay file", ex);
         }
 
-        FileOutputStream out = null;
-
-        Date date = replayData.getHeader().getDate();
-        String name = dateFormat.format(date) + ".rep";
-        String path = Paths.get(replayDir.toString(), name).toString();
+        return writer;
+    }
 
-        try {
-            out = new FileOutputStream(path, false);
-            out.getChannel().write(target);
-        } catch (FileNotFoundException ex) {
-            Logger.getLogger(RecordingServerSender.class.getName())
-                    .log(Level.WARNING, null, ex);
-        } catch (IOException ex) {
-            Logger.getLogger(RecordingServerSender.class.getName())
-                    .log(Level.WARNING, null, ex);
-        } finally {
-            if (out != null) {
-                try {
-                    out.close();
-                } catch (IOException ex) {
-                    Logger.getLogger(RecordingServerSender.class.getName())
-                            .log(Level.WARNING, null, ex);
-                }
-            }
+    /**
+     * Writes rest of replay and its index.
+     */
+    public void closeReplay() {
+        if (writer != null) {
+            writer.close();
         }
-
-        return true;
     }
 
     public void setWorld(World world) {
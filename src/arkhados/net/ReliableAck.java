@@ -0,0 +1,50 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.net;
+
+import com.jme3.network.serializing.Serializable;
+
+/**
+ * Tells which guaranteed segments of ReliableChannel have arrived. All
+ * segments up to cumulative have arrived and bit i of mask tells if segment
+ * cumulative + 1 + i has arrived too.
+ */
+@Serializable
+public class ReliableAck implements Command {
+
+    private int cumulative;
+    private long mask;
+
+    public ReliableAck() {
+    }
+
+    public ReliableAck(int cumulative, long mask) {
+        this.cumulative = cumulative;
+        this.mask = mask;
+    }
+
+    public int getCumulative() {
+        return cumulative;
+    }
+
+    public long getMask() {
+        return mask;
+    }
+
+    @Override
+    public boolean isGuaranteed() {
+        return false;
+    }
+}
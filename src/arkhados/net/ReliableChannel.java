@@ -0,0 +1,390 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.net;
+
+import com.jme3.network.serializing.Serializer;
+import com.jme3.util.IntMap;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reliable and ordered delivery of guaranteed commands to one peer on top of
+ * unreliable OneTrueMessages.
+ *
+ * Guaranteed commands are grouped into numbered segments that stay in
+ * sliding window until peer acknowledges them with ReliableAck. Segment is
+ * sent again when its retransmit timer, derived from measured round trip
+ * time, runs out or when enough later segments have been acknowledged.
+ * New segments are opened only while their bytes fit in window. Unreliable
+ * commands go with next message whether window is full or not.
+ *
+ * Methods are synchronized because messages from peer are received on
+ * network thread.
+ */
+public class ReliableChannel {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT_BYTES = 32768;
+    // Receiver buffers at most this many segments out of order. Mask of
+    // ReliableAck has one bit for each of them.
+    public static final int MAX_SEGMENTS = 64;
+    private static final long MIN_RTO = 100000000L;
+    private static final long MAX_RTO = 3000000000L;
+    private static final long INITIAL_RTO = 500000000L;
+    // Segment is sent again when this many acks have passed it by
+    private static final int FAST_RETRANSMIT_THRESHOLD = 3;
+    private final int maxInFlightBytes;
+    private final ByteBuffer scratch = ByteBuffer.allocate(8192);
+    // <Sending>
+    private final List<Pending> pending = new ArrayList<>();
+    private final List<Command> unreliables = new ArrayList<>();
+    private final ArrayDeque<Segment> window = new ArrayDeque<>();
+    private final List<OtmIdCommandListPair> outgoing = new ArrayList<>();
+    private int nextSegmentId = 0;
+    private int nextOrderNum = 0;
+    private int inFlightBytes = 0;
+    private long smoothedRtt = -1;
+    private long rttVariance = 0;
+    private long rto = INITIAL_RTO;
+    // </Sending>
+    // <Receiving>
+    private int delivered = -1;
+    private final IntMap<List<Command>> outOfOrder = new IntMap<>();
+    private int latestOrderNum = -1;
+    private boolean ackPending = false;
+    // </Receiving>
+    private long resends = 0;
+    private long stalls = 0;
+    private long messagesSent = 0;
+    private long bytesSent = 0;
+    private long messagesReceived = 0;
+    private long bytesReceived = 0;
+    private long messagesLost = 0;
+
+    public ReliableChannel() {
+        this(DEFAULT_MAX_IN_FLIGHT_BYTES);
+    }
+
+    /**
+     * @param maxInFlightBytes how many bytes of guaranteed commands may wait
+     * for acknowledgement. Single command that is larger can still be sent
+     * when nothing else is in flight.
+     */
+    public ReliableChannel(int maxInFlightBytes) {
+        this.maxInFlightBytes = maxInFlightBytes;
+    }
+
+    public synchronized void queue(Command command) {
+        if (command.isGuaranteed()) {
+            pending.add(new Pending(command));
+        } else {
+            unreliables.add(command);
+        }
+    }
+
+    /**
+     * @param now System.nanoTime()
+     * @return message that should be sent to peer now or null if there is
+     * nothing to send
+     */
+    public synchronized OneTrueMessage poll(long now) {
+        outgoing.clear();
+
+        for (Segment segment : window) {
+            if (!segment.acked && now >= segment.deadline) {
+                segment.retries++;
+                segment.overtaken = 0;
+                segment.deadline = now + Math.min(MAX_RTO,
+                        rto << Math.min(segment.retries, 5));
+                resends++;
+                outgoing.add(segment.pair);
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            Segment segment = openSegment(now);
+            if (segment != null) {
+                outgoing.add(segment.pair);
+            } else {
+                stalls++;
+            }
+        }
+
+        if (outgoing.isEmpty() && unreliables.isEmpty() && !ackPending) {
+            return null;
+        }
+
+        messagesSent++;
+        OneTrueMessage message = new OneTrueMessage(nextOrderNum++);
+        message.getGuaranteed().addAll(outgoing);
+        message.getUnreliables().addAll(unreliables);
+        unreliables.clear();
+        if (ackPending) {
+            message.getUnreliables().add(createAck());
+            ackPending = false;
+        }
+
+        return message;
+    }
+
+    private Segment openSegment(long now) {
+        if (window.size() >= MAX_SEGMENTS) {
+            return null;
+        }
+
+        List<Command> commands = new ArrayList<>();
+        int bytes = 0;
+        for (Pending next : pending) {
+            int size = next.size();
+            boolean fits = inFlightBytes + bytes + size <= maxInFlightBytes;
+            if (!fits && !(window.isEmpty() && commands.isEmpty())) {
+                break;
+            }
+
+            commands.add(next.command);
+            bytes += size;
+        }
+
+        if (commands.isEmpty()) {
+            return null;
+        }
+
+        pending.subList(0, commands.size()).clear();
+        Segment segment = new Segment(
+                new OtmIdCommandListPair(nextSegmentId++, commands), bytes,
+                now, now + rto);
+        window.addLast(segment);
+        inFlightBytes += bytes;
+        return segment;
+    }
+
+    public synchronized void acknowledge(ReliableAck ack, long now) {
+        int cumulative = ack.getCumulative();
+        long mask = ack.getMask();
+        int highest = mask == 0
+                ? cumulative
+                : cumulative + 64 - Long.numberOfLeadingZeros(mask);
+
+        for (Segment segment : window) {
+            int id = segment.pair.getOtmId();
+            int offset = id - cumulative - 1;
+            boolean acked = id <= cumulative
+                    || (offset < 64 && (mask & (1L << offset)) != 0);
+            if (acked && !segment.acked) {
+                segment.acked = true;
+                inFlightBytes -= segment.bytes;
+                // Karn's algorithm: resent segments don't tell round trip
+                if (segment.retries == 0) {
+                    sampleRoundTrip(now - segment.sentAt);
+                }
+            } else if (!segment.acked && id < highest
+                    && ++segment.overtaken == FAST_RETRANSMIT_THRESHOLD) {
+                segment.deadline = now;
+            }
+        }
+
+        while (!window.isEmpty() && window.peekFirst().acked) {
+            window.pollFirst();
+        }
+    }
+
+    private void sampleRoundTrip(long sample) {
+        if (smoothedRtt < 0) {
+            smoothedRtt = sample;
+            rttVariance = sample / 2;
+        } else {
+            rttVariance = (3 * rttVariance + Math.abs(smoothedRtt - sample))
+                    / 4;
+            smoothedRtt = (7 * smoothedRtt + sample) / 8;
+        }
+
+        rto = Math.max(MIN_RTO, Math.min(MAX_RTO,
+                smoothedRtt + 4 * rttVariance));
+    }
+
+    /**
+     * Takes guaranteed segments of message and adds commands that can now be
+     * handled in order to store.
+     *
+     * @return true if message is newer than any before it. Unreliable
+     * commands of older messages should be ignored.
+     */
+    public synchronized boolean receive(OneTrueMessage message,
+            List<Command> store) {
+        for (OtmIdCommandListPair pair : message.getGuaranteed()) {
+            // Duplicates are acknowledged too since previous ack was lost
+            ackPending = true;
+            int id = pair.getOtmId();
+            if (id > delivered && id <= delivered + MAX_SEGMENTS
+                    && !outOfOrder.containsKey(id)) {
+                outOfOrder.put(id, pair.getCommandList());
+            }
+        }
+
+        List<Command> commands;
+        while ((commands = outOfOrder.remove(delivered + 1)) != null) {
+            store.addAll(commands);
+            delivered++;
+        }
+
+        messagesReceived++;
+        int orderNum = message.getOrderNum();
+        if (orderNum <= latestOrderNum) {
+            // Late message was counted as lost when newer one arrived
+            if (messagesLost > 0) {
+                messagesLost--;
+            }
+            return false;
+        }
+
+        if (latestOrderNum != -1) {
+            messagesLost += orderNum - latestOrderNum - 1;
+        }
+        latestOrderNum = orderNum;
+        return true;
+    }
+
+    private ReliableAck createAck() {
+        long mask = 0;
+        for (IntMap.Entry<List<Command>> entry : outOfOrder) {
+            int offset = entry.getKey() - delivered - 1;
+            if (offset < 64) {
+                mask |= 1L << offset;
+            }
+        }
+
+        return new ReliableAck(delivered, mask);
+    }
+
+    /**
+     * Uses EncodedCommandCache of calling thread if there is one, so that
+     * command is not serialized again when message is written.
+     */
+    private int sizeOf(Command command) {
+        EncodedCommandCache cache = OneTrueMessageSerializer.getCache();
+        scratch.clear();
+        try {
+            if (cache != null) {
+                return cache.sizeOf(command);
+            }
+            Serializer.writeClassAndObject(scratch, command);
+            return scratch.position();
+        } catch (IOException | BufferOverflowException ex) {
+            return scratch.capacity();
+        }
+    }
+
+    /**
+     * Adds size of message that poll returned once it has been serialized.
+     */
+    public synchronized void countSentBytes(long bytes) {
+        bytesSent += bytes;
+    }
+
+    /**
+     * Adds size of message that was given to receive.
+     */
+    public synchronized void countReceivedBytes(long bytes) {
+        bytesReceived += bytes;
+    }
+
+    public synchronized ChannelStatistics getStatistics() {
+        return new ChannelStatistics(messagesSent, bytesSent,
+                messagesReceived, bytesReceived, messagesLost, resends,
+                stalls, getRoundTripTime(), pending.size(), window.size(),
+                inFlightBytes);
+    }
+
+    /**
+     * @return how many times segments have been sent again
+     */
+    public synchronized long getResends() {
+        return resends;
+    }
+
+    /**
+     * @return how many times guaranteed commands had to wait because window
+     * was full
+     */
+    public synchronized long getStalls() {
+        return stalls;
+    }
+
+    /**
+     * @return guaranteed commands that have not been sent yet
+     */
+    public synchronized int getQueuedCommands() {
+        return pending.size();
+    }
+
+    public synchronized int getInFlightBytes() {
+        return inFlightBytes;
+    }
+
+    public synchronized int getSegmentsInFlight() {
+        return window.size();
+    }
+
+    /**
+     * @return smoothed round trip time in seconds or -1 if it has not been
+     * measured yet
+     */
+    public synchronized float getRoundTripTime() {
+        return smoothedRtt < 0 ? -1f : smoothedRtt / 1e9f;
+    }
+
+    public synchronized float getRetransmitTimeout() {
+        return rto / 1e9f;
+    }
+
+    private class Pending {
+
+        final Command command;
+        int size = -1;
+
+        Pending(Command command) {
+            this.command = command;
+        }
+
+        int size() {
+            if (size == -1) {
+                size = sizeOf(command);
+            }
+            return size;
+        }
+    }
+
+    private static class Segment {
+
+        final OtmIdCommandListPair pair;
+        final int bytes;
+        final long sentAt;
+        long deadline;
+        int retries = 0;
+        int overtaken = 0;
+        boolean acked = false;
+
+        Segment(OtmIdCommandListPair pair, int bytes, long sentAt,
+                long deadline) {
+            this.pair = pair;
+            this.bytes = bytes;
+            this.sentAt = sentAt;
+            this.deadline = deadline;
+        }
+    }
+}
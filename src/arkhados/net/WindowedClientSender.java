@@ -0,0 +1,88 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.net;
+
+import com.jme3.network.Client;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ClientSender that sends guaranteed commands through ReliableChannel
+ * instead of resending all unconfirmed commands with every message.
+ */
+public class WindowedClientSender extends ClientSender
+        implements ReliableSender {
+
+    private static final Logger logger
+            = Logger.getLogger(WindowedClientSender.class.getName());
+    // Replaced on reset while network thread may be receiving
+    private volatile ReliableChannel channel = new ReliableChannel();
+    private final EncodedCommandCache commandCache
+            = new EncodedCommandCache();
+
+    @Override
+    public void update(float tpf) {
+        sendMessage();
+    }
+
+    @Override
+    public void sendMessage() {
+        Client client = getClient();
+        if (client == null || !client.isConnected()) {
+            return;
+        }
+
+        ReliableChannel channel = this.channel;
+        commandCache.clear();
+        // Commands are encoded once when channel sizes them and copied
+        // when message is serialized on this thread
+        OneTrueMessageSerializer.useCache(commandCache);
+        try {
+            OneTrueMessage message = channel.poll(System.nanoTime());
+            if (message == null) {
+                return;
+            }
+
+            client.send(message);
+            channel.countSentBytes(
+                    OneTrueMessageSerializer.pollBytesWritten());
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "", ex);
+        } finally {
+            OneTrueMessageSerializer.useCache(null);
+        }
+    }
+
+    @Override
+    public void addCommand(Command command) {
+        Client client = getClient();
+        if (client == null || !client.isConnected()) {
+            return;
+        }
+
+        channel.queue(command);
+    }
+
+    @Override
+    public ReliableChannel getChannel(Object source) {
+        return channel;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        channel = new ReliableChannel();
+    }
+}
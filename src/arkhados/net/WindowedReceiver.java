@@ -0,0 +1,99 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.net;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.network.HostedConnection;
+import com.jme3.network.Message;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Receiver for ReliableSenders. Guaranteed commands are handed to handlers in
+ * order they were sent, once everything before them has arrived.
+ * Acknowledgements go to sender's channel and are not seen by handlers.
+ */
+public class WindowedReceiver extends AbstractAppState implements Receiver {
+
+    private final List<CommandHandler> handlers
+            = new CopyOnWriteArrayList<>();
+    private AppStateManager stateManager;
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        super.initialize(stateManager, app);
+        this.stateManager = stateManager;
+    }
+
+    @Override
+    public void registerCommandHandler(CommandHandler handler) {
+        if (handler == null) {
+            throw new IllegalArgumentException("Null handler");
+        }
+        handlers.add(handler);
+    }
+
+    @Override
+    public boolean removeCommandHandler(CommandHandler handler) {
+        return handlers.remove(handler);
+    }
+
+    @Override
+    public void messageReceived(Object source, Message m) {
+        long bytes = OneTrueMessageSerializer.pollBytesRead();
+        ReliableSender sender = (ReliableSender) stateManager
+                .getState(Sender.class);
+        ReliableChannel channel = sender.getChannel(source);
+        if (channel == null) {
+            return;
+        }
+
+        OneTrueMessage message = (OneTrueMessage) m;
+        channel.countReceivedBytes(bytes);
+        List<Command> guaranteed = new ArrayList<>();
+        boolean newest = channel.receive(message, guaranteed);
+
+        for (Command command : guaranteed) {
+            for (CommandHandler handler : handlers) {
+                handler.readGuaranteed(source, command);
+            }
+        }
+
+        long now = System.nanoTime();
+        for (Command command : message.getUnreliables()) {
+            if (command instanceof ReliableAck) {
+                channel.acknowledge((ReliableAck) command, now);
+            } else if (newest) {
+                for (CommandHandler handler : handlers) {
+                    handler.readUnreliable(source, command);
+                }
+            }
+        }
+    }
+
+    /**
+     * Channels are kept by sender.
+     */
+    @Override
+    public void addConnection(HostedConnection connection) {
+    }
+
+    @Override
+    public void reset() {
+    }
+}
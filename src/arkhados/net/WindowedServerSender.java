@@ -0,0 +1,142 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.net;
+
+import com.jme3.network.HostedConnection;
+import com.jme3.network.Server;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ServerSender that sends guaranteed commands through ReliableChannel of
+ * each connection instead of resending all unconfirmed commands with every
+ * message. Commands that go to many connections are serialized only once
+ * per tick.
+ */
+public class WindowedServerSender extends ServerSender
+        implements ReliableSender {
+
+    private static final Logger logger
+            = Logger.getLogger(WindowedServerSender.class.getName());
+    // Connections are added on network thread
+    private final Map<HostedConnection, ReliableChannel> channels
+            = new ConcurrentHashMap<>();
+    private final int maxInFlightBytes;
+    private final EncodedCommandCache commandCache
+            = new EncodedCommandCache();
+
+    public WindowedServerSender(Server server, int maxInFlightBytes) {
+        super(server);
+        this.maxInFlightBytes = maxInFlightBytes;
+    }
+
+    @Override
+    public void update(float tpf) {
+        sendMessage();
+    }
+
+    @Override
+    public void sendMessage() {
+        if (!getServer().isRunning()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        commandCache.clear();
+        // Messages are serialized on this thread when they are sent
+        OneTrueMessageSerializer.useCache(commandCache);
+        try {
+            for (Map.Entry<HostedConnection, ReliableChannel> entry
+                    : channels.entrySet()) {
+                OneTrueMessage message = entry.getValue().poll(now);
+                if (message == null) {
+                    continue;
+                }
+
+                try {
+                    entry.getKey().send(message);
+                    entry.getValue().countSentBytes(
+                            OneTrueMessageSerializer.pollBytesWritten());
+                } catch (Exception ex) {
+                    logger.log(Level.WARNING, "", ex);
+                }
+            }
+        } finally {
+            OneTrueMessageSerializer.useCache(null);
+        }
+    }
+
+    @Override
+    public void addCommandForSingle(Command command,
+            HostedConnection connection) {
+        ReliableChannel channel = channels.get(connection);
+        if (channel != null) {
+            channel.queue(command);
+        }
+    }
+
+    @Override
+    public void addConnection(HostedConnection connection) {
+        channels.put(connection, new ReliableChannel(maxInFlightBytes));
+    }
+
+    @Override
+    public void removeConnection(HostedConnection connection) {
+        channels.remove(connection);
+    }
+
+    @Override
+    public ReliableChannel getChannel(Object source) {
+        return channels.get(source);
+    }
+
+    /**
+     * @return live view of channels by connection
+     */
+    public Map<HostedConnection, ReliableChannel> getChannels() {
+        return Collections.unmodifiableMap(channels);
+    }
+
+    /**
+     * @return guaranteed commands that have not been sent yet summed over
+     * all connections
+     */
+    public int getQueuedCommands() {
+        int queued = 0;
+        for (ReliableChannel channel : channels.values()) {
+            queued += channel.getQueuedCommands();
+        }
+        return queued;
+    }
+
+    /**
+     * @return unacknowledged segments summed over all connections
+     */
+    public int getSegmentsInFlight() {
+        int segments = 0;
+        for (ReliableChannel channel : channels.values()) {
+            segments += channel.getSegmentsInFlight();
+        }
+        return segments;
+    }
+
+    @Override
+    public void reset() {
+        channels.clear();
+    }
+}
@@ -0,0 +1,111 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.profiling;
+
+import java.util.Arrays;
+
+/**
+ * Log-linear histogram in the spirit of HdrHistogram. Each power of two is
+ * split into 8 buckets so recorded values are known to within 12.5 %
+ * while recording is a couple of array operations and nothing is
+ * allocated. Not thread safe.
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUBS = 1 << SUB_BITS;
+    private final long[] counts = new long[64 * SUBS];
+    private long count = 0;
+    private long total = 0;
+    private long max = 0;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+
+        counts[index(value)]++;
+        count++;
+        total += value;
+        max = Math.max(max, value);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : total / (double) count;
+    }
+
+    /**
+     * @param fraction between 0 and 1
+     * @return highest value that is equivalent to value at given fraction
+     */
+    public long getPercentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(max, lowest(i + 1) - 1);
+            }
+        }
+
+        return max;
+    }
+
+    public void reset() {
+        if (count == 0) {
+            return;
+        }
+
+        Arrays.fill(counts, 0);
+        count = 0;
+        total = 0;
+        max = 0;
+    }
+
+    static int index(long value) {
+        if (value < SUBS) {
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int sub = (int) (value >>> shift) & (SUBS - 1);
+        return (shift + 1) * SUBS + sub;
+    }
+
+    static long lowest(int index) {
+        if (index < SUBS) {
+            return index;
+        }
+
+        int shift = index / SUBS - 1;
+        return (long) (SUBS + index % SUBS) << shift;
+    }
+}
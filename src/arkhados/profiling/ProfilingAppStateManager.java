@@ -0,0 +1,58 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.profiling;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AppState;
+import com.jme3.app.state.AppStateManager;
+
+/**
+ * AppStateManager that times update of each AppState while TickProfiler is
+ * attached. Otherwise it behaves exactly like AppStateManager.
+ */
+public class ProfilingAppStateManager extends AppStateManager {
+
+    private TickProfiler profiler;
+
+    public ProfilingAppStateManager(Application app) {
+        super(app);
+    }
+
+    @Override
+    public void update(float tpf) {
+        // Profiler may be detached during this update
+        TickProfiler profiler = this.profiler;
+        if (profiler == null) {
+            super.update(tpf);
+            return;
+        }
+
+        // Same steps as in AppStateManager.update
+        terminatePending();
+        initializePending();
+
+        for (AppState state : getStates()) {
+            if (state.isEnabled()) {
+                long start = System.nanoTime();
+                state.update(tpf);
+                profiler.recordState(state, System.nanoTime() - start);
+            }
+        }
+    }
+
+    void setProfiler(TickProfiler profiler) {
+        this.profiler = profiler;
+    }
+}
@@ -0,0 +1,89 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.profiling;
+
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.control.Control;
+
+/**
+ * Root node that times every Control update on ticks that TickProfiler
+ * samples. Otherwise it behaves exactly like Node.
+ */
+public class ProfilingNode extends Node {
+
+    private TickProfiler profiler;
+    private Control[] controls = new Control[16];
+
+    public ProfilingNode(String name) {
+        super(name);
+    }
+
+    @Override
+    public void updateLogicalState(float tpf) {
+        if (profiler == null || !profiler.isSamplingControls()) {
+            super.updateLogicalState(tpf);
+            return;
+        }
+
+        // Same order as Node's own update list: parents before children.
+        // Spatial subclasses that override updateLogicalState are not used
+        // on server so running controls is all there is to do.
+        update(this, profiler, tpf);
+    }
+
+    /**
+     * Walks graph while updating it so that spatials that controls remove
+     * are skipped for rest of tick.
+     */
+    private void update(Spatial spatial, TickProfiler profiler, float tpf) {
+        runControls(spatial, profiler, tpf);
+        if (!(spatial instanceof Node)
+                || (spatial != this && spatial.getParent() == null)) {
+            return;
+        }
+
+        Node node = (Node) spatial;
+        for (Spatial child : node.getChildren()) {
+            if (child.getParent() == node) {
+                update(child, profiler, tpf);
+            }
+        }
+    }
+
+    private void runControls(Spatial spatial, TickProfiler profiler,
+            float tpf) {
+        // Controls may add or remove controls while they are updated
+        int size = spatial.getNumControls();
+        if (size > controls.length) {
+            controls = new Control[Math.max(size, controls.length * 2)];
+        }
+        for (int i = 0; i < size; i++) {
+            controls[i] = spatial.getControl(i);
+        }
+
+        for (int i = 0; i < size; i++) {
+            Control control = controls[i];
+            controls[i] = null;
+            long start = System.nanoTime();
+            control.update(tpf);
+            profiler.recordControl(control, System.nanoTime() - start);
+        }
+    }
+
+    void setProfiler(TickProfiler profiler) {
+        this.profiler = profiler;
+    }
+}
@@ -0,0 +1,337 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.profiling;
+
+import arkhados.net.WindowedServerSender;
+import com.jme3.app.Application;
+import com.jme3.app.SimpleApplication;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.bullet.BulletAppState;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
+import com.jme3.profile.AppProfiler;
+import com.jme3.profile.AppStep;
+import com.jme3.profile.VpStep;
+import com.jme3.renderer.ViewPort;
+import com.jme3.renderer.queue.RenderQueue;
+import com.jme3.scene.control.Control;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.FileHandler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * Measures where server ticks go: frame phases, update of each AppState,
+ * update of each Control class, physics steps and guaranteed commands
+ * waiting to be sent. Results are gathered to histograms that are written
+ * to rolling Arkhados_Profile log every few seconds.
+ *
+ * AppState and Control times are only measured if application uses
+ * ProfilingAppStateManager and ProfilingNode as its root node. When
+ * profiler is not attached those cost one null check per tick.
+ */
+public class TickProfiler extends AbstractAppState
+        implements AppProfiler, PhysicsTickListener {
+
+    private static final Logger logger
+            = Logger.getLogger(TickProfiler.class.getName());
+    private static final String ROW_FORMAT
+            = "%-34s %8d %9.1f %9.1f %9.1f %9.1f %9.1f%n";
+    private static final String HEADER_FORMAT
+            = "%-34s %8s %9s %9s %9s %9s %9s%n";
+    private final float dumpInterval;
+    private final int controlSampleInterval;
+    private Application app;
+    private Logger output;
+    private FileHandler fileHandler;
+    private ProfilingAppStateManager profilingManager;
+    private ProfilingNode profilingRoot;
+    private PhysicsSpace physicsSpace;
+    private WindowedServerSender sender;
+
+    private final Histogram frames = new Histogram();
+    private final Map<AppStep, Histogram> phases = new EnumMap<>(
+            AppStep.class);
+    private final Map<Class<?>, Histogram> states = new HashMap<>();
+    private final Map<Class<?>, Histogram> controls = new HashMap<>();
+    // Recorded on physics thread
+    private final Histogram physicsSteps = new Histogram();
+    private long physicsStart = -1;
+    private final Histogram queuedCommands = new Histogram();
+    private final Histogram segmentsInFlight = new Histogram();
+
+    private AppStep previousStep;
+    private long previousStepTime;
+    private long frameStart;
+    private int ticks = 0;
+    private int sampledTicks = 0;
+    private boolean samplingControls = false;
+    private float sinceDump = 0f;
+
+    /**
+     * @param dumpInterval seconds between dumps
+     * @param controlSampleInterval Control updates are timed on every nth
+     * tick
+     */
+    public TickProfiler(float dumpInterval, int controlSampleInterval) {
+        this.dumpInterval = dumpInterval;
+        this.controlSampleInterval = Math.max(1, controlSampleInterval);
+        for (AppStep step : AppStep.values()) {
+            phases.put(step, new Histogram());
+        }
+    }
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        super.initialize(stateManager, app);
+        this.app = app;
+
+        output = Logger.getLogger(TickProfiler.class.getName() + ".output");
+        try {
+            fileHandler = new FileHandler("./Arkhados_Profile_%g.log",
+                    1 << 20, 5);
+            fileHandler.setFormatter(new SimpleFormatter());
+            output.addHandler(fileHandler);
+            output.setUseParentHandlers(false);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING,
+                    "Could not open profile log. Writing to main log", ex);
+        }
+
+        app.setAppProfiler(this);
+
+        if (stateManager instanceof ProfilingAppStateManager) {
+            profilingManager = (ProfilingAppStateManager) stateManager;
+            profilingManager.setProfiler(this);
+        }
+
+        if (app instanceof SimpleApplication && ((SimpleApplication) app)
+                .getRootNode() instanceof ProfilingNode) {
+            profilingRoot = (ProfilingNode) ((SimpleApplication) app)
+                    .getRootNode();
+            profilingRoot.setProfiler(this);
+        }
+
+        BulletAppState bullet = stateManager.getState(BulletAppState.class);
+        if (bullet != null) {
+            physicsSpace = bullet.getPhysicsSpace();
+            physicsSpace.addTickListener(this);
+        }
+
+        sender = stateManager.getState(WindowedServerSender.class);
+
+        logger.log(Level.INFO, "Profiling ticks. AppStates: {0}, "
+                + "Controls: {1}, physics: {2}", new Object[]{
+                    profilingManager != null, profilingRoot != null,
+                    physicsSpace != null});
+    }
+
+    @Override
+    public void update(float tpf) {
+        ticks++;
+        samplingControls = ticks % controlSampleInterval == 0;
+        if (samplingControls) {
+            sampledTicks++;
+        }
+
+        if (sender != null) {
+            queuedCommands.record(sender.getQueuedCommands());
+            segmentsInFlight.record(sender.getSegmentsInFlight());
+        }
+
+        sinceDump += tpf;
+        if (sinceDump >= dumpInterval) {
+            dump();
+            sinceDump = 0f;
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        super.cleanup();
+        if (app.getAppProfiler() == this) {
+            app.setAppProfiler(null);
+        }
+        if (profilingManager != null) {
+            profilingManager.setProfiler(null);
+        }
+        if (profilingRoot != null) {
+            profilingRoot.setProfiler(null);
+        }
+        if (physicsSpace != null) {
+            physicsSpace.removeTickListener(this);
+        }
+        if (fileHandler != null) {
+            output.removeHandler(fileHandler);
+            output.setUseParentHandlers(true);
+            fileHandler.close();
+        }
+    }
+
+    boolean isSamplingControls() {
+        return samplingControls;
+    }
+
+    void recordState(AppState state, long nanos) {
+        record(states, state.getClass(), nanos);
+    }
+
+    void recordControl(Control control, long nanos) {
+        record(controls, control.getClass(), nanos);
+    }
+
+    private static void record(Map<Class<?>, Histogram> histograms,
+            Class<?> type, long nanos) {
+        Histogram histogram = histograms.get(type);
+        if (histogram == null) {
+            histogram = new Histogram();
+            histograms.put(type, histogram);
+        }
+
+        histogram.record(nanos);
+    }
+
+    @Override
+    public void appStep(AppStep step) {
+        long now = System.nanoTime();
+        // Time after EndFrame is mostly sleeping so it is not a phase
+        if (step == AppStep.BeginFrame) {
+            frameStart = now;
+        } else if (previousStep != null) {
+            phases.get(previousStep).record(now - previousStepTime);
+        }
+
+        if (step == AppStep.EndFrame) {
+            frames.record(now - frameStart);
+            previousStep = null;
+        } else {
+            previousStep = step;
+            previousStepTime = now;
+        }
+    }
+
+    @Override
+    public void vpStep(VpStep step, ViewPort vp, RenderQueue.Bucket bucket) {
+    }
+
+    @Override
+    public void prePhysicsTick(PhysicsSpace space, float tpf) {
+        physicsStart = System.nanoTime();
+    }
+
+    @Override
+    public void physicsTick(PhysicsSpace space, float tpf) {
+        if (physicsStart == -1) {
+            return;
+        }
+
+        long nanos = System.nanoTime() - physicsStart;
+        synchronized (physicsSteps) {
+            physicsSteps.record(nanos);
+        }
+    }
+
+    private void dump() {
+        StringBuilder report = new StringBuilder(4096);
+        report.append(String.format("Tick profile of %d ticks. Controls "
+                + "timed on %d of them. Times in microseconds%n", ticks,
+                sampledTicks));
+
+        appendHeader(report, "Frame");
+        appendRow(report, "Whole frame", frames, 1e3);
+        for (Map.Entry<AppStep, Histogram> entry : phases.entrySet()) {
+            appendRow(report, entry.getKey().name(), entry.getValue(), 1e3);
+        }
+
+        appendHeader(report, "AppState update");
+        appendRows(report, states);
+
+        appendHeader(report, "Control update");
+        appendRows(report, controls);
+
+        appendHeader(report, "Physics");
+        synchronized (physicsSteps) {
+            appendRow(report, "Step", physicsSteps, 1e3);
+            physicsSteps.reset();
+        }
+
+        appendHeader(report, "Queue depth (count)");
+        appendRow(report, "Guaranteed commands queued", queuedCommands, 1);
+        appendRow(report, "Segments in flight", segmentsInFlight, 1);
+
+        output.info(report.toString());
+
+        frames.reset();
+        for (Histogram histogram : phases.values()) {
+            histogram.reset();
+        }
+        for (Histogram histogram : states.values()) {
+            histogram.reset();
+        }
+        for (Histogram histogram : controls.values()) {
+            histogram.reset();
+        }
+        queuedCommands.reset();
+        segmentsInFlight.reset();
+        ticks = 0;
+        sampledTicks = 0;
+    }
+
+    private static void appendHeader(StringBuilder report, String title) {
+        report.append(String.format(HEADER_FORMAT, title, "count", "mean",
+                "p50", "p90", "p99", "max"));
+    }
+
+    /**
+     * Appends rows sorted so that most time consuming classes come first.
+     */
+    private static void appendRows(StringBuilder report,
+            Map<Class<?>, Histogram> histograms) {
+        List<Map.Entry<Class<?>, Histogram>> entries
+                = new ArrayList<>(histograms.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().getTotal(),
+                a.getValue().getTotal()));
+
+        for (Map.Entry<Class<?>, Histogram> entry : entries) {
+            Class<?> type = entry.getKey();
+            String name = type.getSimpleName().isEmpty()
+                    ? type.getName()
+                    : type.getSimpleName();
+            appendRow(report, name, entry.getValue(), 1e3);
+        }
+    }
+
+    private static void appendRow(StringBuilder report, String name,
+            Histogram histogram, double unit) {
+        if (histogram.getCount() == 0) {
+            return;
+        }
+
+        report.append(String.format(ROW_FORMAT, name, histogram.getCount(),
+                histogram.getMean() / unit,
+                histogram.getPercentile(0.5) / unit,
+                histogram.getPercentile(0.9) / unit,
+                histogram.getPercentile(0.99) / unit,
+                histogram.getMax() / unit));
+    }
+}
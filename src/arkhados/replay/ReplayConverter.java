@@ -0,0 +1,166 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.replay;
+
+import arkhados.messages.CmdWorldEffect;
+import arkhados.messages.MessageUtils;
+import arkhados.messages.sync.CmdAddEntity;
+import arkhados.messages.sync.CmdRemoveEntity;
+import arkhados.net.Command;
+import com.jme3.network.serializing.Serializer;
+import com.jme3.network.serializing.serializers.FieldSerializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Converts replays that were saved as one ReplayData object to streamed
+ * format. Old replays have no keyframes, so they are made from entities each
+ * player was told about. Locations of those are where entities were added and
+ * they are corrected by the next sync data.
+ *
+ * Old replays use class ids and serializers of their time, so this has to
+ * run in its own process:
+ * <pre>java arkhados.replay.ReplayConverter old.rep new.rep</pre>
+ */
+public final class ReplayConverter {
+
+    public static final float KEYFRAME_INTERVAL = 10f;
+
+    private ReplayConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ReplayConverter <old replay> <target>");
+            System.exit(1);
+        }
+
+        registerLegacyClasses();
+        ReplayData data = new ReplaySerializer().readObject(
+                ByteBuffer.wrap(Files.readAllBytes(Paths.get(args[0]))),
+                ReplayData.class);
+        MessageUtils.registerMessages();
+
+        convert(data, Paths.get(args[1]));
+        System.out.println("Converted " + data.getCommands().size()
+                + " commands");
+    }
+
+    private static void registerLegacyClasses() {
+        MessageUtils.registerDataClasses();
+        MessageUtils.registerMessages();
+        MessageUtils.registerLegacySyncSerializers();
+
+        // Replay classes used to follow CmdWorldEffect directly and ids are
+        // given in descending order
+        short id = Serializer.getExactSerializerRegistration(
+                CmdWorldEffect.class).getId();
+        Serializer.registerClassForId(--id, ReplayHeader.class,
+                new FieldSerializer());
+        Serializer.registerClassForId(--id, ReplayCmdData.class,
+                new FieldSerializer());
+        Serializer.registerClassForId(--id, ReplayData.class,
+                new FieldSerializer());
+    }
+
+    public static void convert(ReplayData data, Path target)
+            throws IOException {
+        ReplayWriter writer = new ReplayWriter(target, data.getHeader());
+        for (Map.Entry<Integer, String> entry
+                : data.getHeader().getPlayers().entrySet()) {
+            writer.addPlayer(entry.getKey(), entry.getValue());
+        }
+
+        // Entities that each player knows about, by entity id
+        Map<Integer, Map<Integer, LiveEntity>> live = new TreeMap<>();
+        float nextKeyframe = 0f;
+
+        for (ReplayCmdData cmdData : data.getCommands()) {
+            float time = cmdData.getTime();
+            if (time >= nextKeyframe) {
+                writer.addKeyframe(time, createKeyframe(live, time));
+                nextKeyframe = time + KEYFRAME_INTERVAL;
+            }
+
+            track(live, cmdData);
+            writer.addCommand(cmdData.getCommand(), cmdData.getPlayerId(),
+                    time);
+        }
+
+        writer.close();
+    }
+
+    private static void track(Map<Integer, Map<Integer, LiveEntity>> live,
+            ReplayCmdData cmdData) {
+        Map<Integer, LiveEntity> entities = live.get(cmdData.getPlayerId());
+        if (entities == null) {
+            entities = new LinkedHashMap<>();
+            live.put(cmdData.getPlayerId(), entities);
+        }
+
+        Command command = cmdData.getCommand();
+        if (command instanceof CmdAddEntity) {
+            CmdAddEntity add = (CmdAddEntity) command;
+            entities.put(add.getEntityId(),
+                    new LiveEntity(add, cmdData.getTime()));
+        } else if (command instanceof CmdRemoveEntity) {
+            entities.remove(((CmdRemoveEntity) command).getEntityId());
+        }
+    }
+
+    private static Map<Integer, List<Command>> createKeyframe(
+            Map<Integer, Map<Integer, LiveEntity>> live, float time) {
+        Map<Integer, List<Command>> keyframe = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Map<Integer, LiveEntity>> entry
+                : live.entrySet()) {
+            List<Command> commands = new ArrayList<>();
+            for (LiveEntity entity : entry.getValue().values()) {
+                commands.add(entity.aged(time));
+            }
+            keyframe.put(entry.getKey(), commands);
+        }
+
+        return keyframe;
+    }
+
+    private static class LiveEntity {
+
+        final CmdAddEntity add;
+        final float addTime;
+
+        LiveEntity(CmdAddEntity add, float addTime) {
+            this.add = add;
+            this.addTime = addTime;
+        }
+
+        CmdAddEntity aged(float time) {
+            // Negative age means that entity was already dead
+            float age = add.getAge() < 0f
+                    ? add.getAge()
+                    : add.getAge() + time - addTime;
+            return new CmdAddEntity(add.getEntityId(),
+                    add.getNodeBuilderId(), add.getLocation(),
+                    add.getRotation(), add.getPlayerId(), age);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.replay;
+
+import arkhados.net.Command;
+import com.jme3.network.serializing.Serializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Layout of streamed replay files.
+ *
+ * <pre>
+ * int MAGIC, int VERSION
+ * header: date, version, game mode, arena
+ * chunks: int payload length, byte type, float start time,
+ *         int command count,
+ *         commands as byte playerId, float time, class and object
+ * trailer: players, int chunk count,
+ *          chunks as long offset, byte type, float start time,
+ *          int command count
+ * footer: long trailer offset, int END_MAGIC
+ * </pre>
+ *
+ * Keyframe chunks hold commands that recreate what each player was aware of
+ * at their start time so that playback can start from them. Other chunks
+ * hold commands as they were sent. Trailer works as time index. If server
+ * stops without writing trailer, chunks can still be read one after
+ * another. Version 2 files have no chunk types.
+ */
+public final class ReplayFormat {
+
+    public static final int MAGIC = 0x41524b52; // ARKR
+    public static final int END_MAGIC = 0x41524b45; // ARKE
+    public static final int VERSION = 3;
+    public static final int CHUNK_HEADER_SIZE = 13;
+    public static final int FOOTER_SIZE = 12;
+    public static final byte CHUNK_COMMANDS = 0;
+    public static final byte CHUNK_KEYFRAME = 1;
+
+    private ReplayFormat() {
+    }
+
+    public static boolean isStreamed(ByteBuffer data) {
+        return data.remaining() >= 8 && data.getInt(data.position()) == MAGIC;
+    }
+
+    /**
+     * @return version of streamed replay without moving position
+     */
+    public static int getVersion(ByteBuffer data) {
+        return data.getInt(data.position() + 4);
+    }
+
+    public static int getChunkHeaderSize(int version) {
+        return version < 3 ? 12 : CHUNK_HEADER_SIZE;
+    }
+
+    public static int getIndexEntrySize(int version) {
+        return version < 3 ? 16 : 17;
+    }
+
+    public static void writeHeader(ByteBuffer buffer, ReplayHeader header)
+            throws IOException {
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        Serializer.getExactSerializer(Date.class)
+                .writeObject(buffer, header.getDate());
+        Serializer stringSerializer =
+                Serializer.getExactSerializer(String.class);
+        stringSerializer.writeObject(buffer, header.getVersion());
+        stringSerializer.writeObject(buffer, header.getGameMode());
+        stringSerializer.writeObject(buffer, header.getArena());
+    }
+
+    public static ReplayHeader readHeader(ByteBuffer data) throws IOException {
+        if (data.getInt() != MAGIC) {
+            throw new IOException("Not a streamed replay");
+        }
+
+        int version = data.getInt();
+        if (version < 2 || version > VERSION) {
+            throw new IOException("Unsupported replay version " + version);
+        }
+
+        ReplayHeader header = new ReplayHeader();
+        header.setDate(Serializer.getExactSerializer(Date.class)
+                .readObject(data, Date.class));
+        Serializer stringSerializer =
+                Serializer.getExactSerializer(String.class);
+        header.setVersion(stringSerializer.readObject(data, String.class));
+        header.setGameMode(stringSerializer.readObject(data, String.class));
+        header.setArena(stringSerializer.readObject(data, String.class));
+        return header;
+    }
+
+    public static void writePlayers(ByteBuffer buffer,
+            Map<Integer, String> players) throws IOException {
+        Serializer.getExactSerializer(HashMap.class)
+                .writeObject(buffer, new HashMap<>(players));
+    }
+
+    public static Map<Integer, String> readPlayers(ByteBuffer data)
+            throws IOException {
+        Map<?, ?> read = Serializer.getExactSerializer(HashMap.class)
+                .readObject(data, HashMap.class);
+        Map<Integer, String> players = new HashMap<>();
+        for (Map.Entry<?, ?> entry : read.entrySet()) {
+            players.put((Integer) entry.getKey(), (String) entry.getValue());
+        }
+        return players;
+    }
+
+    public static void writeCommand(ByteBuffer buffer, int playerId,
+            float time, Command command) throws IOException {
+        buffer.put((byte) playerId);
+        buffer.putFloat(time);
+        Serializer.writeClassAndObject(buffer, command);
+    }
+
+    public static ReplayCmdData readCommand(ByteBuffer data)
+            throws IOException {
+        int playerId = data.get();
+        float time = data.getFloat();
+        Command command = (Command) Serializer.readClassAndObject(data);
+        return new ReplayCmdData(playerId, command, time);
+    }
+}
@@ -33,6 +33,9 @@ public class ReplayInputHandler extends AbstractAppState
     private static final String SLOWER = "replay-speed-slower";
     private static final String DEFAULT = "replay-speed-default";
     private static final String LOG_TIME = "replay-log-time";
+    private static final String SEEK_FORWARD = "replay-seek-forward";
+    private static final String SEEK_BACK = "replay-seek-back";
+    private static final float SEEK_STEP = 10f;
     private float speed;
 
     @Override
@@ -43,7 +46,12 @@ public class ReplayInputHandler extends AbstractAppState
         inputManager.addMapping(SLOWER, new KeyTrigger(KeyInput.KEY_LEFT));
         inputManager.addMapping(DEFAULT, new KeyTrigger(KeyInput.KEY_0));
         inputManager.addMapping(LOG_TIME, new KeyTrigger(KeyInput.KEY_SPACE));
-        inputManager.addListener(this, FASTER, SLOWER, DEFAULT, LOG_TIME);
+        inputManager.addMapping(SEEK_FORWARD,
+                new KeyTrigger(KeyInput.KEY_UP));
+        inputManager.addMapping(SEEK_BACK,
+                new KeyTrigger(KeyInput.KEY_DOWN));
+        inputManager.addListener(this, FASTER, SLOWER, DEFAULT, LOG_TIME,
+                SEEK_FORWARD, SEEK_BACK);
     }
 
     @Override
@@ -73,6 +81,12 @@ public class ReplayInputHandler extends AbstractAppState
                 Logger.getLogger(ReplayReader.class.getName())
                         .log(Level.INFO, "Current time: {0}", time);
                 break;
+            case SEEK_FORWARD:
+                reader.seek(reader.getTime() + SEEK_STEP);
+                break;
+            case SEEK_BACK:
+                reader.seek(reader.getTime() - SEEK_STEP);
+                break;
         }
     }
 
@@ -84,6 +98,8 @@ public class ReplayInputHandler extends AbstractAppState
         inputManager.deleteMapping(SLOWER);
         inputManager.deleteMapping(DEFAULT);
         inputManager.deleteMapping(LOG_TIME);
+        inputManager.deleteMapping(SEEK_FORWARD);
+        inputManager.deleteMapping(SEEK_BACK);
         inputManager.removeListener(this);
     }
 }
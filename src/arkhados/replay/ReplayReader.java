@@ -14,66 +14,260 @@
  along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
 package arkhados.replay;
 
+import arkhados.Sync;
+import arkhados.World;
 import arkhados.net.Command;
 import arkhados.net.CommandHandler;
 import arkhados.net.Receiver;
+import com.jme3.app.Application;
 import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
 import com.jme3.math.FastMath;
 import com.jme3.network.HostedConnection;
 import com.jme3.network.Message;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+/**
+ * Plays streamed replays. File is memory mapped and commands are decoded
+ * only when their time comes. Seeking starts from latest keyframe before
+ * target time and fast forwards from there.
+ */
 public class ReplayReader extends AbstractAppState implements Receiver {
 
+    private static final Logger logger =
+            Logger.getLogger(ReplayReader.class.getName());
+
+    private Application app;
     private List<CommandHandler> handlers = new ArrayList<>();
-    private ReplayData data;
+    private ReplayHeader header;
+    private ByteBuffer file;
+    private final List<Chunk> chunks = new ArrayList<>();
+    private int playerId = -1;
+    // Read position: chunk being read, commands left in it and next command
+    private int chunkIndex = -1;
+    private int remaining = 0;
+    private ReplayCmdData next;
     private float time = 0f;
     private float speed = 1f;
-    private final ReplaySerializer serializer = new ReplaySerializer();
+    private float seekTarget = -1f;
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        super.initialize(stateManager, app);
+        this.app = app;
+    }
 
     public void loadReplay(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        data = serializer.readObject(buffer, ReplayData.class);
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(path),
+                StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        }
+
+        if (!ReplayFormat.isStreamed(buffer)) {
+            throw new IOException("Replay " + path + " has old format. "
+                    + "Convert it with " + ReplayConverter.class.getName());
+        }
+
+        int version = ReplayFormat.getVersion(buffer);
+        header = ReplayFormat.readHeader(buffer);
+        file = buffer;
+        chunks.clear();
+        readIndex(version);
+        playerId = -1;
+        rewind(-1);
+        time = 0f;
     }
 
-    public void selectPlayer(int playerId) {
-        List<ReplayCmdData> commands = data.getCommands();
-        for (Iterator<ReplayCmdData> it = commands.iterator(); it.hasNext();) {
-            ReplayCmdData cmdData = it.next();
-            if (cmdData.getPlayerId() != playerId) {
-                it.remove();
+    private void readIndex(int version) throws IOException {
+        int chunkHeaderSize = ReplayFormat.getChunkHeaderSize(version);
+        int chunksStart = file.position();
+        int footer = file.limit() - ReplayFormat.FOOTER_SIZE;
+
+        if (footer < chunksStart
+                || file.getInt(footer + 8) != ReplayFormat.END_MAGIC) {
+            logger.log(Level.WARNING,
+                    "Replay has no trailer. Reading chunks until end");
+            scanChunks(version, chunksStart);
+            return;
+        }
+
+        file.position((int) file.getLong(footer));
+        header.getPlayers().putAll(ReplayFormat.readPlayers(file));
+        int count = file.getInt();
+        for (int i = 0; i < count; i++) {
+            int offset = (int) file.getLong();
+            byte type = version < 3 ? ReplayFormat.CHUNK_COMMANDS
+                    : file.get();
+            float startTime = file.getFloat();
+            int commands = file.getInt();
+            chunks.add(new Chunk(offset + chunkHeaderSize, type, startTime,
+                    commands));
+        }
+    }
+
+    private void scanChunks(int version, int position) {
+        int chunkHeaderSize = ReplayFormat.getChunkHeaderSize(version);
+        while (file.limit() - position >= chunkHeaderSize) {
+            int length = file.getInt(position);
+            byte type = version < 3 ? ReplayFormat.CHUNK_COMMANDS
+                    : file.get(position + 4);
+            int rest = position + chunkHeaderSize - 8;
+            float startTime = file.getFloat(rest);
+            int commands = file.getInt(rest + 4);
+            int dataOffset = position + chunkHeaderSize;
+            if (length < 0 || length > file.limit() - dataOffset) {
+                logger.log(Level.WARNING, "Replay ends with partial chunk");
+                break;
             }
+
+            chunks.add(new Chunk(dataOffset, type, startTime, commands));
+            position = dataOffset + length;
         }
+    }
 
-        if (!commands.isEmpty()) {
-            time = FastMath.clamp(commands.get(0).getTime() - 1, 0f,
-                    Float.MAX_VALUE);
+    public void selectPlayer(int playerId) {
+        this.playerId = playerId;
+        rewind(-1);
+        next = nextCommand();
+        if (next != null) {
+            time = FastMath.clamp(next.getTime() - 1, 0f, Float.MAX_VALUE);
         }
     }
 
+    /**
+     * Jumps to given time on next update.
+     */
+    public void seek(float target) {
+        seekTarget = Math.max(0f, target);
+    }
+
     @Override
     public void update(float tpf) {
         super.update(tpf);
+        if (seekTarget >= 0f) {
+            performSeek(seekTarget);
+            seekTarget = -1f;
+            return;
+        }
 
         time += tpf * speed;
+        playUntil(time);
+    }
 
-        for (Iterator<ReplayCmdData> it = data.getCommands().iterator();
-                it.hasNext();) {
-            ReplayCmdData cmdData = it.next();
-            if (cmdData.getTime() <= time) {
-                // TODO: Simulate
-                handleCommand(cmdData.getCommand());
-                it.remove();
-            } else {
+    private void playUntil(float until) {
+        while (true) {
+            if (next == null) {
+                next = nextCommand();
+                if (next == null) {
+                    return;
+                }
+            }
+
+            if (next.getTime() > until) {
+                return;
+            }
+
+            // TODO: Simulate
+            handleCommand(next.getCommand());
+            next = null;
+        }
+    }
+
+    private void performSeek(float target) {
+        int keyframe = -1;
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            if (chunk.startTime > target) {
                 break;
             }
+            if (chunk.type == ReplayFormat.CHUNK_KEYFRAME) {
+                keyframe = i;
+            }
+        }
+
+        // Sync takes its commands on its own update, so clearing it here
+        // happens before keyframe is applied
+        AppStateManager stateManager = app.getStateManager();
+        stateManager.getState(World.class).removeAllEntities();
+        stateManager.getState(Sync.class).clear();
+
+        rewind(keyframe);
+        if (keyframe != -1) {
+            Chunk chunk = chunks.get(keyframe);
+            file.position(chunk.dataOffset);
+            for (int i = 0; i < chunk.commands; i++) {
+                ReplayCmdData cmdData = readCommand();
+                if (cmdData == null) {
+                    break;
+                }
+                if (cmdData.getPlayerId() == playerId) {
+                    handleCommand(cmdData.getCommand());
+                }
+            }
+        }
+
+        playUntil(target);
+        time = target;
+    }
+
+    /**
+     * Continues reading from chunk that comes after given chunk.
+     */
+    private void rewind(int chunk) {
+        chunkIndex = chunk;
+        remaining = 0;
+        next = null;
+    }
+
+    /**
+     * @return next command of selected player or null if there are no more
+     */
+    private ReplayCmdData nextCommand() {
+        while (true) {
+            while (remaining == 0) {
+                if (chunkIndex + 1 >= chunks.size()) {
+                    return null;
+                }
+
+                Chunk chunk = chunks.get(++chunkIndex);
+                if (chunk.type == ReplayFormat.CHUNK_KEYFRAME) {
+                    continue;
+                }
+
+                file.position(chunk.dataOffset);
+                remaining = chunk.commands;
+            }
+
+            --remaining;
+            ReplayCmdData cmdData = readCommand();
+            if (cmdData == null) {
+                chunkIndex = chunks.size();
+                remaining = 0;
+                return null;
+            }
+
+            if (playerId == -1 || cmdData.getPlayerId() == playerId) {
+                return cmdData;
+            }
+        }
+    }
+
+    private ReplayCmdData readCommand() {
+        try {
+            return ReplayFormat.readCommand(file);
+        } catch (IOException | RuntimeException ex) {
+            logger.log(Level.SEVERE, "Could not read replay command", ex);
+            return null;
         }
     }
 
@@ -118,8 +312,8 @@ public class ReplayReader extends AbstractAppState implements Receiver {
     public void messageReceived(Object source, Message m) {
     }
 
-    public ReplayData getData() {
-        return data;
+    public ReplayHeader getHeader() {
+        return header;
     }
 
     public float getTime() {
@@ -138,4 +332,19 @@ public class ReplayReader extends AbstractAppState implements Receiver {
 
         this.speed = speed;
     }
+
+    private static class Chunk {
+
+        final int dataOffset;
+        final byte type;
+        final float startTime;
+        final int commands;
+
+        Chunk(int dataOffset, byte type, float startTime, int commands) {
+            this.dataOffset = dataOffset;
+            this.type = type;
+            this.startTime = startTime;
+            this.commands = commands;
+        }
+    }
 }
@@ -0,0 +1,328 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.replay;
+
+import arkhados.net.Command;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams replay to file. Commands are serialized on caller's thread into
+ * fixed size chunks and full chunks are written by background thread. Only
+ * a few chunks exist at a time, so if writing falls behind, addCommand
+ * blocks until a chunk is free again. If that takes longer than
+ * HAND_OVER_TIMEOUT or writing fails, rest of replay is dropped.
+ */
+public class ReplayWriter {
+
+    private static final Logger logger =
+            Logger.getLogger(ReplayWriter.class.getName());
+    public static final int CHUNK_SIZE = 256 * 1024;
+    public static final int QUEUED_CHUNKS = 4;
+    // Chunk is written after this many seconds even if it is not full
+    public static final float FLUSH_INTERVAL = 5f;
+    // Seconds that caller waits for writer thread before giving up
+    public static final long HAND_OVER_TIMEOUT = 5;
+    private static final Chunk CLOSE = new Chunk(0);
+    private final FileChannel channel;
+    private final BlockingQueue<Chunk> filled =
+            new ArrayBlockingQueue<>(QUEUED_CHUNKS + 1);
+    private final BlockingQueue<Chunk> free =
+            new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+    private final Map<Integer, String> players = new HashMap<>();
+    private final Thread thread;
+    private Chunk current;
+    private volatile boolean failed = false;
+    private boolean closed = false;
+
+    public ReplayWriter(Path path, ReplayHeader header) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+        ByteBuffer headerBuffer = ByteBuffer.allocate(4096);
+        ReplayFormat.writeHeader(headerBuffer, header);
+        headerBuffer.flip();
+        while (headerBuffer.hasRemaining()) {
+            channel.write(headerBuffer);
+        }
+
+        current = new Chunk(CHUNK_SIZE);
+        for (int i = 0; i < QUEUED_CHUNKS; i++) {
+            free.add(new Chunk(CHUNK_SIZE));
+        }
+
+        thread = new Thread(this::writeLoop, "replay-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void addCommand(Command command, int playerId, float time) {
+        if (closed || failed) {
+            return;
+        }
+
+        if (current.commands > 0
+                && time - current.startTime >= FLUSH_INTERVAL) {
+            handOver();
+        }
+
+        ByteBuffer buffer = current.buffer;
+        int start = buffer.position();
+        try {
+            ReplayFormat.writeCommand(buffer, playerId, time, command);
+        } catch (BufferOverflowException ex) {
+            buffer.position(start);
+            if (current.commands == 0) {
+                logger.log(Level.WARNING, "{0} does not fit in replay chunk",
+                        command.getClass().getSimpleName());
+                return;
+            }
+            handOver();
+            addCommand(command, playerId, time);
+            return;
+        } catch (IOException ex) {
+            buffer.position(start);
+            logger.log(Level.WARNING, "Could not record command", ex);
+            return;
+        }
+
+        if (current.commands == 0) {
+            current.startTime = time;
+        }
+        ++current.commands;
+    }
+
+    /**
+     * Writes keyframe to its own chunk. Commands of each player should
+     * recreate what that player was aware of at given time. If keyframe
+     * does not fit in one chunk, it is left out.
+     */
+    public void addKeyframe(float time, Map<Integer, List<Command>> commands) {
+        if (closed || failed) {
+            return;
+        }
+
+        if (current.commands > 0) {
+            handOver();
+            if (failed) {
+                return;
+            }
+        }
+
+        current.type = ReplayFormat.CHUNK_KEYFRAME;
+        current.startTime = time;
+        ByteBuffer buffer = current.buffer;
+        try {
+            for (Map.Entry<Integer, List<Command>> entry
+                    : commands.entrySet()) {
+                for (Command command : entry.getValue()) {
+                    ReplayFormat.writeCommand(buffer, entry.getKey(), time,
+                            command);
+                    ++current.commands;
+                }
+            }
+        } catch (BufferOverflowException | IOException ex) {
+            logger.log(Level.WARNING, "Could not record keyframe", ex);
+            current.reset();
+            return;
+        }
+
+        handOver();
+    }
+
+    public void addPlayer(int playerId, String name) {
+        players.put(playerId, name);
+    }
+
+    /**
+     * Writes remaining commands and trailer and waits until everything is
+     * written.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        if (!failed && current.commands > 0) {
+            handOver();
+        }
+        closed = true;
+
+        try {
+            if (!filled.offer(CLOSE, HAND_OVER_TIMEOUT, TimeUnit.SECONDS)) {
+                logger.warning("Replay writer did not stop");
+                return;
+            }
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.log(Level.WARNING, "Interrupted while closing replay", ex);
+        }
+    }
+
+    /**
+     * Queues current chunk for writing and takes a free one. After failure
+     * current chunk must not be used anymore.
+     */
+    private void handOver() {
+        try {
+            if (!filled.offer(current, HAND_OVER_TIMEOUT, TimeUnit.SECONDS)) {
+                fail("Replay writer fell behind, dropping rest of replay");
+                return;
+            }
+            current = free.poll(HAND_OVER_TIMEOUT, TimeUnit.SECONDS);
+            if (current == null) {
+                fail("Replay writer fell behind, dropping rest of replay");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            failed = true;
+        }
+    }
+
+    private void fail(String message) {
+        failed = true;
+        logger.severe(message);
+    }
+
+    private void writeLoop() {
+        List<IndexEntry> index = new ArrayList<>();
+        try {
+            while (true) {
+                Chunk chunk = filled.take();
+                if (chunk == CLOSE) {
+                    break;
+                }
+
+                if (!failed) {
+                    try {
+                        index.add(write(chunk));
+                    } catch (Throwable ex) {
+                        failed = true;
+                        logger.log(Level.SEVERE, "Could not write replay", ex);
+                    }
+                }
+
+                // Chunks are recycled even after failure so that caller
+                // never waits for them
+                chunk.reset();
+                free.offer(chunk);
+            }
+
+            if (!failed) {
+                writeTrailer(index);
+            }
+        } catch (InterruptedException ex) {
+            failed = true;
+            logger.log(Level.WARNING, "Replay writer interrupted", ex);
+        } catch (Throwable ex) {
+            failed = true;
+            logger.log(Level.SEVERE, "Could not write replay trailer", ex);
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, null, ex);
+            }
+        }
+    }
+
+    private IndexEntry write(Chunk chunk) throws IOException {
+        ByteBuffer buffer = chunk.buffer;
+        buffer.flip();
+        buffer.putInt(0, buffer.limit() - ReplayFormat.CHUNK_HEADER_SIZE);
+        buffer.put(4, chunk.type);
+        buffer.putFloat(5, chunk.startTime);
+        buffer.putInt(9, chunk.commands);
+
+        IndexEntry entry = new IndexEntry(channel.position(), chunk.type,
+                chunk.startTime, chunk.commands);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return entry;
+    }
+
+    private void writeTrailer(List<IndexEntry> index) throws IOException {
+        long trailerOffset = channel.position();
+        ByteBuffer buffer = ByteBuffer.allocate(8192 + index.size()
+                * ReplayFormat.getIndexEntrySize(ReplayFormat.VERSION));
+        // Closing thread is done with players when CLOSE is queued
+        ReplayFormat.writePlayers(buffer, players);
+        buffer.putInt(index.size());
+        for (IndexEntry entry : index) {
+            buffer.putLong(entry.offset);
+            buffer.put(entry.type);
+            buffer.putFloat(entry.startTime);
+            buffer.putInt(entry.commands);
+        }
+        buffer.putLong(trailerOffset);
+        buffer.putInt(ReplayFormat.END_MAGIC);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static class Chunk {
+
+        final ByteBuffer buffer;
+        byte type;
+        float startTime;
+        int commands;
+
+        Chunk(int size) {
+            buffer = ByteBuffer.allocate(size);
+            reset();
+        }
+
+        final void reset() {
+            buffer.clear();
+            buffer.position(Math.min(ReplayFormat.CHUNK_HEADER_SIZE,
+                    buffer.capacity()));
+            type = ReplayFormat.CHUNK_COMMANDS;
+            startTime = 0f;
+            commands = 0;
+        }
+    }
+
+    private static class IndexEntry {
+
+        final long offset;
+        final byte type;
+        final float startTime;
+        final int commands;
+
+        IndexEntry(long offset, byte type, float startTime, int commands) {
+            this.offset = offset;
+            this.type = type;
+            this.startTime = startTime;
+            this.commands = commands;
+        }
+    }
+}
@@ -104,6 +104,14 @@ public class Settings {
             + "port = 12345%n"
             + "physicsTicksPerSecond = 60.0%n"
             + "defaultSyncFrequency = 0.05%n"
+            + "deltaSync = true%n"
+            + "parallelFog = false%n"
+            + "syncByteBudget = 16000%n"
+            + "reliableWindowBytes = 32768%n"
+            + "profiler = false%n"
+            + "profilerDumpSeconds = 10.0%n"
+            + "profilerControlSampleInterval = 10%n"
+            + "netDiagnosticsSeconds = 30.0%n"
             + "masterServerAddress = \"52.28.234.119\"%n"
             + "masterServerPort = 12346%n"
             + "gameMode = \"TeamDeathmatch\"%n%n"
@@ -9,6 +9,14 @@ public class SettingsGeneral {
     private int port;
     private float physicsTicksPerSecond;
     private float defaultSyncFrequency;
+    private boolean deltaSync = true;
+    private boolean parallelFog = false;
+    private int syncByteBudget = 16000;
+    private int reliableWindowBytes = 32768;
+    private boolean profiler = false;
+    private float profilerDumpSeconds = 10f;
+    private int profilerControlSampleInterval = 10;
+    private float netDiagnosticsSeconds = 30f;
     
     private String masterServerAddress;
     private int masterServerPort;
@@ -26,6 +34,65 @@ public class SettingsGeneral {
         return defaultSyncFrequency;
     }
 
+    /**
+     * If true, entity states are sent as snapshots that only contain changes
+     * since the last snapshot each client has acknowledged.
+     */
+    public boolean isDeltaSync() {
+        return deltaSync;
+    }
+
+    /**
+     * If true, visibility of different players is tested in parallel.
+     */
+    public boolean isParallelFog() {
+        return parallelFog;
+    }
+
+    /**
+     * Bytes per second that entity states may take per client. Zero means
+     * no limit.
+     */
+    public int getSyncByteBudget() {
+        return syncByteBudget;
+    }
+
+    /**
+     * Bytes of guaranteed commands that may wait for acknowledgement per
+     * client.
+     */
+    public int getReliableWindowBytes() {
+        return reliableWindowBytes;
+    }
+
+    /**
+     * If true, server measures where its ticks go and writes results to
+     * Arkhados_Profile log.
+     */
+    public boolean isProfiler() {
+        return profiler;
+    }
+
+    public float getProfilerDumpSeconds() {
+        return profilerDumpSeconds;
+    }
+
+    /**
+     * Control updates are timed only on every nth tick because there are
+     * many of them.
+     */
+    public int getProfilerControlSampleInterval() {
+        return profilerControlSampleInterval;
+    }
+
+    /**
+     * Seconds between logging network statistics of each connection. Zero
+     * means they are not logged.
+     */
+    public float getNetDiagnosticsSeconds() {
+        return netDiagnosticsSeconds;
+    }
+
     public String getGameMode() {
         return gameMode;
     }
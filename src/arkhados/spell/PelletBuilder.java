@@ -19,12 +19,12 @@ import arkhados.World;
 import arkhados.controls.CEntityEvent;
 import arkhados.controls.CProjectile;
 import arkhados.controls.CSpellBuff;
-import arkhados.controls.CTimedExistence;
+import arkhados.effects.EmitterPool;
 import arkhados.entityevents.ARemovalEvent;
 import arkhados.util.AbstractNodeBuilder;
 import arkhados.util.BuildParameters;
+import arkhados.util.RecyclableNodeBuilder;
 import arkhados.util.UserData;
-import com.jme3.asset.AssetManager;
 import com.jme3.bullet.collision.shapes.SphereCollisionShape;
 import com.jme3.bullet.control.GhostControl;
 import com.jme3.bullet.control.RigidBodyControl;
@@ -40,9 +40,20 @@ import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
 import com.jme3.scene.shape.Sphere;
 
-public class PelletBuilder extends AbstractNodeBuilder {
+public class PelletBuilder extends AbstractNodeBuilder
+        implements RecyclableNodeBuilder {
 
     private float damage;
+    // Shared by all pellets
+    private Sphere mesh;
+    private Material material;
+    private SphereCollisionShape collisionShape;
+    // Most hit effects of each kind that can be visible at same time.
+    // Shotgun blast can hit with all of its pellets at once.
+    private static final int HIT_EFFECT_CAPACITY = 8;
+    // Shared by all pellets on client
+    private EmitterPool explosions;
+    private EmitterPool smokePuffs;
 
     public PelletBuilder(float damage) {
         this.damage = damage;
@@ -50,33 +61,35 @@ public class PelletBuilder extends AbstractNodeBuilder {
     
     @Override
     public Node build(BuildParameters params) {
-        Sphere sphere = new Sphere(8, 8, 0.3f);
+        if (mesh == null) {
+            mesh = new Sphere(8, 8, 0.3f);
+            material = new Material(assets,
+                    "Common/MatDefs/Misc/Unshaded.j3md");
+            material.setColor("Color", ColorRGBA.Yellow);
+            collisionShape = new SphereCollisionShape(1.7f);
+        }
 
-        Geometry projectileGeom = new Geometry("projectile-geom", sphere);
+        Geometry projectileGeom = new Geometry("projectile-geom", mesh);
         Node node = new Node("projectile");
         node.setLocalTranslation(params.location);
         node.attachChild(projectileGeom);
-        Material material = new Material(assets,
-                "Common/MatDefs/Misc/Unshaded.j3md");
-        material.setColor("Color", ColorRGBA.Yellow);
         node.setMaterial(material);
-        node.setUserData(UserData.SPEED_MOVEMENT, 220f);
-        node.setUserData(UserData.MASS, 0.30f);
-        node.setUserData(UserData.DAMAGE, damage);
-        node.setUserData(UserData.IMPULSE_FACTOR, 0f);
+        setUserData(node);
         if (world.isClient()) {
+            if (explosions == null) {
+                createHitEffects();
+            }
             node.addControl(new CEntityEvent());
             /**
              * Here we specify what happens on client side when pellet is
              * removed. In this case we want explosion effect.
              */
             APelletRemoval removalAction =
-                    new APelletRemoval(assets);
+                    new APelletRemoval(explosions, smokePuffs);
             removalAction.setPellet(node);
             node.getControl(CEntityEvent.class)
                     .setOnRemoval(removalAction);
         }
-        SphereCollisionShape collisionShape = new SphereCollisionShape(1.7f);
         RigidBodyControl physicsBody = new RigidBodyControl(collisionShape,
                 (float) node.getUserData(UserData.MASS));       
         /**
@@ -99,26 +112,60 @@ public class PelletBuilder extends AbstractNodeBuilder {
         node.addControl(buffControl);
         return node;
     }
+
+    @Override
+    public void reset(Node node, BuildParameters params) {
+        node.setLocalTranslation(params.location);
+        setUserData(node);
+        node.getControl(RigidBodyControl.class)
+                .setLinearVelocity(Vector3f.ZERO);
+        node.getControl(CProjectile.class).reset();
+        node.getControl(CSpellBuff.class).clear();
+    }
+
+    private void createHitEffects() {
+        Material fireMaterial = new Material(assets,
+                "Common/MatDefs/Misc/Particle.j3md");
+        fireMaterial.setTexture("Texture",
+                assets.loadTexture("Effects/flame.png"));
+        Material smokeMaterial = new Material(assets,
+                "Common/MatDefs/Misc/Particle.j3md");
+        smokeMaterial.setTexture("Texture",
+                assets.loadTexture("Effects/flame_alpha.png"));
+        smokeMaterial.getAdditionalRenderState()
+                .setBlendMode(RenderState.BlendMode.Alpha);
+
+        explosions = new EmitterPool(HIT_EFFECT_CAPACITY, 1f,
+                () -> APelletRemoval.createSmallExplosion(fireMaterial));
+        smokePuffs = new EmitterPool(HIT_EFFECT_CAPACITY, 1f,
+                () -> APelletRemoval.createSmokePuff(smokeMaterial));
+        explosions.prewarm();
+        smokePuffs.prewarm();
+    }
+
+    private void setUserData(Node node) {
+        node.setUserData(UserData.SPEED_MOVEMENT, 220f);
+        node.setUserData(UserData.MASS, 0.30f);
+        node.setUserData(UserData.DAMAGE, damage);
+        node.setUserData(UserData.IMPULSE_FACTOR, 0f);
+    }
 }
 
 class APelletRemoval implements ARemovalEvent {
 
-    private AssetManager assetManager;
+    private final EmitterPool explosions;
+    private final EmitterPool smokePuffs;
     private Spatial pellet;
 
-    public APelletRemoval(AssetManager assetManager) {
+    public APelletRemoval(EmitterPool explosions, EmitterPool smokePuffs) {
         super();
-        this.assetManager = assetManager;
+        this.explosions = explosions;
+        this.smokePuffs = smokePuffs;
     }
 
-    private void createSmallExplosion(Node root, Vector3f location) {
+    static ParticleEmitter createSmallExplosion(Material material) {
         ParticleEmitter fire = new ParticleEmitter("shotgun-explosion",
                 ParticleMesh.Type.Triangle, 20);
-
-        Material material = new Material(assetManager,
-                "Common/MatDefs/Misc/Particle.j3md");
-        material.setTexture("Texture",
-                assetManager.loadTexture("Effects/flame.png"));
         fire.setMaterial(material);
         fire.setImagesX(2);
         fire.setImagesY(2);
@@ -140,22 +187,12 @@ class APelletRemoval implements ARemovalEvent {
 
         fire.setShape(new EmitterSphereShape(Vector3f.ZERO, 0.2f));
         fire.setParticlesPerSec(0f);
-
-        root.attachChild(fire);
-        fire.setLocalTranslation(location);
-        fire.emitAllParticles();
-        fire.addControl(new CTimedExistence(1f));
+        return fire;
     }
 
-    private void createSmokePuff(Node root, Vector3f location) {
+    static ParticleEmitter createSmokePuff(Material material) {
         ParticleEmitter smokePuff = new ParticleEmitter("smoke-puff",
                 ParticleMesh.Type.Triangle, 20);
-        Material material = new Material(assetManager,
-                "Common/MatDefs/Misc/Particle.j3md");
-        material.setTexture("Texture",
-                assetManager.loadTexture("Effects/flame_alpha.png"));
-        material.getAdditionalRenderState()
-                .setBlendMode(RenderState.BlendMode.Alpha);
         smokePuff.setMaterial(material);
         smokePuff.setImagesX(2);
         smokePuff.setImagesY(2);
@@ -173,18 +210,14 @@ class APelletRemoval implements ARemovalEvent {
         smokePuff.setParticlesPerSec(0f);
         smokePuff.setRandomAngle(true);
         smokePuff.setShape(new EmitterSphereShape(Vector3f.ZERO, 4f));
-
-        root.attachChild(smokePuff);
-        smokePuff.setLocalTranslation(location);
-        smokePuff.emitAllParticles();
-        smokePuff.addControl(new CTimedExistence(1f));
+        return smokePuff;
     }
 
     @Override
     public void exec(World world, int reason) {
         Vector3f worldTranslation = pellet.getWorldTranslation();
-        createSmokePuff(world.getWorldRoot(), worldTranslation);
-        createSmallExplosion(world.getWorldRoot(), worldTranslation);
+        smokePuffs.fire(world.getWorldRoot(), worldTranslation);
+        explosions.fire(world.getWorldRoot(), worldTranslation);
     }
 
     public void setPellet(Spatial pellet) {
@@ -67,6 +67,16 @@ public abstract class AbstractBuff {
         duration -= time;
     }
 
+    /**
+     * Tells target that value it combines from buffs, like speed factor,
+     * has changed. Not needed for values that are set before attaching.
+     */
+    protected void modifiersChanged() {
+        if (targetInterface != null) {
+            targetInterface.buffModifiersChanged();
+        }
+    }
+
     /**
      * Method for checking from buff's internal state whether it should be
      * removed or not
@@ -14,8 +14,6 @@
  along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
 package arkhados.spell.buffs;
 
-import arkhados.controls.CInfluenceInterface;
-
 public class CastSpeedBuff extends AbstractBuff {
     // TODO: Add type id and icon
 
@@ -26,18 +24,6 @@ public class CastSpeedBuff extends AbstractBuff {
         factor = 1f + by;
     }
 
-    @Override
-    public void attachToCharacter(CInfluenceInterface targetInterface) {
-        super.attachToCharacter(targetInterface);
-        targetInterface.getCastSpeedBuffs().add(this);
-    }
-
-    @Override
-    public void destroy() {
-        super.destroy();
-        targetInterface.getCastSpeedBuffs().remove(this);
-    }
-
     public float getFactor() {
         return factor;
     }
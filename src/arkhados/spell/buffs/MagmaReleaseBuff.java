@@ -17,7 +17,6 @@ package arkhados.spell.buffs;
 import arkhados.CharacterInteraction;
 import arkhados.controls.CInfluenceInterface;
 import arkhados.util.BuffTypeIds;
-import java.util.Iterator;
 
 public class MagmaReleaseBuff extends AbstractBuff {
 
@@ -33,13 +32,11 @@ public class MagmaReleaseBuff extends AbstractBuff {
     @Override
     public void attachToCharacter(CInfluenceInterface targetInterface) {
         super.attachToCharacter(targetInterface);
-        for (Iterator<AbstractBuff> it =
-                targetInterface.getBuffs().iterator(); it.hasNext();) {
-            AbstractBuff buff = it.next();
+        for (AbstractBuff buff : targetInterface.getBuffs()) {
             if (buff instanceof BrimstoneBuff) {
                 count = ((BrimstoneBuff) buff).getStacks();
                 buff.destroy();
-                it.remove();
+                targetInterface.removeBuff(buff);
                 return;
             }
         }
@@ -31,6 +31,7 @@ public class SlowCC extends CrowdControlBuff {
 
     public void setSlowFactor(float slowFactor) {
         this.slowFactor = slowFactor;
+        modifiersChanged();
     }
 
     public static class MyBuilder extends AbstractBuffBuilder {
@@ -36,6 +36,7 @@ public class SpeedBuff extends AbstractBuff {
 
     public void setFactor(float factor) {
         this.factor = factor;
+        modifiersChanged();
     }
 
     public static class MyBuilder extends AbstractBuffBuilder {
@@ -117,13 +117,22 @@ class RailgunBuilder extends AbstractNodeBuilder {
 
     }
 
+    // Shared by all rails
+    private Sphere mesh;
+    private Material material;
+    private Material trailMaterial;
+    private SphereCollisionShape collisionShape;
+
     private ParticleEmitter createTrailEmitter() {
         ParticleEmitter trail = new ParticleEmitter("trail-emitter",
                 ParticleMesh.Type.Triangle, 650);
-        Material mat
-                = new Material(assets, "Common/MatDefs/Misc/Particle.j3md");
-        mat.setTexture("Texture", assets.loadTexture("Effects/smoketrail.png"));
-        trail.setMaterial(mat);
+        if (trailMaterial == null) {
+            trailMaterial = new Material(assets,
+                    "Common/MatDefs/Misc/Particle.j3md");
+            trailMaterial.setTexture("Texture",
+                    assets.loadTexture("Effects/smoketrail.png"));
+        }
+        trail.setMaterial(trailMaterial);
         trail.setImagesX(1);
         trail.setImagesY(3);
         trail.setSelectRandomImage(true);
@@ -143,18 +152,20 @@ class RailgunBuilder extends AbstractNodeBuilder {
 
     @Override
     public Node build(BuildParameters params) {
-        Sphere sphere = new Sphere(32, 32, 0.5f);
+        if (mesh == null) {
+            mesh = new Sphere(32, 32, 0.5f);
+            // TODO: Give at least bit better material
+            material = new Material(assets,
+                    "Common/MatDefs/Misc/Unshaded.j3md");
+            material.setColor("Color", ColorRGBA.Cyan);
+            collisionShape = new SphereCollisionShape(2.5f);
+        }
 
-        Geometry projectileGeom = new Geometry("rail-geom", sphere);
+        Geometry projectileGeom = new Geometry("rail-geom", mesh);
 
         Node node = new Node("rail");
         node.setLocalTranslation(params.location);
         node.attachChild(projectileGeom);
-
-        // TODO: Give at least bit better material
-        Material material = new Material(assets,
-                "Common/MatDefs/Misc/Unshaded.j3md");
-        material.setColor("Color", ColorRGBA.Cyan);
         node.setMaterial(material);
 
         node.setUserData(UserData.SPEED_MOVEMENT, 200f);
@@ -179,7 +190,6 @@ class RailgunBuilder extends AbstractNodeBuilder {
             node.addControl(new CParticleDirector(smoke));
         }
 
-        SphereCollisionShape collisionShape = new SphereCollisionShape(2.5f);
         RigidBodyControl physicsBody = new RigidBodyControl(collisionShape,
                 (float) node.getUserData(UserData.MASS));
         /**
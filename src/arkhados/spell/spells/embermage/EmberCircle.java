@@ -285,15 +285,15 @@ class CEmberCircleVisibility extends AbstractControl implements CVisibility {
     }
 
     @Override
-    public Vector3f giveClosestPoint(Vector3f lookerLocation) {
-        if (lookerLocation.distanceSquared(spatial.getLocalTranslation())
-                <= radiusSquared) {
+    public Vector3f giveClosestPoint(Vector3f lookerLocation,
+            Vector3f location) {
+        if (lookerLocation.distanceSquared(location) <= radiusSquared) {
             return lookerLocation;
         }
 
         Vector3f vec = new Vector3f(lookerLocation);
-        vec.subtractLocal(spatial.getLocalTranslation());
+        vec.subtractLocal(location);
         vec.normalizeLocal().multLocal(radius);
-        return vec.addLocal(spatial.getLocalTranslation());
+        return vec.addLocal(location);
     }
 }
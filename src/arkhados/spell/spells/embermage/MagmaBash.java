@@ -39,7 +39,8 @@ import com.jme3.math.Vector3f;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.Node;
 import com.jme3.scene.shape.Sphere;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Embermage's Magma Bash (M2) spell. Fast flying projectile with no damage or
@@ -158,12 +159,13 @@ class BrimstoneIncapacitate extends IncapacitateCC {
     public void attachToCharacter(CInfluenceInterface influenceInterface) {
         BrimstoneBuff brimstone = null;
 
-        for (Iterator<AbstractBuff> it =
-                influenceInterface.getBuffs().iterator(); it.hasNext();) {
-            AbstractBuff buff = it.next();
+        // Copy because buffs are removed while iterating
+        List<AbstractBuff> buffs =
+                new ArrayList<>(influenceInterface.getBuffs());
+        for (AbstractBuff buff : buffs) {
             if (buff instanceof BrimstoneBuff) {
                 brimstone = (BrimstoneBuff) buff;
-                it.remove();
+                influenceInterface.removeBuff(buff);
             }
         }
         if (brimstone != null) {
@@ -40,6 +40,7 @@ public class CSpiritStonePhysics extends RigidBodyControl implements CSync {
 
     @Override
     public void setPhysicsSpace(PhysicsSpace space) {
+        PhysicsSpace previous = this.space;
         super.setPhysicsSpace(space);
         if (world.isClient()) {
             return;
@@ -48,11 +49,16 @@ public class CSpiritStonePhysics extends RigidBodyControl implements CSync {
         if (space != null) {
             setGravity(Vector3f.ZERO);
             setDamping(0.1f, 0.9f);
-            collisionListener = new SpiritStoneCollisionListener((Node) spatial,
-                    world);
-            space.addCollisionListener(collisionListener);
-        } else if (this.space != null) {
-            this.space.removeCollisionListener(collisionListener);
+            if (collisionListener == null) {
+                collisionListener = new SpiritStoneCollisionListener(
+                        (Node) spatial, world);
+                world.getCollisionDispatcher()
+                        .subscribe(this, collisionListener);
+            }
+        } else if (previous != null && collisionListener != null) {
+            world.getCollisionDispatcher()
+                    .unsubscribe(this, collisionListener);
+            collisionListener = null;
         }
     }
 
@@ -72,8 +78,13 @@ public class CSpiritStonePhysics extends RigidBodyControl implements CSync {
 
     @Override
     public StateData getSyncableData(StateData stateData) {
-        return new GenericSyncData(
-                (int) spatial.getUserData(UserData.ENTITY_ID), spatial);
+        int id = spatial.getUserData(UserData.ENTITY_ID);
+        if (stateData instanceof GenericSyncData) {
+            ((GenericSyncData) stateData).set(id, spatial);
+            return stateData;
+        }
+
+        return new GenericSyncData(id, spatial);
     }
 
     public Vector3f getLocation() {
@@ -27,6 +27,7 @@ import arkhados.spell.buffs.SlowCC;
 import arkhados.util.AbstractNodeBuilder;
 import arkhados.util.BuffTypeIds;
 import arkhados.util.BuildParameters;
+import arkhados.util.FloatAttribute;
 import arkhados.util.UserData;
 import com.jme3.bullet.collision.shapes.CollisionShape;
 import com.jme3.bullet.collision.shapes.SphereCollisionShape;
@@ -151,9 +152,11 @@ class SpeedBleedBuff extends SlowCC {
             return;
         }
 
-        float speed = spatial.getUserData(UserData.SPEED_MOVEMENT);
+        float speed =
+                targetInterface.getAttribute(FloatAttribute.SPEED_MOVEMENT);
         currentFactor = FastMath.clamp(
                 currentFactor - speed * time * SLOW_PER_UNIT, 0, 1f);
+        modifiersChanged();
     }
 
     @Override
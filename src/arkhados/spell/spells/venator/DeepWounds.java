@@ -25,6 +25,7 @@ import arkhados.spell.Spell;
 import arkhados.spell.buffs.AbstractBuff;
 import arkhados.spell.buffs.AbstractBuffBuilder;
 import arkhados.util.BuffTypeIds;
+import arkhados.util.FloatAttribute;
 import arkhados.util.UserData;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Node;
@@ -118,7 +119,8 @@ class BleedBuff extends AbstractBuff {
             return;
         }
 
-        float speed = spatial.getUserData(UserData.SPEED_MOVEMENT);
+        float speed =
+                targetInterface.getAttribute(FloatAttribute.SPEED_MOVEMENT);
         float dmg = speed * time * dmgPerUnit;
         CharacterInteraction.harm(getOwnerInterface(), targetInterface, dmg,
                 null, false);
@@ -21,6 +21,7 @@ import arkhados.spell.buffs.AbstractBuff;
 import arkhados.spell.buffs.AbstractBuffBuilder;
 import arkhados.spell.buffs.SpeedBuff;
 import arkhados.util.BuffTypeIds;
+import arkhados.util.FloatAttribute;
 import arkhados.util.UserData;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Node;
@@ -86,14 +87,17 @@ class DamagePerHealthPercentBuff extends AbstractBuff {
     public void update(float time) {
         super.update(time);
         float healthCurrent =
-                spatial.getUserData(UserData.HEALTH_CURRENT);
-        float healthMax = spatial.getUserData(UserData.HEALTH_MAX);
-        float damageFactor = spatial.getUserData(UserData.DAMAGE_FACTOR);
+                targetInterface.getAttribute(FloatAttribute.HEALTH_CURRENT);
+        float healthMax =
+                targetInterface.getAttribute(FloatAttribute.HEALTH_MAX);
+        float damageFactor =
+                targetInterface.getAttribute(FloatAttribute.DAMAGE_FACTOR);
 
         float healthPercent = healthCurrent / healthMax;
         damageFactor *= 1 + healthPercent / 10f;
 
-        spatial.setUserData(UserData.DAMAGE_FACTOR, damageFactor);
+        targetInterface.setAttribute(FloatAttribute.DAMAGE_FACTOR,
+                damageFactor);
     }
 
     static class MyBuilder extends AbstractBuffBuilder {
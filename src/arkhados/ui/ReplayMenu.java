@@ -65,7 +65,7 @@ public class ReplayMenu implements ScreenController {
                     .getState(ReplayReader.class);
             replayReader.loadReplay(path.toString());
             Map<Integer, String> playerMap
-                    = replayReader.getData().getHeader().getPlayers();
+                    = replayReader.getHeader().getPlayers();
 
             List<Integer> playersList = new ArrayList<>(playerMap.keySet());
 
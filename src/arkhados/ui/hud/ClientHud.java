@@ -46,9 +46,11 @@ public class ClientHud extends AbstractAppState
     private final VisualStatistics statistics = new VisualStatistics();
     private final VisualCharacterInfo characterInfo;
     private final HudMenu hudMenu = new HudMenu();
+    private final NetGraph netGraph;
 
     public ClientHud(Camera cam, Node guiNode, BitmapFont guiFont) {
         characterInfo = new VisualCharacterInfo(cam, guiNode, guiFont);
+        netGraph = new NetGraph(guiNode, guiFont);
         guiNode.addControl(new CActionQueue());
     }
 
@@ -63,6 +65,8 @@ public class ClientHud extends AbstractAppState
         hudMenu.initialize(nifty, screen);
         Globals.app.getInputManager().addListener(hudMenu,
                 InputMapping.HUD_TOGGLE_MENU);
+        Globals.app.getInputManager().addListener(netGraph,
+                InputMapping.TOGGLE_NET_GRAPH);
     }
 
     @Override
@@ -91,6 +95,7 @@ public class ClientHud extends AbstractAppState
         }
 
         characterInfo.update();
+        netGraph.update(tpf);
     }
 
     public void addCharacter(Spatial character) {
@@ -196,7 +201,9 @@ public class ClientHud extends AbstractAppState
     public void cleanup() {
         super.cleanup();
         Globals.app.getInputManager().removeListener(hudMenu);
+        Globals.app.getInputManager().removeListener(netGraph);
         hudMenu.cleanup();
+        netGraph.hide();
         clear();
     }
 
@@ -0,0 +1,187 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.ui.hud;
+
+import arkhados.Globals;
+import arkhados.net.ChannelStatistics;
+import arkhados.net.ReliableChannel;
+import arkhados.net.ReliableSender;
+import arkhados.net.Sender;
+import com.jme3.font.BitmapFont;
+import com.jme3.font.BitmapText;
+import com.jme3.input.controls.ActionListener;
+import com.jme3.material.Material;
+import com.jme3.math.ColorRGBA;
+import com.jme3.renderer.queue.RenderQueue;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.shape.Quad;
+import java.util.Locale;
+
+/**
+ * Optional on-screen graph of bytes received from server per second with
+ * round trip time, loss and resends of connection. Samples that lost
+ * messages are drawn red. Nothing is measured while graph is hidden.
+ */
+public class NetGraph implements ActionListener {
+
+    private static final int SAMPLES = 60;
+    private static final float SAMPLE_INTERVAL = 0.25f;
+    private static final float BAR_WIDTH = 3f;
+    private static final float HEIGHT = 60f;
+    private static final float MARGIN = 10f;
+    private final Node guiNode;
+    private final BitmapFont guiFont;
+    private final Node node = new Node("net-graph");
+    private BitmapText text;
+    private Geometry[] bars;
+    private Material normal;
+    private Material lossy;
+    private final float[] bytesPerSecond = new float[SAMPLES];
+    private final boolean[] lost = new boolean[SAMPLES];
+    private int latest = 0;
+    private float timer = 0f;
+    private ReliableChannel channel;
+    private ChannelStatistics previous;
+
+    NetGraph(Node guiNode, BitmapFont guiFont) {
+        this.guiNode = guiNode;
+        this.guiFont = guiFont;
+    }
+
+    @Override
+    public void onAction(String name, boolean isPressed, float tpf) {
+        if (isPressed) {
+            return;
+        }
+
+        if (node.getParent() == null) {
+            show();
+        } else {
+            hide();
+        }
+    }
+
+    private void show() {
+        if (bars == null) {
+            build();
+        }
+
+        float top = Globals.app.getCamera().getHeight() - MARGIN;
+        node.setLocalTranslation(MARGIN, top - HEIGHT, 0f);
+        guiNode.attachChild(node);
+    }
+
+    void hide() {
+        node.removeFromParent();
+        channel = null;
+        previous = null;
+    }
+
+    private void build() {
+        normal = new Material(Globals.assets,
+                "Common/MatDefs/Misc/Unshaded.j3md");
+        normal.setColor("Color", ColorRGBA.Green);
+        lossy = new Material(Globals.assets,
+                "Common/MatDefs/Misc/Unshaded.j3md");
+        lossy.setColor("Color", ColorRGBA.Red);
+
+        Quad quad = new Quad(BAR_WIDTH - 1f, 1f);
+        bars = new Geometry[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            Geometry bar = new Geometry("net-graph-bar", quad);
+            bar.setMaterial(normal);
+            bar.setLocalTranslation(i * BAR_WIDTH, 0f, 0f);
+            bar.setLocalScale(1f, 0f, 1f);
+            node.attachChild(bar);
+        }
+
+        text = new BitmapText(guiFont);
+        text.setSize(guiFont.getCharSet().getRenderedSize() * 0.8f);
+        text.setColor(ColorRGBA.White);
+        text.setLocalTranslation(SAMPLES * BAR_WIDTH + MARGIN, HEIGHT, 0f);
+        node.attachChild(text);
+        node.setQueueBucket(RenderQueue.Bucket.Gui);
+    }
+
+    void update(float tpf) {
+        if (node.getParent() == null) {
+            return;
+        }
+
+        timer += tpf;
+        if (timer < SAMPLE_INTERVAL) {
+            return;
+        }
+
+        Sender sender = Globals.app.getStateManager().getState(Sender.class);
+        ReliableChannel current = sender instanceof ReliableSender
+                ? ((ReliableSender) sender).getChannel(null)
+                : null;
+        if (current != channel) {
+            // Connection has changed so earlier counters mean nothing
+            channel = current;
+            previous = null;
+        }
+
+        if (channel == null) {
+            text.setText("Not connected");
+            timer = 0f;
+            return;
+        }
+
+        ChannelStatistics statistics = channel.getStatistics();
+        if (previous != null) {
+            addSample(statistics);
+        }
+
+        previous = statistics;
+        timer = 0f;
+    }
+
+    private void addSample(ChannelStatistics statistics) {
+        latest = (latest + 1) % SAMPLES;
+        bytesPerSecond[latest] = (statistics.getBytesReceived()
+                - previous.getBytesReceived()) / timer;
+        float loss = statistics.getLossSince(previous);
+        lost[latest] = loss > 0f;
+
+        float max = 1f;
+        for (float sample : bytesPerSecond) {
+            max = Math.max(max, sample);
+        }
+
+        // Oldest sample on left
+        for (int i = 0; i < SAMPLES; i++) {
+            int index = (latest + 1 + i) % SAMPLES;
+            Geometry bar = bars[i];
+            bar.setLocalScale(1f, HEIGHT * bytesPerSecond[index] / max, 1f);
+            bar.setMaterial(lost[index] ? lossy : normal);
+        }
+
+        float rtt = statistics.getRoundTripTime();
+        text.setText(String.format(Locale.ROOT, "rtt %s%n"
+                + "in %.1f kB/s (max %.1f)%n"
+                + "out %.1f kB/s%n"
+                + "loss %.1f %%, resends %d",
+                rtt < 0f ? "-" : String.format(Locale.ROOT, "%.0f ms",
+                        rtt * 1000f),
+                bytesPerSecond[latest] / 1000f, max / 1000f,
+                (statistics.getBytesSent() - previous.getBytesSent())
+                / timer / 1000f,
+                loss * 100f,
+                statistics.getResends() - previous.getResends()));
+    }
+}
@@ -0,0 +1,218 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.util;
+
+import arkhados.controls.CActionQueue;
+import arkhados.controls.CCharacterAnimation;
+import arkhados.controls.CCharacterHeal;
+import arkhados.controls.CCharacterMovement;
+import arkhados.controls.CCharacterPhysics;
+import arkhados.controls.CCharacterSound;
+import arkhados.controls.CEntityVariable;
+import arkhados.controls.CInfluenceInterface;
+import arkhados.controls.CProjectile;
+import arkhados.controls.CResting;
+import arkhados.controls.CSkyDrop;
+import arkhados.controls.CSpellBuff;
+import arkhados.controls.CSpellCast;
+import arkhados.controls.CSync;
+import arkhados.controls.CUserInput;
+import arkhados.controls.CVisibility;
+import arkhados.spell.spells.rockgolem.CSpiritStonePhysics;
+import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.export.JmeExporter;
+import com.jme3.export.JmeImporter;
+import com.jme3.export.Savable;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.control.Control;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Controls of one entity resolved once so that hot paths do not have to
+ * search spatial's control list with getControl. EntityFactory attaches
+ * these when entity is built and World resolves them again after it has
+ * added its own controls. Controls that come and go during entity's life,
+ * like CMovementForcer, must be looked up with lookup.
+ */
+public class EntityComponents implements Savable {
+
+    private static final AtomicInteger lookups = new AtomicInteger();
+    private static final EntityComponents NONE = new EntityComponents(null);
+    private final Spatial spatial;
+    private CInfluenceInterface influence;
+    private CCharacterMovement movement;
+    private CCharacterPhysics physics;
+    private CActionQueue actionQueue;
+    private CSpellCast spellCast;
+    private CProjectile projectile;
+    private CSpellBuff spellBuff;
+    private CSkyDrop skyDrop;
+    private CSpiritStonePhysics spiritStonePhysics;
+    private CResting resting;
+    private CCharacterHeal heal;
+    private CCharacterAnimation animation;
+    private CCharacterSound sound;
+    private CEntityVariable entityVariable;
+    private CUserInput userInput;
+    private CSync sync;
+    private RigidBodyControl rigidBody;
+    private CVisibility visibility;
+
+    private EntityComponents(Spatial spatial) {
+        this.spatial = spatial;
+    }
+
+    /**
+     * Resolves controls of spatial and attaches them to it, replacing
+     * previously resolved ones.
+     */
+    public static EntityComponents attach(Spatial spatial) {
+        EntityComponents components = spatial.getUserData(UserData.COMPONENTS);
+        if (components == null) {
+            components = new EntityComponents(spatial);
+            spatial.setUserData(UserData.COMPONENTS, components);
+        }
+
+        components.resolve();
+        return components;
+    }
+
+    /**
+     * @return controls attached to spatial or empty components if spatial
+     * was not built by EntityFactory. Never null.
+     */
+    public static EntityComponents of(Spatial spatial) {
+        EntityComponents components = spatial.getUserData(UserData.COMPONENTS);
+        return components != null ? components : NONE;
+    }
+
+    /**
+     * Looks up control that is not resolved in advance and counts lookup.
+     */
+    public static <T extends Control> T lookup(Spatial spatial,
+            Class<T> type) {
+        lookups.incrementAndGet();
+        return spatial.getControl(type);
+    }
+
+    /**
+     * @return how many times lookup has been called since previous poll
+     */
+    public static int pollLookups() {
+        return lookups.getAndSet(0);
+    }
+
+    private void resolve() {
+        influence = spatial.getControl(CInfluenceInterface.class);
+        movement = spatial.getControl(CCharacterMovement.class);
+        physics = spatial.getControl(CCharacterPhysics.class);
+        actionQueue = spatial.getControl(CActionQueue.class);
+        spellCast = spatial.getControl(CSpellCast.class);
+        projectile = spatial.getControl(CProjectile.class);
+        spellBuff = spatial.getControl(CSpellBuff.class);
+        skyDrop = spatial.getControl(CSkyDrop.class);
+        spiritStonePhysics = spatial.getControl(CSpiritStonePhysics.class);
+        resting = spatial.getControl(CResting.class);
+        heal = spatial.getControl(CCharacterHeal.class);
+        animation = spatial.getControl(CCharacterAnimation.class);
+        sound = spatial.getControl(CCharacterSound.class);
+        entityVariable = spatial.getControl(CEntityVariable.class);
+        userInput = spatial.getControl(CUserInput.class);
+        sync = spatial.getControl(CSync.class);
+        rigidBody = spatial.getControl(RigidBodyControl.class);
+        visibility = spatial.getControl(CVisibility.class);
+    }
+
+    public CInfluenceInterface getInfluence() {
+        return influence;
+    }
+
+    public CCharacterMovement getMovement() {
+        return movement;
+    }
+
+    public CCharacterPhysics getPhysics() {
+        return physics;
+    }
+
+    public CActionQueue getActionQueue() {
+        return actionQueue;
+    }
+
+    public CSpellCast getSpellCast() {
+        return spellCast;
+    }
+
+    public CProjectile getProjectile() {
+        return projectile;
+    }
+
+    public CSpellBuff getSpellBuff() {
+        return spellBuff;
+    }
+
+    public CSkyDrop getSkyDrop() {
+        return skyDrop;
+    }
+
+    public CSpiritStonePhysics getSpiritStonePhysics() {
+        return spiritStonePhysics;
+    }
+
+    public CResting getResting() {
+        return resting;
+    }
+
+    public CCharacterHeal getHeal() {
+        return heal;
+    }
+
+    public CCharacterAnimation getAnimation() {
+        return animation;
+    }
+
+    public CCharacterSound getSound() {
+        return sound;
+    }
+
+    public CEntityVariable getEntityVariable() {
+        return entityVariable;
+    }
+
+    public CUserInput getUserInput() {
+        return userInput;
+    }
+
+    public CSync getSync() {
+        return sync;
+    }
+
+    public RigidBodyControl getRigidBody() {
+        return rigidBody;
+    }
+
+    public CVisibility getVisibility() {
+        return visibility;
+    }
+
+    // Nothing is saved. Controls are resolved again with attach.
+    @Override
+    public void write(JmeExporter ex) {
+    }
+
+    @Override
+    public void read(JmeImporter im) {
+    }
+}
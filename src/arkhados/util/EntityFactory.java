@@ -23,15 +23,26 @@ import arkhados.characters.RockGolem;
 import arkhados.characters.Venator;
 import arkhados.effects.EffectBox;
 import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Creates all game entities
  */
 public class EntityFactory {
 
+    // Largest number of removed entities kept per node builder
+    private static final int POOL_SIZE = 64;
     private int runningId = -1;
     private final ArrayList<NodeBuilder> nodeBuilders = new ArrayList<>(40);
+    // Removed entities by node builder id. Null if builder can not recycle.
+    private final ArrayList<ArrayDeque<Node>> pools = new ArrayList<>(40);
+    // Entities removed during this frame. They are not reused before next
+    // frame so that code that is still handling removal does not see them
+    // come back.
+    private final List<Node> released = new ArrayList<>();
     private EffectHandler effectHandler;
 
     /**
@@ -54,11 +65,51 @@ public class EntityFactory {
         if (nodeBuilders.size() <= id) {
             return null;
         }
-        Node node = nodeBuilders.get(id).build(params);
+        NodeBuilder builder = nodeBuilders.get(id);
+        ArrayDeque<Node> pool = pools.get(id);
+        Node node = pool != null ? pool.pollLast() : null;
+        if (node != null) {
+            ((RecyclableNodeBuilder) builder).reset(node, params);
+        } else {
+            node = builder.build(params);
+        }
         node.setUserData(UserData.NODE_BUILDER_ID, id);
+        EntityComponents.attach(node);
         return node;
     }
 
+    /**
+     * Takes removed entity for reuse if its builder supports it.
+     *
+     * @return true if entity was taken
+     */
+    public boolean recycle(Spatial entity) {
+        Integer id = entity.getUserData(UserData.NODE_BUILDER_ID);
+        if (id == null || id >= pools.size() || pools.get(id) == null
+                || !(entity instanceof Node)) {
+            return false;
+        }
+
+        released.add((Node) entity);
+        return true;
+    }
+
+    /**
+     * Makes entities that were recycled during previous frame available.
+     * Should be called once per frame.
+     */
+    public void update() {
+        for (Node node : released) {
+            int id = node.getUserData(UserData.NODE_BUILDER_ID);
+            ArrayDeque<Node> pool = pools.get(id);
+            if (pool.size() < POOL_SIZE) {
+                pool.addLast(node);
+            }
+        }
+
+        released.clear();
+    }
+
     private void addNodeBuilders() {
         int mageId = addNodeBuilder(new EmberMage());
         int venatorId = addNodeBuilder(new Venator());
@@ -83,6 +134,9 @@ public class EntityFactory {
 
     public int addNodeBuilder(NodeBuilder builder) {
         nodeBuilders.add(builder);
+        pools.add(builder instanceof RecyclableNodeBuilder
+                ? new ArrayDeque<>()
+                : null);
         int nodeBuilderId = newNodeBuilderId();
         if (effectHandler != null && builder != null) {
             EffectBox effectBox = builder.getEffectBox();
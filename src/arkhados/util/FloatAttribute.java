@@ -0,0 +1,41 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.util;
+
+/**
+ * Float attributes of entities that are kept in EntityAttributes. Each
+ * one is mirrored to user data with same key for code that still reads
+ * user data. Once World has registered entity, these keys must not be
+ * written to user data directly, because EntityAttributes overwrites them.
+ */
+public enum FloatAttribute {
+    HEALTH_CURRENT(UserData.HEALTH_CURRENT),
+    HEALTH_MAX(UserData.HEALTH_MAX),
+    DAMAGE_FACTOR(UserData.DAMAGE_FACTOR),
+    SPEED_MOVEMENT(UserData.SPEED_MOVEMENT),
+    SPEED_MOVEMENT_BASE(UserData.SPEED_MOVEMENT_BASE),
+    LIFE_STEAL(UserData.LIFE_STEAL),
+    LIFE_STEAL_BASE(UserData.LIFE_STEAL_BASE);
+
+    private final String userDataKey;
+
+    private FloatAttribute(String userDataKey) {
+        this.userDataKey = userDataKey;
+    }
+
+    public String getUserDataKey() {
+        return userDataKey;
+    }
+}
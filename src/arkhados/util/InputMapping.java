@@ -53,6 +53,7 @@ public class InputMapping {
     public final static String VOLUME_UP = "volume-up";
     public final static String TOGGLE_STATS = "toggle-stats";
     public final static String HUD_TOGGLE_MENU = "hud-toggle-menu";
+    public final static String TOGGLE_NET_GRAPH = "toggle-net-graph";
 
     public static Integer getId(String name) {
         return StringNumberMap.get(name);
@@ -0,0 +1,37 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.util;
+
+/**
+ * Integer attributes of entities that are kept in EntityAttributes. Each
+ * one is mirrored to user data with same key for code that still reads
+ * user data. Once World has registered entity, these keys must not be
+ * written to user data directly, because EntityAttributes overwrites them.
+ */
+public enum IntAttribute {
+    PLAYER_ID(UserData.PLAYER_ID),
+    TEAM_ID(UserData.TEAM_ID),
+    NODE_BUILDER_ID(UserData.NODE_BUILDER_ID);
+
+    private final String userDataKey;
+
+    private IntAttribute(String userDataKey) {
+        this.userDataKey = userDataKey;
+    }
+
+    public String getUserDataKey() {
+        return userDataKey;
+    }
+}
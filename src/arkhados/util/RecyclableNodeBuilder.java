@@ -0,0 +1,29 @@
+/*    This file is part of Arkhados.
+
+ Arkhados is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Arkhados is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Arkhados.  If not, see <http://www.gnu.org/licenses/>. */
+package arkhados.util;
+
+import com.jme3.scene.Node;
+
+/**
+ * NodeBuilder whose entities can be reused after they have been removed
+ * from world. Nothing else may keep reference to removed entity.
+ */
+public interface RecyclableNodeBuilder extends NodeBuilder {
+
+    /**
+     * Returns removed node to state that build would give.
+     */
+    public void reset(Node node, BuildParameters params);
+}
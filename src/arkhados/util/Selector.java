@@ -20,11 +20,12 @@ import arkhados.controls.CInfluenceInterface;
 import com.jme3.math.FastMath;
 import com.jme3.math.Plane;
 import com.jme3.math.Vector3f;
-import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.function.Predicate;
 
 public class Selector {
@@ -86,20 +87,23 @@ public class Selector {
             Vector3f location,
             float distance,
             Predicate<Spatial> predicate) {
-        Node worldRoot = world.getWorldRoot();
-
-        for (Spatial child : worldRoot.getChildren()) {
-            float distanceBetween = child.getWorldTranslation()
-                    .distance(location);
-            if (distanceBetween > distance) {
+        List<Spatial> candidates = world.getSpatialGrid()
+                .collect(location, distance, new ArrayList<Spatial>());
+        float distanceSquared = distance * distance;
+
+        for (Spatial candidate : candidates) {
+            float distanceBetweenSquared = candidate.getWorldTranslation()
+                    .distanceSquared(location);
+            if (distanceBetweenSquared > distanceSquared) {
                 continue;
             }
 
-            if (predicate != null && !predicate.test(child)) {
+            if (predicate != null && !predicate.test(candidate)) {
                 continue;
             }
 
-            collection.add(new SpatialDistancePair(child, distanceBetween));
+            collection.add(new SpatialDistancePair(candidate,
+                    FastMath.sqrt(distanceBetweenSquared)));
         }
         return collection;
     }
@@ -54,4 +54,8 @@ public class UserData {
     public final static String TEAM_ID = "team-id";
     
     public final static String FOLLOW_ME = "follow-me";
+    /**
+     * EntityComponents of entity
+     */
+    public final static String COMPONENTS = "components";
 }